@@ -0,0 +1,51 @@
+package com.blackduck.integration;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IntegrationEscapeUtilsBenchmark {
+    @Param({ "plain", "escaped" })
+    public String valueKind;
+
+    private String value;
+
+    @Setup
+    public void setUp() {
+        if ("plain".equals(valueKind)) {
+            value = "--detect.project.version.name:1.0.0-SNAPSHOT/build-1234";
+        } else {
+            value = "--detect.project.name=My Project (Release) & $BRANCH_NAME, 'nightly'";
+        }
+    }
+
+    @Benchmark
+    public String escapePowerShell() {
+        return IntegrationEscapeUtils.escapePowerShell(value);
+    }
+
+    @Benchmark
+    public String escapeShell() {
+        return IntegrationEscapeUtils.escapeShell(value);
+    }
+
+    @Benchmark
+    public String escapePowerShellTranslator() {
+        return IntegrationEscapeUtils.ESCAPE_POWERSHELL.translate(value);
+    }
+
+    @Benchmark
+    public String escapeXSITranslator() {
+        return IntegrationEscapeUtils.escapeXSI(value);
+    }
+}
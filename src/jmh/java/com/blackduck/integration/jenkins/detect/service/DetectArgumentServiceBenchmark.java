@@ -0,0 +1,91 @@
+package com.blackduck.integration.jenkins.detect.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.blackduck.integration.IntegrationEscapeUtils;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.wrapper.JenkinsVersionHelper;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import hudson.model.TaskListener;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectArgumentServiceBenchmark {
+    @Param({ "10", "1000", "10000" })
+    public int propertyCount;
+
+    private final Function<String, String> escaper = IntegrationEscapeUtils::escapeShell;
+
+    private DetectArgumentService detectArgumentService;
+    private IntEnvironmentVariables intEnvironmentVariables;
+    private Map<String, String> environmentVariables;
+    private String detectProperties;
+
+    @Setup
+    public void setUp() {
+        JenkinsVersionHelper jenkinsVersionHelper = Mockito.mock(JenkinsVersionHelper.class);
+        Mockito.when(jenkinsVersionHelper.getJenkinsVersion()).thenReturn(Optional.of("2.462.3"));
+        Mockito.when(jenkinsVersionHelper.getPluginVersion("blackduck-detect")).thenReturn(Optional.of("11.0.0"));
+        detectArgumentService = new DetectArgumentService(JenkinsIntLogger.logToListener(TaskListener.NULL), jenkinsVersionHelper);
+
+        environmentVariables = new HashMap<>();
+        environmentVariables.put("WORKSPACE", "/home/jenkins/workspace/my-project");
+        environmentVariables.put("BRANCH_NAME", "main");
+        environmentVariables.put("BUILD_NUMBER", "1234");
+        intEnvironmentVariables = IntEnvironmentVariables.empty();
+        intEnvironmentVariables.putAll(environmentVariables);
+
+        detectProperties = createDetectProperties(propertyCount);
+    }
+
+    @Benchmark
+    public List<String> getDetectArguments() {
+        return detectArgumentService.getDetectArguments(intEnvironmentVariables, escaper, Collections.emptyList(), detectProperties);
+    }
+
+    @Benchmark
+    public List<String> parseDetectArgumentString() {
+        return detectArgumentService.parseDetectArgumentString(environmentVariables, escaper, detectProperties);
+    }
+
+    // Mixes the shapes seen in real jobs: plain values, variable references, quoted values with spaces and one property per line.
+    private static String createDetectProperties(int propertyCount) {
+        StringBuilder detectProperties = new StringBuilder();
+        for (int i = 0; i < propertyCount; i++) {
+            switch (i % 4) {
+                case 0:
+                    detectProperties.append("--detect.property.").append(i).append("=value-").append(i);
+                    break;
+                case 1:
+                    detectProperties.append("--detect.source.path.").append(i).append("=${WORKSPACE}/module-").append(i);
+                    break;
+                case 2:
+                    detectProperties.append("\"--detect.project.name.").append(i).append("=My Project ").append(i).append('"');
+                    break;
+                default:
+                    detectProperties.append("--detect.project.version.name.").append(i).append("=$BRANCH_NAME-$BUILD_NUMBER");
+                    break;
+            }
+            detectProperties.append(i % 10 == 9 ? '\n' : ' ');
+        }
+        return detectProperties.toString();
+    }
+}
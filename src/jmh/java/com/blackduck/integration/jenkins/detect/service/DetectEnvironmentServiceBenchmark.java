@@ -0,0 +1,72 @@
+package com.blackduck.integration.jenkins.detect.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsConfigService;
+import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.jenkins.wrapper.JenkinsVersionHelper;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import hudson.model.TaskListener;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectEnvironmentServiceBenchmark {
+    private static final String CREDENTIALS_ID = "blackduck-api-token";
+
+    @Param({ "50", "1000", "10000" })
+    public int environmentSize;
+
+    private DetectEnvironmentService detectEnvironmentService;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> environmentVariables = new HashMap<>();
+        for (int i = 0; i < environmentSize; i++) {
+            environmentVariables.put("BUILD_VARIABLE_" + i, "/home/jenkins/workspace/my-project/value-" + i);
+        }
+
+        JenkinsVersionHelper jenkinsVersionHelper = Mockito.mock(JenkinsVersionHelper.class);
+        Mockito.when(jenkinsVersionHelper.getPluginVersion("blackduck-detect")).thenReturn(Optional.of("11.0.0"));
+        BlackduckCredentialsHelper blackduckCredentialsHelper = Mockito.mock(BlackduckCredentialsHelper.class);
+        Mockito.when(blackduckCredentialsHelper.getApiTokenByCredentialsId(CREDENTIALS_ID)).thenReturn(Optional.of("api-token"));
+
+        DetectGlobalConfigSnapshot detectGlobalConfigSnapshot = new DetectGlobalConfigSnapshot(1, "https://blackduck.example.com", CREDENTIALS_ID, 120, false, false, null);
+        DetectGlobalConfig detectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
+        Mockito.when(detectGlobalConfig.getSnapshot()).thenReturn(detectGlobalConfigSnapshot);
+        JenkinsConfigService jenkinsConfigService = Mockito.mock(JenkinsConfigService.class);
+        Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.of(detectGlobalConfig));
+
+        detectEnvironmentService = new DetectEnvironmentService(
+            JenkinsIntLogger.logToListener(TaskListener.NULL),
+            new JenkinsProxyHelper(),
+            jenkinsVersionHelper,
+            blackduckCredentialsHelper,
+            jenkinsConfigService,
+            environmentVariables
+        );
+    }
+
+    @Benchmark
+    public IntEnvironmentVariables createDetectEnvironment() {
+        return detectEnvironmentService.createDetectEnvironment();
+    }
+}
@@ -0,0 +1,79 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.extensions.AirGapDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.InheritFromGlobalDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.ManagedJarDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.ScriptOrJarDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsConfigService;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import hudson.model.TaskListener;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DetectStrategyServiceBenchmark {
+    @Param({ "inherit", "airgap", "scriptjar", "managedjar" })
+    public String strategy;
+
+    private DetectStrategyService detectStrategyService;
+    private IntEnvironmentVariables intEnvironmentVariables;
+    private DetectDownloadStrategy detectDownloadStrategy;
+
+    @Setup
+    public void setUp() {
+        DetectGlobalConfigSnapshot detectGlobalConfigSnapshot = new DetectGlobalConfigSnapshot(1, "https://blackduck.example.com", null, 120, false, false, new ScriptOrJarDownloadStrategy());
+        DetectGlobalConfig detectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
+        Mockito.when(detectGlobalConfig.getSnapshot()).thenReturn(detectGlobalConfigSnapshot);
+        JenkinsConfigService jenkinsConfigService = Mockito.mock(JenkinsConfigService.class);
+        Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.of(detectGlobalConfig));
+
+        detectStrategyService = new DetectStrategyService(
+            JenkinsIntLogger.logToListener(TaskListener.NULL),
+            new JenkinsProxyHelper(),
+            "/home/jenkins/workspace/my-project@tmp",
+            "/home/jenkins/caches",
+            jenkinsConfigService
+        );
+        intEnvironmentVariables = IntEnvironmentVariables.empty();
+
+        switch (strategy) {
+            case "airgap":
+                detectDownloadStrategy = new AirGapDownloadStrategy();
+                break;
+            case "scriptjar":
+                detectDownloadStrategy = new ScriptOrJarDownloadStrategy();
+                break;
+            case "managedjar":
+                detectDownloadStrategy = new ManagedJarDownloadStrategy();
+                break;
+            default:
+                detectDownloadStrategy = new InheritFromGlobalDownloadStrategy();
+                break;
+        }
+    }
+
+    @Benchmark
+    public DetectExecutionStrategy getExecutionStrategy() throws IntegrationException {
+        return detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, detectDownloadStrategy);
+    }
+}
@@ -9,47 +9,109 @@ package com.blackduck.integration;
 
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.text.translate.CharSequenceTranslator;
-import org.apache.commons.text.translate.LookupTranslator;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.Writer;
 
 public class IntegrationEscapeUtils extends StringEscapeUtils {
-    public static final CharSequenceTranslator ESCAPE_POWERSHELL;
-
-    static {
-        Map<CharSequence, CharSequence> escapePowershellMap = new HashMap<>();
-        escapePowershellMap.put("|", "`|");
-        escapePowershellMap.put("&", "`&");
-        escapePowershellMap.put(";", "`;");
-        escapePowershellMap.put("<", "`<");
-        escapePowershellMap.put(">", "`>");
-        escapePowershellMap.put("(", "`(");
-        escapePowershellMap.put(")", "`)");
-        escapePowershellMap.put("$", "`$");
-        escapePowershellMap.put("`", "``");
-        escapePowershellMap.put("\\", "`\\");
-        escapePowershellMap.put("\"", "`\"");
-        escapePowershellMap.put("'", "`'");
-        escapePowershellMap.put(" ", "` ");
-        escapePowershellMap.put("\t", "`\t");
-        escapePowershellMap.put("\r\n", "");
-        escapePowershellMap.put("\n", "");
-        escapePowershellMap.put("*", "`*");
-        escapePowershellMap.put("?", "`?");
-        escapePowershellMap.put("[", "`[");
-        escapePowershellMap.put("#", "`#");
-        escapePowershellMap.put("~", "`~");
-        escapePowershellMap.put("=", "`=");
-        escapePowershellMap.put("%", "`%");
-        escapePowershellMap.put(",", "`,");
-        ESCAPE_POWERSHELL = new LookupTranslator(
-            Collections.unmodifiableMap(escapePowershellMap)
-        );
-    }
+    // Both escapers prefix the same shell metacharacters (PowerShell additionally escapes ',') and drop line breaks, matching the LookupTranslator maps they replace.
+    private static final String XSI_ESCAPED_CHARACTERS = "|&;<>()$`\\\"' \t*?[#~=%";
+    private static final String POWERSHELL_ESCAPED_CHARACTERS = XSI_ESCAPED_CHARACTERS + ",";
+
+    private static final PrefixEscaper XSI_ESCAPER = new PrefixEscaper('\\', XSI_ESCAPED_CHARACTERS);
+    private static final PrefixEscaper POWERSHELL_ESCAPER = new PrefixEscaper('`', POWERSHELL_ESCAPED_CHARACTERS);
+
+    public static final CharSequenceTranslator ESCAPE_POWERSHELL = POWERSHELL_ESCAPER;
 
     public static String escapePowerShell(String input) {
-        return ESCAPE_POWERSHELL.translate(input);
+        return POWERSHELL_ESCAPER.escape(input);
+    }
+
+    // StringEscapeUtils.escapeXSI is final, so the table-driven XSI escaper needs its own name.
+    public static String escapeShell(String input) {
+        return XSI_ESCAPER.escape(input);
+    }
+
+    /**
+     * Escapes characters by prefixing them with an escape character, and removes "\n" and "\r\n". Characters are looked up in a table indexed by the character, and input that
+     * needs no changes is returned as is.
+     */
+    private static final class PrefixEscaper extends CharSequenceTranslator {
+        private static final int TABLE_SIZE = 128;
+
+        private final char escapeCharacter;
+        private final boolean[] escapedCharacters = new boolean[TABLE_SIZE];
+        private final boolean[] specialCharacters = new boolean[TABLE_SIZE];
+
+        private PrefixEscaper(char escapeCharacter, String charactersToEscape) {
+            this.escapeCharacter = escapeCharacter;
+            for (char characterToEscape : charactersToEscape.toCharArray()) {
+                escapedCharacters[characterToEscape] = true;
+                specialCharacters[characterToEscape] = true;
+            }
+            specialCharacters['\n'] = true;
+        }
+
+        private String escape(String input) {
+            if (input == null) {
+                return null;
+            }
+
+            int length = input.length();
+            int index = 0;
+            while (index < length && !isSpecial(input.charAt(index))) {
+                index++;
+            }
+            if (index == length) {
+                return input;
+            }
+            if (index > 0 && input.charAt(index - 1) == '\r') {
+                // The scan stops at the "\n" of a "\r\n", which is removed as a pair.
+                index--;
+            }
+
+            StringBuilder escaped = new StringBuilder(length + 16);
+            escaped.append(input, 0, index);
+            while (index < length) {
+                char currentCharacter = input.charAt(index);
+                if (currentCharacter == '\n') {
+                    index++;
+                } else if (currentCharacter == '\r' && index + 1 < length && input.charAt(index + 1) == '\n') {
+                    index += 2;
+                } else {
+                    if (isEscaped(currentCharacter)) {
+                        escaped.append(escapeCharacter);
+                    }
+                    escaped.append(currentCharacter);
+                    index++;
+                }
+            }
+            return escaped.toString();
+        }
+
+        @Override
+        public int translate(CharSequence input, int index, Writer writer) throws IOException {
+            char currentCharacter = input.charAt(index);
+            if (currentCharacter == '\n') {
+                return 1;
+            }
+            if (currentCharacter == '\r' && index + 1 < input.length() && input.charAt(index + 1) == '\n') {
+                return 2;
+            }
+            if (isEscaped(currentCharacter)) {
+                writer.write(escapeCharacter);
+                writer.write(currentCharacter);
+                return 1;
+            }
+            return 0;
+        }
+
+        private boolean isSpecial(char character) {
+            return character < TABLE_SIZE && specialCharacters[character];
+        }
+
+        private boolean isEscaped(char character) {
+            return character < TABLE_SIZE && escapedCharacters[character];
+        }
     }
 }
@@ -9,7 +9,16 @@ package com.blackduck.integration.jenkins.detect;
 
 public enum DetectJenkinsEnvironmentVariable {
     USER_PROVIDED_JAR_PATH("DETECT_JAR"),
-    SHOULD_ESCAPE("DETECT_PLUGIN_ESCAPING");
+    SCRIPT_JAR_SOURCE("DETECT_SOURCE"),
+    SHOULD_ESCAPE("DETECT_PLUGIN_ESCAPING"),
+    SCRIPT_CACHE_TTL_MINUTES("DETECT_PLUGIN_SCRIPT_CACHE_TTL_MINUTES"),
+    LATEST_VERSION_TTL_MINUTES("DETECT_PLUGIN_LATEST_VERSION_TTL_MINUTES"),
+    CLASS_DATA_SHARING("DETECT_PLUGIN_CLASS_DATA_SHARING"),
+    JVM_OPTIONS("DETECT_PLUGIN_JVM_OPTIONS"),
+    TOOLS_CACHE("DETECT_PLUGIN_TOOLS_CACHE"),
+    TOOLS_CACHE_MAX_MB("DETECT_PLUGIN_TOOLS_CACHE_MAX_MB"),
+    TOOLS_CACHE_WAIT_MINUTES("DETECT_PLUGIN_TOOLS_CACHE_WAIT_MINUTES"),
+    AGENT_TIMEOUT_MINUTES("DETECT_PLUGIN_AGENT_TIMEOUT_MINUTES");
 
     private final String environmentVariable;
 
@@ -0,0 +1,291 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect;
+
+import com.blackduck.integration.jenkins.detect.extensions.fingerprint.DetectScanSkippedAction;
+import com.blackduck.integration.jenkins.detect.extensions.timing.DetectPhaseTimingsAction;
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+import com.blackduck.integration.jenkins.detect.service.fingerprint.DetectFingerprint;
+import com.blackduck.integration.jenkins.detect.service.fingerprint.DetectFingerprintService;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectFlightRecorder;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectLaunchEvent;
+import com.blackduck.integration.jenkins.detect.service.metrics.DetectMetrics;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectClassDataSharing;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectRunPermit;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
+import com.blackduck.integration.jenkins.detect.service.tracing.DetectRunTrace;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import com.blackduck.integration.util.OperatingSystemType;
+import hudson.model.Run;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A Detect run that has been set up and is ready for its process to start. Whoever starts the process must report how the run ended through {@link #finished(int)} or
+ * {@link #failed(Throwable)}, which may happen on another thread long after setup; that is what records the run's timings, metrics and trace and frees its throttle slot.
+ */
+public class DetectLaunch {
+    private final JenkinsIntLogger logger;
+    @Nullable
+    private final Run<?, ?> run;
+    private final DetectPhaseTimer detectPhaseTimer;
+    private final DetectRunTrace detectRunTrace;
+    private final String strategyName;
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private IntEnvironmentVariables intEnvironmentVariables;
+    private List<String> detectCommands;
+    private Map<String, List<String>> targetCommands = Collections.emptyMap();
+    private int parallelism = 1;
+    private OperatingSystemType operatingSystemType;
+    private String strategyType;
+    // Handed over by the throttle on whichever thread freed the slot, possibly as the run is being ended on another
+    private volatile DetectRunPermit detectRunPermit = DetectRunPermit.NONE;
+    @Nullable
+    private DetectLaunchEvent detectLaunchEvent;
+    @Nullable
+    private DetectFingerprintService detectFingerprintService;
+    @Nullable
+    private DetectFingerprint detectFingerprint;
+    @Nullable
+    private String unchangedSince;
+    @Nullable
+    private volatile DetectToolsCacheService detectToolsCacheService;
+
+    DetectLaunch(JenkinsIntLogger logger, @Nullable Run<?, ?> run, DetectPhaseTimer detectPhaseTimer, DetectRunTrace detectRunTrace, String strategyName) {
+        this.logger = logger;
+        this.run = run;
+        this.detectPhaseTimer = detectPhaseTimer;
+        this.detectRunTrace = detectRunTrace;
+        this.strategyName = strategyName;
+    }
+
+    public IntEnvironmentVariables getEnvironment() {
+        return intEnvironmentVariables;
+    }
+
+    public List<String> getDetectCommands() {
+        return detectCommands;
+    }
+
+    /**
+     * The command for each scan target of a multi-target run, by source path in the order the targets were given. Empty for a single Detect run.
+     */
+    public Map<String, List<String>> getTargetCommands() {
+        return targetCommands;
+    }
+
+    /**
+     * How many scan targets may run at once on the agent.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public OperatingSystemType getOperatingSystemType() {
+        return operatingSystemType;
+    }
+
+    void setCommand(IntEnvironmentVariables intEnvironmentVariables, List<String> detectCommands, OperatingSystemType operatingSystemType, String strategyType) {
+        this.intEnvironmentVariables = intEnvironmentVariables;
+        this.detectCommands = detectCommands;
+        this.operatingSystemType = operatingSystemType;
+        this.strategyType = strategyType;
+    }
+
+    void setTargetCommands(Map<String, List<String>> targetCommands, int parallelism) {
+        this.targetCommands = targetCommands;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * The agent tools directory lease the run holds, for a caller that has to give it up after a controller restart, when this launch is gone.
+     */
+    @Nullable
+    public DetectToolsCacheService.Lease getToolsCacheLease() {
+        DetectToolsCacheService toolsCacheService = detectToolsCacheService;
+        return null == toolsCacheService ? null : toolsCacheService.getLease();
+    }
+
+    void setFingerprint(DetectFingerprintService detectFingerprintService, DetectFingerprint detectFingerprint) {
+        this.detectFingerprintService = detectFingerprintService;
+        this.detectFingerprint = detectFingerprint;
+    }
+
+    /**
+     * Whether Detect should not run at all, because nothing it would scan has changed since the last successful scan. The run still has to be reported as ended,
+     * through {@link #finishSkipped()}.
+     */
+    public boolean isSkipped() {
+        return null != unchangedSince;
+    }
+
+    void skip(String unchangedSince) {
+        this.unchangedSince = unchangedSince;
+        logger.info(DetectRunner.ASTERISKS);
+        logger.info(String.format("SKIPPING DETECT: the dependency manifests and Detect arguments for %s are unchanged since the last successful scan in %s", detectFingerprint.getKey(), unchangedSince));
+        logger.info(DetectRunner.ASTERISKS);
+    }
+
+    void setRunPermit(DetectRunPermit detectRunPermit) {
+        this.detectRunPermit = detectRunPermit;
+        if (ended.get()) {
+            // The run ended while it waited for the slot, so nothing else frees it.
+            detectRunPermit.close();
+        }
+    }
+
+    void setToolsCache(DetectToolsCacheService detectToolsCacheService) {
+        this.detectToolsCacheService = detectToolsCacheService;
+        if (ended.get()) {
+            // The run ended while it waited for its throttle slot, so this stops it from taking a lease as well.
+            detectToolsCacheService.release();
+        }
+    }
+
+    void starting(@Nullable String nodeName) {
+        detectPhaseTimer.endPhase(DetectPhaseTimer.QUEUE);
+        logger.info(DetectRunner.ASTERISKS);
+        logger.info("START OF DETECT");
+        logger.info(DetectRunner.ASTERISKS);
+
+        detectRunTrace.injectTraceContext(intEnvironmentVariables);
+        if (DetectFlightRecorder.isAvailable()) {
+            detectLaunchEvent = new DetectLaunchEvent(strategyType, nodeName);
+            detectLaunchEvent.begin();
+        }
+    }
+
+    /**
+     * Records that the Detect process exited. Only the first report of how the run ended counts.
+     */
+    public int finished(int exitCode) {
+        if (!ended.compareAndSet(false, true)) {
+            return exitCode;
+        }
+        if (null != detectLaunchEvent) {
+            detectLaunchEvent.setExitCode(exitCode);
+            detectLaunchEvent.commit();
+        }
+        detectPhaseTimer.endPhase(DetectPhaseTimer.DETECT);
+
+        logger.info(DetectRunner.ASTERISKS);
+        logger.info("END OF DETECT");
+        logger.info(DetectRunner.ASTERISKS);
+        logger.info("Detect run timings: " + detectPhaseTimer.getBreakdown());
+        reportClassDataSharing();
+
+        DetectMetrics.runFinished(strategyName, detectPhaseTimer.getElapsedMillis(), exitCode);
+        detectRunTrace.finished(exitCode);
+        if (0 == exitCode && null != detectFingerprintService) {
+            detectFingerprintService.recordSuccess(detectFingerprint, null != run ? run.getExternalizableId() : null);
+        }
+        end(true);
+        return exitCode;
+    }
+
+    /**
+     * Records that the run was skipped, which counts as a success.
+     */
+    public int finishSkipped() {
+        if (!ended.compareAndSet(false, true)) {
+            return 0;
+        }
+        logger.info("Detect run timings: " + detectPhaseTimer.getBreakdown());
+
+        DetectMetrics.runSkipped();
+        detectRunTrace.finished(0);
+        if (null != run) {
+            try {
+                DetectScanSkippedAction.record(run, detectFingerprint.getKey(), unchangedSince);
+            } catch (IOException e) {
+                logger.warn("Could not save the skipped Detect scan to the build: " + e.getMessage());
+            }
+        }
+        end(true);
+        return 0;
+    }
+
+    /**
+     * Records that the run failed, during setup or while Detect was running. Only the first report of how the run ended counts.
+     */
+    public void failed(Throwable failure) {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        if (null != detectLaunchEvent) {
+            detectLaunchEvent.commit();
+        }
+
+        DetectMetrics.runFailed(strategyName, detectPhaseTimer.getElapsedMillis(), failure);
+        detectRunTrace.failed(failure);
+        end(false);
+    }
+
+    /**
+     * Combines the exit codes of a multi-target run into the run's exit code, logging each target's result. The run fails with the exit code of the first target that
+     * failed, in the order the targets were given.
+     */
+    public static int aggregateExitCodes(JenkinsIntLogger logger, Map<String, Integer> targetExitCodes) {
+        int exitCode = 0;
+        logger.info("Detect scan target results:");
+        for (Map.Entry<String, Integer> targetExitCode : targetExitCodes.entrySet()) {
+            logger.info(String.format("  %s: exit code %d", targetExitCode.getKey(), targetExitCode.getValue()));
+            if (0 == exitCode) {
+                exitCode = targetExitCode.getValue();
+            }
+        }
+        return exitCode;
+    }
+
+    // Detect's own startup can't be seen from here, so the whole Detect phase is reported by whether it used a class data sharing archive. The difference between the
+    // two is the startup time the archive saves.
+    private void reportClassDataSharing() {
+        Long detectMillis = detectPhaseTimer.getPhaseMillis().get(DetectPhaseTimer.DETECT);
+        if (null == detectMillis) {
+            return;
+        }
+        DetectClassDataSharing.Mode classDataSharing = DetectClassDataSharing.getMode(detectCommands);
+        if (DetectClassDataSharing.Mode.SHARED == classDataSharing) {
+            logger.info(String.format("Detect ran for %d ms, starting with a class data sharing archive", detectMillis));
+        } else if (DetectClassDataSharing.Mode.ARCHIVING == classDataSharing) {
+            logger.info(String.format("Detect ran for %d ms without a class data sharing archive and wrote one for later runs", detectMillis));
+        }
+        DetectMetrics.detectFinished(classDataSharing, detectMillis);
+    }
+
+    private void end(boolean completed) {
+        detectRunPermit.close();
+        DetectToolsCacheService toolsCacheService = detectToolsCacheService;
+        if (null != toolsCacheService) {
+            toolsCacheService.release();
+        }
+        DetectMetrics.runEnded();
+        detectRunTrace.end();
+        recordPhaseTimings(completed);
+    }
+
+    private void recordPhaseTimings(boolean completed) {
+        if (null == run) {
+            return;
+        }
+        try {
+            DetectPhaseTimingsAction.record(run, detectPhaseTimer.getPhaseMillis(), detectPhaseTimer.getElapsedMillis(), completed);
+        } catch (IOException e) {
+            // The timings are diagnostics only, so failing to save them must not fail the build.
+            logger.warn("Could not save the Detect phase timings to the build: " + e.getMessage());
+        }
+    }
+
+}
@@ -9,10 +9,14 @@ package com.blackduck.integration.jenkins.detect;
 
 import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.pipeline.DetectScanTarget;
 import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class DetectPipelineCommands {
     private final JenkinsIntLogger logger;
@@ -25,6 +29,41 @@ public class DetectPipelineCommands {
 
     public int runDetect(boolean returnStatus, String detectArgumentString, DetectDownloadStrategy detectDownloadStrategy) throws IOException, IntegrationException, InterruptedException {
         int exitCode = detectRunner.runDetect(null, detectArgumentString, detectDownloadStrategy);
+        return checkExitCode(returnStatus, exitCode);
+    }
+
+    public DetectLaunch prepareLaunch(String detectArgumentString, DetectDownloadStrategy detectDownloadStrategy) throws IOException, IntegrationException, InterruptedException {
+        return detectRunner.prepareLaunch(null, detectArgumentString, detectDownloadStrategy);
+    }
+
+    public DetectLaunch prepareLaunch(String detectArgumentString, DetectDownloadStrategy detectDownloadStrategy, List<DetectScanTarget> scanTargets, int maxParallelScans)
+        throws IOException, IntegrationException, InterruptedException {
+        return detectRunner.prepareLaunch(null, detectArgumentString, detectDownloadStrategy, scanTargets, maxParallelScans);
+    }
+
+    public CompletableFuture<DetectLaunch> prepareLaunchAsync(
+        String detectArgumentString,
+        DetectDownloadStrategy detectDownloadStrategy,
+        List<DetectScanTarget> scanTargets,
+        int maxParallelScans,
+        Executor executor
+    ) throws IOException, IntegrationException, InterruptedException {
+        return detectRunner.prepareLaunchAsync(null, detectArgumentString, detectDownloadStrategy, scanTargets, maxParallelScans, executor);
+    }
+
+    public int launch(boolean returnStatus, DetectLaunch detectLaunch) throws IOException, IntegrationException, InterruptedException {
+        int exitCode = detectRunner.launch(detectLaunch);
+        return checkExitCode(returnStatus, exitCode);
+    }
+
+    public int checkExitCode(boolean returnStatus, int exitCode) throws DetectJenkinsException {
+        return checkExitCode(logger, returnStatus, exitCode);
+    }
+
+    /**
+     * Applies the returnStatus rules to an exit code reported by a Detect process that may have outlived the commands that launched it.
+     */
+    public static int checkExitCode(JenkinsIntLogger logger, boolean returnStatus, int exitCode) throws DetectJenkinsException {
         if (exitCode > 0) {
             String errorMsg = "Detect failed with exit code " + exitCode;
             if (returnStatus) {
@@ -7,19 +7,51 @@
  */
 package com.blackduck.integration.jenkins.detect;
 
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.pipeline.DetectScanTarget;
 import com.blackduck.integration.jenkins.detect.service.DetectArgumentService;
 import com.blackduck.integration.jenkins.detect.service.DetectEnvironmentService;
+import com.blackduck.integration.jenkins.detect.service.DetectJavaOptionsService;
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+import com.blackduck.integration.jenkins.detect.service.fingerprint.DetectFingerprint;
+import com.blackduck.integration.jenkins.detect.service.fingerprint.DetectFingerprintService;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectArgumentsEvent;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectFlightRecorder;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectSetupEvent;
+import com.blackduck.integration.jenkins.detect.service.metrics.DetectMetrics;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectBootstrapCallable;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectBootstrapResult;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectClassDataSharing;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectExecutionStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectStrategyService;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectRunPermit;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectThrottleService;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
+import com.blackduck.integration.jenkins.detect.service.tracing.DetectRunTrace;
+import com.blackduck.integration.jenkins.detect.service.tracing.DetectTracing;
 import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsRemotingService;
 import com.blackduck.integration.util.IntEnvironmentVariables;
-import com.blackduck.integration.util.OperatingSystemType;
+import hudson.model.Run;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 public class DetectRunner {
     public static final String ASTERISKS = "******************************************************************************";
@@ -28,7 +60,19 @@ public class DetectRunner {
     private final JenkinsRemotingService remotingService;
     private final DetectStrategyService detectStrategyService;
     private final DetectArgumentService detectArgumentService;
+    @Nullable
+    private final DetectThrottleService detectThrottleService;
+    @Nullable
+    private final DetectFingerprintService detectFingerprintService;
+    @Nullable
+    private final DetectJavaOptionsService detectJavaOptionsService;
+    @Nullable
+    private final DetectToolsCacheService detectToolsCacheService;
     private final JenkinsIntLogger logger;
+    @Nullable
+    private final Run<?, ?> run;
+    @Nullable
+    private final String nodeName;
 
     public DetectRunner(
         DetectEnvironmentService detectEnvironmentService,
@@ -36,44 +80,339 @@ public class DetectRunner {
         DetectStrategyService detectStrategyService,
         DetectArgumentService detectArgumentService,
         JenkinsIntLogger logger
+    ) {
+        this(detectEnvironmentService, remotingService, detectStrategyService, detectArgumentService, null, null, null, null, logger, null, null);
+    }
+
+    public DetectRunner(
+        DetectEnvironmentService detectEnvironmentService,
+        JenkinsRemotingService remotingService,
+        DetectStrategyService detectStrategyService,
+        DetectArgumentService detectArgumentService,
+        @Nullable DetectThrottleService detectThrottleService,
+        @Nullable DetectFingerprintService detectFingerprintService,
+        @Nullable DetectJavaOptionsService detectJavaOptionsService,
+        @Nullable DetectToolsCacheService detectToolsCacheService,
+        JenkinsIntLogger logger,
+        @Nullable Run<?, ?> run,
+        @Nullable String nodeName
     ) {
         this.detectEnvironmentService = detectEnvironmentService;
         this.remotingService = remotingService;
         this.detectStrategyService = detectStrategyService;
         this.detectArgumentService = detectArgumentService;
+        this.detectThrottleService = detectThrottleService;
+        this.detectFingerprintService = detectFingerprintService;
+        this.detectJavaOptionsService = detectJavaOptionsService;
+        this.detectToolsCacheService = detectToolsCacheService;
         this.logger = logger;
+        this.run = run;
+        this.nodeName = nodeName;
     }
 
     public int runDetect(String remoteJdkHome, String detectArgumentString, DetectDownloadStrategy detectDownloadStrategy)
         throws IOException, InterruptedException, IntegrationException {
+        DetectLaunch detectLaunch = prepareLaunch(remoteJdkHome, detectArgumentString, detectDownloadStrategy);
+        return launch(detectLaunch);
+    }
+
+    /**
+     * Sets Detect up and waits for a throttle slot, stopping just short of starting the Detect process. The caller either starts the process itself or calls
+     * {@link #launch(DetectLaunch)}.
+     */
+    public DetectLaunch prepareLaunch(String remoteJdkHome, String detectArgumentString, DetectDownloadStrategy detectDownloadStrategy)
+        throws IOException, InterruptedException, IntegrationException {
+        return prepareLaunch(remoteJdkHome, detectArgumentString, detectDownloadStrategy, Collections.emptyList(), 0);
+    }
+
+    /**
+     * Sets up a run that scans each target with its own Detect process. The environment and the agent setup are resolved once and shared by every target, and the run
+     * holds one throttle slot however many targets it scans.
+     */
+    public DetectLaunch prepareLaunch(
+        String remoteJdkHome,
+        String detectArgumentString,
+        DetectDownloadStrategy detectDownloadStrategy,
+        List<DetectScanTarget> scanTargets,
+        int maxParallelScans
+    ) throws IOException, InterruptedException, IntegrationException {
+        DetectLaunch detectLaunch = setUpLaunch(remoteJdkHome, detectArgumentString, detectDownloadStrategy, scanTargets, maxParallelScans);
+        if (detectLaunch.isSkipped()) {
+            return detectLaunch;
+        }
+        try {
+            // Only the launch is throttled, so a waiting run holds no slot while it sets up, and the wait is timed as its own phase. The slot is freed when the run ends.
+            IntEnvironmentVariables intEnvironmentVariables = detectLaunch.getEnvironment();
+            detectLaunch.setRunPermit(acquireRunPermit(intEnvironmentVariables));
+            if (usesToolsCache(intEnvironmentVariables)) {
+                // Set before the lease is taken, so the lease is given up however the run ends.
+                detectLaunch.setToolsCache(detectToolsCacheService);
+                detectToolsCacheService.acquire(intEnvironmentVariables);
+            }
+            detectLaunch.starting(nodeName);
+            return detectLaunch;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            detectLaunch.failed(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sets Detect up like {@link #prepareLaunch(String, String, DetectDownloadStrategy, List, int)}, then queues for a throttle slot and for another run's download of
+     * the Detect tools without waiting on this thread. The returned future completes on the given executor once Detect may start. Cancelling it gives up the run's
+     * place in the queue and ends the run.
+     */
+    public CompletableFuture<DetectLaunch> prepareLaunchAsync(
+        String remoteJdkHome,
+        String detectArgumentString,
+        DetectDownloadStrategy detectDownloadStrategy,
+        List<DetectScanTarget> scanTargets,
+        int maxParallelScans,
+        Executor executor
+    ) throws IOException, InterruptedException, IntegrationException {
+        DetectLaunch detectLaunch = setUpLaunch(remoteJdkHome, detectArgumentString, detectDownloadStrategy, scanTargets, maxParallelScans);
+        if (detectLaunch.isSkipped()) {
+            return CompletableFuture.completedFuture(detectLaunch);
+        }
+
+        IntEnvironmentVariables intEnvironmentVariables = detectLaunch.getEnvironment();
+        CompletableFuture<DetectRunPermit> runPermit = acquireRunPermitAsync(intEnvironmentVariables);
+        // The slot is handed over on the thread of the run that freed it, so the rest is moved onto the executor.
+        CompletableFuture<DetectLaunch> queuedLaunch = runPermit.thenComposeAsync(detectRunPermit -> {
+            detectLaunch.setRunPermit(detectRunPermit);
+            if (!usesToolsCache(intEnvironmentVariables)) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            detectLaunch.setToolsCache(detectToolsCacheService);
+            return detectToolsCacheService.acquireAsync(intEnvironmentVariables, executor);
+        }, executor).thenApply(ignored -> {
+            detectLaunch.starting(nodeName);
+            return detectLaunch;
+        });
+        queuedLaunch.whenComplete((ignored, failure) -> {
+            if (null != failure) {
+                runPermit.cancel(false);
+                detectLaunch.failed(failure instanceof CompletionException && null != failure.getCause() ? failure.getCause() : failure);
+            }
+        });
+        return queuedLaunch;
+    }
+
+    /**
+     * Runs the prepared Detect process, or the process of each scan target, on the agent and waits for them to exit.
+     */
+    public int launch(DetectLaunch detectLaunch) throws IOException, InterruptedException, IntegrationException {
+        if (detectLaunch.isSkipped()) {
+            return detectLaunch.finishSkipped();
+        }
+
+        int detectRun;
+        try {
+            if (detectLaunch.getTargetCommands().isEmpty()) {
+                detectRun = remotingService.launch(detectLaunch.getEnvironment(), detectLaunch.getDetectCommands());
+            } else {
+                detectRun = launchTargets(detectLaunch);
+            }
+        } catch (Exception e) {
+            detectLaunch.failed(e);
+            throw e;
+        }
+        return detectLaunch.finished(detectRun);
+    }
+
+    private int launchTargets(DetectLaunch detectLaunch) throws IOException, InterruptedException, IntegrationException {
+        ExecutorService targetExecutor = Executors.newFixedThreadPool(detectLaunch.getParallelism());
+        try {
+            Map<String, Future<Integer>> targetRuns = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> targetCommand : detectLaunch.getTargetCommands().entrySet()) {
+                targetRuns.put(targetCommand.getKey(), targetExecutor.submit(() -> remotingService.launch(detectLaunch.getEnvironment(), targetCommand.getValue())));
+            }
+
+            Map<String, Integer> targetExitCodes = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<Integer>> targetRun : targetRuns.entrySet()) {
+                targetExitCodes.put(targetRun.getKey(), targetRun.getValue().get());
+            }
+            return DetectLaunch.aggregateExitCodes(logger, targetExitCodes);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof IntegrationException) {
+                throw (IntegrationException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new IOException("Detect could not scan a target: " + cause.getMessage(), cause);
+        } finally {
+            targetExecutor.shutdownNow();
+        }
+    }
+
+    // Everything up to the wait for a throttle slot, which the callers handle their own way.
+    private DetectLaunch setUpLaunch(
+        String remoteJdkHome,
+        String detectArgumentString,
+        DetectDownloadStrategy detectDownloadStrategy,
+        List<DetectScanTarget> scanTargets,
+        int maxParallelScans
+    ) throws IOException, InterruptedException, IntegrationException {
+        DetectPhaseTimer detectPhaseTimer = new DetectPhaseTimer();
+        String strategyName = DetectMetrics.getStrategyName(detectDownloadStrategy);
+        DetectRunTrace detectRunTrace = DetectTracing.startRun(detectPhaseTimer, strategyName, null != run ? run.getExternalizableId() : null);
+        DetectLaunch detectLaunch = new DetectLaunch(logger, run, detectPhaseTimer, detectRunTrace, strategyName);
+        DetectMetrics.runStarted();
+        try {
+            setUpLaunch(detectLaunch, remoteJdkHome, detectArgumentString, detectDownloadStrategy, scanTargets, maxParallelScans, detectPhaseTimer, detectRunTrace);
+            return detectLaunch;
+        } catch (IOException | InterruptedException | IntegrationException | RuntimeException e) {
+            detectLaunch.failed(e);
+            throw e;
+        }
+    }
+
+    private void setUpLaunch(
+        DetectLaunch detectLaunch,
+        String remoteJdkHome,
+        String detectArgumentString,
+        DetectDownloadStrategy detectDownloadStrategy,
+        List<DetectScanTarget> scanTargets,
+        int maxParallelScans,
+        DetectPhaseTimer detectPhaseTimer,
+        DetectRunTrace detectRunTrace
+    ) throws IOException, InterruptedException, IntegrationException {
         IntEnvironmentVariables intEnvironmentVariables = detectEnvironmentService.createDetectEnvironment();
-        OperatingSystemType operatingSystemType = remotingService.getRemoteOperatingSystemType();
+        detectPhaseTimer.endPhase(DetectPhaseTimer.ENVIRONMENT);
+
         DetectExecutionStrategy detectExecutionStrategy = detectStrategyService.getExecutionStrategy(
             intEnvironmentVariables,
-            operatingSystemType,
             remoteJdkHome,
             detectDownloadStrategy
         );
+        DetectBootstrapCallable detectBootstrapCallable = new DetectBootstrapCallable(detectExecutionStrategy.getSetupCallable());
+        String strategyType = detectExecutionStrategy.getClass().getSimpleName();
+        detectPhaseTimer.endPhase(DetectPhaseTimer.STRATEGY);
 
-        List<String> initialArguments = remotingService.call(detectExecutionStrategy.getSetupCallable());
+        // The agent's operating system and the Detect command are resolved together so that only one round trip is made before launching.
+        DetectSetupEvent detectSetupEvent = null;
+        if (DetectFlightRecorder.isAvailable()) {
+            detectSetupEvent = new DetectSetupEvent(strategyType, nodeName);
+            detectSetupEvent.begin();
+        }
+        DetectBootstrapResult detectBootstrapResult;
+        try {
+            detectBootstrapResult = remotingService.call(detectBootstrapCallable);
+            if (null != detectSetupEvent) {
+                DetectScriptDownloads scriptDownloads = detectBootstrapResult.getScriptDownloads();
+                detectSetupEvent.setAgentSetupMillis(detectBootstrapResult.getAgentSetupMillis());
+                detectSetupEvent.setScriptDownloads(scriptDownloads.getDownloadCount());
+                detectSetupEvent.setBytesTransferred(scriptDownloads.getDownloadedBytes());
+            }
+        } finally {
+            if (null != detectSetupEvent) {
+                detectSetupEvent.commit();
+            }
+        }
+        detectPhaseTimer.endPhase(DetectPhaseTimer.AGENT_BOOTSTRAP);
+        detectPhaseTimer.recordPhase(DetectPhaseTimer.AGENT_SETUP, detectBootstrapResult.getAgentSetupMillis());
+        DetectMetrics.setupCompleted(detectBootstrapResult.getAgentSetupMillis(), detectBootstrapResult.getScriptDownloads());
+        detectRunTrace.recordAgentSetup(detectBootstrapResult.getAgentSetupMillis(), detectBootstrapResult.getScriptDownloads());
 
-        List<String> detectCommands = detectArgumentService.getDetectArguments(
-            intEnvironmentVariables,
-            detectExecutionStrategy.getArgumentEscaper(),
-            initialArguments,
-            detectArgumentString
-        );
+        // Every target of a multi-target run that can run at once needs its own share of the agent, so the JVM options are sized after the parallelism is known.
+        int parallelism = scanTargets.isEmpty() ? 1 : getScanParallelism(detectBootstrapResult.getAvailableProcessors(), maxParallelScans, scanTargets.size());
+        List<String> initialCommand = detectBootstrapResult.getDetectCommand();
+        if (null != detectJavaOptionsService) {
+            initialCommand = detectJavaOptionsService.applyJavaOptions(
+                intEnvironmentVariables,
+                initialCommand,
+                detectBootstrapResult.getTotalMemoryBytes(),
+                detectBootstrapResult.getAvailableProcessors(),
+                parallelism
+            );
+        }
+
+        DetectArgumentsEvent detectArgumentsEvent = null;
+        if (DetectFlightRecorder.isAvailable()) {
+            detectArgumentsEvent = new DetectArgumentsEvent();
+            detectArgumentsEvent.begin();
+        }
+        Function<String, String> argumentEscaper = detectExecutionStrategy.getArgumentEscaper(detectBootstrapResult.getOperatingSystemType());
+        List<String> detectCommands;
+        Map<String, List<String>> targetCommands = new LinkedHashMap<>();
+        try {
+            detectCommands = detectArgumentService.getDetectArguments(intEnvironmentVariables, argumentEscaper, initialCommand, detectArgumentString);
+            int argumentCount = detectCommands.size();
+            for (DetectScanTarget scanTarget : scanTargets) {
+                List<String> targetCommand = detectArgumentService.getDetectArguments(
+                    intEnvironmentVariables,
+                    argumentEscaper,
+                    initialCommand,
+                    detectArgumentString,
+                    scanTarget.getSourcePath(),
+                    scanTarget.getDetectProperties()
+                );
+                if (!targetCommands.isEmpty()) {
+                    // Targets may run at once, so only the first one writes the class data sharing archive.
+                    targetCommand = DetectClassDataSharing.withoutArchiving(targetCommand);
+                }
+                if (null != targetCommands.put(scanTarget.getSourcePath(), targetCommand)) {
+                    throw new DetectJenkinsException(String.format("The scan target %s is listed more than once", scanTarget.getSourcePath()));
+                }
+                argumentCount += targetCommand.size();
+            }
+            if (null != detectArgumentsEvent) {
+                detectArgumentsEvent.setArgumentCount(argumentCount);
+            }
+        } finally {
+            if (null != detectArgumentsEvent) {
+                detectArgumentsEvent.commit();
+            }
+        }
+        detectPhaseTimer.endPhase(DetectPhaseTimer.ARGUMENTS);
+        logger.info("Detect setup timings: " + detectPhaseTimer.getBreakdown());
+        detectLaunch.setCommand(intEnvironmentVariables, detectCommands, detectBootstrapResult.getOperatingSystemType(), strategyType);
+        if (!targetCommands.isEmpty()) {
+            logger.info(String.format("Scanning %d targets, %d at a time", targetCommands.size(), parallelism));
+            detectLaunch.setTargetCommands(targetCommands, parallelism);
+        }
+
+        if (null != detectFingerprintService) {
+            Collection<List<String>> fingerprintedCommands = targetCommands.isEmpty() ? Collections.singletonList(detectCommands) : targetCommands.values();
+            DetectFingerprint detectFingerprint = detectFingerprintService.fingerprint(intEnvironmentVariables, fingerprintedCommands);
+            detectPhaseTimer.endPhase(DetectPhaseTimer.FINGERPRINT);
+            if (null != detectFingerprint) {
+                detectLaunch.setFingerprint(detectFingerprintService, detectFingerprint);
+                String unchangedSince = detectFingerprintService.findUnchangedSince(detectFingerprint);
+                if (null != unchangedSince) {
+                    // A skipped run never launches, so it doesn't wait for a throttle slot either.
+                    detectLaunch.skip(unchangedSince);
+                }
+            }
+        }
+    }
 
-        logger.info(ASTERISKS);
-        logger.info("START OF DETECT");
-        logger.info(ASTERISKS);
+    /**
+     * Each Detect process runs its own JVM alongside the package manager builds it inspects, so by default only half the agent's processors run a target at once.
+     */
+    static int getScanParallelism(int availableProcessors, int maxParallelScans, int targetCount) {
+        int parallelism = maxParallelScans > 0 ? maxParallelScans : Math.max(1, availableProcessors / 2);
+        return Math.min(parallelism, targetCount);
+    }
 
-        int detectRun = remotingService.launch(intEnvironmentVariables, detectCommands);
+    private DetectRunPermit acquireRunPermit(IntEnvironmentVariables intEnvironmentVariables) throws InterruptedException {
+        if (null == detectThrottleService) {
+            return DetectRunPermit.NONE;
+        }
+        return detectThrottleService.acquire(intEnvironmentVariables);
+    }
 
-        logger.info(ASTERISKS);
-        logger.info("END OF DETECT");
-        logger.info(ASTERISKS);
+    private CompletableFuture<DetectRunPermit> acquireRunPermitAsync(IntEnvironmentVariables intEnvironmentVariables) {
+        if (null == detectThrottleService) {
+            return CompletableFuture.completedFuture(DetectRunPermit.NONE);
+        }
+        return detectThrottleService.acquireAsync(intEnvironmentVariables);
+    }
 
-        return detectRun;
+    private boolean usesToolsCache(IntEnvironmentVariables intEnvironmentVariables) {
+        return null != detectToolsCacheService && detectToolsCacheService.isUsedBy(intEnvironmentVariables);
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions;
+
+import com.blackduck.integration.jenkins.annotations.HelpMarkdown;
+import hudson.Extension;
+import hudson.Util;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class ManagedJarDownloadStrategy extends DetectDownloadStrategy {
+    private static final long serialVersionUID = -2392826140963727148L;
+    public static final String DISPLAY_NAME = "Download the Detect jar once per agent and run it directly";
+
+    @Nullable
+    @HelpMarkdown("The Detect version to download, for example 11.0.0. Leave empty to use the latest 11.x release.")
+    private String detectVersion;
+
+    @DataBoundConstructor
+    public ManagedJarDownloadStrategy() {
+        // Left empty intentionally.
+    }
+
+    @Override
+    public DescriptorImpl getDescriptor() {
+        return (DescriptorImpl) super.getDescriptor();
+    }
+
+    public String getDetectVersion() {
+        return detectVersion;
+    }
+
+    @DataBoundSetter
+    public void setDetectVersion(String detectVersion) {
+        this.detectVersion = Util.fixEmptyAndTrim(detectVersion);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return DISPLAY_NAME;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends DownloadStrategyDescriptor {
+        public DescriptorImpl() {
+            super(ManagedJarDownloadStrategy.class);
+            load();
+        }
+
+        @Override
+        @Nonnull
+        public String getDisplayName() {
+            return DISPLAY_NAME;
+        }
+    }
+}
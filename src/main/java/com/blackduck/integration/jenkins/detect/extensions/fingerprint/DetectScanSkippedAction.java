@@ -0,0 +1,100 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.fingerprint;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the Detect runs of a build that were skipped because their dependency manifests and arguments matched an earlier successful scan. It is saved with the build,
+ * shown on the build page and exported through the JSON API.
+ */
+@ExportedBean
+public class DetectScanSkippedAction implements RunAction2 {
+    private final List<SkippedScan> skippedScans = new ArrayList<>();
+
+    private transient Run<?, ?> run;
+
+    public static void record(Run<?, ?> run, String project, String unchangedSince) throws IOException {
+        // A pipeline can run Detect in parallel branches of the same build, so finding or adding the action and appending to it must not interleave.
+        synchronized (DetectScanSkippedAction.class) {
+            DetectScanSkippedAction detectScanSkippedAction = run.getAction(DetectScanSkippedAction.class);
+            if (null == detectScanSkippedAction) {
+                detectScanSkippedAction = new DetectScanSkippedAction();
+                run.addAction(detectScanSkippedAction);
+            }
+            detectScanSkippedAction.skippedScans.add(new SkippedScan(project, unchangedSince));
+        }
+        run.save();
+    }
+
+    @Exported
+    public List<SkippedScan> getSkippedScans() {
+        synchronized (DetectScanSkippedAction.class) {
+            return Collections.unmodifiableList(new ArrayList<>(skippedScans));
+        }
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Black Duck Detect skipped scans";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class SkippedScan {
+        private final String project;
+        private final String unchangedSince;
+
+        public SkippedScan(String project, String unchangedSince) {
+            this.project = project;
+            this.unchangedSince = unchangedSince;
+        }
+
+        @Exported
+        public String getProject() {
+            return project;
+        }
+
+        @Exported
+        public String getUnchangedSince() {
+            return unchangedSince;
+        }
+    }
+
+}
@@ -9,7 +9,9 @@ package com.blackduck.integration.jenkins.detect.extensions.global;
 
 import com.blackduck.integration.jenkins.detect.extensions.AirGapDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.ManagedJarDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.ScriptOrJarDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectThrottleLimits;
 import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
@@ -24,6 +26,7 @@ import com.blackduck.integration.log.LogLevel;
 import com.blackduck.integration.log.PrintStreamIntLogger;
 import com.blackduck.integration.rest.proxy.ProxyInfo;
 import com.blackduck.integration.rest.response.Response;
+import hudson.BulkChange;
 import hudson.Extension;
 import hudson.Functions;
 import hudson.Util;
@@ -36,6 +39,7 @@ import hudson.util.Messages;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
 import jenkins.util.xml.XMLUtils;
+import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.impl.EnglishReasonPhraseCatalog;
 import org.kohsuke.stapler.*;
@@ -59,6 +63,7 @@ import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Extension
 public class DetectGlobalConfig extends GlobalConfiguration implements Serializable {
@@ -78,14 +83,98 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
 
     private int blackDuckTimeout = 120;
 
+    @HelpMarkdown("If selected, agents download the Detect scripts and jars through this Jenkins controller, which fetches each artifact once and serves it from its own disk.  \r\n" +
+        "Agents must be able to reach the Jenkins URL configured for this controller.")
+    private boolean useControllerMirror;
+
+    @HelpMarkdown("The most Detect runs allowed at once on this controller. Further runs wait their turn before launching Detect. Use 0 for no limit.")
+    private int maxConcurrentRuns = DetectThrottleLimits.UNLIMITED;
+
+    @HelpMarkdown("The most Detect runs allowed at once on any one node. Use 0 for no limit.")
+    private int maxConcurrentRunsPerNode = DetectThrottleLimits.UNLIMITED;
+
+    @HelpMarkdown("The most Detect runs allowed at once against any one Black Duck server, including servers a job sets through its environment. Use 0 for no limit.")
+    private int maxConcurrentRunsPerServer = DetectThrottleLimits.UNLIMITED;
+
+    // Read from configurations saved before tracing moved to the Jenkins OpenTelemetry plugin, which now configures where spans are exported to.
+    @Deprecated
+    private transient String otlpEndpoint;
+
     @Nullable
     private DetectDownloadStrategy downloadStrategy;
 
+    private transient volatile DetectGlobalConfigSnapshot snapshot;
+
+    // Counts the writes that actually reach disk, so batched updates can be confirmed to end in a single write.
+    private static final AtomicLong WRITES = new AtomicLong();
+
     @DataBoundConstructor
     public DetectGlobalConfig() {
         load();
     }
 
+    public static long getWriteCount() {
+        return WRITES.get();
+    }
+
+    @Override
+    public synchronized void load() {
+        super.load();
+        publishSnapshot();
+    }
+
+    @Override
+    public synchronized void save() {
+        // Each setter saves on its own, so inside a BulkChange the write is left to the commit.
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        super.save();
+        WRITES.incrementAndGet();
+        publishSnapshot();
+    }
+
+    /**
+     * The configuration as of the last load or save. Builds should read this once and use it throughout instead of reading the fields of this shared instance.
+     */
+    public DetectGlobalConfigSnapshot getSnapshot() {
+        DetectGlobalConfigSnapshot currentSnapshot = snapshot;
+        if (null == currentSnapshot) {
+            synchronized (this) {
+                if (null == snapshot) {
+                    publishSnapshot();
+                }
+                currentSnapshot = snapshot;
+            }
+        }
+        return currentSnapshot;
+    }
+
+    private synchronized void publishSnapshot() {
+        long version = (null != snapshot) ? snapshot.getVersion() + 1 : 1;
+        snapshot = new DetectGlobalConfigSnapshot(
+            version,
+            blackDuckUrl,
+            blackDuckCredentialsId,
+            blackDuckTimeout,
+            trustBlackDuckCertificates,
+            useControllerMirror,
+            downloadStrategy,
+            new DetectThrottleLimits(maxConcurrentRuns, maxConcurrentRunsPerNode, maxConcurrentRunsPerServer)
+        );
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        try (BulkChange bulkChange = new BulkChange(this)) {
+            req.bindJSON(this, json);
+            bulkChange.commit();
+        } catch (IOException e) {
+            throw new FormException("Failed to save the Detect configuration: " + e.getMessage(), e, "blackDuckUrl");
+        }
+        return true;
+    }
+
     public String getBlackDuckUrl() {
         return blackDuckUrl;
     }
@@ -126,6 +215,50 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
         save();
     }
 
+    public boolean getUseControllerMirror() {
+        return useControllerMirror;
+    }
+
+    @DataBoundSetter
+    public void setUseControllerMirror(boolean useControllerMirror) {
+        this.useControllerMirror = useControllerMirror;
+        save();
+    }
+
+    public int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRuns(int maxConcurrentRuns) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        save();
+    }
+
+    public int getMaxConcurrentRunsPerNode() {
+        return maxConcurrentRunsPerNode;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRunsPerNode(int maxConcurrentRunsPerNode) {
+        this.maxConcurrentRunsPerNode = maxConcurrentRunsPerNode;
+        save();
+    }
+
+    public int getMaxConcurrentRunsPerServer() {
+        return maxConcurrentRunsPerServer;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRunsPerServer(int maxConcurrentRunsPerServer) {
+        this.maxConcurrentRunsPerServer = maxConcurrentRunsPerServer;
+        save();
+    }
+
+    public Optional<String> getMirrorUrl() {
+        return getSnapshot().getMirrorUrl();
+    }
+
     public DetectDownloadStrategy getDownloadStrategy() {
         return downloadStrategy;
     }
@@ -133,6 +266,7 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
     @DataBoundSetter
     public void setDownloadStrategy(DetectDownloadStrategy downloadStrategy) {
         this.downloadStrategy = downloadStrategy;
+        save();
     }
 
     public DetectDownloadStrategy getDefaultDownloadStrategy() {
@@ -141,7 +275,11 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
 
     public Collection<Descriptor<DetectDownloadStrategy>> getAllowedDownloadStrategyDescriptors() {
         Jenkins jenkins = Jenkins.get();
-        return Arrays.asList(jenkins.getDescriptor(AirGapDownloadStrategy.class), jenkins.getDescriptor(ScriptOrJarDownloadStrategy.class));
+        return Arrays.asList(
+            jenkins.getDescriptor(AirGapDownloadStrategy.class),
+            jenkins.getDescriptor(ScriptOrJarDownloadStrategy.class),
+            jenkins.getDescriptor(ManagedJarDownloadStrategy.class)
+        );
     }
 
     public BlackDuckServerConfig getBlackDuckServerConfig(JenkinsProxyHelper jenkinsProxyHelper, BlackduckCredentialsHelper blackduckCredentialsHelper) {
@@ -149,14 +287,7 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
     }
 
     public BlackDuckServerConfigBuilder getBlackDuckServerConfigBuilder(JenkinsProxyHelper jenkinsProxyHelper, BlackduckCredentialsHelper blackduckCredentialsHelper) {
-        return createBlackDuckServerConfigBuilder(
-            jenkinsProxyHelper,
-            blackduckCredentialsHelper,
-            blackDuckUrl,
-            blackDuckCredentialsId,
-            blackDuckTimeout,
-            trustBlackDuckCertificates
-        );
+        return getSnapshot().getBlackDuckServerConfigBuilder(jenkinsProxyHelper, blackduckCredentialsHelper);
     }
 
     public ListBoxModel doFillBlackDuckCredentialsIdItems() {
@@ -262,7 +393,7 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
         }
     }
 
-    private void updateByXml(Source source) throws IOException, ParserConfigurationException {
+    void updateByXml(Source source) throws IOException, ParserConfigurationException {
         Document doc;
         try (StringWriter out = new StringWriter()) {
             // this allows us to use UTF-8 for storing data,
@@ -283,12 +414,22 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
         String credentialsId = getNodeValue(doc, "blackDuckCredentialsId").orElse(StringUtils.EMPTY);
         int timeout = getNodeIntegerValue(doc, "blackDuckTimeout").orElse(120);
         boolean trustCerts = getNodeBooleanValue(doc, "trustBlackDuckCertificates").orElse(false);
-
-        setBlackDuckUrl(url);
-        setBlackDuckCredentialsId(credentialsId);
-        setBlackDuckTimeout(timeout);
-        setTrustBlackDuckCertificates(trustCerts);
-        save();
+        boolean useMirror = getNodeBooleanValue(doc, "useControllerMirror").orElse(false);
+        int maxRuns = getNodeIntegerValue(doc, "maxConcurrentRuns").orElse(DetectThrottleLimits.UNLIMITED);
+        int maxRunsPerNode = getNodeIntegerValue(doc, "maxConcurrentRunsPerNode").orElse(DetectThrottleLimits.UNLIMITED);
+        int maxRunsPerServer = getNodeIntegerValue(doc, "maxConcurrentRunsPerServer").orElse(DetectThrottleLimits.UNLIMITED);
+
+        try (BulkChange bulkChange = new BulkChange(this)) {
+            setBlackDuckUrl(url);
+            setBlackDuckCredentialsId(credentialsId);
+            setBlackDuckTimeout(timeout);
+            setTrustBlackDuckCertificates(trustCerts);
+            setUseControllerMirror(useMirror);
+            setMaxConcurrentRuns(maxRuns);
+            setMaxConcurrentRunsPerNode(maxRunsPerNode);
+            setMaxConcurrentRunsPerServer(maxRunsPerServer);
+            bulkChange.commit();
+        }
     }
 
     private Optional<String> getNodeValue(Document doc, String tagName) {
@@ -317,6 +458,10 @@ public class DetectGlobalConfig extends GlobalConfiguration implements Serializa
         ProxyInfo proxyInfo = jenkinsProxyHelper.getProxyInfo(blackDuckUrl);
         String apiToken = blackduckCredentialsHelper.getApiTokenByCredentialsId(credentialsId).orElse(null);
 
+        return createBlackDuckServerConfigBuilder(proxyInfo, apiToken, blackDuckUrl, timeout, alwaysTrust);
+    }
+
+    static BlackDuckServerConfigBuilder createBlackDuckServerConfigBuilder(ProxyInfo proxyInfo, String apiToken, String blackDuckUrl, int timeout, boolean alwaysTrust) {
         return BlackDuckServerConfig.newApiTokenBuilder()
             .setUrl(blackDuckUrl)
             .setTimeoutInSeconds(timeout)
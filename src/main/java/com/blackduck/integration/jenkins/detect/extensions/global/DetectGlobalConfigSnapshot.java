@@ -0,0 +1,166 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.global;
+
+import com.blackduck.integration.blackduck.configuration.BlackDuckServerConfigBuilder;
+import com.blackduck.integration.builder.BuilderPropertyKey;
+import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.service.DetectResolutionCache;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorService;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorToken;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectThrottleLimits;
+import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import jenkins.model.Jenkins;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable view of {@link DetectGlobalConfig} as of one save. Builds read a snapshot once and use it throughout, so an admin saving the configuration at the same time can't
+ * hand them a mix of old and new values.
+ */
+public class DetectGlobalConfigSnapshot {
+    private final long version;
+    private final String blackDuckUrl;
+    private final String blackDuckCredentialsId;
+    private final int blackDuckTimeout;
+    private final boolean trustBlackDuckCertificates;
+    private final boolean useControllerMirror;
+    @Nullable
+    private final DetectDownloadStrategy downloadStrategy;
+    private final DetectThrottleLimits throttleLimits;
+
+    // The proxy and API token live in other Jenkins configuration and can change without this config being saved, so the properties are reused only while those are unchanged.
+    private volatile BlackDuckProperties blackDuckProperties;
+
+    public DetectGlobalConfigSnapshot(
+        long version,
+        String blackDuckUrl,
+        String blackDuckCredentialsId,
+        int blackDuckTimeout,
+        boolean trustBlackDuckCertificates,
+        boolean useControllerMirror,
+        @Nullable DetectDownloadStrategy downloadStrategy
+    ) {
+        this(version, blackDuckUrl, blackDuckCredentialsId, blackDuckTimeout, trustBlackDuckCertificates, useControllerMirror, downloadStrategy, DetectThrottleLimits.NONE);
+    }
+
+    public DetectGlobalConfigSnapshot(
+        long version,
+        String blackDuckUrl,
+        String blackDuckCredentialsId,
+        int blackDuckTimeout,
+        boolean trustBlackDuckCertificates,
+        boolean useControllerMirror,
+        @Nullable DetectDownloadStrategy downloadStrategy,
+        DetectThrottleLimits throttleLimits
+    ) {
+        this.version = version;
+        this.blackDuckUrl = blackDuckUrl;
+        this.blackDuckCredentialsId = blackDuckCredentialsId;
+        this.blackDuckTimeout = blackDuckTimeout;
+        this.trustBlackDuckCertificates = trustBlackDuckCertificates;
+        this.useControllerMirror = useControllerMirror;
+        this.downloadStrategy = downloadStrategy;
+        this.throttleLimits = throttleLimits;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getBlackDuckUrl() {
+        return blackDuckUrl;
+    }
+
+    public String getBlackDuckCredentialsId() {
+        return blackDuckCredentialsId;
+    }
+
+    public int getBlackDuckTimeout() {
+        return blackDuckTimeout;
+    }
+
+    public boolean getTrustBlackDuckCertificates() {
+        return trustBlackDuckCertificates;
+    }
+
+    public boolean getUseControllerMirror() {
+        return useControllerMirror;
+    }
+
+    @Nullable
+    public DetectDownloadStrategy getDownloadStrategy() {
+        return downloadStrategy;
+    }
+
+    public DetectThrottleLimits getThrottleLimits() {
+        return throttleLimits;
+    }
+
+    public Optional<String> getMirrorUrl() {
+        if (!useControllerMirror) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(Jenkins.getInstanceOrNull())
+            .map(Jenkins::getRootUrl)
+            .map(rootUrl -> rootUrl + DetectMirrorService.URL_NAME + "/" + DetectMirrorToken.getControllerToken().create(System.currentTimeMillis()) + "/");
+    }
+
+    public BlackDuckServerConfigBuilder getBlackDuckServerConfigBuilder(JenkinsProxyHelper jenkinsProxyHelper, BlackduckCredentialsHelper blackduckCredentialsHelper) {
+        ProxyInfo proxyInfo = DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, blackDuckUrl);
+        String apiToken = DetectResolutionCache.getApiToken(blackduckCredentialsHelper, blackDuckCredentialsId).orElse(null);
+        return DetectGlobalConfig.createBlackDuckServerConfigBuilder(proxyInfo, apiToken, blackDuckUrl, blackDuckTimeout, trustBlackDuckCertificates);
+    }
+
+    public Map<BuilderPropertyKey, String> getBlackDuckProperties(JenkinsProxyHelper jenkinsProxyHelper, BlackduckCredentialsHelper blackduckCredentialsHelper) {
+        ProxyInfo proxyInfo = DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, blackDuckUrl);
+        String apiToken = DetectResolutionCache.getApiToken(blackduckCredentialsHelper, blackDuckCredentialsId).orElse(null);
+        List<Object> inputs = Arrays.asList(
+            proxyInfo.getHost().orElse(null),
+            proxyInfo.getPort(),
+            proxyInfo.getUsername().orElse(null),
+            proxyInfo.getPassword().orElse(null),
+            proxyInfo.getNtlmDomain().orElse(null),
+            proxyInfo.getNtlmWorkstation().orElse(null),
+            apiToken
+        );
+
+        BlackDuckProperties current = blackDuckProperties;
+        if (null == current || !current.inputs.equals(inputs)) {
+            BlackDuckServerConfigBuilder blackDuckServerConfigBuilder = DetectGlobalConfig.createBlackDuckServerConfigBuilder(
+                proxyInfo,
+                apiToken,
+                blackDuckUrl,
+                blackDuckTimeout,
+                trustBlackDuckCertificates
+            );
+            current = new BlackDuckProperties(inputs, Collections.unmodifiableMap(new HashMap<>(blackDuckServerConfigBuilder.getProperties())));
+            blackDuckProperties = current;
+        }
+
+        return current.properties;
+    }
+
+    private static final class BlackDuckProperties {
+        private final List<Object> inputs;
+        private final Map<BuilderPropertyKey, String> properties;
+
+        private BlackDuckProperties(List<Object> inputs, Map<BuilderPropertyKey, String> properties) {
+            this.inputs = inputs;
+            this.properties = properties;
+        }
+    }
+}
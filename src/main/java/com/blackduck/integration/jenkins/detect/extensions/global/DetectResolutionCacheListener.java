@@ -0,0 +1,29 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.global;
+
+import com.blackduck.integration.jenkins.detect.service.DetectResolutionCache;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+@Extension
+public class DetectResolutionCacheListener extends SaveableListener {
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof ProxyConfiguration) {
+            DetectResolutionCache.invalidateProxyInfos();
+        } else if (o instanceof SystemCredentialsProvider) {
+            DetectResolutionCache.invalidateApiTokens();
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.mirror;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorService;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorToken;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectJarCache;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptCache;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptStrategy;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.wrapper.JenkinsWrapper;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.google.gson.Gson;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.UnprotectedRootAction;
+import hudson.util.LogTaskListener;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the Detect scripts and jars to agents from the controller, so each artifact is fetched from upstream once per controller rather than once per agent. Agents do
+ * not necessarily have credentials for the controller, so a build's mirror URL starts with a {@link DetectMirrorToken} that grants access; without one, the caller needs
+ * the permission to connect agents. The mirror is disabled unless it is turned on in the global configuration.
+ */
+@Extension
+public class DetectMirrorAction implements UnprotectedRootAction {
+    private static final Logger LOGGER = Logger.getLogger(DetectMirrorAction.class.getName());
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Black Duck Detect mirror";
+    }
+
+    @Override
+    public String getUrlName() {
+        return DetectMirrorService.URL_NAME;
+    }
+
+    public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        DetectGlobalConfig detectGlobalConfig = GlobalConfiguration.all().get(DetectGlobalConfig.class);
+        if (null == detectGlobalConfig || !detectGlobalConfig.getUseControllerMirror()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        boolean headRequest = "HEAD".equals(req.getMethod());
+        if (!headRequest && !"GET".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        String path = StringUtils.removeStart(req.getRestOfPath(), "/");
+        String token = StringUtils.substringBefore(path, "/");
+        String tokenPrefix = StringUtils.EMPTY;
+        if (DetectMirrorToken.getControllerToken().isValid(token, System.currentTimeMillis())) {
+            tokenPrefix = token + "/";
+            path = StringUtils.removeStart(path, tokenPrefix);
+        } else {
+            Jenkins.get().checkPermission(Computer.CONNECT);
+        }
+        DetectMirrorService detectMirrorService = createDetectMirrorService();
+
+        try {
+            if (DetectMirrorService.LATEST_JAR_PATH.equals(path)) {
+                String latestJarPath = DetectMirrorService.getJarPath(detectMirrorService.resolveLatestVersion());
+                rsp.sendRedirect2(String.format("%s/%s/%s%s", req.getContextPath(), DetectMirrorService.URL_NAME, tokenPrefix, latestJarPath));
+                return;
+            }
+
+            if (DetectMirrorService.LATEST_VERSION_PATH.equals(path)) {
+                String mirrorUrl = detectGlobalConfig.getMirrorUrl().orElse(StringUtils.EMPTY);
+                byte[] latestVersionJson = detectMirrorService.getLatestVersionJson(mirrorUrl).getBytes(StandardCharsets.UTF_8);
+                rsp.setContentType("application/json");
+                rsp.setContentLength(latestVersionJson.length);
+                if (!headRequest) {
+                    rsp.getOutputStream().write(latestVersionJson);
+                }
+                return;
+            }
+
+            Optional<DetectMirrorService.MirroredArtifact> mirroredArtifact = detectMirrorService.getArtifact(path);
+            if (!mirroredArtifact.isPresent()) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            serveArtifact(req, rsp, mirroredArtifact.get(), headRequest);
+        } catch (IntegrationException | IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not serve %s from the Detect mirror", path), e);
+            if (!rsp.isCommitted()) {
+                rsp.sendError(HttpServletResponse.SC_BAD_GATEWAY, e.getMessage());
+            }
+        }
+    }
+
+    private void serveArtifact(StaplerRequest req, StaplerResponse rsp, DetectMirrorService.MirroredArtifact mirroredArtifact, boolean headRequest) throws IOException {
+        Path artifactPath = mirroredArtifact.getPath();
+        long length = Files.size(artifactPath);
+
+        rsp.setContentType(mirroredArtifact.getContentType());
+        rsp.setHeader("Accept-Ranges", "bytes");
+        rsp.setHeader("X-Checksum-Sha256", mirroredArtifact.getSha256());
+        rsp.setDateHeader("Last-Modified", Files.getLastModifiedTime(artifactPath).toMillis());
+
+        Optional<DetectMirrorService.ByteRange> byteRange = DetectMirrorService.parseRange(req.getHeader("Range"), length);
+        if (byteRange.isPresent() && !byteRange.get().isSatisfiable()) {
+            rsp.setHeader("Content-Range", byteRange.get().toContentRange());
+            rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        long offset = 0;
+        long contentLength = length;
+        if (byteRange.isPresent()) {
+            offset = byteRange.get().getStart();
+            contentLength = byteRange.get().getLength();
+            rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            rsp.setHeader("Content-Range", byteRange.get().toContentRange());
+        }
+        rsp.setHeader("Content-Length", String.valueOf(contentLength));
+
+        if (headRequest) {
+            return;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(artifactPath); OutputStream outputStream = rsp.getOutputStream()) {
+            IOUtils.copyLarge(inputStream, outputStream, offset, contentLength);
+        }
+    }
+
+    private DetectMirrorService createDetectMirrorService() {
+        // Created per request so that changes to the Jenkins proxy configuration are picked up without a restart. All of the state lives on disk.
+        JenkinsIntLogger logger = JenkinsIntLogger.logToListener(new LogTaskListener(LOGGER, Level.INFO));
+        ProxyInfo proxyInfo = JenkinsWrapper.initializeFromJenkinsJVM().getProxyHelper().getProxyInfo(DetectJarCache.DEFAULT_DETECT_REPOSITORY_URL);
+        IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), 120, false, proxyInfo);
+
+        Path cacheDirectory = Jenkins.get().getRootDir().toPath().resolve("caches").resolve(DetectMirrorService.MIRROR_CACHE_DIRECTORY);
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory.resolve(DetectScriptCache.SCRIPT_CACHE_DIRECTORY), DetectScriptCache.DEFAULT_TTL_MINUTES);
+        DetectJarCache detectJarCache = new DetectJarCache(
+            logger,
+            intHttpClient,
+            cacheDirectory.resolve(DetectJarCache.JAR_CACHE_DIRECTORY),
+            DetectJarCache.DEFAULT_DETECT_REPOSITORY_URL,
+            DetectJarCache.DEFAULT_LATEST_VERSION_TTL_MINUTES
+        );
+
+        return new DetectMirrorService(detectScriptCache, detectJarCache, DetectScriptStrategy.DETECT_SCRIPT_BASE_URL);
+    }
+
+}
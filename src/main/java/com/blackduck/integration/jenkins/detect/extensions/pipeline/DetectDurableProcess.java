@@ -0,0 +1,136 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.pipeline;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.durabletask.BourneShellScript;
+import org.jenkinsci.plugins.durabletask.Controller;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Detect process the pipeline step started on the agent as a durable task: the whole run, or one scan target of a multi-target run. Its controller is saved with the
+ * build.
+ * <p>
+ * The durable-task plugin is an optional dependency, so this is the only class that refers to it, and the step only uses it once it has checked that the plugin is
+ * active.
+ */
+final class DetectDurableProcess implements Serializable {
+    private static final long serialVersionUID = 4419640391357306562L;
+
+    // Null for a single run, whose output is not prefixed.
+    @Nullable
+    private final String sourcePath;
+    @Nullable
+    private Controller controller;
+    @Nullable
+    private Integer exitStatus;
+
+    // The script embeds nothing secret, but without the environment it can't be started after a restart anyway.
+    @Nullable
+    private transient String script;
+    @Nullable
+    private transient OutputStream log;
+
+    DetectDurableProcess(@Nullable String sourcePath, String script) {
+        this.sourcePath = sourcePath;
+        this.script = script;
+    }
+
+    @Nullable
+    String getSourcePath() {
+        return sourcePath;
+    }
+
+    @Nullable
+    Integer getExitStatus() {
+        return exitStatus;
+    }
+
+    boolean isRunning() {
+        return null != controller && null == exitStatus;
+    }
+
+    boolean isPending() {
+        return null == controller;
+    }
+
+    String getName() {
+        return null != sourcePath ? sourcePath : "the workspace";
+    }
+
+    void start(EnvVars detectEnvironment, FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+        controller = new BourneShellScript(script).launch(detectEnvironment, workspace, launcher, listener);
+    }
+
+    /**
+     * Copies what Detect wrote since the last call to the build log. Returns whether there was anything to copy.
+     */
+    boolean writeLog(FilePath workspace, TaskListener listener) throws IOException, InterruptedException {
+        return controller.writeLog(workspace, getLog(listener));
+    }
+
+    /**
+     * Checks whether Detect has exited. Once it has, the rest of its output is copied to the build log, the durable task is cleaned up and the exit status is kept.
+     */
+    boolean checkExited(FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+        Integer processExitStatus = controller.exitStatus(workspace, launcher, listener);
+        if (null == processExitStatus) {
+            return false;
+        }
+        controller.writeLog(workspace, getLog(listener));
+        finishLog();
+        controller.cleanup(workspace);
+        exitStatus = processExitStatus;
+        return true;
+    }
+
+    void stop(FilePath workspace, Launcher launcher) throws IOException, InterruptedException {
+        if (isRunning()) {
+            controller.stop(workspace, launcher);
+        }
+    }
+
+    private OutputStream getLog(TaskListener listener) {
+        if (null == log) {
+            PrintStream logger = listener.getLogger();
+            if (null == sourcePath) {
+                log = logger;
+            } else {
+                byte[] prefix = String.format("[%s] ", sourcePath).getBytes(StandardCharsets.UTF_8);
+                log = new LineTransformationOutputStream.Delegating(logger) {
+                    @Override
+                    protected void eol(byte[] bytes, int length) throws IOException {
+                        out.write(prefix);
+                        out.write(bytes, 0, length);
+                    }
+                };
+            }
+        }
+        return log;
+    }
+
+    private void finishLog() throws IOException {
+        if (log instanceof LineTransformationOutputStream) {
+            ((LineTransformationOutputStream) log).forceEol();
+        }
+        if (null != log) {
+            log.flush();
+        }
+    }
+
+}
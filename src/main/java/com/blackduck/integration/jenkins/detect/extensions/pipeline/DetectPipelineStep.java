@@ -7,16 +7,30 @@
  */
 package com.blackduck.integration.jenkins.detect.extensions.pipeline;
 
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.detect.DetectLaunch;
+import com.blackduck.integration.jenkins.detect.DetectPipelineCommands;
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.InheritFromGlobalDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.service.DetectCommandsFactory;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
 import com.blackduck.integration.jenkins.annotations.HelpMarkdown;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.util.OperatingSystemType;
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.PluginWrapper;
+import hudson.model.Computer;
 import hudson.model.Node;
+import hudson.model.Run;
 import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.jenkinsci.plugins.workflow.steps.*;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -25,14 +39,24 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class DetectPipelineStep extends Step implements Serializable {
     public static final String DISPLAY_NAME = "Black Duck Detect";
     public static final String PIPELINE_NAME = "blackduck_detect";
     private static final long serialVersionUID = 8126672300843832671L;
+    private static final String DURABLE_TASK_PLUGIN = "durable-task";
 
     @HelpMarkdown("The command line options to pass to Black Duck Detect")
     private final String detectProperties;
@@ -43,6 +67,15 @@ public class DetectPipelineStep extends Step implements Serializable {
     @Nullable
     private DetectDownloadStrategy downloadStrategyOverride;
 
+    @HelpMarkdown("Projects to scan with their own Detect run, each with a source path and properties that override the step's Detect Properties. The targets run in parallel on the agent")
+    private List<DetectScanTarget> scanTargets = new ArrayList<>();
+
+    @HelpMarkdown("The most scan targets to run at once. If 0, half the agent's processors are used")
+    private int maxParallelScans = 0;
+
+    @HelpMarkdown("If true (checked), skips Detect when the workspace's dependency manifests and lockfiles and the Detect arguments are unchanged since the last successful scan of the same project and version")
+    private boolean skipUnchangedScans = false;
+
     @DataBoundConstructor
     public DetectPipelineStep(String detectProperties) {
         this.detectProperties = detectProperties;
@@ -74,6 +107,33 @@ public class DetectPipelineStep extends Step implements Serializable {
         this.returnStatus = returnStatus;
     }
 
+    public List<DetectScanTarget> getScanTargets() {
+        return scanTargets;
+    }
+
+    @DataBoundSetter
+    public void setScanTargets(@Nullable List<DetectScanTarget> scanTargets) {
+        this.scanTargets = null != scanTargets ? new ArrayList<>(scanTargets) : new ArrayList<>();
+    }
+
+    public int getMaxParallelScans() {
+        return maxParallelScans;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallelScans(int maxParallelScans) {
+        this.maxParallelScans = maxParallelScans;
+    }
+
+    public boolean getSkipUnchangedScans() {
+        return skipUnchangedScans;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchangedScans(boolean skipUnchangedScans) {
+        this.skipUnchangedScans = skipUnchangedScans;
+    }
+
     @Override
     public StepExecution start(StepContext context) throws Exception {
         return new Execution(context);
@@ -83,7 +143,7 @@ public class DetectPipelineStep extends Step implements Serializable {
     public static final class DescriptorImpl extends StepDescriptor {
         @Override
         public Set<? extends Class<?>> getRequiredContext() {
-            return new HashSet<>(Arrays.asList(TaskListener.class, EnvVars.class, FilePath.class, Launcher.class, Node.class));
+            return new HashSet<>(Arrays.asList(TaskListener.class, EnvVars.class, FilePath.class, Launcher.class, Node.class, Run.class));
         }
 
         @Override
@@ -99,13 +159,68 @@ public class DetectPipelineStep extends Step implements Serializable {
 
     }
 
-    public class Execution extends SynchronousNonBlockingStepExecution<Integer> {
+    // Checked before anything refers to the durable-task plugin's classes, which aren't there without it.
+    private static boolean isDurableTaskActive() {
+        PluginWrapper durableTaskPlugin = Jenkins.get().getPluginManager().getPlugin(DURABLE_TASK_PLUGIN);
+        return null != durableTaskPlugin && durableTaskPlugin.isActive();
+    }
+
+    /**
+     * Quotes each command element for a POSIX shell, so the script runs exactly the command line a direct launch would have.
+     */
+    static String toShellScript(List<String> detectCommands) {
+        StringBuilder script = new StringBuilder("#!/bin/sh\nexec");
+        for (String detectCommand : detectCommands) {
+            script.append(" '").append(detectCommand.replace("'", "'\\''")).append('\'');
+        }
+        return script.append('\n').toString();
+    }
+
+    /**
+     * Sets Detect up on a pooled thread and queues it for a throttle slot without holding a thread, then starts it as a durable task on the agent and polls it on the
+     * {@link DetectStepExecutor}, so no thread waits on Detect while it queues or runs. The task's controller is saved with the build, which lets the step reattach to
+     * Detect after a controller restart or an agent reconnect. A multi-target run starts one durable task per target, keeping at most its parallelism running and
+     * starting the next target as each one exits. The durable-task plugin is optional: without it, and on Windows agents, Detect is launched directly on the pooled
+     * thread, which it then holds for the whole scan and which doesn't survive a controller restart.
+     */
+    public class Execution extends StepExecution {
         private static final long serialVersionUID = -5807577350749324767L;
+        private static final long MIN_POLL_MILLIS = 250;
+        private static final long MAX_POLL_MILLIS = 5_000;
+        private static final long DEFAULT_AGENT_TIMEOUT_MINUTES = 15;
+
         private final transient TaskListener listener;
         private final transient EnvVars envVars;
         private final transient FilePath workspace;
         private final transient Launcher launcher;
         private final transient Node node;
+        private final transient Run<?, ?> run;
+
+        @Nullable
+        private List<DetectDurableProcess> detectProcesses;
+        private int parallelism = 1;
+        private String nodeName;
+        private String remoteWorkspace;
+        private long agentTimeoutMillis;
+        // When polling last found the agent unreachable, or 0 while it is reachable. Kept across a restart, so an agent that never comes back still ends the step.
+        private long unreachableSinceMillis;
+        // Given up by the launch when it ends, or by the step if the launch was lost to a restart.
+        @Nullable
+        private DetectToolsCacheService.Lease toolsCacheLease;
+
+        // Only the processes and the tools cache lease outlive a restart; the run's timings, metrics, trace, throttle slot and environment belong to the controller JVM that set it up.
+        @Nullable
+        private transient volatile DetectLaunch detectLaunch;
+        @Nullable
+        private transient EnvVars detectEnvironment;
+        @Nullable
+        private transient volatile Future<?> setUp;
+        @Nullable
+        private transient volatile Future<DetectLaunch> queuedLaunch;
+        @Nullable
+        private transient volatile ScheduledFuture<?> nextPoll;
+        private transient volatile boolean stopped;
+        private transient long pollMillis;
 
         protected Execution(@Nonnull StepContext context) throws InterruptedException, IOException {
             super(context);
@@ -114,12 +229,352 @@ public class DetectPipelineStep extends Step implements Serializable {
             workspace = context.get(FilePath.class);
             launcher = context.get(Launcher.class);
             node = context.get(Node.class);
+            run = context.get(Run.class);
         }
 
         @Override
-        protected Integer run() throws Exception {
-            return DetectCommandsFactory.fromPipeline(listener, envVars, launcher, node, workspace)
-                       .runDetect(returnStatus, detectProperties, downloadStrategyOverride);
+        public boolean start() {
+            setUp = Computer.threadPoolForRemoting.submit(this::setUpAndLaunch);
+            return false;
+        }
+
+        @Override
+        public void onResume() {
+            if (null == detectProcesses) {
+                getContext().onFailure(new AbortException("Jenkins restarted while Detect was being set up, so there is no Detect process to reattach to"));
+                return;
+            }
+            schedulePoll(MIN_POLL_MILLIS);
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            stopped = true;
+            cancel(queuedLaunch);
+            cancel(setUp);
+            cancel(nextPoll);
+            try {
+                FilePath detectWorkspace = getWorkspace();
+                Node detectNode = getNode();
+                if (null != detectProcesses && null != detectWorkspace && null != detectNode) {
+                    stopRunning(detectWorkspace, detectNode.createLauncher(getContext().get(TaskListener.class)));
+                }
+            } finally {
+                DetectLaunch launch = detectLaunch;
+                if (null != launch) {
+                    launch.failed(cause);
+                } else {
+                    releaseToolsCacheLease();
+                }
+                getContext().onFailure(cause);
+            }
+        }
+
+        @Override
+        public String getStatus() {
+            List<DetectDurableProcess> processes = detectProcesses;
+            if (null == processes) {
+                return "setting up Detect";
+            }
+            String location = String.format("on %s in %s", StringUtils.defaultIfEmpty(nodeName, DetectCommandsFactory.BUILT_IN_NODE_NAME), remoteWorkspace);
+            if (1 == processes.size()) {
+                return "running Detect " + location;
+            }
+            long running = processes.stream().filter(DetectDurableProcess::isRunning).count();
+            return String.format("running Detect for %d of %d scan targets %s", running, processes.size(), location);
+        }
+
+        private void setUpAndLaunch() {
+            try {
+                DetectPipelineCommands detectPipelineCommands = DetectCommandsFactory.fromPipeline(listener, envVars, launcher, node, workspace, run, skipUnchangedScans);
+                // The wait for a throttle slot and for another run's download of the tools holds no thread, so a long queue of steps doesn't tie up the pool.
+                CompletableFuture<DetectLaunch> queued = detectPipelineCommands.prepareLaunchAsync(
+                    detectProperties,
+                    downloadStrategyOverride,
+                    scanTargets,
+                    maxParallelScans,
+                    DetectStepExecutor.get()
+                );
+                queuedLaunch = queued;
+                if (stopped) {
+                    queued.cancel(false);
+                    return;
+                }
+                queued.whenComplete((preparedLaunch, failure) -> {
+                    if (null != failure) {
+                        if (!stopped) {
+                            // The run has already been ended by the runner.
+                            getContext().onFailure(failure instanceof CompletionException && null != failure.getCause() ? failure.getCause() : failure);
+                        }
+                        return;
+                    }
+                    // Set before checking whether the step was stopped, so either this or stop() ends the run.
+                    detectLaunch = preparedLaunch;
+                    if (stopped) {
+                        preparedLaunch.failed(new AbortException("The Detect step was stopped before Detect started"));
+                        return;
+                    }
+                    setUp = Computer.threadPoolForRemoting.submit(() -> launch(detectPipelineCommands, preparedLaunch));
+                });
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void launch(DetectPipelineCommands detectPipelineCommands, DetectLaunch launch) {
+            try {
+                if (stopped) {
+                    return;
+                }
+
+                // A durable task on Windows would need its own quoting through a batch script, so Windows agents keep the direct launch on this pooled thread, as does
+                // every agent when the durable-task plugin isn't active. A skipped run has nothing to launch and finishes here too.
+                if (launch.isSkipped() || OperatingSystemType.WINDOWS == launch.getOperatingSystemType() || !isDurableTaskActive()) {
+                    getContext().onSuccess(detectPipelineCommands.launch(returnStatus, launch));
+                    return;
+                }
+
+                List<DetectDurableProcess> processes = new ArrayList<>();
+                if (launch.getTargetCommands().isEmpty()) {
+                    processes.add(new DetectDurableProcess(null, toShellScript(launch.getDetectCommands())));
+                } else {
+                    for (Map.Entry<String, List<String>> targetCommand : launch.getTargetCommands().entrySet()) {
+                        processes.add(new DetectDurableProcess(targetCommand.getKey(), toShellScript(targetCommand.getValue())));
+                    }
+                }
+                detectEnvironment = new EnvVars(launch.getEnvironment().getVariables());
+                parallelism = launch.getParallelism();
+                nodeName = node.getNodeName();
+                remoteWorkspace = workspace.getRemote();
+                long agentTimeoutMinutes = NumberUtils.toLong(envVars.get(DetectJenkinsEnvironmentVariable.AGENT_TIMEOUT_MINUTES.stringValue()), DEFAULT_AGENT_TIMEOUT_MINUTES);
+                agentTimeoutMillis = TimeUnit.MINUTES.toMillis(Math.max(0L, agentTimeoutMinutes));
+                toolsCacheLease = launch.getToolsCacheLease();
+                detectProcesses = processes;
+
+                startPending(workspace, launcher);
+                getContext().saveState();
+                if (stopped) {
+                    stopRunning(workspace, launcher);
+                    return;
+                }
+                schedulePoll(MIN_POLL_MILLIS);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void startPending(FilePath detectWorkspace, Launcher detectLauncher) throws IOException, InterruptedException {
+            if (null == detectEnvironment) {
+                return;
+            }
+            long running = detectProcesses.stream().filter(DetectDurableProcess::isRunning).count();
+            for (DetectDurableProcess detectProcess : detectProcesses) {
+                if (running >= parallelism || stopped) {
+                    return;
+                }
+                if (detectProcess.isPending()) {
+                    try {
+                        detectProcess.start(detectEnvironment, detectWorkspace, detectLauncher, listener);
+                    } catch (IOException | InterruptedException | RuntimeException e) {
+                        // The step fails, which frees its throttle slot and tools lease, so the targets already started must not keep running on the agent.
+                        try {
+                            stopRunning(detectWorkspace, detectLauncher);
+                        } catch (IOException | InterruptedException | RuntimeException stopException) {
+                            e.addSuppressed(stopException);
+                        }
+                        throw e;
+                    }
+                    running++;
+                }
+            }
+        }
+
+        // Tries to stop every process, even if stopping one of them fails.
+        private void stopRunning(FilePath detectWorkspace, Launcher detectLauncher) throws IOException, InterruptedException {
+            IOException stopFailure = null;
+            for (DetectDurableProcess detectProcess : detectProcesses) {
+                try {
+                    detectProcess.stop(detectWorkspace, detectLauncher);
+                } catch (IOException e) {
+                    if (null == stopFailure) {
+                        stopFailure = e;
+                    } else {
+                        stopFailure.addSuppressed(e);
+                    }
+                }
+            }
+            if (null != stopFailure) {
+                throw stopFailure;
+            }
+        }
+
+        private void schedulePoll(long delayMillis) {
+            if (stopped) {
+                return;
+            }
+            pollMillis = delayMillis;
+            nextPoll = DetectStepExecutor.schedule(this::poll, delayMillis);
+        }
+
+        private void poll() {
+            if (stopped) {
+                return;
+            }
+            StepContext context = getContext();
+            TaskListener taskListener;
+            try {
+                taskListener = context.get(TaskListener.class);
+                FilePath detectWorkspace = getWorkspace();
+                Node detectNode = getNode();
+                if (null == detectWorkspace || null == detectNode) {
+                    unreachable(taskListener, "it is offline");
+                    return;
+                }
+
+                Launcher detectLauncher = detectNode.createLauncher(taskListener);
+                boolean wroteLog = false;
+                boolean exited = false;
+                for (DetectDurableProcess detectProcess : detectProcesses) {
+                    if (!detectProcess.isRunning()) {
+                        continue;
+                    }
+                    wroteLog |= detectProcess.writeLog(detectWorkspace, taskListener);
+                    exited |= detectProcess.checkExited(detectWorkspace, detectLauncher, taskListener);
+                }
+                unreachableSinceMillis = 0L;
+                if (exited) {
+                    startPending(detectWorkspace, detectLauncher);
+                    context.saveState();
+                }
+                if (detectProcesses.stream().anyMatch(DetectDurableProcess::isRunning)) {
+                    schedulePoll(wroteLog || exited ? MIN_POLL_MILLIS : Math.min(pollMillis * 2, MAX_POLL_MILLIS));
+                    return;
+                }
+            } catch (IOException e) {
+                // Most likely the agent disconnected mid-poll; Detect keeps running there, so keep polling until it is back.
+                try {
+                    unreachable(context.get(TaskListener.class), e.getMessage());
+                } catch (IOException | InterruptedException listenerException) {
+                    fail(listenerException);
+                }
+                return;
+            } catch (Exception e) {
+                // Anything else would end this timer task without a word, leaving the step waiting forever.
+                fail(e);
+                return;
+            }
+
+            try {
+                complete(context, taskListener);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void complete(StepContext context, TaskListener taskListener) {
+            DetectLaunch launch = detectLaunch;
+            if (null == launch) {
+                releaseToolsCacheLease();
+            }
+            List<String> notStarted = new ArrayList<>();
+            Map<String, Integer> targetExitCodes = new LinkedHashMap<>();
+            for (DetectDurableProcess detectProcess : detectProcesses) {
+                if (detectProcess.isPending()) {
+                    notStarted.add(detectProcess.getName());
+                } else {
+                    targetExitCodes.put(detectProcess.getName(), detectProcess.getExitStatus());
+                }
+            }
+            if (!notStarted.isEmpty()) {
+                AbortException failure = new AbortException("Jenkins restarted before Detect could start scanning " + String.join(", ", notStarted));
+                if (null != launch) {
+                    launch.failed(failure);
+                }
+                context.onFailure(failure);
+                return;
+            }
+
+            try {
+                JenkinsIntLogger logger = JenkinsIntLogger.logToListener(taskListener);
+                DetectDurableProcess firstProcess = detectProcesses.get(0);
+                int exitStatus = null == firstProcess.getSourcePath() ? firstProcess.getExitStatus() : DetectLaunch.aggregateExitCodes(logger, targetExitCodes);
+                int exitCode = null != launch ? launch.finished(exitStatus) : exitStatus;
+                context.onSuccess(DetectPipelineCommands.checkExitCode(logger, returnStatus, exitCode));
+            } catch (DetectJenkinsException e) {
+                context.onFailure(e);
+            }
+        }
+
+        private void fail(Throwable failure) {
+            try {
+                DetectLaunch launch = detectLaunch;
+                if (null != launch) {
+                    launch.failed(failure);
+                } else {
+                    releaseToolsCacheLease();
+                }
+            } finally {
+                getContext().onFailure(failure);
+            }
+        }
+
+        private void releaseToolsCacheLease() {
+            DetectToolsCacheService.Lease lease = toolsCacheLease;
+            if (null == lease) {
+                return;
+            }
+            toolsCacheLease = null;
+            try {
+                Node detectNode = getNode();
+                DetectToolsCacheService.release(JenkinsIntLogger.logToListener(getContext().get(TaskListener.class)), null == detectNode ? null : detectNode.getChannel(), lease);
+            } catch (IOException e) {
+                // Only the listener is missing; the lease goes stale on its own.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Like the sh step, the step waits for the agent to come back, but only for so long, since Detect can't be reached to end it otherwise.
+        private void unreachable(TaskListener taskListener, String reason) {
+            String agentName = StringUtils.defaultIfEmpty(nodeName, DetectCommandsFactory.BUILT_IN_NODE_NAME);
+            long now = System.currentTimeMillis();
+            if (0L == unreachableSinceMillis) {
+                unreachableSinceMillis = now;
+                getContext().saveState();
+                taskListener.getLogger().printf(
+                    "Cannot reach Detect on %s because %s; waiting up to %d minutes for it to come back%n",
+                    agentName,
+                    reason,
+                    TimeUnit.MILLISECONDS.toMinutes(agentTimeoutMillis)
+                );
+            } else if (now - unreachableSinceMillis > agentTimeoutMillis) {
+                fail(new AbortException(String.format(
+                    "Gave up on Detect after %s could not be reached for %d minutes. Set %s to wait longer.",
+                    agentName,
+                    TimeUnit.MILLISECONDS.toMinutes(now - unreachableSinceMillis),
+                    DetectJenkinsEnvironmentVariable.AGENT_TIMEOUT_MINUTES.stringValue()
+                )));
+                return;
+            }
+            schedulePoll(MAX_POLL_MILLIS);
+        }
+
+        @Nullable
+        private Node getNode() {
+            Jenkins jenkins = Jenkins.get();
+            return StringUtils.isEmpty(nodeName) ? jenkins : jenkins.getNode(nodeName);
+        }
+
+        @Nullable
+        private FilePath getWorkspace() {
+            Node detectNode = getNode();
+            return null == detectNode ? null : detectNode.createPath(remoteWorkspace);
+        }
+
+        private void cancel(@Nullable Future<?> future) {
+            if (null != future) {
+                future.cancel(true);
+            }
         }
 
     }
@@ -0,0 +1,64 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.pipeline;
+
+import com.blackduck.integration.jenkins.annotations.HelpMarkdown;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * One project scanned by a multi-target {@link DetectPipelineStep}: the directory Detect scans, and properties that apply to that project only.
+ */
+public class DetectScanTarget extends AbstractDescribableImpl<DetectScanTarget> implements Serializable {
+    public static final String DISPLAY_NAME = "Scan target";
+    private static final long serialVersionUID = 2306217458851472263L;
+
+    @HelpMarkdown("The directory to scan, relative to the workspace. It is passed to Detect as detect.source.path")
+    private final String sourcePath;
+
+    @HelpMarkdown("Command line options for this target only. They override the step's Detect Properties with the same name")
+    @Nullable
+    private String detectProperties;
+
+    @DataBoundConstructor
+    public DetectScanTarget(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    @Nullable
+    public String getDetectProperties() {
+        return detectProperties;
+    }
+
+    @DataBoundSetter
+    public void setDetectProperties(@Nullable String detectProperties) {
+        this.detectProperties = detectProperties;
+    }
+
+    @Extension(optional = true)
+    public static class DescriptorImpl extends Descriptor<DetectScanTarget> {
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return DISPLAY_NAME;
+        }
+
+    }
+
+}
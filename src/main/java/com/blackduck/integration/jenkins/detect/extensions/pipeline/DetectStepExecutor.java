@@ -0,0 +1,53 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.pipeline;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads that poll the Detect processes of pipeline steps and finish their runs. Polling and finishing a run make remoting calls to the agent and save the build,
+ * which must not hold up the shared {@link Timer}, so the timer only hands the work over to this pool. The pool is bounded: when many runs end at once, the work
+ * queues up here rather than taking a thread each.
+ */
+final class DetectStepExecutor {
+    private static final int THREADS = 10;
+    private static final ExecutorService EXECUTOR_SERVICE = createExecutorService();
+
+    private DetectStepExecutor() {
+    }
+
+    static ExecutorService get() {
+        return EXECUTOR_SERVICE;
+    }
+
+    static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return Timer.get().schedule(() -> EXECUTOR_SERVICE.execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ExecutorService createExecutorService() {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+            THREADS,
+            THREADS,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), DetectStepExecutor.class.getSimpleName())
+        );
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+}
@@ -37,6 +37,9 @@ public class DetectPostBuildStep extends Recorder {
     @Nullable
     private DetectDownloadStrategy downloadStrategyOverride;
 
+    @HelpMarkdown("If true (checked), skips Detect when the workspace's dependency manifests and lockfiles and the Detect arguments are unchanged since the last successful scan of the same project and version")
+    private boolean skipUnchangedScans = false;
+
     @DataBoundConstructor
     public DetectPostBuildStep(String detectProperties) {
         this.detectProperties = detectProperties;
@@ -59,6 +62,15 @@ public class DetectPostBuildStep extends Recorder {
         return new InheritFromGlobalDownloadStrategy();
     }
 
+    public boolean getSkipUnchangedScans() {
+        return skipUnchangedScans;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchangedScans(boolean skipUnchangedScans) {
+        this.skipUnchangedScans = skipUnchangedScans;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -72,7 +84,7 @@ public class DetectPostBuildStep extends Recorder {
     // Freestyle
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
-        DetectCommandsFactory.fromPostBuild(build, launcher, listener)
+        DetectCommandsFactory.fromPostBuild(build, launcher, listener, skipUnchangedScans)
             .runDetect(detectProperties, downloadStrategyOverride);
         return true;
     }
@@ -0,0 +1,138 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.extensions.timing;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps how long each phase of every Detect run in a build took. It is saved with the build, shown on the build page and exported through the JSON API, so time spent
+ * in the plugin can be told apart from time spent in Detect itself.
+ */
+@ExportedBean
+public class DetectPhaseTimingsAction implements RunAction2 {
+    private final List<DetectRunTimings> detectRuns = new ArrayList<>();
+
+    private transient Run<?, ?> run;
+
+    public static void record(Run<?, ?> run, Map<String, Long> phaseMillis, long totalMillis, boolean completed) throws IOException {
+        // A pipeline can run Detect in parallel branches of the same build, so finding or adding the action and appending to it must not interleave.
+        synchronized (DetectPhaseTimingsAction.class) {
+            DetectPhaseTimingsAction detectPhaseTimingsAction = run.getAction(DetectPhaseTimingsAction.class);
+            if (null == detectPhaseTimingsAction) {
+                detectPhaseTimingsAction = new DetectPhaseTimingsAction();
+                run.addAction(detectPhaseTimingsAction);
+            }
+            detectPhaseTimingsAction.detectRuns.add(new DetectRunTimings(phaseMillis, totalMillis, completed));
+        }
+        run.save();
+    }
+
+    @Exported
+    public List<DetectRunTimings> getDetectRuns() {
+        synchronized (DetectPhaseTimingsAction.class) {
+            return Collections.unmodifiableList(new ArrayList<>(detectRuns));
+        }
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Black Duck Detect timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class DetectRunTimings {
+        private final List<PhaseTiming> phases;
+        private final long totalMillis;
+        private final boolean completed;
+
+        public DetectRunTimings(Map<String, Long> phaseMillis, long totalMillis, boolean completed) {
+            this.phases = phaseMillis.entrySet().stream()
+                .map(phase -> new PhaseTiming(phase.getKey(), phase.getValue()))
+                .collect(Collectors.toList());
+            this.totalMillis = totalMillis;
+            this.completed = completed;
+        }
+
+        @Exported
+        public List<PhaseTiming> getPhases() {
+            return Collections.unmodifiableList(phases);
+        }
+
+        @Exported
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Exported
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public String getBreakdown() {
+            return phases.stream()
+                .map(phase -> String.format("%s %d ms", phase.getName(), phase.getMillis()))
+                .collect(Collectors.joining(", "));
+        }
+    }
+
+    @ExportedBean(defaultVisibility = 3)
+    public static class PhaseTiming {
+        private final String name;
+        private final long millis;
+
+        public PhaseTiming(String name, long millis) {
+            this.name = name;
+            this.millis = millis;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+}
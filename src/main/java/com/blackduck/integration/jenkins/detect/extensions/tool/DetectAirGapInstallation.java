@@ -23,6 +23,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DetectAirGapInstallation extends ToolInstallation implements NodeSpecific<DetectAirGapInstallation>, EnvironmentSpecific<DetectAirGapInstallation> {
     private static final long serialVersionUID = -3838254855454518440L;
@@ -50,16 +51,68 @@ public class DetectAirGapInstallation extends ToolInstallation implements NodeSp
             return "Detect Air Gap";
         }
 
+        // One snapshot per controller, replaced on every write, so lookups from builds and form renders don't reparse the descriptor XML.
+        private static final AtomicLong AVOIDED_LOADS = new AtomicLong();
+
+        private transient volatile InstallationSnapshot installationSnapshot;
+
+        public static long getAvoidedLoadCount() {
+            return AVOIDED_LOADS.get();
+        }
+
         @Override
         public DetectAirGapInstallation[] getInstallations() {
-            load();
-            return super.getInstallations();
+            InstallationSnapshot snapshot = installationSnapshot;
+            // The config file is still checked, so an edit on disk followed by a configuration reload is picked up.
+            if (null != snapshot && snapshot.isCurrent(getConfigFileLastModified())) {
+                AVOIDED_LOADS.incrementAndGet();
+                return snapshot.getInstallations();
+            }
+
+            return reloadInstallations().getInstallations();
         }
 
         @Override
         public void setInstallations(DetectAirGapInstallation... installations) {
-            super.setInstallations(installations);
-            save();
+            synchronized (this) {
+                super.setInstallations(installations);
+                save();
+                installationSnapshot = new InstallationSnapshot(super.getInstallations(), getConfigFileLastModified());
+            }
+        }
+
+        private synchronized InstallationSnapshot reloadInstallations() {
+            long configFileLastModified = getConfigFileLastModified();
+            InstallationSnapshot snapshot = installationSnapshot;
+            if (null == snapshot || !snapshot.isCurrent(configFileLastModified)) {
+                load();
+                snapshot = new InstallationSnapshot(super.getInstallations(), configFileLastModified);
+                installationSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+
+        private long getConfigFileLastModified() {
+            return getConfigFile().getFile().lastModified();
+        }
+    }
+
+    private static final class InstallationSnapshot {
+        private final DetectAirGapInstallation[] installations;
+        private final long configFileLastModified;
+
+        private InstallationSnapshot(DetectAirGapInstallation[] installations, long configFileLastModified) {
+            this.installations = installations;
+            this.configFileLastModified = configFileLastModified;
+        }
+
+        private boolean isCurrent(long currentConfigFileLastModified) {
+            return configFileLastModified == currentConfigFileLastModified;
+        }
+
+        private DetectAirGapInstallation[] getInstallations() {
+            // Callers get their own copy, so the shared snapshot is never modified after it is published.
+            return installations.clone();
         }
     }
 
@@ -14,16 +14,22 @@ import com.blackduck.integration.phonehome.request.PhoneHomeRequestBody;
 import com.blackduck.integration.util.IntEnvironmentVariables;
 import hudson.Util;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.tools.ant.types.Commandline;
-
-import java.util.*;
+import org.apache.tools.ant.BuildException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class DetectArgumentService {
     private static final String DETECT_LOGLEVEL_ARGUMENT = "logging.level.detect";
     private static final String DETECT_PHONEHOME_JENKINS_VERSION_ARGUMENT = "detect.phone.home.passthrough.jenkins.version";
     private static final String DETECT_PHONEHOME_PLUGIN_VERSION_ARGUMENT = "detect.phone.home.passthrough.jenkins.plugin.version";
+    private static final String DETECT_API_TOKEN_ARGUMENT = "blackduck.api.token";
+    private static final String DETECT_SOURCE_PATH_ARGUMENT = "detect.source.path";
     private final JenkinsIntLogger logger;
     private final JenkinsVersionHelper jenkinsVersionHelper;
 
@@ -37,6 +43,21 @@ public class DetectArgumentService {
         Function<String, String> strategyEscaper,
         List<String> initialArguments,
         String detectArgumentString
+    ) {
+        return getDetectArguments(intEnvironmentVariables, strategyEscaper, initialArguments, detectArgumentString, null, null);
+    }
+
+    /**
+     * Builds the arguments for one scan target. The target's source path and properties are added after the shared argument string, and replace any argument it sets
+     * for the same property, since Detect would otherwise see both values.
+     */
+    public List<String> getDetectArguments(
+        IntEnvironmentVariables intEnvironmentVariables,
+        Function<String, String> strategyEscaper,
+        List<String> initialArguments,
+        String detectArgumentString,
+        @Nullable String sourcePath,
+        @Nullable String targetArgumentString
     ) {
         boolean shouldEscape = Boolean.parseBoolean(intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.SHOULD_ESCAPE.stringValue(), "true"));
         Function<String, String> argumentEscaper;
@@ -46,11 +67,23 @@ public class DetectArgumentService {
             argumentEscaper = Function.identity();
         }
 
-        List<String> detectArguments = new ArrayList<>();
-        detectArguments.addAll(initialArguments);
-        detectArguments.addAll(parseDetectArgumentString(intEnvironmentVariables.getVariables(), argumentEscaper, detectArgumentString));
+        List<String> detectArguments = new ArrayList<>(initialArguments);
+        boolean containsLogLevel = false;
+        for (String initialArgument : initialArguments) {
+            containsLogLevel |= initialArgument.contains(DETECT_LOGLEVEL_ARGUMENT);
+        }
+        containsLogLevel |= parseDetectArgumentString(intEnvironmentVariables.getVariables(), argumentEscaper, detectArgumentString, detectArguments);
+
+        if (null != sourcePath || StringUtils.isNotBlank(targetArgumentString)) {
+            List<String> targetArguments = new ArrayList<>();
+            if (null != sourcePath) {
+                targetArguments.add(asEscapedDetectArgument(argumentEscaper, DETECT_SOURCE_PATH_ARGUMENT, sourcePath));
+            }
+            containsLogLevel |= parseDetectArgumentString(intEnvironmentVariables.getVariables(), argumentEscaper, targetArgumentString, targetArguments);
+            overrideArguments(detectArguments, initialArguments.size(), targetArguments);
+        }
 
-        if (detectArguments.stream().noneMatch(argument -> argument.contains(DETECT_LOGLEVEL_ARGUMENT))) {
+        if (!containsLogLevel) {
             detectArguments.add(asEscapedDetectArgument(argumentEscaper, DETECT_LOGLEVEL_ARGUMENT, logger.getLogLevel().toString()));
         }
 
@@ -63,6 +96,27 @@ public class DetectArgumentService {
         return detectArguments;
     }
 
+    // Appends the target's arguments, dropping any earlier argument (after the initial command) that sets a property a later one sets again.
+    private void overrideArguments(List<String> detectArguments, int firstParsedArgument, List<String> targetArguments) {
+        detectArguments.addAll(targetArguments);
+        Set<String> laterPropertyNames = new HashSet<>();
+        for (int i = detectArguments.size() - 1; i >= firstParsedArgument; i--) {
+            String propertyName = getPropertyName(detectArguments.get(i));
+            if (null != propertyName && !laterPropertyNames.add(propertyName)) {
+                detectArguments.remove(i);
+            }
+        }
+    }
+
+    @Nullable
+    private static String getPropertyName(String argument) {
+        int separatorIndex = argument.indexOf('=');
+        if (!argument.startsWith("--") || separatorIndex < 0) {
+            return null;
+        }
+        return argument.substring(2, separatorIndex);
+    }
+
     private String asEscapedDetectArgument(Function<String, String> escaper, String key, String rawValue) {
         return String.format("--%s=%s", key, escaper.apply(rawValue));
     }
@@ -70,38 +124,123 @@ public class DetectArgumentService {
     public List<String> parseDetectArgumentString(
         Map<String, String> environmentVariables, Function<String, String> argumentEscaper, String argumentString
     ) {
-        return Arrays.stream(Commandline.translateCommandline(argumentString))
-            .map(argumentBlobString -> argumentBlobString.split("\\r?\\n"))
-            .flatMap(Arrays::stream)
-            .map(argument -> Util.replaceMacro(argument, environmentVariables))
-            .filter(this::validateExpandedArguments)
-            .filter(Objects::nonNull)
-            .map(argument -> escapeArgument(argument, argumentEscaper))
-            .collect(Collectors.toList());
+        List<String> detectArguments = new ArrayList<>();
+        parseDetectArgumentString(environmentVariables, argumentEscaper, argumentString, detectArguments);
+        return detectArguments;
     }
 
-    private boolean validateExpandedArguments(String argument) {
-        if (StringUtils.isBlank(argument)) {
+    // Tokenizes the way Ant's Commandline.translateCommandline does (only spaces separate arguments, quotes group them), then splits each argument on line breaks, expands
+    // variables and escapes values, all in one pass over the input. Returns whether any of the parsed arguments sets the Detect log level.
+    private boolean parseDetectArgumentString(
+        Map<String, String> environmentVariables, Function<String, String> argumentEscaper, String argumentString, List<String> detectArguments
+    ) {
+        if (argumentString == null || argumentString.isEmpty()) {
             return false;
         }
 
-        if (argument.contains("$")) {
-            logger.warn("A variable may not have been properly replaced in resolved argument: " + argument + ". Make sure the variable has been properly defined.");
+        ParsedArguments parsedArguments = new ParsedArguments(environmentVariables, argumentEscaper, detectArguments);
+        StringBuilder currentArgument = new StringBuilder();
+        char openQuote = 0;
+        boolean lastArgumentHasBeenQuoted = false;
+
+        for (int i = 0; i < argumentString.length(); i++) {
+            char currentCharacter = argumentString.charAt(i);
+            if (openQuote != 0) {
+                if (currentCharacter == openQuote) {
+                    lastArgumentHasBeenQuoted = true;
+                    openQuote = 0;
+                } else {
+                    currentArgument.append(currentCharacter);
+                }
+            } else {
+                if (currentCharacter == '\'' || currentCharacter == '"') {
+                    openQuote = currentCharacter;
+                } else if (currentCharacter == ' ') {
+                    if (lastArgumentHasBeenQuoted || currentArgument.length() > 0) {
+                        parsedArguments.addLines(currentArgument.toString());
+                        currentArgument.setLength(0);
+                    }
+                } else {
+                    currentArgument.append(currentCharacter);
+                }
+                lastArgumentHasBeenQuoted = false;
+            }
+        }
+        if (lastArgumentHasBeenQuoted || currentArgument.length() > 0) {
+            parsedArguments.addLines(currentArgument.toString());
+        }
+        if (openQuote != 0) {
+            throw new BuildException("unbalanced quotes in " + argumentString);
         }
 
-        return true;
+        // Warnings are only logged once the whole string is known to be valid, just as they were when tokenizing happened up front.
+        for (String unresolvedArgument : parsedArguments.unresolvedArguments) {
+            logger.warn("A variable may not have been properly replaced in resolved argument: " + unresolvedArgument + ". Make sure the variable has been properly defined.");
+        }
+
+        return parsedArguments.containsLogLevel;
     }
 
-    private String escapeArgument(String argument, Function<String, String> escaper) {
-        // Assume a cleaned argument, then test
-        String cleanedArg = argument;
-        if (argument.startsWith("--") && argument.contains("=") && !argument.contains("&")) {
-            String[] splitArgument = argument.split("=", 2);
-            //The api token should not be escaped... if it contains "=" or "==" padding, it would cause probs.
-            String endArg = splitArgument[0].contains("blackduck.api.token") ? splitArgument[1] : escaper.apply(splitArgument[1]);
-            cleanedArg = splitArgument[0] + "=" + endArg;
+    private static String escapeArgument(String argument, Function<String, String> escaper) {
+        if (!argument.startsWith("--")) {
+            return argument;
+        }
+        int separatorIndex = argument.indexOf('=');
+        if (separatorIndex < 0 || argument.indexOf('&') >= 0) {
+            return argument;
         }
 
-        return cleanedArg;
+        String key = argument.substring(0, separatorIndex);
+        String value = argument.substring(separatorIndex + 1);
+        //The api token should not be escaped... if it contains "=" or "==" padding, it would cause probs.
+        if (key.contains(DETECT_API_TOKEN_ARGUMENT)) {
+            return argument;
+        }
+        String escapedValue = escaper.apply(value);
+        if (escapedValue.equals(value)) {
+            return argument;
+        }
+        return key + "=" + escapedValue;
+    }
+
+    private static final class ParsedArguments {
+        private final Map<String, String> environmentVariables;
+        private final Function<String, String> argumentEscaper;
+        private final List<String> detectArguments;
+        private final List<String> unresolvedArguments = new ArrayList<>();
+        private boolean containsLogLevel;
+
+        private ParsedArguments(Map<String, String> environmentVariables, Function<String, String> argumentEscaper, List<String> detectArguments) {
+            this.environmentVariables = environmentVariables;
+            this.argumentEscaper = argumentEscaper;
+            this.detectArguments = detectArguments;
+        }
+
+        private void addLines(String argumentBlob) {
+            int lineStart = 0;
+            int lineBreak = argumentBlob.indexOf('\n');
+            while (lineBreak >= 0) {
+                int lineEnd = (lineBreak > lineStart && argumentBlob.charAt(lineBreak - 1) == '\r') ? lineBreak - 1 : lineBreak;
+                add(argumentBlob.substring(lineStart, lineEnd));
+                lineStart = lineBreak + 1;
+                lineBreak = argumentBlob.indexOf('\n', lineStart);
+            }
+            add((lineStart == 0) ? argumentBlob : argumentBlob.substring(lineStart));
+        }
+
+        private void add(String argument) {
+            // Util.replaceMacro leaves strings without a '$' untouched, so most arguments skip it.
+            String expandedArgument = (argument.indexOf('$') >= 0) ? Util.replaceMacro(argument, environmentVariables) : argument;
+            if (StringUtils.isBlank(expandedArgument)) {
+                return;
+            }
+            if (expandedArgument.indexOf('$') >= 0) {
+                unresolvedArguments.add(expandedArgument);
+            }
+
+            String escapedArgument = escapeArgument(expandedArgument, argumentEscaper);
+            containsLogLevel |= escapedArgument.contains(DETECT_LOGLEVEL_ARGUMENT);
+            detectArguments.add(escapedArgument);
+        }
     }
 }
@@ -10,7 +10,13 @@ package com.blackduck.integration.jenkins.detect.service;
 import com.blackduck.integration.jenkins.detect.DetectFreestyleCommands;
 import com.blackduck.integration.jenkins.detect.DetectPipelineCommands;
 import com.blackduck.integration.jenkins.detect.DetectRunner;
+import com.blackduck.integration.jenkins.detect.service.fingerprint.DetectFingerprintService;
+import com.blackduck.integration.jenkins.detect.service.fingerprint.DetectFingerprintStore;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectStrategyService;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectRunThrottle;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectThrottleService;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCache;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsBuildService;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
@@ -25,20 +31,26 @@ import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Node;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.slaves.WorkspaceList;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 
 public class DetectCommandsFactory {
     public static final String NULL_WORKSPACE = "Detect cannot be executed when the workspace is null";
+    public static final String AGENT_CACHE_PARENT_DIRECTORY = "caches";
+    public static final String AGENT_CACHE_DIRECTORY = "blackduck-detect";
+    public static final String BUILT_IN_NODE_NAME = "built-in";
     private final JenkinsWrapper jenkinsWrapper;
     private final TaskListener listener;
     private final EnvVars envVars;
     private final FilePath workspace;
+    private final Node node;
     private final JenkinsIntLogger jenkinsIntLogger;
 
-    private DetectCommandsFactory(JenkinsWrapper jenkinsWrapper, TaskListener listener, EnvVars envVars, FilePath workspace) throws AbortException {
+    private DetectCommandsFactory(JenkinsWrapper jenkinsWrapper, TaskListener listener, EnvVars envVars, FilePath workspace, Node node) throws AbortException {
         this.jenkinsWrapper = jenkinsWrapper;
         this.listener = listener;
         this.envVars = envVars;
@@ -47,15 +59,22 @@ public class DetectCommandsFactory {
             throw new AbortException(NULL_WORKSPACE);
         }
         this.workspace = workspace;
+        this.node = node;
         this.jenkinsIntLogger = setLogger();
     }
 
     public static DetectFreestyleCommands fromPostBuild(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+        return fromPostBuild(build, launcher, listener, false);
+    }
+
+    public static DetectFreestyleCommands fromPostBuild(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, boolean skipUnchangedScans)
+        throws IOException, InterruptedException {
         DetectCommandsFactory detectCommandsFactory = new DetectCommandsFactory(
             JenkinsWrapper.initializeFromJenkinsJVM(),
             listener,
             build.getEnvironment(listener),
-            build.getWorkspace()
+            build.getWorkspace(),
+            build.getBuiltOn()
         );
 
         JenkinsFreestyleServicesFactory jenkinsFreestyleServicesFactory = new JenkinsFreestyleServicesFactory(
@@ -72,11 +91,24 @@ public class DetectCommandsFactory {
         JenkinsConfigService jenkinsConfigService = jenkinsFreestyleServicesFactory.createJenkinsConfigService();
         JenkinsRemotingService jenkinsRemotingService = jenkinsFreestyleServicesFactory.createJenkinsRemotingService();
 
-        return new DetectFreestyleCommands(jenkinsBuildService, detectCommandsFactory.createDetectRunner(jenkinsConfigService, jenkinsRemotingService));
+        return new DetectFreestyleCommands(jenkinsBuildService, detectCommandsFactory.createDetectRunner(jenkinsConfigService, jenkinsRemotingService, build, skipUnchangedScans));
+    }
+
+    public static DetectPipelineCommands fromPipeline(TaskListener listener, EnvVars envVars, Launcher launcher, Node node, FilePath workspace, Run<?, ?> run)
+        throws AbortException {
+        return fromPipeline(listener, envVars, launcher, node, workspace, run, false);
     }
 
-    public static DetectPipelineCommands fromPipeline(TaskListener listener, EnvVars envVars, Launcher launcher, Node node, FilePath workspace) throws AbortException {
-        DetectCommandsFactory detectCommandsFactory = new DetectCommandsFactory(JenkinsWrapper.initializeFromJenkinsJVM(), listener, envVars, workspace);
+    public static DetectPipelineCommands fromPipeline(
+        TaskListener listener,
+        EnvVars envVars,
+        Launcher launcher,
+        Node node,
+        FilePath workspace,
+        Run<?, ?> run,
+        boolean skipUnchangedScans
+    ) throws AbortException {
+        DetectCommandsFactory detectCommandsFactory = new DetectCommandsFactory(JenkinsWrapper.initializeFromJenkinsJVM(), listener, envVars, workspace, node);
 
         JenkinsFreestyleServicesFactory jenkinsFreestyleServicesFactory = new JenkinsFreestyleServicesFactory(
             detectCommandsFactory.getLogger(),
@@ -90,16 +122,25 @@ public class DetectCommandsFactory {
         JenkinsConfigService jenkinsConfigService = jenkinsFreestyleServicesFactory.createJenkinsConfigService();
         JenkinsRemotingService jenkinsRemotingService = jenkinsFreestyleServicesFactory.createJenkinsRemotingService();
 
-        return new DetectPipelineCommands(detectCommandsFactory.createDetectRunner(jenkinsConfigService, jenkinsRemotingService), detectCommandsFactory.getLogger());
+        return new DetectPipelineCommands(
+            detectCommandsFactory.createDetectRunner(jenkinsConfigService, jenkinsRemotingService, run, skipUnchangedScans),
+            detectCommandsFactory.getLogger()
+        );
     }
 
-    private DetectRunner createDetectRunner(JenkinsConfigService jenkinsConfigService, JenkinsRemotingService jenkinsRemotingService) {
+    private DetectRunner createDetectRunner(JenkinsConfigService jenkinsConfigService, JenkinsRemotingService jenkinsRemotingService, Run<?, ?> run, boolean skipUnchangedScans) {
         return new DetectRunner(
             createDetectEnvironmentService(jenkinsConfigService),
             jenkinsRemotingService,
             createDetectStrategyService(jenkinsConfigService),
             createDetectArgumentService(),
-            getLogger()
+            createDetectThrottleService(jenkinsConfigService),
+            skipUnchangedScans ? createDetectFingerprintService(jenkinsRemotingService, run) : null,
+            createDetectJavaOptionsService(),
+            createDetectToolsCacheService(jenkinsRemotingService),
+            getLogger(),
+            run,
+            getNodeName()
         );
     }
 
@@ -107,6 +148,28 @@ public class DetectCommandsFactory {
         return new DetectArgumentService(getLogger(), jenkinsWrapper.getVersionHelper());
     }
 
+    private DetectThrottleService createDetectThrottleService(JenkinsConfigService jenkinsConfigService) {
+        return new DetectThrottleService(getLogger(), jenkinsConfigService, DetectRunThrottle.getControllerThrottle(), getNodeName());
+    }
+
+    private DetectFingerprintService createDetectFingerprintService(JenkinsRemotingService jenkinsRemotingService, Run<?, ?> run) {
+        String jobName = (null != run) ? run.getParent().getFullName() : "";
+        return new DetectFingerprintService(getLogger(), jenkinsRemotingService, DetectFingerprintStore.getControllerStore(), workspace.getRemote(), jobName);
+    }
+
+    private DetectJavaOptionsService createDetectJavaOptionsService() {
+        int nodeExecutors = (null != node) ? node.getNumExecutors() : 1;
+        return new DetectJavaOptionsService(getLogger(), nodeExecutors);
+    }
+
+    private DetectToolsCacheService createDetectToolsCacheService(JenkinsRemotingService jenkinsRemotingService) {
+        String agentCachePath = getAgentCachePath();
+        if (null == agentCachePath) {
+            return null;
+        }
+        return new DetectToolsCacheService(getLogger(), jenkinsRemotingService, agentCachePath, getAgentToolsPath());
+    }
+
     private DetectEnvironmentService createDetectEnvironmentService(JenkinsConfigService jenkinsConfigService) {
         return new DetectEnvironmentService(
             getLogger(),
@@ -114,7 +177,8 @@ public class DetectCommandsFactory {
             jenkinsWrapper.getVersionHelper(),
             jenkinsWrapper.getCredentialsHelper(),
             jenkinsConfigService,
-            envVars
+            envVars,
+            getAgentToolsPath()
         );
     }
 
@@ -124,12 +188,37 @@ public class DetectCommandsFactory {
 
         if(workspaceTempDir != null) {
             workSpaceTempDirPath = workspaceTempDir.getRemote();
-            return new DetectStrategyService(getLogger(), jenkinsWrapper.getProxyHelper(), workSpaceTempDirPath, jenkinsConfigService);
+            return new DetectStrategyService(getLogger(), jenkinsWrapper.getProxyHelper(), workSpaceTempDirPath, getAgentCachePath(), jenkinsConfigService);
         } else {
             throw new RuntimeException("Work Space Directory Path returned null.");
         }
     }
 
+    private String getAgentCachePath() {
+        // Shared by every executor of the node, unlike the workspace temp directory. Null when the node is unavailable, in which case strategies fall back to the workspace.
+        FilePath nodeRootPath = (null != node) ? node.getRootPath() : null;
+        if (null == nodeRootPath) {
+            return null;
+        }
+        return nodeRootPath.child(AGENT_CACHE_PARENT_DIRECTORY).child(AGENT_CACHE_DIRECTORY).getRemote();
+    }
+
+    private String getAgentToolsPath() {
+        FilePath nodeRootPath = (null != node) ? node.getRootPath() : null;
+        if (null == nodeRootPath) {
+            return null;
+        }
+        return nodeRootPath.child(AGENT_CACHE_PARENT_DIRECTORY).child(AGENT_CACHE_DIRECTORY).child(DetectToolsCache.TOOLS_DIRECTORY).getRemote();
+    }
+
+    private String getNodeName() {
+        if (null == node) {
+            return null;
+        }
+        // The built-in node's name is empty
+        return StringUtils.defaultIfEmpty(node.getNodeName(), BUILT_IN_NODE_NAME);
+    }
+
     private JenkinsIntLogger setLogger() {
         JenkinsIntLogger jenkinsIntLogger = JenkinsIntLogger.logToListener(listener);
         IntEnvironmentVariables intEnvironmentVariables = IntEnvironmentVariables.empty();
@@ -7,8 +7,15 @@
  */
 package com.blackduck.integration.jenkins.detect.service;
 
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
 import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectCredentialsEvent;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectFlightRecorder;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorService;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
 import com.blackduck.integration.blackduck.configuration.BlackDuckServerConfigBuilder;
+import com.blackduck.integration.builder.BuilderPropertyKey;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
 import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
@@ -18,6 +25,7 @@ import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
 import com.blackduck.integration.util.IntEnvironmentVariables;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiConsumer;
@@ -31,6 +39,8 @@ public class DetectEnvironmentService {
     private final BlackduckCredentialsHelper blackduckCredentialsHelper;
     private final Map<String, String> environmentVariables;
     private final JenkinsConfigService jenkinsConfigService;
+    @Nullable
+    private final String agentToolsDirectory;
 
     public DetectEnvironmentService(
         JenkinsIntLogger logger,
@@ -39,6 +49,18 @@ public class DetectEnvironmentService {
         BlackduckCredentialsHelper blackduckCredentialsHelper,
         JenkinsConfigService jenkinsConfigService,
         Map<String, String> environmentVariables
+    ) {
+        this(logger, jenkinsProxyHelper, jenkinsVersionHelper, blackduckCredentialsHelper, jenkinsConfigService, environmentVariables, null);
+    }
+
+    public DetectEnvironmentService(
+        JenkinsIntLogger logger,
+        JenkinsProxyHelper jenkinsProxyHelper,
+        JenkinsVersionHelper jenkinsVersionHelper,
+        BlackduckCredentialsHelper blackduckCredentialsHelper,
+        JenkinsConfigService jenkinsConfigService,
+        Map<String, String> environmentVariables,
+        @Nullable String agentToolsDirectory
     ) {
         this.logger = logger;
         this.jenkinsProxyHelper = jenkinsProxyHelper;
@@ -46,6 +68,7 @@ public class DetectEnvironmentService {
         this.jenkinsConfigService = jenkinsConfigService;
         this.blackduckCredentialsHelper = blackduckCredentialsHelper;
         this.environmentVariables = environmentVariables;
+        this.agentToolsDirectory = agentToolsDirectory;
     }
 
     public IntEnvironmentVariables createDetectEnvironment() {
@@ -54,6 +77,7 @@ public class DetectEnvironmentService {
         logger.setLogLevel(intEnvironmentVariables);
 
         populateAllBlackDuckEnvironmentVariables(intEnvironmentVariables::put);
+        populateToolsDirectory(intEnvironmentVariables);
 
         Optional<String> pluginVersion = jenkinsVersionHelper.getPluginVersion("blackduck-detect");
         if (pluginVersion.isPresent()) {
@@ -66,15 +90,46 @@ public class DetectEnvironmentService {
     }
 
     private void populateAllBlackDuckEnvironmentVariables(BiConsumer<String, String> environmentPutter) {
-        Optional<DetectGlobalConfig> detectGlobalConfig = jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class);
+        Optional<DetectGlobalConfigSnapshot> detectGlobalConfig = jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)
+            .map(DetectGlobalConfig::getSnapshot);
         if (!detectGlobalConfig.isPresent()) {
             return;
         }
 
-        BlackDuckServerConfigBuilder blackDuckServerConfigBuilder = detectGlobalConfig.get().getBlackDuckServerConfigBuilder(jenkinsProxyHelper, blackduckCredentialsHelper);
-
-        blackDuckServerConfigBuilder.getProperties()
+        DetectCredentialsEvent detectCredentialsEvent = null;
+        if (DetectFlightRecorder.isAvailable()) {
+            detectCredentialsEvent = new DetectCredentialsEvent();
+            detectCredentialsEvent.begin();
+        }
+        Map<BuilderPropertyKey, String> blackDuckProperties;
+        try {
+            blackDuckProperties = detectGlobalConfig.get().getBlackDuckProperties(jenkinsProxyHelper, blackduckCredentialsHelper);
+            if (null != detectCredentialsEvent) {
+                detectCredentialsEvent.setPropertyCount(blackDuckProperties.size());
+            }
+        } finally {
+            if (null != detectCredentialsEvent) {
+                detectCredentialsEvent.commit();
+            }
+        }
+        blackDuckProperties
             .forEach((builderPropertyKey, propertyValue) -> updateAndFilterVariables(environmentPutter, builderPropertyKey.getKey(), propertyValue));
+
+        // The Detect scripts download the jar from DETECT_SOURCE when it is set, so point them at the controller mirror unless the user chose a source themselves.
+        String scriptJarSource = DetectJenkinsEnvironmentVariable.SCRIPT_JAR_SOURCE.stringValue();
+        if (!environmentVariables.containsKey(scriptJarSource)) {
+            detectGlobalConfig.get().getMirrorUrl()
+                .ifPresent(mirrorUrl -> environmentPutter.accept(scriptJarSource, mirrorUrl + DetectMirrorService.LATEST_JAR_PATH));
+        }
+    }
+
+    private void populateToolsDirectory(IntEnvironmentVariables intEnvironmentVariables) {
+        // Detect downloads its tools to the user's home directory by default, which executors race for. A job can opt in to sharing the agent's tools directory
+        // instead, unless it chose one of its own. It is opt-in because the first run on an agent makes the others wait for it, see DetectToolsCache.
+        boolean toolsCacheOn = "true".equalsIgnoreCase(environmentVariables.get(DetectJenkinsEnvironmentVariable.TOOLS_CACHE.stringValue()));
+        if (null != agentToolsDirectory && toolsCacheOn && !environmentVariables.containsKey(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH)) {
+            intEnvironmentVariables.put(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH, agentToolsDirectory);
+        }
     }
 
     private void updateAndFilterVariables(BiConsumer<String, String> environmentPutter, String key, String value) {
@@ -0,0 +1,152 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service;
+
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sizes the Detect JVM for the agent it runs on. Without options Detect sizes its heap from all of the agent's memory and its thread pools from all of its processors,
+ * although every executor of the node may be running a Detect process of its own, next to the package manager builds and signature scanner Detect starts.
+ * <p>
+ * The agent's memory and processors are measured on the agent during setup. Each Detect process that can run at once on the node gets an equal share of them, and
+ * options the job already sets, through {@link DetectJenkinsEnvironmentVariable#JVM_OPTIONS} or the JVM's own environment variables, are never overridden.
+ */
+public class DetectJavaOptionsService {
+    public static final String DETECT_JAVA_OPTS = "DETECT_JAVA_OPTS";
+
+    static final long MEGABYTE = 1024L * 1024L;
+    // Detect's heap gets half of each process's share; the rest is left for the builds Detect runs and the signature scanner, which is a JVM of its own.
+    static final int HEAP_SHARE_PERCENT = 50;
+    static final long MINIMUM_HEAP_MEGABYTES = 512L;
+    static final long MAXIMUM_HEAP_MEGABYTES = 8192L;
+
+    // Options the JVM reads from the environment, which a job may already use to size Detect.
+    private static final List<String> JVM_ENVIRONMENT_VARIABLES = Arrays.asList("JAVA_TOOL_OPTIONS", "JDK_JAVA_OPTIONS", "_JAVA_OPTIONS");
+
+    private final JenkinsIntLogger logger;
+    private final int nodeExecutors;
+
+    public DetectJavaOptionsService(JenkinsIntLogger logger, int nodeExecutors) {
+        this.logger = logger;
+        this.nodeExecutors = Math.max(1, nodeExecutors);
+    }
+
+    /**
+     * Adds the JVM options to the command that starts Detect. A Java command gets them before its jar; the Detect scripts start Java themselves, so they get them
+     * through {@link #DETECT_JAVA_OPTS} instead.
+     */
+    public List<String> applyJavaOptions(
+        IntEnvironmentVariables intEnvironmentVariables,
+        List<String> detectCommand,
+        long agentMemoryBytes,
+        int agentProcessors,
+        int parallelism
+    ) {
+        List<String> jobJavaOptions = splitOptions(intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.JVM_OPTIONS.stringValue()));
+        List<String> inheritedJavaOptions = new ArrayList<>(jobJavaOptions);
+        for (String jvmEnvironmentVariable : JVM_ENVIRONMENT_VARIABLES) {
+            inheritedJavaOptions.addAll(splitOptions(intEnvironmentVariables.getValue(jvmEnvironmentVariable)));
+        }
+
+        int jarIndex = detectCommand.indexOf("-jar");
+        if (jarIndex < 0) {
+            inheritedJavaOptions.addAll(splitOptions(intEnvironmentVariables.getValue(DETECT_JAVA_OPTS)));
+        }
+
+        int concurrentProcesses = nodeExecutors * Math.max(1, parallelism);
+        List<String> javaOptions = new ArrayList<>();
+        for (String computedOption : computeJavaOptions(agentMemoryBytes, agentProcessors, concurrentProcesses)) {
+            if (!isSetBy(computedOption, inheritedJavaOptions)) {
+                javaOptions.add(computedOption);
+            }
+        }
+        logger.info(String.format(
+            "Detect JVM options %s, sized for %d Detect processes at once on an agent with %s of memory and %d processors",
+            javaOptions,
+            concurrentProcesses,
+            agentMemoryBytes > 0 ? (agentMemoryBytes / MEGABYTE) + " MB" : "an unknown amount",
+            agentProcessors
+        ));
+        javaOptions.addAll(jobJavaOptions);
+        if (!jobJavaOptions.isEmpty()) {
+            logger.info(String.format("Detect JVM options from %s: %s", DetectJenkinsEnvironmentVariable.JVM_OPTIONS.stringValue(), jobJavaOptions));
+        }
+
+        if (javaOptions.isEmpty()) {
+            return detectCommand;
+        }
+        if (jarIndex < 0) {
+            String scriptJavaOptions = StringUtils.join(javaOptions, " ");
+            String existingScriptJavaOptions = intEnvironmentVariables.getValue(DETECT_JAVA_OPTS);
+            if (StringUtils.isNotBlank(existingScriptJavaOptions)) {
+                scriptJavaOptions = scriptJavaOptions + " " + existingScriptJavaOptions;
+            }
+            intEnvironmentVariables.put(DETECT_JAVA_OPTS, scriptJavaOptions);
+            return detectCommand;
+        }
+
+        List<String> detectCommandWithOptions = new ArrayList<>(detectCommand);
+        detectCommandWithOptions.addAll(1, javaOptions);
+        return detectCommandWithOptions;
+    }
+
+    static List<String> computeJavaOptions(long agentMemoryBytes, int agentProcessors, int concurrentProcesses) {
+        List<String> javaOptions = new ArrayList<>();
+
+        if (agentMemoryBytes > 0) {
+            long heapMegabytes = agentMemoryBytes / concurrentProcesses * HEAP_SHARE_PERCENT / 100 / MEGABYTE;
+            heapMegabytes = Math.min(MAXIMUM_HEAP_MEGABYTES, Math.max(MINIMUM_HEAP_MEGABYTES, heapMegabytes));
+            javaOptions.add("-Xmx" + heapMegabytes + "m");
+        }
+
+        int activeProcessors = Math.max(1, agentProcessors / concurrentProcesses);
+        // Detect is a batch process, so throughput matters more than pause times. With one processor the parallel collector only adds overhead.
+        javaOptions.add(activeProcessors > 1 ? "-XX:+UseParallelGC" : "-XX:+UseSerialGC");
+        javaOptions.add("-XX:ActiveProcessorCount=" + activeProcessors);
+
+        return javaOptions;
+    }
+
+    private static boolean isSetBy(String computedOption, List<String> javaOptions) {
+        for (String javaOption : javaOptions) {
+            if (isHeapOption(computedOption) && isHeapOption(javaOption)) {
+                return true;
+            } else if (isGarbageCollectorOption(computedOption) && isGarbageCollectorOption(javaOption)) {
+                return true;
+            } else if (computedOption.startsWith("-XX:ActiveProcessorCount=") && javaOption.startsWith("-XX:ActiveProcessorCount=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHeapOption(String javaOption) {
+        return javaOption.startsWith("-Xmx") || javaOption.startsWith("-XX:MaxHeapSize=") || javaOption.startsWith("-XX:MaxRAMPercentage=")
+            || javaOption.startsWith("-XX:MaxRAMFraction=");
+    }
+
+    private static boolean isGarbageCollectorOption(String javaOption) {
+        return javaOption.startsWith("-XX:+Use") && javaOption.endsWith("GC");
+    }
+
+    private static List<String> splitOptions(String javaOptions) {
+        if (StringUtils.isBlank(javaOptions)) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(StringUtils.split(javaOptions.trim()));
+    }
+
+}
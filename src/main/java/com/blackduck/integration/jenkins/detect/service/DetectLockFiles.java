@@ -0,0 +1,113 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lock files in an agent cache directory, which work across agent JVMs and survive an agent reconnect while Detect keeps running. Creating a lock file is what takes
+ * a lock, and only one run can create it. A lock file is only ever deleted under the directory's guard lock, both by its owner and by a run taking over a stale one,
+ * so a run can't check that a lock is stale and then delete a lock another run has just taken.
+ */
+public class DetectLockFiles {
+    public static final String GUARD_LOCK = "guard.lock";
+
+    // A JVM can't hold two locks on the guard file at once, so its threads take turns before locking it.
+    private static final Object GUARD_MONITOR = new Object();
+
+    private final Path lockDirectory;
+    private final long staleMillis;
+
+    public DetectLockFiles(Path lockDirectory, long staleMillis) {
+        this.lockDirectory = lockDirectory;
+        this.staleMillis = staleMillis;
+    }
+
+    /**
+     * Takes a lock for its owner without waiting, taking it over if the run that held it ended without giving it up, e.g. because the agent went away.
+     */
+    public boolean tryLock(Path lock, String owner) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.write(Files.createFile(lock), owner.getBytes(StandardCharsets.UTF_8));
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                if (!withGuard(() -> deleteIfStale(lock))) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void unlock(Path lock, String owner) throws IOException {
+        withGuard(() -> isHeldBy(lock, owner) && Files.deleteIfExists(lock));
+    }
+
+    public boolean isLocked(Path lock) throws IOException {
+        return Files.exists(lock) && !isStale(lock);
+    }
+
+    public boolean isHeldBy(Path lock, String owner) throws IOException {
+        try {
+            return owner.equals(new String(Files.readAllBytes(lock), StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    public boolean isStale(Path path) throws IOException {
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() > staleMillis;
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Only to be called under the guard lock. True if the lock is gone, so it can be tried again.
+     */
+    public boolean deleteIfStale(Path lock) throws IOException {
+        try {
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(lock).toMillis() <= staleMillis) {
+                return false;
+            }
+        } catch (NoSuchFileException e) {
+            // Given up meanwhile. Taking it needs no delete, which could hit a lock another run has just taken.
+            return true;
+        }
+        Files.delete(lock);
+        return true;
+    }
+
+    /**
+     * Runs an action that deletes lock files while holding an OS lock on the guard file, which the OS gives up if the JVM dies.
+     */
+    public <T> T withGuard(GuardedAction<T> guardedAction) throws IOException {
+        synchronized (GUARD_MONITOR) {
+            Files.createDirectories(lockDirectory);
+            try (FileChannel guardChannel = FileChannel.open(lockDirectory.resolve(GUARD_LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock ignored = guardChannel.lock()) {
+                return guardedAction.run();
+            }
+        }
+    }
+
+    public interface GuardedAction<T> {
+        T run() throws IOException;
+    }
+
+}
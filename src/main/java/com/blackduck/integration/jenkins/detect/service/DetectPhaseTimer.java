@@ -0,0 +1,79 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Records how long each phase of a Detect run took, in the order the phases ran. Each phase ends when the next one starts.
+ */
+public class DetectPhaseTimer {
+    public static final String ENVIRONMENT = "environment";
+    public static final String STRATEGY = "strategy";
+    public static final String AGENT_BOOTSTRAP = "agent bootstrap";
+    public static final String AGENT_SETUP = "agent-side setup";
+    public static final String ARGUMENTS = "arguments";
+    public static final String FINGERPRINT = "fingerprint";
+    public static final String QUEUE = "queue";
+    public static final String DETECT = "detect";
+
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    private final List<PhaseListener> phaseListeners = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private long phaseStartNanos = startNanos;
+
+    public void addPhaseListener(PhaseListener phaseListener) {
+        phaseListeners.add(phaseListener);
+    }
+
+    public void endPhase(String phaseName) {
+        long nowNanos = System.nanoTime();
+        recordPhase(phaseName, TimeUnit.NANOSECONDS.toMillis(nowNanos - phaseStartNanos));
+        for (PhaseListener phaseListener : phaseListeners) {
+            phaseListener.phaseEnded(phaseName, phaseStartNanos, nowNanos);
+        }
+        phaseStartNanos = nowNanos;
+    }
+
+    public void recordPhase(String phaseName, long millis) {
+        phaseMillis.merge(phaseName, millis, Long::sum);
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public Map<String, Long> getPhaseMillis() {
+        return Collections.unmodifiableMap(phaseMillis);
+    }
+
+    // Recorded phases can overlap (agent-side setup happens during the agent bootstrap round trip), so the total is measured rather than summed.
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public String getBreakdown() {
+        return phaseMillis.entrySet().stream()
+            .map(phase -> String.format("%s %d ms", phase.getKey(), phase.getValue()))
+            .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Notified as each phase ends, with the {@link System#nanoTime()} readings the phase started and ended at.
+     */
+    public interface PhaseListener {
+        void phaseEnded(String phaseName, long startNanos, long endNanos);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service;
+
+import com.blackduck.integration.jenkins.detect.service.metrics.DetectMetrics;
+import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Controller-wide cache of resolved Black Duck API tokens and per-host proxy decisions. Credentials lookups walk every credentials store, so builds reuse a resolved value until it
+ * expires, is evicted, or the proxy or system credentials configuration is saved (see DetectResolutionCacheListener). Each cache counts its own hits and misses, which are
+ * also published through {@link DetectMetrics}.
+ */
+public class DetectResolutionCache {
+    public static final int MAXIMUM_ENTRIES = 256;
+    public static final long TTL_MINUTES = 10;
+
+    public static final String PROXY_INFO_CACHE = "proxyInfo";
+    public static final String API_TOKEN_CACHE = "apiToken";
+
+    private static final ExpiringLruCache<String, ProxyInfo> PROXY_INFOS = new ExpiringLruCache<>(PROXY_INFO_CACHE);
+    private static final ExpiringLruCache<String, Optional<String>> API_TOKENS = new ExpiringLruCache<>(API_TOKEN_CACHE);
+
+    private DetectResolutionCache() {
+    }
+
+    public static ProxyInfo getProxyInfo(JenkinsProxyHelper jenkinsProxyHelper, String url) {
+        String host;
+        try {
+            host = new URL(url).getHost().toLowerCase(Locale.ROOT);
+        } catch (MalformedURLException e) {
+            // Let the proxy helper report the bad URL the way it always has.
+            return jenkinsProxyHelper.getProxyInfo(url);
+        }
+
+        // Jenkins decides whether to use the proxy by host, so every URL on the same host shares an entry.
+        return getOrResolve(PROXY_INFOS, host, () -> jenkinsProxyHelper.getProxyInfo(url));
+    }
+
+    public static Optional<String> getApiToken(BlackduckCredentialsHelper blackduckCredentialsHelper, String credentialsId) {
+        if (StringUtils.isBlank(credentialsId)) {
+            return blackduckCredentialsHelper.getApiTokenByCredentialsId(credentialsId);
+        }
+        return getOrResolve(API_TOKENS, credentialsId, () -> blackduckCredentialsHelper.getApiTokenByCredentialsId(credentialsId));
+    }
+
+    public static void invalidateProxyInfos() {
+        PROXY_INFOS.clear();
+    }
+
+    public static void invalidateApiTokens() {
+        API_TOKENS.clear();
+    }
+
+    public static long getProxyInfoHitCount() {
+        return PROXY_INFOS.hits.get();
+    }
+
+    public static long getProxyInfoMissCount() {
+        return PROXY_INFOS.misses.get();
+    }
+
+    public static long getApiTokenHitCount() {
+        return API_TOKENS.hits.get();
+    }
+
+    public static long getApiTokenMissCount() {
+        return API_TOKENS.misses.get();
+    }
+
+    private static <V> V getOrResolve(ExpiringLruCache<String, V> cache, String key, Supplier<V> resolver) {
+        V cachedValue = cache.get(key);
+        if (null != cachedValue) {
+            cache.hits.incrementAndGet();
+            DetectMetrics.resolutionCacheLookup(cache.name, true);
+            return cachedValue;
+        }
+
+        // Resolved outside the cache lock, so a slow credentials lookup doesn't hold up builds resolving other keys.
+        cache.misses.incrementAndGet();
+        DetectMetrics.resolutionCacheLookup(cache.name, false);
+        V resolvedValue = resolver.get();
+        if (null != resolvedValue) {
+            cache.put(key, resolvedValue);
+        }
+        return resolvedValue;
+    }
+
+    private static final class ExpiringLruCache<K, V> {
+        private final String name;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final long ttlNanos = TimeUnit.MINUTES.toNanos(TTL_MINUTES);
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > MAXIMUM_ENTRIES;
+            }
+        };
+
+        private ExpiringLruCache(String name) {
+            this.name = name;
+        }
+
+        private synchronized V get(K key) {
+            Entry<V> entry = entries.get(key);
+            if (null == entry) {
+                return null;
+            }
+            if (System.nanoTime() - entry.createdAt >= ttlNanos) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(K key, V value) {
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+            removeExpired();
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private void removeExpired() {
+            long now = System.nanoTime();
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().createdAt >= ttlNanos) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long createdAt;
+
+        private Entry(V value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+/**
+ * What a Detect run would scan: a digest of the dependency manifests and the resolved Detect arguments, stored under the project and version the run reports to.
+ */
+public class DetectFingerprint {
+    private final String key;
+    private final String value;
+
+    public DetectFingerprint(String key, String value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import com.blackduck.integration.blackduck.configuration.BlackDuckServerConfigBuilder;
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.detect.service.DetectJavaOptionsService;
+import com.blackduck.integration.jenkins.detect.service.strategy.RemoteJavaService;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsRemotingService;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import hudson.Util;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Decides whether a Detect run can be skipped because nothing it would scan has changed since the last successful run of the same project and version on the same
+ * Black Duck server.
+ */
+public class DetectFingerprintService {
+    private static final String PROJECT_NAME_ARGUMENT = "--detect.project.name=";
+    private static final String PROJECT_VERSION_ARGUMENT = "--detect.project.version.name=";
+    private static final String SOURCE_PATH_ARGUMENT = "--detect.source.path=";
+    // Passed through to phone home only, so a plugin or Jenkins upgrade doesn't force every project to scan again.
+    private static final String PHONE_HOME_ARGUMENT = "--detect.phone.home.passthrough.";
+    private static final String BLACKDUCK_URL_ARGUMENT = "--blackduck.url=";
+    // Detect reads its properties from the environment as well, e.g. DETECT_PROJECT_NAME or BLACKDUCK_URL.
+    private static final List<String> DETECT_VARIABLE_PREFIXES = Arrays.asList("DETECT_", "BLACKDUCK_");
+    // Set by the plugin for the agent it runs on, or only choosing how Detect is fetched and started, so they don't change what is scanned.
+    private static final Set<String> IGNORED_VARIABLES = new HashSet<>(Arrays.asList(
+        DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue(),
+        DetectJenkinsEnvironmentVariable.SCRIPT_JAR_SOURCE.stringValue(),
+        DetectJavaOptionsService.DETECT_JAVA_OPTS,
+        RemoteJavaService.DETECT_JAVA_PATH,
+        DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH
+    ));
+    private static final String PLUGIN_VARIABLE_PREFIX = "DETECT_PLUGIN_";
+
+    private final JenkinsIntLogger logger;
+    private final JenkinsRemotingService remotingService;
+    private final DetectFingerprintStore detectFingerprintStore;
+    private final String workspacePath;
+    private final String jobName;
+
+    public DetectFingerprintService(
+        JenkinsIntLogger logger,
+        JenkinsRemotingService remotingService,
+        DetectFingerprintStore detectFingerprintStore,
+        String workspacePath,
+        String jobName
+    ) {
+        this.logger = logger;
+        this.remotingService = remotingService;
+        this.detectFingerprintStore = detectFingerprintStore;
+        this.workspacePath = workspacePath;
+        this.jobName = jobName;
+    }
+
+    /**
+     * Fingerprints the workspace's dependency manifests on the agent together with the Black Duck server, the Detect properties in the environment and the Detect
+     * arguments of each command. Returns null if the manifests could not be read, in which case the run scans as usual.
+     */
+    @Nullable
+    public DetectFingerprint fingerprint(IntEnvironmentVariables intEnvironmentVariables, Collection<List<String>> detectCommands) throws InterruptedException {
+        DetectManifestDigest detectManifestDigest;
+        try {
+            detectManifestDigest = remotingService.call(new DetectManifestDigestCallable(workspacePath));
+        } catch (IOException e) {
+            logger.warn("Could not fingerprint the dependency manifests, so Detect will run: " + e.getMessage());
+            return null;
+        }
+
+        MessageDigest fingerprintDigest = DetectManifestDigestCallable.createDigest();
+        fingerprintDigest.update(detectManifestDigest.getDigest().getBytes(StandardCharsets.UTF_8));
+        // Sorted, so the order variables were set in doesn't matter. Credentials are left out, so rotating them doesn't force a scan.
+        Map<String, String> detectVariables = new TreeMap<>();
+        intEnvironmentVariables.getVariables().forEach((name, value) -> {
+            if (isDetectVariable(name)) {
+                detectVariables.put(name, value);
+            }
+        });
+        detectVariables.forEach((name, value) -> {
+            fingerprintDigest.update((name + "=" + value).getBytes(StandardCharsets.UTF_8));
+            fingerprintDigest.update((byte) '\n');
+        });
+
+        String environmentServerUrl = intEnvironmentVariables.getValue(BlackDuckServerConfigBuilder.URL_KEY.getKey());
+        Set<String> keys = new TreeSet<>();
+        for (List<String> detectCommand : detectCommands) {
+            fingerprintDigest.update((byte) '\0');
+            for (String argument : detectCommand) {
+                // Only Detect's own arguments count; the Java or script path before them varies with the workspace and the agent.
+                if (argument.startsWith("--") && !argument.startsWith(PHONE_HOME_ARGUMENT)) {
+                    fingerprintDigest.update(argument.getBytes(StandardCharsets.UTF_8));
+                    fingerprintDigest.update((byte) '\n');
+                }
+            }
+            String serverUrl = getServerUrl(detectCommand, environmentServerUrl);
+            fingerprintDigest.update(serverUrl.getBytes(StandardCharsets.UTF_8));
+            keys.add(getKey(detectCommand, serverUrl));
+        }
+
+        DetectFingerprint detectFingerprint = new DetectFingerprint(String.join(", ", keys), Util.toHexString(fingerprintDigest.digest()));
+        logger.info(String.format("Fingerprinted %d dependency manifests for %s", detectManifestDigest.getManifestCount(), detectFingerprint.getKey()));
+        return detectFingerprint;
+    }
+
+    /**
+     * Returns the build that last scanned the same fingerprint successfully, or null if the run has to scan.
+     */
+    @Nullable
+    public String findUnchangedSince(DetectFingerprint detectFingerprint) {
+        DetectFingerprintStore.Entry entry = detectFingerprintStore.get(detectFingerprint.getKey());
+        if (null == entry || !entry.getFingerprint().equals(detectFingerprint.getValue())) {
+            return null;
+        }
+        return StringUtils.defaultString(entry.getBuildId(), "an earlier build");
+    }
+
+    public void recordSuccess(DetectFingerprint detectFingerprint, @Nullable String buildId) {
+        try {
+            detectFingerprintStore.record(detectFingerprint.getKey(), detectFingerprint.getValue(), buildId);
+        } catch (IOException e) {
+            // The fingerprint only saves a later scan, so failing to store it must not fail the build.
+            logger.warn("Could not save the Detect scan fingerprint: " + e.getMessage());
+        }
+    }
+
+    private static boolean isDetectVariable(String name) {
+        if (IGNORED_VARIABLES.contains(name) || name.startsWith(PLUGIN_VARIABLE_PREFIX) || name.contains("PASSWORD") || name.contains("TOKEN")) {
+            return false;
+        }
+        return DETECT_VARIABLE_PREFIXES.stream().anyMatch(name::startsWith);
+    }
+
+    // An argument takes precedence over the environment in Detect, so the same applies here.
+    private static String getServerUrl(List<String> detectCommand, @Nullable String environmentServerUrl) {
+        String serverUrl = environmentServerUrl;
+        for (String argument : detectCommand) {
+            if (argument.startsWith(BLACKDUCK_URL_ARGUMENT)) {
+                serverUrl = argument.substring(BLACKDUCK_URL_ARGUMENT.length());
+            }
+        }
+        return StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/").toLowerCase(Locale.ROOT);
+    }
+
+    // Without a project name Detect names the project after the source, so the job and the source path stand in for it.
+    private String getKey(List<String> detectCommand, String serverUrl) {
+        String projectKey = getProjectKey(detectCommand);
+        return serverUrl.isEmpty() ? projectKey : projectKey + " on " + serverUrl;
+    }
+
+    private String getProjectKey(List<String> detectCommand) {
+        String projectName = null;
+        String projectVersion = null;
+        String sourcePath = null;
+        for (String argument : detectCommand) {
+            if (argument.startsWith(PROJECT_NAME_ARGUMENT)) {
+                projectName = argument.substring(PROJECT_NAME_ARGUMENT.length());
+            } else if (argument.startsWith(PROJECT_VERSION_ARGUMENT)) {
+                projectVersion = argument.substring(PROJECT_VERSION_ARGUMENT.length());
+            } else if (argument.startsWith(SOURCE_PATH_ARGUMENT)) {
+                sourcePath = argument.substring(SOURCE_PATH_ARGUMENT.length());
+            }
+        }
+        if (null == projectName) {
+            return null == sourcePath ? jobName : jobName + ":" + sourcePath;
+        }
+        return null == projectVersion ? projectName : projectName + "/" + projectVersion;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The fingerprint of the last successful Detect run of each project and version, saved in the controller's home directory so skips survive a restart.
+ * <p>
+ * The whole file is written on every successful run, so fingerprints not recorded for {@link #MAX_AGE_DAYS} days are dropped, and only the
+ * {@link #MAX_ENTRIES} most recently recorded ones are kept. A dropped fingerprint only means the next run of its project scans again.
+ */
+public class DetectFingerprintStore {
+    public static final int MAX_ENTRIES = 1000;
+    public static final long MAX_AGE_DAYS = 90;
+
+    private static final Logger LOGGER = Logger.getLogger(DetectFingerprintStore.class.getName());
+    private static DetectFingerprintStore controllerStore;
+
+    private final transient XmlFile xmlFile;
+    private final transient int maxEntries;
+    private final transient long maxAgeMillis;
+    private Map<String, Entry> entries = new HashMap<>();
+
+    DetectFingerprintStore(File file) {
+        this(file, MAX_ENTRIES, TimeUnit.DAYS.toMillis(MAX_AGE_DAYS));
+    }
+
+    DetectFingerprintStore(File file, int maxEntries, long maxAgeMillis) {
+        this.xmlFile = new XmlFile(file);
+        this.maxEntries = maxEntries;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public static synchronized DetectFingerprintStore getControllerStore() {
+        if (null == controllerStore) {
+            controllerStore = new DetectFingerprintStore(new File(Jenkins.get().getRootDir(), DetectFingerprintStore.class.getName() + ".xml"));
+            controllerStore.load();
+        }
+        return controllerStore;
+    }
+
+    synchronized void load() {
+        if (!xmlFile.exists()) {
+            return;
+        }
+        try {
+            xmlFile.unmarshal(this);
+        } catch (IOException e) {
+            // Losing the fingerprints only means the next run of each project scans again.
+            LOGGER.log(Level.WARNING, "Could not load the Detect scan fingerprints from " + xmlFile, e);
+        }
+        prune(System.currentTimeMillis());
+    }
+
+    @Nullable
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void record(String key, String fingerprint, @Nullable String buildId) throws IOException {
+        long nowMillis = System.currentTimeMillis();
+        entries.put(key, new Entry(fingerprint, buildId, nowMillis));
+        prune(nowMillis);
+        xmlFile.write(this);
+    }
+
+    private void prune(long nowMillis) {
+        entries.values().removeIf(entry -> nowMillis - entry.getRecordedMillis() > maxAgeMillis);
+        int excessEntries = entries.size() - maxEntries;
+        if (excessEntries > 0) {
+            entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(mapEntry -> mapEntry.getValue().getRecordedMillis()))
+                .limit(excessEntries)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList())
+                .forEach(entries::remove);
+        }
+    }
+
+    public static class Entry {
+        private final String fingerprint;
+        @Nullable
+        private final String buildId;
+        private final long recordedMillis;
+
+        public Entry(String fingerprint, @Nullable String buildId, long recordedMillis) {
+            this.fingerprint = fingerprint;
+            this.buildId = buildId;
+            this.recordedMillis = recordedMillis;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * The build that ran the scan, as a {@link hudson.model.Run#getExternalizableId() externalizable id}.
+         */
+        @Nullable
+        public String getBuildId() {
+            return buildId;
+        }
+
+        public long getRecordedMillis() {
+            return recordedMillis;
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import java.io.Serializable;
+
+public class DetectManifestDigest implements Serializable {
+    private static final long serialVersionUID = 5126387740923351846L;
+    private final String digest;
+    private final int manifestCount;
+
+    public DetectManifestDigest(String digest, int manifestCount) {
+        this.digest = digest;
+        this.manifestCount = manifestCount;
+    }
+
+    /**
+     * A SHA-256 digest over the relative path and content digest of every manifest found, in path order.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    public int getManifestCount() {
+        return manifestCount;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import hudson.Util;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Digests the package manager manifests and lockfiles under a directory on the agent. The files are found in one walk of the tree and then hashed in parallel, since
+ * reading them is most of the work.
+ */
+public class DetectManifestDigestCallable extends MasterToSlaveCallable<DetectManifestDigest, IOException> {
+    private static final long serialVersionUID = -2410739104981342776L;
+
+    static final Set<String> MANIFEST_NAMES = new HashSet<>(Arrays.asList(
+        "pom.xml",
+        "build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts", "gradle.lockfile", "libs.versions.toml",
+        "package.json", "package-lock.json", "npm-shrinkwrap.json", "yarn.lock", "pnpm-lock.yaml",
+        "go.mod", "go.sum", "Gopkg.lock", "vendor.json",
+        "requirements.txt", "Pipfile", "Pipfile.lock", "poetry.lock", "pyproject.toml", "setup.py", "setup.cfg",
+        "Gemfile", "Gemfile.lock",
+        "Cargo.toml", "Cargo.lock",
+        "composer.json", "composer.lock",
+        "packages.config", "packages.lock.json", "project.assets.json", "Directory.Packages.props",
+        "Podfile", "Podfile.lock", "Package.swift", "Package.resolved", "Cartfile", "Cartfile.resolved",
+        "build.sbt", "mix.exs", "mix.lock", "rebar.config", "pubspec.yaml", "pubspec.lock",
+        "conanfile.txt", "conanfile.py", "conan.lock", "ivy.xml", "build.xml", "WORKSPACE", "MODULE.bazel", "cpanfile", "DESCRIPTION", "renv.lock"
+    ));
+    static final Set<String> MANIFEST_EXTENSIONS = new HashSet<>(Arrays.asList(".csproj", ".fsproj", ".vbproj", ".sln", ".gemspec", ".cabal"));
+    // The directories Detect excludes from its own search by default.
+    static final Set<String> EXCLUDED_DIRECTORIES = new HashSet<>(Arrays.asList("bin", "build", ".git", ".gradle", "node_modules", "out", "packages", "target"));
+
+    private final String sourcePath;
+
+    public DetectManifestDigestCallable(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+
+    @Override
+    public DetectManifestDigest call() throws IOException {
+        Path sourceDirectory = Paths.get(sourcePath);
+        List<Path> manifests = findManifests(sourceDirectory);
+
+        List<String> manifestDigests;
+        try {
+            manifestDigests = manifests.parallelStream()
+                .map(manifest -> toRelativePath(sourceDirectory, manifest) + '\0' + digestFile(manifest))
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        MessageDigest combinedDigest = createDigest();
+        for (String manifestDigest : manifestDigests) {
+            combinedDigest.update(manifestDigest.getBytes(StandardCharsets.UTF_8));
+            combinedDigest.update((byte) '\n');
+        }
+        return new DetectManifestDigest(Util.toHexString(combinedDigest.digest()), manifestDigests.size());
+    }
+
+    static boolean isManifest(String fileName) {
+        if (MANIFEST_NAMES.contains(fileName)) {
+            return true;
+        }
+        int extensionIndex = fileName.lastIndexOf('.');
+        return extensionIndex > 0 && MANIFEST_EXTENSIONS.contains(fileName.substring(extensionIndex));
+    }
+
+    private List<Path> findManifests(Path sourceDirectory) throws IOException {
+        List<Path> manifests = new ArrayList<>();
+        if (!Files.isDirectory(sourceDirectory)) {
+            return manifests;
+        }
+        Files.walkFileTree(sourceDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                Path directoryName = directory.getFileName();
+                if (!directory.equals(sourceDirectory) && null != directoryName && EXCLUDED_DIRECTORIES.contains(directoryName.toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && isManifest(file.getFileName().toString())) {
+                    manifests.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // An unreadable file can't be a manifest Detect reads either.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return manifests;
+    }
+
+    private static String toRelativePath(Path sourceDirectory, Path manifest) {
+        return sourceDirectory.relativize(manifest).toString().replace(File.separatorChar, '/');
+    }
+
+    private static String digestFile(Path file) {
+        MessageDigest fileDigest = createDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                fileDigest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Util.toHexString(fileDigest.digest());
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
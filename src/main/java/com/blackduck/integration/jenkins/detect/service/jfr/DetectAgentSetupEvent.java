@@ -0,0 +1,50 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Committed on the agent, so it appears in recordings of the agent JVM rather than the controller's. Only create it after checking
+ * {@link DetectFlightRecorder#isAvailable()}.
+ */
+@Name(DetectFlightRecorder.EVENT_PREFIX + "AgentSetup")
+@Label("Detect Agent-side Setup")
+@Description("Running a strategy's setup callable on the agent")
+@Category(DetectFlightRecorder.CATEGORY)
+@StackTrace(false)
+public class DetectAgentSetupEvent extends Event {
+    @Label("Setup Type")
+    private String setupType;
+
+    @Label("Script Downloads")
+    private long scriptDownloads;
+
+    @Label("Bytes Transferred")
+    @DataAmount
+    private long bytesTransferred;
+
+    public DetectAgentSetupEvent(String setupType) {
+        this.setupType = setupType;
+    }
+
+    public void setScriptDownloads(long scriptDownloads) {
+        this.scriptDownloads = scriptDownloads;
+    }
+
+    public void setBytesTransferred(long bytesTransferred) {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(DetectFlightRecorder.EVENT_PREFIX + "Arguments")
+@Label("Detect Argument Construction")
+@Description("Parsing, expanding and escaping the Detect properties into a command line")
+@Category(DetectFlightRecorder.CATEGORY)
+@StackTrace(false)
+public class DetectArgumentsEvent extends Event {
+    @Label("Argument Count")
+    private int argumentCount;
+
+    public void setArgumentCount(int argumentCount) {
+        this.argumentCount = argumentCount;
+    }
+
+}
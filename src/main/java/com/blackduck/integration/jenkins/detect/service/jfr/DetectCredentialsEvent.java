@@ -0,0 +1,30 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(DetectFlightRecorder.EVENT_PREFIX + "CredentialsLookup")
+@Label("Detect Credentials Lookup")
+@Description("Resolving the Black Duck credentials and proxy settings passed to Detect")
+@Category(DetectFlightRecorder.CATEGORY)
+@StackTrace(false)
+public class DetectCredentialsEvent extends Event {
+    @Label("Property Count")
+    private int propertyCount;
+
+    public void setPropertyCount(int propertyCount) {
+        this.propertyCount = propertyCount;
+    }
+
+}
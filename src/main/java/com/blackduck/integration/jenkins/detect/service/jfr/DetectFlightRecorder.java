@@ -0,0 +1,39 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+/**
+ * Names shared by the plugin's Java Flight Recorder events, and a check for whether the running JVM includes JFR.
+ * <p>
+ * The plugin still supports Java 8, and neither the controller nor an agent is guaranteed a JVM with JFR. Code must call {@link #isAvailable()} before creating an
+ * event, because loading an event class on a JVM without JFR fails.
+ */
+public final class DetectFlightRecorder {
+    public static final String CATEGORY = "Black Duck Detect";
+    public static final String EVENT_PREFIX = "com.blackduck.detect.";
+
+    private static final boolean AVAILABLE = determineAvailability();
+
+    private DetectFlightRecorder() {
+        // Static utility, no instances
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean determineAvailability() {
+        try {
+            Class.forName("jdk.jfr.Event", false, DetectFlightRecorder.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+}
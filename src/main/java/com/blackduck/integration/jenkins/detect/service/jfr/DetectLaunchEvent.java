@@ -0,0 +1,46 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(DetectFlightRecorder.EVENT_PREFIX + "Launch")
+@Label("Detect Process")
+@Description("From launching the Detect process on the agent until it exits")
+@Category(DetectFlightRecorder.CATEGORY)
+@StackTrace(false)
+public class DetectLaunchEvent extends Event {
+    @Label("Strategy Type")
+    private String strategyType;
+
+    @Label("Node Name")
+    private String nodeName;
+
+    @Label("Completed")
+    @Description("False if the launch failed or was interrupted before Detect exited")
+    private boolean completed;
+
+    @Label("Exit Code")
+    private int exitCode;
+
+    public DetectLaunchEvent(String strategyType, String nodeName) {
+        this.strategyType = strategyType;
+        this.nodeName = nodeName;
+    }
+
+    public void setExitCode(int exitCode) {
+        this.completed = true;
+        this.exitCode = exitCode;
+    }
+
+}
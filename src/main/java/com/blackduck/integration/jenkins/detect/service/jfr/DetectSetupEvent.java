@@ -0,0 +1,59 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name(DetectFlightRecorder.EVENT_PREFIX + "Setup")
+@Label("Detect Setup")
+@Description("The controller's round trip to the agent that prepares the Detect command")
+@Category(DetectFlightRecorder.CATEGORY)
+@StackTrace(false)
+public class DetectSetupEvent extends Event {
+    @Label("Strategy Type")
+    private String strategyType;
+
+    @Label("Node Name")
+    private String nodeName;
+
+    @Label("Agent-side Setup")
+    @Timespan(Timespan.MILLISECONDS)
+    private long agentSetupMillis;
+
+    @Label("Script Downloads")
+    private long scriptDownloads;
+
+    @Label("Bytes Transferred")
+    @DataAmount
+    private long bytesTransferred;
+
+    public DetectSetupEvent(String strategyType, String nodeName) {
+        this.strategyType = strategyType;
+        this.nodeName = nodeName;
+    }
+
+    public void setAgentSetupMillis(long agentSetupMillis) {
+        this.agentSetupMillis = agentSetupMillis;
+    }
+
+    public void setScriptDownloads(long scriptDownloads) {
+        this.scriptDownloads = scriptDownloads;
+    }
+
+    public void setBytesTransferred(long bytesTransferred) {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+}
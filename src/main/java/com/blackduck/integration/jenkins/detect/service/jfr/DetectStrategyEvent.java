@@ -0,0 +1,37 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(DetectFlightRecorder.EVENT_PREFIX + "StrategyResolution")
+@Label("Detect Strategy Resolution")
+@Description("Choosing how Detect will be downloaded and run")
+@Category(DetectFlightRecorder.CATEGORY)
+@StackTrace(false)
+public class DetectStrategyEvent extends Event {
+    @Label("Download Strategy")
+    private String downloadStrategy;
+
+    @Label("Strategy Type")
+    private String strategyType;
+
+    public DetectStrategyEvent(String downloadStrategy) {
+        this.downloadStrategy = downloadStrategy;
+    }
+
+    public void setStrategyType(String strategyType) {
+        this.strategyType = strategyType;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.metrics;
+
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectClassDataSharing;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.codahale.metrics.MetricRegistry;
+import jenkins.metrics.api.Metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Dropwizard side of {@link DetectMetrics}. Only loaded once the metrics plugin is known to be active.
+ */
+class DetectDropwizardMetrics {
+    static final String PREFIX = "blackduck.detect";
+    static final String RUNS_IN_FLIGHT = MetricRegistry.name(PREFIX, "runs", "inFlight");
+    static final String RUN_DURATION = MetricRegistry.name(PREFIX, "run", "duration");
+    static final String EXIT_CODE = MetricRegistry.name(PREFIX, "exitCode");
+    static final String FAILURES = MetricRegistry.name(PREFIX, "failures");
+    static final String SKIPPED = MetricRegistry.name(PREFIX, "skipped");
+    static final String PROCESS_DURATION = MetricRegistry.name(PREFIX, "process", "duration");
+    static final String SETUP_DURATION = MetricRegistry.name(PREFIX, "setup", "duration");
+    static final String SCRIPT_DOWNLOAD_BYTES = MetricRegistry.name(PREFIX, "scriptDownload", "bytes");
+    static final String SCRIPT_DOWNLOAD_DURATION = MetricRegistry.name(PREFIX, "scriptDownload", "duration");
+    static final String RESOLUTION_CACHE = MetricRegistry.name(PREFIX, "resolutionCache");
+
+    private final MetricRegistry metricRegistry;
+
+    DetectDropwizardMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    static DetectDropwizardMetrics fromJenkins() {
+        return new DetectDropwizardMetrics(Metrics.metricRegistry());
+    }
+
+    void runStarted() {
+        metricRegistry.counter(RUNS_IN_FLIGHT).inc();
+    }
+
+    void runEnded() {
+        metricRegistry.counter(RUNS_IN_FLIGHT).dec();
+    }
+
+    void runFinished(String strategyName, long durationMillis, int exitCode) {
+        metricRegistry.timer(MetricRegistry.name(RUN_DURATION, strategyName)).update(durationMillis, TimeUnit.MILLISECONDS);
+        metricRegistry.counter(MetricRegistry.name(EXIT_CODE, String.valueOf(exitCode))).inc();
+    }
+
+    void runFailed(String strategyName, long durationMillis, Throwable failure) {
+        metricRegistry.timer(MetricRegistry.name(RUN_DURATION, strategyName)).update(durationMillis, TimeUnit.MILLISECONDS);
+        metricRegistry.counter(MetricRegistry.name(FAILURES, failure.getClass().getSimpleName())).inc();
+    }
+
+    void detectFinished(DetectClassDataSharing.Mode classDataSharing, long durationMillis) {
+        String classDataSharingName = classDataSharing.name().toLowerCase(Locale.ROOT);
+        metricRegistry.timer(MetricRegistry.name(PROCESS_DURATION, classDataSharingName)).update(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void runSkipped() {
+        metricRegistry.counter(SKIPPED).inc();
+    }
+
+    void setupCompleted(long setupMillis, DetectScriptDownloads scriptDownloads) {
+        metricRegistry.timer(SETUP_DURATION).update(setupMillis, TimeUnit.MILLISECONDS);
+        if (scriptDownloads.getDownloadCount() > 0) {
+            metricRegistry.histogram(SCRIPT_DOWNLOAD_BYTES).update(scriptDownloads.getDownloadedBytes());
+            metricRegistry.timer(SCRIPT_DOWNLOAD_DURATION).update(scriptDownloads.getDownloadMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void resolutionCacheLookup(String cacheName, boolean hit) {
+        metricRegistry.counter(MetricRegistry.name(RESOLUTION_CACHE, cacheName, hit ? "hits" : "misses")).inc();
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.metrics;
+
+import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.InheritFromGlobalDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectClassDataSharing;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import hudson.PluginWrapper;
+import jenkins.model.Jenkins;
+
+import javax.annotation.Nullable;
+
+/**
+ * Publishes controller-wide Detect run metrics through the Jenkins metrics plugin. The metrics plugin is an optional dependency, so every call is a no-op unless it is
+ * installed and active, and nothing here refers to the Dropwizard classes it provides.
+ */
+public final class DetectMetrics {
+    private static final String METRICS_PLUGIN = "metrics";
+
+    private DetectMetrics() {
+        // Static utility, no instances
+    }
+
+    public static String getStrategyName(@Nullable DetectDownloadStrategy detectDownloadStrategy) {
+        if (null == detectDownloadStrategy) {
+            return InheritFromGlobalDownloadStrategy.class.getSimpleName();
+        }
+        return detectDownloadStrategy.getClass().getSimpleName();
+    }
+
+    public static void runStarted() {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().runStarted();
+        }
+    }
+
+    public static void runEnded() {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().runEnded();
+        }
+    }
+
+    public static void runFinished(String strategyName, long durationMillis, int exitCode) {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().runFinished(strategyName, durationMillis, exitCode);
+        }
+    }
+
+    public static void runFailed(String strategyName, long durationMillis, Throwable failure) {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().runFailed(strategyName, durationMillis, failure);
+        }
+    }
+
+    /**
+     * Records how long the Detect process ran, by whether it started with a class data sharing archive.
+     */
+    public static void detectFinished(DetectClassDataSharing.Mode classDataSharing, long durationMillis) {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().detectFinished(classDataSharing, durationMillis);
+        }
+    }
+
+    public static void runSkipped() {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().runSkipped();
+        }
+    }
+
+    public static void setupCompleted(long setupMillis, DetectScriptDownloads scriptDownloads) {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().setupCompleted(setupMillis, scriptDownloads);
+        }
+    }
+
+    /**
+     * Records a lookup in one of the controller's resolution caches, see DetectResolutionCache.
+     */
+    public static void resolutionCacheLookup(String cacheName, boolean hit) {
+        if (isEnabled()) {
+            DetectDropwizardMetrics.fromJenkins().resolutionCacheLookup(cacheName, hit);
+        }
+    }
+
+    private static boolean isEnabled() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (null == jenkins) {
+            return false;
+        }
+        PluginWrapper metricsPlugin = jenkins.getPluginManager().getPlugin(METRICS_PLUGIN);
+        return null != metricsPlugin && metricsPlugin.isActive();
+    }
+
+}
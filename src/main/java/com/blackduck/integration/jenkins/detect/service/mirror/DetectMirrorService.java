@@ -0,0 +1,200 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.mirror;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectJarCache;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptCache;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptStrategy;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves mirror request paths to artifacts cached on the controller. Only the Detect scripts and Detect jars are served, everything else is rejected. A jar is only
+ * downloaded for the latest version or a version a build pinned, so requests can't make the controller fetch and store arbitrary versions.
+ */
+public class DetectMirrorService {
+    public static final String URL_NAME = "detect-mirror";
+    public static final String MIRROR_CACHE_DIRECTORY = "blackduck-detect-mirror";
+    public static final String LATEST_JAR_PATH = "latest/detect-latest.jar";
+    public static final String LATEST_VERSION_PATH = "api/storage/" + DetectJarCache.DETECT_ARTIFACT_PATH;
+
+    private static final List<String> SCRIPT_FILE_NAMES = Arrays.asList(DetectScriptStrategy.SHELL_SCRIPT_FILENAME, DetectScriptStrategy.POWERSHELL_SCRIPT_FILENAME);
+    private static final Pattern JAR_PATH_PATTERN = Pattern.compile(Pattern.quote(DetectJarCache.DETECT_ARTIFACT_PATH) + "/([0-9A-Za-z][0-9A-Za-z._-]*)/detect-\\1\\.jar(\\.sha256)?");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    // Versions pinned by the managed jar strategy of builds that use the mirror, registered on the controller before their agents ask for them.
+    private static final Set<String> PINNED_VERSIONS = ConcurrentHashMap.newKeySet();
+
+    private final DetectScriptCache detectScriptCache;
+    private final DetectJarCache detectJarCache;
+    private final String scriptBaseUrl;
+
+    public DetectMirrorService(DetectScriptCache detectScriptCache, DetectJarCache detectJarCache, String scriptBaseUrl) {
+        this.detectScriptCache = detectScriptCache;
+        this.detectJarCache = detectJarCache;
+        this.scriptBaseUrl = StringUtils.removeEnd(scriptBaseUrl, "/");
+    }
+
+    public static String getJarPath(String detectVersion) {
+        return String.format("%s/%s/%s", DetectJarCache.DETECT_ARTIFACT_PATH, detectVersion, DetectJarCache.getJarFileName(detectVersion));
+    }
+
+    public static void allowPinnedVersion(String detectVersion) {
+        PINNED_VERSIONS.add(detectVersion);
+    }
+
+    public Optional<MirroredArtifact> getArtifact(String path) throws IntegrationException, IOException {
+        if (SCRIPT_FILE_NAMES.contains(path)) {
+            Path script = detectScriptCache.getScript(scriptBaseUrl + "/" + path, path);
+            return Optional.of(new MirroredArtifact(script, "text/plain", sha256(script)));
+        }
+
+        Matcher jarPathMatcher = JAR_PATH_PATTERN.matcher(path);
+        if (jarPathMatcher.matches() && isServable(jarPathMatcher.group(1))) {
+            Path jar = detectJarCache.getJar(jarPathMatcher.group(1));
+            // The jar cache only keeps a jar once it has been verified, and records the verified checksum next to it.
+            Path verifiedChecksum = jar.resolveSibling(jar.getFileName() + DetectJarCache.CHECKSUM_SUFFIX);
+            if (null != jarPathMatcher.group(2)) {
+                return Optional.of(new MirroredArtifact(verifiedChecksum, "text/plain", sha256(verifiedChecksum)));
+            }
+            String checksum = new String(Files.readAllBytes(verifiedChecksum), StandardCharsets.UTF_8).trim();
+            return Optional.of(new MirroredArtifact(jar, "application/java-archive", checksum));
+        }
+
+        return Optional.empty();
+    }
+
+    public String resolveLatestVersion() throws IntegrationException, IOException {
+        return detectJarCache.resolveLatestVersion();
+    }
+
+    public String getLatestVersionJson(String mirrorUrl) throws IntegrationException, IOException {
+        JsonArray latestValues = new JsonArray();
+        latestValues.add(mirrorUrl + getJarPath(resolveLatestVersion()));
+
+        JsonObject properties = new JsonObject();
+        properties.add(DetectJarCache.LATEST_VERSION_PROPERTY, latestValues);
+
+        JsonObject storageInfo = new JsonObject();
+        storageInfo.add("properties", properties);
+        return storageInfo.toString();
+    }
+
+    /**
+     * Only a single byte range is supported. Anything else is ignored, which per RFC 7233 means the full artifact is served.
+     */
+    public static Optional<ByteRange> parseRange(String rangeHeader, long length) {
+        Matcher rangeMatcher = RANGE_PATTERN.matcher(StringUtils.trimToEmpty(rangeHeader));
+        if (!rangeMatcher.matches() || StringUtils.isAllBlank(rangeMatcher.group(1), rangeMatcher.group(2))) {
+            return Optional.empty();
+        }
+
+        long start;
+        long end;
+        if (StringUtils.isBlank(rangeMatcher.group(1))) {
+            long suffixLength = NumberUtils.toLong(rangeMatcher.group(2), 0L);
+            // A zero-length suffix ("bytes=-0") can never be satisfied.
+            start = (suffixLength == 0) ? length : Math.max(0, length - suffixLength);
+            end = length - 1;
+        } else {
+            start = NumberUtils.toLong(rangeMatcher.group(1), Long.MAX_VALUE);
+            end = StringUtils.isBlank(rangeMatcher.group(2)) ? length - 1 : Math.min(length - 1, NumberUtils.toLong(rangeMatcher.group(2), Long.MAX_VALUE));
+        }
+
+        return Optional.of(new ByteRange(start, end, length));
+    }
+
+    private boolean isServable(String detectVersion) {
+        if (PINNED_VERSIONS.contains(detectVersion) || detectJarCache.isCached(detectVersion)) {
+            return true;
+        }
+        try {
+            return detectVersion.equals(resolveLatestVersion());
+        } catch (IntegrationException | IOException e) {
+            return false;
+        }
+    }
+
+    private String sha256(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return DigestUtils.sha256Hex(inputStream);
+        }
+    }
+
+    public static class MirroredArtifact {
+        private final Path path;
+        private final String contentType;
+        private final String sha256;
+
+        public MirroredArtifact(Path path, String contentType, String sha256) {
+            this.path = path;
+            this.contentType = contentType;
+            this.sha256 = sha256;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+
+    public static class ByteRange {
+        private final long start;
+        private final long end;
+        private final long totalLength;
+
+        public ByteRange(long start, long end, long totalLength) {
+            this.start = start;
+            this.end = end;
+            this.totalLength = totalLength;
+        }
+
+        public boolean isSatisfiable() {
+            return start < totalLength && start <= end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getLength() {
+            return end - start + 1;
+        }
+
+        public String toContentRange() {
+            if (!isSatisfiable()) {
+                return String.format("bytes */%d", totalLength);
+            }
+            return String.format("bytes %d-%d/%d", start, end, totalLength);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.mirror;
+
+import jenkins.security.HMACConfidentialKey;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * Grants agents access to the controller mirror. Agents have no Jenkins session, so each build gets a token in its mirror URL that is signed with a key only the
+ * controller knows and expires after a day, long enough for any build that was handed it.
+ */
+public class DetectMirrorToken {
+    public static final long TOKEN_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final HMACConfidentialKey MIRROR_KEY = new HMACConfidentialKey(DetectMirrorToken.class, "mirror");
+    private static final String SEPARATOR = "-";
+    private static final Pattern TOKEN_IN_URL = Pattern.compile("/" + DetectMirrorService.URL_NAME + "/\\d+" + SEPARATOR + "[^/]+/");
+    private static final String MASKED_TOKEN_IN_URL = "/" + DetectMirrorService.URL_NAME + "/****/";
+
+    private final UnaryOperator<String> mac;
+
+    public DetectMirrorToken(UnaryOperator<String> mac) {
+        this.mac = mac;
+    }
+
+    public static DetectMirrorToken getControllerToken() {
+        return new DetectMirrorToken(MIRROR_KEY::mac);
+    }
+
+    /**
+     * Replaces the token in a mirror URL, so the URL can be logged and is the same for every build, e.g. to key a cache. Other URLs are returned as they are.
+     */
+    public static String mask(String url) {
+        return TOKEN_IN_URL.matcher(url).replaceFirst(MASKED_TOKEN_IN_URL);
+    }
+
+    public String create(long nowMillis) {
+        String expiresAt = String.valueOf(nowMillis + TOKEN_TTL_MILLIS);
+        return expiresAt + SEPARATOR + mac.apply(expiresAt);
+    }
+
+    public boolean isValid(@Nullable String token, long nowMillis) {
+        String expiresAt = StringUtils.substringBefore(token, SEPARATOR);
+        String signature = StringUtils.substringAfter(token, SEPARATOR);
+        if (StringUtils.isAnyBlank(expiresAt, signature) || NumberUtils.toLong(expiresAt, 0L) < nowMillis) {
+            return false;
+        }
+        return MessageDigest.isEqual(mac.apply(expiresAt).getBytes(StandardCharsets.UTF_8), signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
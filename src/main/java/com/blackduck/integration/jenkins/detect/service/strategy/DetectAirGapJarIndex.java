@@ -0,0 +1,138 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent-wide index of Detect Air Gap installations, keyed by installation directory. A directory is only listed again when its modification time or the modification time of
+ * the selected jar changes, so a build on a shared (e.g. NFS) installation normally costs two stat calls instead of directory listings.
+ */
+public class DetectAirGapJarIndex {
+    // Directories modified this recently are rescanned, because a second change within the file system's timestamp granularity would not change the modification time.
+    private static final long RACY_MODIFICATION_MILLIS = 2000L;
+
+    // One index per agent JVM, so executors on the same agent share both the entries and the counters.
+    private static final ConcurrentMap<String, IndexedJar> INDEXED_JARS = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong SCANS = new AtomicLong();
+
+    private final JenkinsIntLogger logger;
+
+    public DetectAirGapJarIndex(JenkinsIntLogger logger) {
+        this.logger = logger;
+    }
+
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    public static long getScanCount() {
+        return SCANS.get();
+    }
+
+    public String getAirGapJar(String airGapBaseDir) throws DetectJenkinsException {
+        File airGapDirectory = new File(airGapBaseDir);
+        long directoryLastModified = airGapDirectory.lastModified();
+
+        IndexedJar indexedJar = INDEXED_JARS.get(airGapBaseDir);
+        if (null != indexedJar && indexedJar.isCurrent(directoryLastModified)) {
+            HITS.incrementAndGet();
+            logger.debug(String.format("Using indexed Detect AirGap jar %s (%d bytes)", indexedJar.getJarPath(), indexedJar.getSize()));
+            return indexedJar.getJarPath();
+        }
+
+        File airGapJar = scan(airGapDirectory, airGapBaseDir);
+        indexedJar = new IndexedJar(airGapJar.toString(), directoryLastModified, airGapJar.lastModified(), airGapJar.length());
+        if (System.currentTimeMillis() - directoryLastModified >= RACY_MODIFICATION_MILLIS) {
+            INDEXED_JARS.put(airGapBaseDir, indexedJar);
+        } else {
+            INDEXED_JARS.remove(airGapBaseDir);
+        }
+        logger.debug(String.format("Indexed Detect AirGap jar %s (%d bytes)", indexedJar.getJarPath(), indexedJar.getSize()));
+
+        return indexedJar.getJarPath();
+    }
+
+    private File scan(File airGapDirectory, String airGapBaseDir) throws DetectJenkinsException {
+        SCANS.incrementAndGet();
+
+        File foundAirGapJar = null;
+        File foundFallbackJar = null;
+        int airGapJarCount = 0;
+        int fallbackJarCount = 0;
+
+        File[] airGapFiles = airGapDirectory.listFiles();
+        if (null != airGapFiles) {
+            for (File airGapFile : airGapFiles) {
+                String fileName = airGapFile.getName();
+                if (!fileName.endsWith(DetectAirGapJarStrategy.DETECT_JAR_SUFFIX)) {
+                    continue;
+                }
+                if (fileName.startsWith(DetectAirGapJarStrategy.DETECT_JAR_PREFIX)) {
+                    foundAirGapJar = airGapFile;
+                    airGapJarCount++;
+                } else if (fileName.startsWith(DetectAirGapJarStrategy.FALLBACK_DETECT_JAR_PREFIX)) {
+                    foundFallbackJar = airGapFile;
+                    fallbackJarCount++;
+                }
+            }
+        }
+
+        if (airGapJarCount > 1 || fallbackJarCount > 1) {
+            throw new DetectJenkinsException(
+                String.format(
+                    "Expected 1 jar from Detect Air Gap tool installation at <%s> and instead found multiple jars. Check your Jenkins plugin and tool configuration.",
+                    airGapBaseDir
+                ));
+        } else if (null != foundAirGapJar) {
+            return foundAirGapJar;
+        } else if (null != foundFallbackJar) {
+            return foundFallbackJar;
+        }
+
+        throw new DetectJenkinsException(String.format(
+            "Expected 1 jar from Detect Air Gap tool installation at <%s> and did not find any. Check your Jenkins plugin and tool configuration.",
+            airGapBaseDir
+        ));
+    }
+
+    private static final class IndexedJar {
+        private final String jarPath;
+        private final long directoryLastModified;
+        private final long jarLastModified;
+        private final long size;
+
+        private IndexedJar(String jarPath, long directoryLastModified, long jarLastModified, long size) {
+            this.jarPath = jarPath;
+            this.directoryLastModified = directoryLastModified;
+            this.jarLastModified = jarLastModified;
+            this.size = size;
+        }
+
+        private boolean isCurrent(long currentDirectoryLastModified) {
+            // A jar replaced in place doesn't change the directory, so the jar itself is checked as well.
+            return 0L != currentDirectoryLastModified && directoryLastModified == currentDirectoryLastModified && jarLastModified == new File(jarPath).lastModified();
+        }
+
+        private String getJarPath() {
+            return jarPath;
+        }
+
+        private long getSize() {
+            return size;
+        }
+
+    }
+}
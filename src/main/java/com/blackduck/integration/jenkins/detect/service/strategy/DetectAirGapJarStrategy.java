@@ -14,10 +14,10 @@ import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
 import com.blackduck.integration.util.IntEnvironmentVariables;
+import com.blackduck.integration.util.OperatingSystemType;
 import jenkins.security.MasterToSlaveCallable;
 
-import java.io.File;
-import java.io.FileFilter;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,6 +34,7 @@ public class DetectAirGapJarStrategy extends DetectExecutionStrategy {
     private final String remoteJdkHome;
     private final JenkinsConfigService jenkinsConfigService;
     private final AirGapDownloadStrategy airGapDownloadStrategy;
+    private final String agentCacheDirectory;
 
     public DetectAirGapJarStrategy(
         JenkinsIntLogger logger,
@@ -41,16 +42,28 @@ public class DetectAirGapJarStrategy extends DetectExecutionStrategy {
         String remoteJdkHome,
         JenkinsConfigService jenkinsConfigService,
         AirGapDownloadStrategy airGapDownloadStrategy
+    ) {
+        this(logger, intEnvironmentVariables, remoteJdkHome, jenkinsConfigService, airGapDownloadStrategy, null);
+    }
+
+    public DetectAirGapJarStrategy(
+        JenkinsIntLogger logger,
+        IntEnvironmentVariables intEnvironmentVariables,
+        String remoteJdkHome,
+        JenkinsConfigService jenkinsConfigService,
+        AirGapDownloadStrategy airGapDownloadStrategy,
+        @Nullable String agentCacheDirectory
     ) {
         this.logger = logger;
         this.intEnvironmentVariables = intEnvironmentVariables;
         this.remoteJdkHome = remoteJdkHome;
         this.jenkinsConfigService = jenkinsConfigService;
         this.airGapDownloadStrategy = airGapDownloadStrategy;
+        this.agentCacheDirectory = agentCacheDirectory;
     }
 
     @Override
-    public Function<String, String> getArgumentEscaper() {
+    public Function<String, String> getArgumentEscaper(OperatingSystemType operatingSystemType) {
         return Function.identity();
     }
 
@@ -82,7 +95,7 @@ public class DetectAirGapJarStrategy extends DetectExecutionStrategy {
             throw new DetectJenkinsException("Detect AirGap installation directory is null. Check Jenkins tool configuration for installation directory.");
         }
 
-        return new SetupCallableImpl(logger, intEnvironmentVariables.getVariables(), remoteJdkHome, airGapBaseDir);
+        return new SetupCallableImpl(logger, intEnvironmentVariables.getVariables(), remoteJdkHome, airGapBaseDir, agentCacheDirectory);
     }
 
     public static class SetupCallableImpl extends MasterToSlaveCallable<ArrayList<String>, IntegrationException> {
@@ -92,55 +105,39 @@ public class DetectAirGapJarStrategy extends DetectExecutionStrategy {
         private final Map<String, String> environmentVariables;
         private final String remoteJdkHome;
         private final String airGapBaseDir;
-
-        public SetupCallableImpl(JenkinsIntLogger logger, Map<String, String> environmentVariables, String remoteJdkHome, String airGapBaseDir) {
+        private final String agentCacheDirectory;
+
+        public SetupCallableImpl(
+            JenkinsIntLogger logger,
+            Map<String, String> environmentVariables,
+            String remoteJdkHome,
+            String airGapBaseDir,
+            @Nullable String agentCacheDirectory
+        ) {
             this.logger = logger;
             this.environmentVariables = environmentVariables;
             this.remoteJdkHome = remoteJdkHome;
             this.airGapBaseDir = airGapBaseDir;
+            this.agentCacheDirectory = agentCacheDirectory;
         }
 
         @Override
         public ArrayList<String> call() throws DetectJenkinsException {
-            String airGapJar = getAirGapJar(airGapBaseDir);
+            String airGapJar = new DetectAirGapJarIndex(logger).getAirGapJar(airGapBaseDir);
             RemoteJavaService remoteJavaService = new RemoteJavaService(logger, remoteJdkHome, environmentVariables);
             String javaExecutablePath = remoteJavaService.getJavaExecutablePath();
 
             logger.info("Detect AirGap jar configured: " + airGapJar);
 
-            return new ArrayList<>(Arrays.asList(javaExecutablePath, "-jar", airGapJar));
-        }
-
-        private String getAirGapJar(String airGapBaseDir) throws DetectJenkinsException {
-            FileFilter fileFilter = file -> file.getName().startsWith(DETECT_JAR_PREFIX) && file.getName().endsWith(DETECT_JAR_SUFFIX);
-            File[] foundAirGapJars = new File(airGapBaseDir).listFiles(fileFilter);
-
-            FileFilter backUpFileFilter = file -> file.getName().startsWith(FALLBACK_DETECT_JAR_PREFIX) && file.getName().endsWith(DETECT_JAR_SUFFIX);
-            File[] foundFallbackJars = new File(airGapBaseDir).listFiles(backUpFileFilter);
-
-            if ((foundAirGapJars == null || foundAirGapJars.length == 0) && (foundFallbackJars == null || foundFallbackJars.length == 0)) {
-                throw new DetectJenkinsException(String.format(
-                        "Expected 1 jar from Detect Air Gap tool installation at <%s> and did not find any. Check your Jenkins plugin and tool configuration.",
-                        airGapBaseDir
-                ));
-            } else if ((foundAirGapJars != null && foundAirGapJars.length > 1) || (foundFallbackJars != null && foundFallbackJars.length > 1)) {
-                throw new DetectJenkinsException(
-                        String.format(
-                                "Expected 1 jar from Detect Air Gap tool installation at <%s> and instead found multiple jars. Check your Jenkins plugin and tool configuration.",
-                                airGapBaseDir
-                        ));
-            } else {
-                if (foundAirGapJars != null && foundAirGapJars.length == 1) {
-                    return foundAirGapJars[0].toString();
-                } else if(foundFallbackJars != null && foundFallbackJars.length == 1) {
-                    return foundFallbackJars[0].toString();
-                } else {
-                    throw new DetectJenkinsException(String.format(
-                            "Expected 1 jar from Detect Air Gap tool installation at <%s> and did not find any. Check your Jenkins plugin and tool configuration.",
-                            airGapBaseDir
-                    ));
-                }
-            }
+            ArrayList<String> detectCommand = new ArrayList<>();
+            detectCommand.add(javaExecutablePath);
+            detectCommand.addAll(new DetectClassDataSharing(logger, environmentVariables, agentCacheDirectory).getJavaOptions(
+                javaExecutablePath,
+                remoteJavaService.getJavaVersion(),
+                airGapJar
+            ));
+            detectCommand.addAll(Arrays.asList("-jar", airGapJar));
+            return detectCommand;
         }
     }
 
@@ -0,0 +1,109 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectAgentSetupEvent;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectFlightRecorder;
+import com.blackduck.integration.util.OperatingSystemType;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a strategy's setup callable and determines the agent's operating system in the same remoting exchange, so a Detect run only needs one round trip to the agent
+ * before it launches.
+ */
+public class DetectBootstrapCallable extends MasterToSlaveCallable<DetectBootstrapResult, IntegrationException> {
+    private static final long serialVersionUID = 6843202557153410286L;
+    private static final List<String> CGROUP_MEMORY_LIMIT_FILES = Arrays.asList("/sys/fs/cgroup/memory.max", "/sys/fs/cgroup/memory/memory.limit_in_bytes");
+    private final MasterToSlaveCallable<ArrayList<String>, IntegrationException> setupCallable;
+
+    public DetectBootstrapCallable(MasterToSlaveCallable<ArrayList<String>, IntegrationException> setupCallable) {
+        this.setupCallable = setupCallable;
+    }
+
+    public MasterToSlaveCallable<ArrayList<String>, IntegrationException> getSetupCallable() {
+        return setupCallable;
+    }
+
+    @Override
+    public DetectBootstrapResult call() throws IntegrationException {
+        if (!DetectFlightRecorder.isAvailable()) {
+            return bootstrap();
+        }
+
+        DetectAgentSetupEvent detectAgentSetupEvent = new DetectAgentSetupEvent(setupCallable.getClass().getName());
+        detectAgentSetupEvent.begin();
+        try {
+            DetectBootstrapResult detectBootstrapResult = bootstrap();
+            detectAgentSetupEvent.setScriptDownloads(detectBootstrapResult.getScriptDownloads().getDownloadCount());
+            detectAgentSetupEvent.setBytesTransferred(detectBootstrapResult.getScriptDownloads().getDownloadedBytes());
+            return detectBootstrapResult;
+        } finally {
+            detectAgentSetupEvent.commit();
+        }
+    }
+
+    private DetectBootstrapResult bootstrap() throws IntegrationException {
+        long startNanos = System.nanoTime();
+        OperatingSystemType operatingSystemType = OperatingSystemType.determineFromSystem();
+        ArrayList<String> detectCommand;
+        DetectScriptDownloads scriptDownloads;
+        DetectScriptDownloads.begin();
+        try {
+            detectCommand = setupCallable.call();
+        } finally {
+            scriptDownloads = DetectScriptDownloads.end();
+        }
+        long agentSetupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        return new DetectBootstrapResult(operatingSystemType, detectCommand, agentSetupMillis, scriptDownloads, Runtime.getRuntime().availableProcessors(), getTotalMemoryBytes());
+    }
+
+    static long getTotalMemoryBytes() {
+        long totalMemoryBytes = 0L;
+        OperatingSystemMXBean operatingSystemBean = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystemBean instanceof com.sun.management.OperatingSystemMXBean) {
+            totalMemoryBytes = ((com.sun.management.OperatingSystemMXBean) operatingSystemBean).getTotalPhysicalMemorySize();
+        }
+
+        // Older JVMs report the host's memory even inside a container, so a container's memory limit is read as well. Without a limit, cgroup v2 reports "max" and
+        // cgroup v1 a number near Long.MAX_VALUE.
+        for (String memoryLimitFile : CGROUP_MEMORY_LIMIT_FILES) {
+            long memoryLimit = readMemoryLimit(Paths.get(memoryLimitFile));
+            if (memoryLimit > 0 && memoryLimit < Long.MAX_VALUE / 2 && (totalMemoryBytes <= 0 || memoryLimit < totalMemoryBytes)) {
+                totalMemoryBytes = memoryLimit;
+            }
+        }
+        return totalMemoryBytes;
+    }
+
+    private static long readMemoryLimit(Path memoryLimitFile) {
+        try {
+            if (!Files.isReadable(memoryLimitFile)) {
+                return 0L;
+            }
+            return NumberUtils.toLong(new String(Files.readAllBytes(memoryLimitFile), StandardCharsets.UTF_8).trim(), 0L);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.util.OperatingSystemType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+public class DetectBootstrapResult implements Serializable {
+    private static final long serialVersionUID = -3046870526432816047L;
+    private final OperatingSystemType operatingSystemType;
+    private final ArrayList<String> detectCommand;
+    private final long agentSetupMillis;
+    private final DetectScriptDownloads scriptDownloads;
+    private final int availableProcessors;
+    private final long totalMemoryBytes;
+
+    public DetectBootstrapResult(
+        OperatingSystemType operatingSystemType,
+        ArrayList<String> detectCommand,
+        long agentSetupMillis,
+        DetectScriptDownloads scriptDownloads,
+        int availableProcessors,
+        long totalMemoryBytes
+    ) {
+        this.operatingSystemType = operatingSystemType;
+        this.detectCommand = detectCommand;
+        this.agentSetupMillis = agentSetupMillis;
+        this.scriptDownloads = scriptDownloads;
+        this.availableProcessors = availableProcessors;
+        this.totalMemoryBytes = totalMemoryBytes;
+    }
+
+    public OperatingSystemType getOperatingSystemType() {
+        return operatingSystemType;
+    }
+
+    /**
+     * The command that starts Detect on the agent: the resolved Java executable and jar, or the shell that runs the downloaded script.
+     */
+    public ArrayList<String> getDetectCommand() {
+        return detectCommand;
+    }
+
+    public long getAgentSetupMillis() {
+        return agentSetupMillis;
+    }
+
+    public DetectScriptDownloads getScriptDownloads() {
+        return scriptDownloads;
+    }
+
+    /**
+     * The processors the agent JVM may use, which bounds how many scan targets run at once.
+     */
+    public int getAvailableProcessors() {
+        return availableProcessors;
+    }
+
+    /**
+     * The memory of the agent, or of the container it runs in if that is less, or 0 if it could not be determined.
+     */
+    public long getTotalMemoryBytes() {
+        return totalMemoryBytes;
+    }
+
+}
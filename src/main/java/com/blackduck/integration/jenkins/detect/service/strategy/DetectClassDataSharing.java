@@ -0,0 +1,251 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.detect.service.DetectLockFiles;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent-wide class data sharing (AppCDS) archives for Detect, one per Detect jar and JDK. Most of Detect's startup is spent loading and verifying the same classes on
+ * every run, so the first run on an agent writes the classes it loaded to an archive when it exits, and later runs map that archive instead.
+ * <p>
+ * Archives are named after the SHA-256 of the jar and the identity of the JDK, so a new jar or JDK gets an archive of its own. An archive is checked by starting the JDK
+ * with it before it is first used by this agent JVM, and one that no longer loads is written again.
+ * <p>
+ * Class data sharing is opt-in through DETECT_PLUGIN_CLASS_DATA_SHARING=true: the run that writes an archive pays for it when it exits, and dynamic archives leave
+ * out most of the classes of a Spring Boot jar's nested libraries, so how much startup time an archive saves depends on the Detect version.
+ */
+public class DetectClassDataSharing {
+    public static final String ARCHIVE_DIRECTORY = "cds";
+    public static final String SHARED_ARCHIVE_OPTION = "-XX:SharedArchiveFile=";
+    public static final String ARCHIVE_AT_EXIT_OPTION = "-XX:ArchiveClassesAtExit=";
+    // Archives written at exit were added in Java 13
+    public static final int MINIMUM_JAVA_VERSION = 13;
+
+    // A Detect run can take hours, so an archiving run is only given up on once no run could still be going.
+    static final long STALE_ARCHIVING_MILLIS = TimeUnit.HOURS.toMillis(12);
+    private static final long VALIDATION_TIMEOUT_SECONDS = 60;
+
+    // One set per agent JVM, so executors on the same agent only hash a jar and check an archive once.
+    private static final ConcurrentMap<String, JarDigest> JAR_DIGESTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> VALIDATED_ARCHIVES = new ConcurrentHashMap<>();
+
+    private final JenkinsIntLogger logger;
+    private final Map<String, String> environmentVariables;
+    @Nullable
+    private final String agentCacheDirectory;
+
+    public DetectClassDataSharing(JenkinsIntLogger logger, Map<String, String> environmentVariables, @Nullable String agentCacheDirectory) {
+        this.logger = logger;
+        this.environmentVariables = environmentVariables;
+        this.agentCacheDirectory = agentCacheDirectory;
+    }
+
+    /**
+     * Returns the Java options that make Detect use, or write, the archive for this jar and JDK. Returns no options unless class data sharing is turned on, or if the
+     * JDK is too old or another run on this agent is already writing the archive.
+     */
+    public List<String> getJavaOptions(String javaExecutablePath, @Nullable String javaVersion, String detectJarPath) {
+        if (null == agentCacheDirectory || !"true".equalsIgnoreCase(environmentVariables.get(DetectJenkinsEnvironmentVariable.CLASS_DATA_SHARING.stringValue()))) {
+            return Collections.emptyList();
+        }
+        if (RemoteJavaService.getMajorVersion(javaVersion) < MINIMUM_JAVA_VERSION) {
+            logger.debug(String.format("Detect will start without a class data sharing archive, which needs Java %d or newer.", MINIMUM_JAVA_VERSION));
+            return Collections.emptyList();
+        }
+
+        try {
+            Path archiveDirectory = Paths.get(agentCacheDirectory, ARCHIVE_DIRECTORY);
+            Files.createDirectories(archiveDirectory);
+            DetectLockFiles lockFiles = new DetectLockFiles(archiveDirectory, STALE_ARCHIVING_MILLIS);
+            Path archive = archiveDirectory.resolve(getArchiveName(javaExecutablePath, javaVersion, detectJarPath));
+            Path archiveInProgress = archive.resolveSibling(archive.getFileName() + ".tmp");
+            Path archiveLock = archive.resolveSibling(archive.getFileName() + ".lock");
+
+            if (!Files.exists(archive) && Files.exists(archiveInProgress)) {
+                promoteArchive(javaExecutablePath, detectJarPath, archive, archiveInProgress, archiveLock, lockFiles);
+            }
+
+            if (Files.exists(archive)) {
+                if (isValid(javaExecutablePath, detectJarPath, archive)) {
+                    logger.info("Detect will start with the class data sharing archive " + archive);
+                    return Collections.singletonList(SHARED_ARCHIVE_OPTION + archive);
+                }
+                logger.info(String.format("The class data sharing archive %s could not be loaded, so it will be written again.", archive));
+                lockFiles.withGuard(() -> {
+                    Files.deleteIfExists(archive);
+                    return Files.deleteIfExists(archiveLock);
+                });
+            }
+
+            if (lockFiles.tryLock(archiveLock, UUID.randomUUID().toString())) {
+                Files.deleteIfExists(archiveInProgress);
+                logger.info(String.format("Detect will write the class data sharing archive %s when it exits, so later runs on this agent start faster.", archive));
+                return Collections.singletonList(ARCHIVE_AT_EXIT_OPTION + archiveInProgress);
+            }
+            logger.debug("Another Detect run on this agent is writing the class data sharing archive " + archive);
+        } catch (IOException e) {
+            logger.warn("Detect will start without a class data sharing archive: " + e.getMessage());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Whether a Detect command starts Detect with an archive, writes one, or neither.
+     */
+    public static Mode getMode(@Nullable List<String> detectCommand) {
+        if (null != detectCommand) {
+            for (String argument : detectCommand) {
+                if (argument.startsWith(SHARED_ARCHIVE_OPTION)) {
+                    return Mode.SHARED;
+                } else if (argument.startsWith(ARCHIVE_AT_EXIT_OPTION)) {
+                    return Mode.ARCHIVING;
+                } else if ("-jar".equals(argument)) {
+                    break;
+                }
+            }
+        }
+        return Mode.OFF;
+    }
+
+    /**
+     * Removes the option that writes the archive, for the processes of a multi-target run after the first, which must not write the same file at once.
+     */
+    public static List<String> withoutArchiving(List<String> detectCommand) {
+        List<String> withoutArchiving = new ArrayList<>(detectCommand);
+        withoutArchiving.removeIf(argument -> argument.startsWith(ARCHIVE_AT_EXIT_OPTION));
+        return withoutArchiving;
+    }
+
+    private String getArchiveName(String javaExecutablePath, String javaVersion, String detectJarPath) throws IOException {
+        File javaExecutable = new File(javaExecutablePath);
+        // The executable's modification time changes when a JDK is upgraded in place, even if the version string is reused by a vendor rebuild.
+        String jdkIdentity = String.join("\u0000", javaExecutable.getAbsolutePath(), javaVersion, String.valueOf(javaExecutable.lastModified()));
+        return String.format("detect-%s-%s.jsa", getJarDigest(detectJarPath).substring(0, 16), DigestUtils.sha256Hex(jdkIdentity).substring(0, 16));
+    }
+
+    private String getJarDigest(String detectJarPath) throws IOException {
+        File detectJar = new File(detectJarPath);
+        long lastModified = detectJar.lastModified();
+        long size = detectJar.length();
+
+        JarDigest jarDigest = JAR_DIGESTS.get(detectJarPath);
+        if (null == jarDigest || jarDigest.lastModified != lastModified || jarDigest.size != size) {
+            try (InputStream inputStream = Files.newInputStream(detectJar.toPath())) {
+                jarDigest = new JarDigest(lastModified, size, DigestUtils.sha256Hex(inputStream));
+            }
+            JAR_DIGESTS.put(detectJarPath, jarDigest);
+        }
+        return jarDigest.sha256;
+    }
+
+    // The lock is deleted under the guard lock, like a stale lock taken over by tryLock, so neither deletes a lock another run has just taken.
+    private void promoteArchive(String javaExecutablePath, String detectJarPath, Path archive, Path archiveInProgress, Path archiveLock, DetectLockFiles lockFiles)
+        throws IOException {
+        if (isValid(javaExecutablePath, detectJarPath, archiveInProgress)) {
+            lockFiles.withGuard(() -> {
+                try {
+                    Files.move(archiveInProgress, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (NoSuchFileException e) {
+                    // Another executor promoted it first
+                    return false;
+                }
+                return Files.deleteIfExists(archiveLock);
+            });
+            String validatedStamp = VALIDATED_ARCHIVES.remove(archiveInProgress.toString());
+            if (null != validatedStamp) {
+                VALIDATED_ARCHIVES.put(archive.toString(), validatedStamp);
+            }
+            logger.info("Wrote the class data sharing archive " + archive);
+        } else {
+            // If the run that wrote it died while writing, it is written again. Otherwise Detect is still writing it.
+            lockFiles.withGuard(() -> lockFiles.deleteIfStale(archiveLock) && Files.deleteIfExists(archiveInProgress));
+        }
+    }
+
+    private boolean isValid(String javaExecutablePath, String detectJarPath, Path archive) throws IOException {
+        File archiveFile = archive.toFile();
+        File detectJar = new File(detectJarPath);
+        String validatedStamp = String.format("%d:%d:%d:%d", archiveFile.lastModified(), archiveFile.length(), detectJar.lastModified(), detectJar.length());
+        if (validatedStamp.equals(VALIDATED_ARCHIVES.get(archive.toString()))) {
+            return true;
+        }
+
+        // With -Xshare:on the JDK refuses to start if the archive is incomplete or was written by a different JDK or for a different jar. The heap is kept small,
+        // like Detect's own, because an archive can't be loaded by a JVM whose heap is too large for compressed pointers.
+        ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(
+            javaExecutablePath,
+            "-Xmx256m",
+            "-Xshare:on",
+            SHARED_ARCHIVE_OPTION + archive,
+            "-cp",
+            detectJarPath,
+            "-version"
+        ));
+        processBuilder.environment().putAll(environmentVariables);
+        Optional<ProbeProcess> probeProcess;
+        try {
+            probeProcess = ProbeProcess.run(processBuilder, VALIDATION_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!probeProcess.isPresent()) {
+            logger.debug("Timed out checking the class data sharing archive " + archive);
+            return false;
+        }
+        if (0 != probeProcess.get().getExitCode()) {
+            logger.debug(String.format("The class data sharing archive %s could not be loaded: %s", archive, probeProcess.get().getOutput().trim()));
+            return false;
+        }
+
+        VALIDATED_ARCHIVES.put(archive.toString(), validatedStamp);
+        return true;
+    }
+
+    public enum Mode {
+        SHARED,
+        ARCHIVING,
+        OFF
+    }
+
+    private static final class JarDigest {
+        private final long lastModified;
+        private final long size;
+        private final String sha256;
+
+        private JarDigest(long lastModified, long size, String sha256) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
+}
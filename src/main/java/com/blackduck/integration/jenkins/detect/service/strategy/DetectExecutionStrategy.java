@@ -8,6 +8,7 @@
 package com.blackduck.integration.jenkins.detect.service.strategy;
 
 import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.util.OperatingSystemType;
 import jenkins.security.MasterToSlaveCallable;
 
 import java.io.IOException;
@@ -17,5 +18,5 @@ import java.util.function.Function;
 public abstract class DetectExecutionStrategy {
     public abstract MasterToSlaveCallable<ArrayList<String>, IntegrationException> getSetupCallable() throws IntegrationException, IOException, InterruptedException;
 
-    public abstract Function<String, String> getArgumentEscaper();
+    public abstract Function<String, String> getArgumentEscaper(OperatingSystemType operatingSystemType);
 }
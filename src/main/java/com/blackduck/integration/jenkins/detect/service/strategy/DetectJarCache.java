@@ -0,0 +1,267 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorToken;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Agent-wide, versioned cache of Detect jars. Each version is downloaded once, verified against the repository's SHA-256 checksum and never modified afterwards.
+ */
+public class DetectJarCache {
+    public static final String JAR_CACHE_DIRECTORY = "detect-jars";
+    public static final String DEFAULT_DETECT_REPOSITORY_URL = "https://repo.blackduck.com";
+    public static final String LATEST_VERSION_PROPERTY = "DETECT_LATEST_11";
+    public static final long DEFAULT_LATEST_VERSION_TTL_MINUTES = 60;
+    public static final String DETECT_ARTIFACT_PATH = "bds-integrations-release/com/blackduck/integration/detect";
+    public static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final String LATEST_VERSION_FILE_NAME = "latest-version.properties";
+    private static final String VERSION_PROPERTY = "version";
+    private static final String RESOLVED_AT_PROPERTY = "resolvedAt";
+    private static final Pattern VERSION_PATTERN = Pattern.compile("[0-9A-Za-z][0-9A-Za-z._-]*");
+    private static final Pattern JAR_VERSION_PATTERN = Pattern.compile("detect-([0-9A-Za-z][0-9A-Za-z._-]*)\\.jar$");
+
+    private static final ConcurrentMap<String, Object> VERSION_LOCKS = new ConcurrentHashMap<>();
+
+    private final JenkinsIntLogger logger;
+    private final IntHttpClient intHttpClient;
+    private final Path cacheDirectory;
+    private final String repositoryUrl;
+    private final long latestVersionTtlMillis;
+
+    public DetectJarCache(JenkinsIntLogger logger, IntHttpClient intHttpClient, Path cacheDirectory, String repositoryUrl, long latestVersionTtlMinutes) {
+        this.logger = logger;
+        this.intHttpClient = intHttpClient;
+        this.cacheDirectory = cacheDirectory;
+        this.repositoryUrl = StringUtils.removeEnd(repositoryUrl, "/");
+        this.latestVersionTtlMillis = TimeUnit.MINUTES.toMillis(Math.max(0, latestVersionTtlMinutes));
+    }
+
+    public static String getJarFileName(String detectVersion) {
+        return String.format("detect-%s.jar", detectVersion);
+    }
+
+    public String getJarUrl(String detectVersion) {
+        return String.format("%s/%s/%s/%s", repositoryUrl, DETECT_ARTIFACT_PATH, detectVersion, getJarFileName(detectVersion));
+    }
+
+    public Path getJar(String requestedVersion) throws IntegrationException, IOException {
+        String detectVersion = StringUtils.isBlank(requestedVersion) ? resolveLatestVersion() : validateVersion(requestedVersion.trim());
+        Path versionDirectory = cacheDirectory.resolve(detectVersion);
+        Path cachedJar = versionDirectory.resolve(getJarFileName(detectVersion));
+        Path verifiedChecksum = versionDirectory.resolve(getJarFileName(detectVersion) + CHECKSUM_SUFFIX);
+
+        Object versionLock = VERSION_LOCKS.computeIfAbsent(detectVersion, ignored -> new Object());
+        synchronized (versionLock) {
+            // The checksum file is only written after verification, so its presence marks a complete download.
+            if (Files.exists(cachedJar) && Files.exists(verifiedChecksum)) {
+                logger.info(String.format("Using cached Detect %s jar: %s", detectVersion, cachedJar));
+                return cachedJar;
+            }
+
+            Files.createDirectories(versionDirectory);
+            download(detectVersion, cachedJar, verifiedChecksum);
+            return cachedJar;
+        }
+    }
+
+    /**
+     * Whether a verified jar of the version is already in the cache.
+     */
+    public boolean isCached(String detectVersion) {
+        if (!VERSION_PATTERN.matcher(detectVersion).matches()) {
+            return false;
+        }
+        Path versionDirectory = cacheDirectory.resolve(detectVersion);
+        return Files.exists(versionDirectory.resolve(getJarFileName(detectVersion))) && Files.exists(versionDirectory.resolve(getJarFileName(detectVersion) + CHECKSUM_SUFFIX));
+    }
+
+    private String validateVersion(String detectVersion) throws DetectJenkinsException {
+        if (!VERSION_PATTERN.matcher(detectVersion).matches()) {
+            throw new DetectJenkinsException(String.format("The Detect version <%s> is not a valid version. Check the download strategy configuration.", detectVersion));
+        }
+        return detectVersion;
+    }
+
+    public String resolveLatestVersion() throws IntegrationException, IOException {
+        Files.createDirectories(cacheDirectory);
+        Path latestVersionFile = cacheDirectory.resolve(LATEST_VERSION_FILE_NAME);
+
+        synchronized (VERSION_LOCKS.computeIfAbsent(LATEST_VERSION_PROPERTY, ignored -> new Object())) {
+            Properties latestVersion = readProperties(latestVersionFile);
+            String cachedVersion = latestVersion.getProperty(VERSION_PROPERTY);
+            long resolvedAt = NumberUtils.toLong(latestVersion.getProperty(RESOLVED_AT_PROPERTY), 0L);
+
+            if (StringUtils.isNotBlank(cachedVersion) && System.currentTimeMillis() - resolvedAt < latestVersionTtlMillis) {
+                logger.debug(String.format("Using cached resolution of %s: %s", LATEST_VERSION_PROPERTY, cachedVersion));
+                return cachedVersion;
+            }
+
+            String resolvedVersion;
+            try {
+                resolvedVersion = fetchLatestVersion();
+            } catch (IntegrationException | IOException e) {
+                if (StringUtils.isBlank(cachedVersion)) {
+                    throw e;
+                }
+                logger.warn(String.format("Could not resolve the latest Detect version, using the previously resolved version %s: %s", cachedVersion, e.getMessage()));
+                return cachedVersion;
+            }
+
+            latestVersion.setProperty(VERSION_PROPERTY, resolvedVersion);
+            latestVersion.setProperty(RESOLVED_AT_PROPERTY, String.valueOf(System.currentTimeMillis()));
+            writeProperties(latestVersionFile, latestVersion);
+            logger.info(String.format("Resolved %s to Detect version %s", LATEST_VERSION_PROPERTY, resolvedVersion));
+            return resolvedVersion;
+        }
+    }
+
+    private String fetchLatestVersion() throws IntegrationException, IOException {
+        String versionUrl = String.format("%s/api/storage/%s?properties=%s", repositoryUrl, DETECT_ARTIFACT_PATH, LATEST_VERSION_PROPERTY);
+        Request request = new Request.Builder().url(new HttpUrl(versionUrl)).build();
+
+        String latestJarUrl;
+        try (Response response = intHttpClient.execute(request)) {
+            response.throwExceptionForError();
+            JsonObject properties = JsonParser.parseString(response.getContentString()).getAsJsonObject().getAsJsonObject("properties");
+            JsonArray latestValues = (null != properties) ? properties.getAsJsonArray(LATEST_VERSION_PROPERTY) : null;
+            JsonElement latestValue = (null != latestValues && latestValues.size() > 0) ? latestValues.get(0) : null;
+            latestJarUrl = (null != latestValue) ? latestValue.getAsString() : null;
+        } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+            throw new DetectJenkinsException("Could not parse the latest Detect version from " + DetectMirrorToken.mask(versionUrl), e);
+        }
+
+        Matcher jarVersionMatcher = JAR_VERSION_PATTERN.matcher(StringUtils.defaultString(latestJarUrl));
+        if (!jarVersionMatcher.find()) {
+            throw new DetectJenkinsException(String.format("Could not determine the latest Detect version from %s, received <%s>", DetectMirrorToken.mask(versionUrl), DetectMirrorToken.mask(StringUtils.defaultString(latestJarUrl))));
+        }
+        return jarVersionMatcher.group(1);
+    }
+
+    private void download(String detectVersion, Path cachedJar, Path verifiedChecksum) throws IntegrationException, IOException {
+        String jarUrl = getJarUrl(detectVersion);
+        String expectedChecksum = fetchExpectedChecksum(jarUrl + CHECKSUM_SUFFIX);
+
+        logger.info(String.format("Downloading Detect %s jar from %s to %s", detectVersion, DetectMirrorToken.mask(jarUrl), cachedJar));
+        Path downloadedJar = Files.createTempFile(cachedJar.getParent(), cachedJar.getFileName().toString(), ".tmp");
+        try {
+            MessageDigest messageDigest = createSha256Digest();
+            Request request = new Request.Builder().url(new HttpUrl(jarUrl)).build();
+            try (Response response = intHttpClient.execute(request)) {
+                response.throwExceptionForError();
+                try (InputStream content = new DigestInputStream(response.getContent(), messageDigest)) {
+                    Files.copy(content, downloadedJar, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            String actualChecksum = Hex.encodeHexString(messageDigest.digest());
+            if (!expectedChecksum.equalsIgnoreCase(actualChecksum)) {
+                throw new DetectJenkinsException(String.format(
+                    "The SHA-256 checksum of the downloaded Detect jar %s was %s, expected %s. The download was discarded.",
+                    DetectMirrorToken.mask(jarUrl),
+                    actualChecksum,
+                    expectedChecksum
+                ));
+            }
+
+            moveIntoPlace(downloadedJar, cachedJar);
+            Files.write(verifiedChecksum, actualChecksum.getBytes(StandardCharsets.UTF_8));
+            logger.info(String.format("Verified Detect %s jar, SHA-256: %s", detectVersion, actualChecksum));
+        } finally {
+            Files.deleteIfExists(downloadedJar);
+        }
+    }
+
+    private String fetchExpectedChecksum(String checksumUrl) throws IntegrationException, IOException {
+        Request request = new Request.Builder().url(new HttpUrl(checksumUrl)).build();
+        try (Response response = intHttpClient.execute(request)) {
+            response.throwExceptionForError();
+            // Checksum files may be "<hex>" or "<hex>  <file name>".
+            String checksum = StringUtils.substringBefore(StringUtils.trimToEmpty(response.getContentString()), " ");
+            if (checksum.length() != 64) {
+                throw new DetectJenkinsException(String.format("Could not read a SHA-256 checksum from %s", DetectMirrorToken.mask(checksumUrl)));
+            }
+            return checksum;
+        }
+    }
+
+    private MessageDigest createSha256Digest() throws DetectJenkinsException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new DetectJenkinsException("SHA-256 is not available in this JVM", e);
+        }
+    }
+
+    private Properties readProperties(Path propertiesFile) {
+        Properties properties = new Properties();
+        if (Files.exists(propertiesFile)) {
+            try (InputStream inputStream = Files.newInputStream(propertiesFile)) {
+                properties.load(inputStream);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.debug("Ignoring unreadable Detect jar cache metadata: " + e.getMessage());
+                properties.clear();
+            }
+        }
+        return properties;
+    }
+
+    private void writeProperties(Path propertiesFile, Properties properties) throws IOException {
+        Path temporaryFile = Files.createTempFile(propertiesFile.getParent(), propertiesFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+                properties.store(outputStream, null);
+            }
+            moveIntoPlace(temporaryFile, propertiesFile);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -8,10 +8,13 @@
 package com.blackduck.integration.jenkins.detect.service.strategy;
 
 import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.util.IntEnvironmentVariables;
+import com.blackduck.integration.util.OperatingSystemType;
 import jenkins.security.MasterToSlaveCallable;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
@@ -22,22 +25,34 @@ public class DetectJarStrategy extends DetectExecutionStrategy {
     private final String detectJarPath;
     private final IntEnvironmentVariables intEnvironmentVariables;
     private final String remoteJdkHome;
+    private final String agentCacheDirectory;
 
     public DetectJarStrategy(JenkinsIntLogger logger, IntEnvironmentVariables intEnvironmentVariables, String remoteJdkHome, String detectJarPath) {
+        this(logger, intEnvironmentVariables, remoteJdkHome, detectJarPath, null);
+    }
+
+    public DetectJarStrategy(
+        JenkinsIntLogger logger,
+        IntEnvironmentVariables intEnvironmentVariables,
+        String remoteJdkHome,
+        String detectJarPath,
+        @Nullable String agentCacheDirectory
+    ) {
         this.logger = logger;
         this.intEnvironmentVariables = intEnvironmentVariables;
         this.remoteJdkHome = remoteJdkHome;
         this.detectJarPath = detectJarPath;
+        this.agentCacheDirectory = agentCacheDirectory;
     }
 
     @Override
-    public Function<String, String> getArgumentEscaper() {
+    public Function<String, String> getArgumentEscaper(OperatingSystemType operatingSystemType) {
         return Function.identity();
     }
 
     @Override
     public MasterToSlaveCallable<ArrayList<String>, IntegrationException> getSetupCallable() {
-        return new SetupCallableImpl(logger, intEnvironmentVariables.getVariables(), detectJarPath, remoteJdkHome);
+        return new SetupCallableImpl(logger, intEnvironmentVariables.getVariables(), detectJarPath, remoteJdkHome, agentCacheDirectory);
     }
 
     public static class SetupCallableImpl extends MasterToSlaveCallable<ArrayList<String>, IntegrationException> {
@@ -46,22 +61,38 @@ public class DetectJarStrategy extends DetectExecutionStrategy {
         private final Map<String, String> environmentVariables;
         private final String detectJarPath;
         private final String remoteJdkHome;
+        private final String agentCacheDirectory;
 
-        public SetupCallableImpl(JenkinsIntLogger logger, Map<String, String> environmentVariables, String detectJarPath, String remoteJdkHome) {
+        public SetupCallableImpl(
+            JenkinsIntLogger logger,
+            Map<String, String> environmentVariables,
+            String detectJarPath,
+            String remoteJdkHome,
+            @Nullable String agentCacheDirectory
+        ) {
             this.logger = logger;
             this.environmentVariables = environmentVariables;
             this.detectJarPath = detectJarPath;
             this.remoteJdkHome = remoteJdkHome;
+            this.agentCacheDirectory = agentCacheDirectory;
         }
 
         @Override
-        public ArrayList<String> call() {
+        public ArrayList<String> call() throws DetectJenkinsException {
             RemoteJavaService remoteJavaService = new RemoteJavaService(logger, remoteJdkHome, environmentVariables);
             String javaExecutablePath = remoteJavaService.getJavaExecutablePath();
 
             logger.info("Detect jar configured: " + detectJarPath);
 
-            return new ArrayList<>(Arrays.asList(javaExecutablePath, "-jar", detectJarPath));
+            ArrayList<String> detectCommand = new ArrayList<>();
+            detectCommand.add(javaExecutablePath);
+            detectCommand.addAll(new DetectClassDataSharing(logger, environmentVariables, agentCacheDirectory).getJavaOptions(
+                javaExecutablePath,
+                remoteJavaService.getJavaVersion(),
+                detectJarPath
+            ));
+            detectCommand.addAll(Arrays.asList("-jar", detectJarPath));
+            return detectCommand;
         }
     }
 
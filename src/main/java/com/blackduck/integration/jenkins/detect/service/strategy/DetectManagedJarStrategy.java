@@ -0,0 +1,151 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
+import com.blackduck.integration.jenkins.detect.extensions.ManagedJarDownloadStrategy;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import com.blackduck.integration.util.OperatingSystemType;
+import com.google.gson.Gson;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+
+public class DetectManagedJarStrategy extends DetectExecutionStrategy {
+    private final JenkinsIntLogger logger;
+    private final JenkinsProxyHelper jenkinsProxyHelper;
+    private final IntEnvironmentVariables intEnvironmentVariables;
+    private final String remoteJdkHome;
+    private final String toolsDirectory;
+    private final String agentCacheDirectory;
+    private final String repositoryUrl;
+    private final long latestVersionTtlMinutes;
+    private final ManagedJarDownloadStrategy managedJarDownloadStrategy;
+
+    public DetectManagedJarStrategy(
+        JenkinsIntLogger logger,
+        JenkinsProxyHelper jenkinsProxyHelper,
+        IntEnvironmentVariables intEnvironmentVariables,
+        String remoteJdkHome,
+        String toolsDirectory,
+        String agentCacheDirectory,
+        String repositoryUrl,
+        long latestVersionTtlMinutes,
+        ManagedJarDownloadStrategy managedJarDownloadStrategy
+    ) {
+        this.logger = logger;
+        this.jenkinsProxyHelper = jenkinsProxyHelper;
+        this.intEnvironmentVariables = intEnvironmentVariables;
+        this.remoteJdkHome = remoteJdkHome;
+        this.toolsDirectory = toolsDirectory;
+        this.agentCacheDirectory = agentCacheDirectory;
+        this.repositoryUrl = repositoryUrl;
+        this.latestVersionTtlMinutes = latestVersionTtlMinutes;
+        this.managedJarDownloadStrategy = managedJarDownloadStrategy;
+    }
+
+    @Override
+    public Function<String, String> getArgumentEscaper(OperatingSystemType operatingSystemType) {
+        return Function.identity();
+    }
+
+    @Override
+    public MasterToSlaveCallable<ArrayList<String>, IntegrationException> getSetupCallable() {
+        RemoteProxyInfo remoteProxyInfo = RemoteProxyInfo.resolve(logger, jenkinsProxyHelper, repositoryUrl);
+
+        return new SetupCallableImpl(
+            logger,
+            intEnvironmentVariables.getVariables(),
+            remoteJdkHome,
+            toolsDirectory,
+            agentCacheDirectory,
+            repositoryUrl,
+            managedJarDownloadStrategy.getDetectVersion(),
+            latestVersionTtlMinutes,
+            remoteProxyInfo
+        );
+    }
+
+    public static class SetupCallableImpl extends MasterToSlaveCallable<ArrayList<String>, IntegrationException> {
+        private static final long serialVersionUID = 2604715327019410335L;
+        private final JenkinsIntLogger logger;
+        private final Map<String, String> environmentVariables;
+        private final String remoteJdkHome;
+        private final String toolsDirectory;
+        private final String agentCacheDirectory;
+        private final String repositoryUrl;
+        private final String detectVersion;
+        private final long latestVersionTtlMinutes;
+        private final RemoteProxyInfo remoteProxyInfo;
+
+        public SetupCallableImpl(
+            JenkinsIntLogger logger,
+            Map<String, String> environmentVariables,
+            String remoteJdkHome,
+            String toolsDirectory,
+            String agentCacheDirectory,
+            String repositoryUrl,
+            String detectVersion,
+            long latestVersionTtlMinutes,
+            RemoteProxyInfo remoteProxyInfo
+        ) {
+            this.logger = logger;
+            this.environmentVariables = environmentVariables;
+            this.remoteJdkHome = remoteJdkHome;
+            this.toolsDirectory = toolsDirectory;
+            this.agentCacheDirectory = agentCacheDirectory;
+            this.repositoryUrl = repositoryUrl;
+            this.detectVersion = detectVersion;
+            this.latestVersionTtlMinutes = latestVersionTtlMinutes;
+            this.remoteProxyInfo = remoteProxyInfo;
+        }
+
+        @Override
+        public ArrayList<String> call() throws IntegrationException {
+            String detectJarPath;
+            try {
+                // Without an agent cache directory (e.g. the node is offline) the jar is cached in the workspace temp directory instead.
+                Path jarCacheDirectory = (null != agentCacheDirectory)
+                    ? Paths.get(agentCacheDirectory, DetectJarCache.JAR_CACHE_DIRECTORY)
+                    : Paths.get(toolsDirectory, DetectScriptStrategy.DETECT_INSTALL_DIRECTORY, DetectJarCache.JAR_CACHE_DIRECTORY);
+                IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), 120, false, remoteProxyInfo.rebuildProxyInfo());
+                DetectJarCache detectJarCache = new DetectJarCache(logger, intHttpClient, jarCacheDirectory, repositoryUrl, latestVersionTtlMinutes);
+                detectJarPath = detectJarCache.getJar(detectVersion).toString();
+            } catch (DetectJenkinsException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DetectJenkinsException("[ERROR] The Detect jar was not downloaded successfully: " + e.getMessage(), e);
+            }
+
+            RemoteJavaService remoteJavaService = new RemoteJavaService(logger, remoteJdkHome, environmentVariables);
+            String javaExecutablePath = remoteJavaService.getJavaExecutablePath();
+
+            logger.info("Detect jar configured: " + detectJarPath);
+
+            ArrayList<String> detectCommand = new ArrayList<>();
+            detectCommand.add(javaExecutablePath);
+            detectCommand.addAll(new DetectClassDataSharing(logger, environmentVariables, agentCacheDirectory).getJavaOptions(
+                javaExecutablePath,
+                remoteJavaService.getJavaVersion(),
+                detectJarPath
+            ));
+            detectCommand.addAll(Arrays.asList("-jar", detectJarPath));
+            return detectCommand;
+        }
+    }
+
+}
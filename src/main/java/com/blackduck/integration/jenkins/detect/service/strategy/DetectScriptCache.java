@@ -0,0 +1,200 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorToken;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent-wide cache of the Detect scripts, keyed by script URL. Within the TTL a cached script is used without any network call, after that it is revalidated with a conditional
+ * GET using the stored ETag/Last-Modified values.
+ */
+public class DetectScriptCache {
+    public static final String SCRIPT_CACHE_DIRECTORY = "detect-scripts";
+    public static final long DEFAULT_TTL_MINUTES = 60;
+
+    private static final String METADATA_FILE_NAME = "cache.properties";
+    private static final String ETAG_PROPERTY = "etag";
+    private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+    private static final String VALIDATED_AT_PROPERTY = "validatedAt";
+    private static final int NOT_MODIFIED = 304;
+
+    // One cache per agent JVM, so executors on the same agent share both the entries and the counters.
+    private static final ConcurrentMap<String, Object> ENTRY_LOCKS = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong REVALIDATIONS = new AtomicLong();
+
+    private final JenkinsIntLogger logger;
+    private final IntHttpClient intHttpClient;
+    private final Path cacheDirectory;
+    private final long ttlMillis;
+
+    public DetectScriptCache(JenkinsIntLogger logger, IntHttpClient intHttpClient, Path cacheDirectory, long ttlMinutes) {
+        this.logger = logger;
+        this.intHttpClient = intHttpClient;
+        this.cacheDirectory = cacheDirectory;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(Math.max(0, ttlMinutes));
+    }
+
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    public static long getRevalidationCount() {
+        return REVALIDATIONS.get();
+    }
+
+    public Path getScript(String scriptUrl, String scriptFileName) throws IntegrationException, IOException {
+        // A mirror URL carries a new token for every build, which must not make every build miss.
+        String cacheKey = DigestUtils.sha256Hex(DetectMirrorToken.mask(scriptUrl));
+        Path entryDirectory = cacheDirectory.resolve(cacheKey);
+        Path cachedScript = entryDirectory.resolve(scriptFileName);
+        Path metadataFile = entryDirectory.resolve(METADATA_FILE_NAME);
+
+        Object entryLock = ENTRY_LOCKS.computeIfAbsent(cacheKey, ignored -> new Object());
+        synchronized (entryLock) {
+            Files.createDirectories(entryDirectory);
+            Properties metadata = readMetadata(cachedScript, metadataFile);
+
+            long validatedAt = NumberUtils.toLong(metadata.getProperty(VALIDATED_AT_PROPERTY), 0L);
+            if (Files.exists(cachedScript) && System.currentTimeMillis() - validatedAt < ttlMillis) {
+                HITS.incrementAndGet();
+                logStatistics("Using cached Detect script " + cachedScript);
+                return cachedScript;
+            }
+
+            try {
+                fetch(scriptUrl, cachedScript, metadataFile, metadata);
+            } catch (IntegrationException | IOException e) {
+                if (!Files.exists(cachedScript)) {
+                    throw e;
+                }
+                logger.warn(String.format("Could not revalidate the cached Detect script from %s, using the cached copy: %s", DetectMirrorToken.mask(scriptUrl), e.getMessage()));
+                logger.trace("Stack trace:", e);
+            }
+
+            return cachedScript;
+        }
+    }
+
+    private void fetch(String scriptUrl, Path cachedScript, Path metadataFile, Properties metadata) throws IntegrationException, IOException {
+        long startNanos = System.nanoTime();
+        Request.Builder requestBuilder = new Request.Builder().url(new HttpUrl(scriptUrl));
+        boolean canRevalidate = Files.exists(cachedScript);
+        if (canRevalidate) {
+            String etag = metadata.getProperty(ETAG_PROPERTY);
+            String lastModified = metadata.getProperty(LAST_MODIFIED_PROPERTY);
+            if (StringUtils.isNotBlank(etag)) {
+                requestBuilder.addHeader("If-None-Match", etag);
+            }
+            if (StringUtils.isNotBlank(lastModified)) {
+                requestBuilder.addHeader("If-Modified-Since", lastModified);
+            }
+        }
+
+        try (Response response = intHttpClient.execute(requestBuilder.build())) {
+            if (canRevalidate && response.getStatusCode() == NOT_MODIFIED) {
+                metadata.setProperty(VALIDATED_AT_PROPERTY, String.valueOf(System.currentTimeMillis()));
+                writeMetadata(metadataFile, metadata);
+                REVALIDATIONS.incrementAndGet();
+                logStatistics("Cached Detect script is still current: " + cachedScript);
+                return;
+            }
+
+            response.throwExceptionForError();
+
+            Path downloadedScript = Files.createTempFile(cachedScript.getParent(), cachedScript.getFileName().toString(), ".tmp");
+            try (InputStream content = response.getContent()) {
+                Files.copy(content, downloadedScript, StandardCopyOption.REPLACE_EXISTING);
+                moveIntoPlace(downloadedScript, cachedScript);
+            } finally {
+                Files.deleteIfExists(downloadedScript);
+            }
+
+            Properties updatedMetadata = new Properties();
+            setIfPresent(updatedMetadata, ETAG_PROPERTY, response.getHeaderValue("ETag"));
+            setIfPresent(updatedMetadata, LAST_MODIFIED_PROPERTY, response.getHeaderValue("Last-Modified"));
+            updatedMetadata.setProperty(VALIDATED_AT_PROPERTY, String.valueOf(System.currentTimeMillis()));
+            writeMetadata(metadataFile, updatedMetadata);
+        }
+
+        MISSES.incrementAndGet();
+        DetectScriptDownloads.record(Files.size(cachedScript), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        logStatistics(String.format("Downloaded Detect script from %s to %s", DetectMirrorToken.mask(scriptUrl), cachedScript));
+    }
+
+    private Properties readMetadata(Path cachedScript, Path metadataFile) {
+        Properties metadata = new Properties();
+        if (Files.exists(cachedScript) && Files.exists(metadataFile)) {
+            try (InputStream inputStream = Files.newInputStream(metadataFile)) {
+                metadata.load(inputStream);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.debug("Ignoring unreadable Detect script cache metadata: " + e.getMessage());
+                metadata.clear();
+            }
+        }
+        return metadata;
+    }
+
+    private void writeMetadata(Path metadataFile, Properties metadata) throws IOException {
+        Path temporaryMetadataFile = Files.createTempFile(metadataFile.getParent(), METADATA_FILE_NAME, ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temporaryMetadataFile)) {
+                metadata.store(outputStream, null);
+            }
+            moveIntoPlace(temporaryMetadataFile, metadataFile);
+        } finally {
+            Files.deleteIfExists(temporaryMetadataFile);
+        }
+    }
+
+    private void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void setIfPresent(Properties properties, String key, String value) {
+        if (StringUtils.isNotBlank(value)) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private void logStatistics(String message) {
+        logger.info(message);
+        logger.info(String.format("Detect script cache on this agent: %d hit(s), %d miss(es), %d revalidation(s)", HITS.get(), MISSES.get(), REVALIDATIONS.get()));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import java.io.Serializable;
+
+/**
+ * The Detect script downloads made on the agent during one bootstrap. They are tracked per thread, because executors on the same agent bootstrap concurrently, and are
+ * sent back with the bootstrap result since the metrics are kept on the controller.
+ */
+public class DetectScriptDownloads implements Serializable {
+    private static final long serialVersionUID = 2381563720961442173L;
+    private static final ThreadLocal<DetectScriptDownloads> CURRENT = new ThreadLocal<>();
+
+    private int downloadCount;
+    private long downloadedBytes;
+    private long downloadMillis;
+
+    public static void begin() {
+        CURRENT.set(new DetectScriptDownloads());
+    }
+
+    public static DetectScriptDownloads end() {
+        DetectScriptDownloads detectScriptDownloads = CURRENT.get();
+        CURRENT.remove();
+        return (null != detectScriptDownloads) ? detectScriptDownloads : new DetectScriptDownloads();
+    }
+
+    public static void record(long bytes, long millis) {
+        DetectScriptDownloads detectScriptDownloads = CURRENT.get();
+        if (null != detectScriptDownloads) {
+            detectScriptDownloads.downloadCount++;
+            detectScriptDownloads.downloadedBytes += bytes;
+            detectScriptDownloads.downloadMillis += millis;
+        }
+    }
+
+    public int getDownloadCount() {
+        return downloadCount;
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    public long getDownloadMillis() {
+        return downloadMillis;
+    }
+
+}
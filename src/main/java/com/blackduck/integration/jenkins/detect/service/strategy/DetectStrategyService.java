@@ -9,47 +9,86 @@ package com.blackduck.integration.jenkins.detect.service.strategy;
 
 import com.blackduck.integration.jenkins.detect.extensions.AirGapDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.InheritFromGlobalDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.ManagedJarDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
 import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectFlightRecorder;
+import com.blackduck.integration.jenkins.detect.service.jfr.DetectStrategyEvent;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorService;
+import com.blackduck.integration.jenkins.detect.service.metrics.DetectMetrics;
 import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
 import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
 import com.blackduck.integration.util.IntEnvironmentVariables;
-import com.blackduck.integration.util.OperatingSystemType;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.Optional;
 
 public class DetectStrategyService {
     private final JenkinsIntLogger logger;
     private final String remoteTempWorkspacePath;
+    private final String remoteAgentCachePath;
     private final JenkinsProxyHelper jenkinsProxyHelper;
     private final JenkinsConfigService jenkinsConfigService;
 
-    public DetectStrategyService(JenkinsIntLogger logger, JenkinsProxyHelper jenkinsProxyHelper, String remoteTempWorkspacePath, JenkinsConfigService jenkinsConfigService) {
+    public DetectStrategyService(
+        JenkinsIntLogger logger,
+        JenkinsProxyHelper jenkinsProxyHelper,
+        String remoteTempWorkspacePath,
+        String remoteAgentCachePath,
+        JenkinsConfigService jenkinsConfigService
+    ) {
         this.logger = logger;
         this.jenkinsProxyHelper = jenkinsProxyHelper;
         this.remoteTempWorkspacePath = remoteTempWorkspacePath;
+        this.remoteAgentCachePath = remoteAgentCachePath;
         this.jenkinsConfigService = jenkinsConfigService;
     }
 
     public DetectExecutionStrategy getExecutionStrategy(
         IntEnvironmentVariables intEnvironmentVariables,
-        OperatingSystemType operatingSystemType,
+        String remoteJdkHome,
+        DetectDownloadStrategy detectDownloadStrategy
+    )
+        throws IntegrationException {
+        if (!DetectFlightRecorder.isAvailable()) {
+            return resolveExecutionStrategy(intEnvironmentVariables, remoteJdkHome, detectDownloadStrategy);
+        }
+
+        DetectStrategyEvent detectStrategyEvent = new DetectStrategyEvent(DetectMetrics.getStrategyName(detectDownloadStrategy));
+        detectStrategyEvent.begin();
+        try {
+            DetectExecutionStrategy detectExecutionStrategy = resolveExecutionStrategy(intEnvironmentVariables, remoteJdkHome, detectDownloadStrategy);
+            detectStrategyEvent.setStrategyType(detectExecutionStrategy.getClass().getSimpleName());
+            return detectExecutionStrategy;
+        } finally {
+            detectStrategyEvent.commit();
+        }
+    }
+
+    private DetectExecutionStrategy resolveExecutionStrategy(
+        IntEnvironmentVariables intEnvironmentVariables,
         String remoteJdkHome,
         DetectDownloadStrategy detectDownloadStrategy
     )
         throws IntegrationException {
         String loggingMessage = "Running Detect using configured strategy: ";
+        Optional<DetectGlobalConfig> detectGlobalConfig = jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class);
+        // Read the snapshot once, so the strategy and the mirror URL come from the same saved configuration.
+        Optional<DetectGlobalConfigSnapshot> detectGlobalConfigSnapshot = detectGlobalConfig.map(DetectGlobalConfig::getSnapshot);
 
         if (detectDownloadStrategy == null || detectDownloadStrategy instanceof InheritFromGlobalDownloadStrategy) {
-            DetectGlobalConfig detectGlobalConfig = jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)
+            DetectGlobalConfigSnapshot globalConfigSnapshot = detectGlobalConfigSnapshot
                 .orElseThrow(() -> new DetectJenkinsException("Could not find Detect configuration. Check Jenkins System Configuration to ensure Detect is configured correctly."));
-            detectDownloadStrategy = detectGlobalConfig.getDownloadStrategy();
+            detectDownloadStrategy = globalConfigSnapshot.getDownloadStrategy();
 
             if (detectDownloadStrategy == null) {
-                detectDownloadStrategy = detectGlobalConfig.getDefaultDownloadStrategy();
+                detectDownloadStrategy = detectGlobalConfig.get().getDefaultDownloadStrategy();
                 loggingMessage = "System configured strategy not found, running Detect using default configured system strategy: ";
             } else {
                 loggingMessage = "Running Detect using configured system strategy: ";
@@ -59,6 +98,9 @@ public class DetectStrategyService {
         logger.info(loggingMessage + detectDownloadStrategy.getDisplayName());
 
         String detectJarPath = intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue());
+        String mirrorUrl = detectGlobalConfigSnapshot
+            .flatMap(DetectGlobalConfigSnapshot::getMirrorUrl)
+            .orElse(null);
         DetectExecutionStrategy detectExecutionStrategy;
 
         if (detectDownloadStrategy instanceof AirGapDownloadStrategy) {
@@ -67,12 +109,44 @@ public class DetectStrategyService {
                 intEnvironmentVariables,
                 remoteJdkHome,
                 jenkinsConfigService,
-                (AirGapDownloadStrategy) detectDownloadStrategy
+                (AirGapDownloadStrategy) detectDownloadStrategy,
+                remoteAgentCachePath
+            );
+        } else if (detectDownloadStrategy instanceof ManagedJarDownloadStrategy) {
+            String pinnedVersion = ((ManagedJarDownloadStrategy) detectDownloadStrategy).getDetectVersion();
+            if (null != mirrorUrl && StringUtils.isNotBlank(pinnedVersion)) {
+                DetectMirrorService.allowPinnedVersion(pinnedVersion.trim());
+            }
+            long latestVersionTtlMinutes = NumberUtils.toLong(
+                intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.LATEST_VERSION_TTL_MINUTES.stringValue()),
+                DetectJarCache.DEFAULT_LATEST_VERSION_TTL_MINUTES
+            );
+            detectExecutionStrategy = new DetectManagedJarStrategy(
+                logger,
+                jenkinsProxyHelper,
+                intEnvironmentVariables,
+                remoteJdkHome,
+                remoteTempWorkspacePath,
+                remoteAgentCachePath,
+                null != mirrorUrl ? mirrorUrl : DetectJarCache.DEFAULT_DETECT_REPOSITORY_URL,
+                latestVersionTtlMinutes,
+                (ManagedJarDownloadStrategy) detectDownloadStrategy
             );
         } else if (StringUtils.isNotBlank(detectJarPath)) {
-            detectExecutionStrategy = new DetectJarStrategy(logger, intEnvironmentVariables, remoteJdkHome, detectJarPath);
+            detectExecutionStrategy = new DetectJarStrategy(logger, intEnvironmentVariables, remoteJdkHome, detectJarPath, remoteAgentCachePath);
         } else {
-            detectExecutionStrategy = new DetectScriptStrategy(logger, jenkinsProxyHelper, operatingSystemType, remoteTempWorkspacePath);
+            long scriptCacheTtlMinutes = NumberUtils.toLong(
+                intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.SCRIPT_CACHE_TTL_MINUTES.stringValue()),
+                DetectScriptCache.DEFAULT_TTL_MINUTES
+            );
+            detectExecutionStrategy = new DetectScriptStrategy(
+                logger,
+                jenkinsProxyHelper,
+                remoteTempWorkspacePath,
+                remoteAgentCachePath,
+                mirrorUrl,
+                scriptCacheTtlMinutes
+            );
         }
 
         return detectExecutionStrategy;
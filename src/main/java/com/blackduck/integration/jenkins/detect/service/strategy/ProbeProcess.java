@@ -0,0 +1,62 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a short-lived process, such as a JVM asked for its version, for at most a given time. The output goes to a temporary file rather than a pipe, so a process
+ * that hangs can't block the caller on reading its output and is killed once the time is up.
+ */
+public class ProbeProcess {
+    private final int exitCode;
+    private final String output;
+
+    private ProbeProcess(int exitCode, String output) {
+        this.exitCode = exitCode;
+        this.output = output;
+    }
+
+    /**
+     * Runs the process with its error stream merged into its output. Returns nothing if it didn't exit in time.
+     */
+    public static Optional<ProbeProcess> run(ProcessBuilder processBuilder, long timeoutSeconds) throws IOException, InterruptedException {
+        File outputFile = File.createTempFile("detect-probe", ".out");
+        try {
+            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectOutput(outputFile);
+            Process process = processBuilder.start();
+            try {
+                if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    return Optional.empty();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                throw e;
+            }
+            return Optional.of(new ProbeProcess(process.exitValue(), new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8)));
+        } finally {
+            Files.deleteIfExists(outputFile.toPath());
+        }
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+}
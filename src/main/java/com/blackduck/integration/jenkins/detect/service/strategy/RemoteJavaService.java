@@ -7,25 +7,45 @@
  */
 package com.blackduck.integration.jenkins.detect.service.strategy;
 
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.log.LogLevel;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class RemoteJavaService {
     public static final String DETECT_JAVA_PATH = "DETECT_JAVA_PATH";
     public static final String JAVA_HOME = "JAVA_HOME";
+    public static final int MINIMUM_JAVA_VERSION = 11;
+
+    private static final long VERSION_PROBE_TIMEOUT_SECONDS = 30;
+    private static final Pattern JAVA_VERSION_PROPERTY_PATTERN = Pattern.compile("java\\.version = (\\S+)");
+    private static final Pattern JAVA_VENDOR_PROPERTY_PATTERN = Pattern.compile("java\\.vendor = (.+)");
+    private static final Pattern JAVA_VERSION_LINE_PATTERN = Pattern.compile("version \"([^\"]+)\"");
+    private static final Pattern MAJOR_VERSION_PATTERN = Pattern.compile("^(?:1\\.)?(\\d+)");
+
+    // One cache per agent JVM, so the Java executable is only resolved and probed again when the inputs or the executable itself change.
+    private static final ConcurrentMap<String, JavaInstallation> JAVA_INSTALLATIONS = new ConcurrentHashMap<>();
 
     private final JenkinsIntLogger logger;
     private final String remoteJdkHome;
     private final Map<String, String> environmentVariables;
+    private JavaInstallation javaInstallation;
 
     public RemoteJavaService(JenkinsIntLogger logger, String remoteJdkHome, Map<String, String> environmentVariables) {
         this.logger = logger;
@@ -33,21 +53,53 @@ public class RemoteJavaService {
         this.environmentVariables = environmentVariables;
     }
 
-    public String getJavaExecutablePath() {
+    public String getJavaExecutablePath() throws DetectJenkinsException {
         String javaExecutableName = "java";
         if (SystemUtils.IS_OS_WINDOWS) {
             javaExecutableName = "java.exe";
         }
 
-        String javaExecutablePath = calculateJavaExecutablePath(javaExecutableName);
-        logger.info("Running with JAVA: " + javaExecutablePath);
+        String cacheKey = getCacheKey();
+        JavaInstallation javaInstallation = JAVA_INSTALLATIONS.get(cacheKey);
+        if (null == javaInstallation || !javaInstallation.isCurrent()) {
+            javaInstallation = resolveJavaInstallation(javaExecutableName);
+            JAVA_INSTALLATIONS.put(cacheKey, javaInstallation);
+        } else {
+            logger.trace("Using the Java executable previously resolved on this agent.");
+        }
 
-        logDebugData(javaExecutablePath);
+        if (javaInstallation.isFallbackToPath()) {
+            logger.warn("Could not set path to Java executable, falling back to PATH.");
+        } else {
+            logger.debug("Path to Java executable is set based on: " + javaInstallation.getPathSource());
+        }
+        logger.info("Running with JAVA: " + javaInstallation.getExecutablePath());
+
+        logDebugData(javaInstallation);
+        checkJavaVersion(javaInstallation);
 
-        return javaExecutablePath;
+        this.javaInstallation = javaInstallation;
+        return javaInstallation.getExecutablePath();
     }
 
-    private String calculateJavaExecutablePath(String javaExecutableName) {
+    /**
+     * The version of the Java executable last returned by {@link #getJavaExecutablePath()}, or null if it could not be determined.
+     */
+    @Nullable
+    public String getJavaVersion() {
+        return (null != javaInstallation) ? javaInstallation.getVersion() : null;
+    }
+
+    private String getCacheKey() {
+        String cacheKey = String.join("\u0000", String.valueOf(remoteJdkHome), String.valueOf(environmentVariables.get(DETECT_JAVA_PATH)), String.valueOf(environmentVariables.get(JAVA_HOME)));
+        if (null == remoteJdkHome && !environmentVariables.containsKey(DETECT_JAVA_PATH) && !environmentVariables.containsKey(JAVA_HOME)) {
+            // Java is found on the PATH, which has no single file to check for changes, so the PATH itself is part of the key.
+            cacheKey = cacheKey + "\u0000" + environmentVariables.get("PATH");
+        }
+        return cacheKey;
+    }
+
+    private JavaInstallation resolveJavaInstallation(String javaExecutableName) {
         String fullPathToJava = null;
         String javaPathSourceLogging = "";
 
@@ -67,40 +119,153 @@ public class RemoteJavaService {
 
         try {
             fullPathToJava = Objects.requireNonNull(javaExecutablePath).getCanonicalPath();
-            logger.debug("Path to Java executable is set based on: " + javaPathSourceLogging);
         } catch (IOException | NullPointerException e) {
-            logger.warn("Could not set path to Java executable, falling back to PATH.");
+            logger.debug("Could not canonicalize the path to the Java executable: " + e.getMessage());
+        }
+
+        String executablePath = (null != fullPathToJava) ? fullPathToJava : javaExecutableName;
+        long lastModified = (null != fullPathToJava) ? javaExecutablePath.lastModified() : 0L;
+        Properties javaProperties = probeJavaVersion(executablePath, fullPathToJava);
+
+        return new JavaInstallation(
+            null != fullPathToJava ? javaExecutablePath : null,
+            executablePath,
+            javaPathSourceLogging,
+            lastModified,
+            javaProperties.getProperty("version"),
+            javaProperties.getProperty("vendor")
+        );
+    }
+
+    private Properties probeJavaVersion(String executablePath, String fullPathToJava) {
+        Properties javaProperties = new Properties();
+
+        // JDKs ship a release file next to bin that records the version, which is much cheaper to read than starting a JVM.
+        if (null != fullPathToJava) {
+            File releaseFile = new File(new File(fullPathToJava).getParentFile().getParentFile(), "release");
+            if (releaseFile.isFile()) {
+                try (InputStream inputStream = new FileInputStream(releaseFile)) {
+                    Properties release = new Properties();
+                    release.load(inputStream);
+                    setIfPresent(javaProperties, "version", StringUtils.strip(release.getProperty("JAVA_VERSION"), "\""));
+                    setIfPresent(javaProperties, "vendor", StringUtils.strip(release.getProperty("IMPLEMENTOR"), "\""));
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.debug("Could not read the Java release file: " + e.getMessage());
+                }
+                if (javaProperties.containsKey("version")) {
+                    return javaProperties;
+                }
+            }
         }
 
-        return (null != fullPathToJava) ? fullPathToJava : javaExecutableName;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(executablePath, "-XshowSettings:properties", "-version"));
+            processBuilder.environment().putAll(environmentVariables);
+            Optional<ProbeProcess> probeProcess = ProbeProcess.run(processBuilder, VERSION_PROBE_TIMEOUT_SECONDS);
+            if (!probeProcess.isPresent()) {
+                logger.debug("Timed out getting the Java version.");
+                return javaProperties;
+            }
+            String output = probeProcess.get().getOutput();
+            setIfPresent(javaProperties, "version", findFirst(output, JAVA_VERSION_PROPERTY_PATTERN, JAVA_VERSION_LINE_PATTERN));
+            setIfPresent(javaProperties, "vendor", findFirst(output, JAVA_VENDOR_PROPERTY_PATTERN));
+        } catch (IOException e) {
+            logger.debug("Error starting process to get Java version: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            logger.debug("Error running process to get Java version: " + e.getMessage(), e);
+            Thread.currentThread().interrupt();
+        }
+
+        return javaProperties;
     }
 
-    private void logDebugData(String javaExecutablePath) {
+    private void logDebugData(JavaInstallation javaInstallation) {
         if (logger.getLogLevel().isLoggable(LogLevel.DEBUG)) {
             logger.debug("PATH: " + environmentVariables.get("PATH"));
-            try {
-                ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(javaExecutablePath, "-version"));
-                processBuilder.environment().putAll(environmentVariables);
-                Process process = processBuilder.start();
-                process.waitFor();
-                logJavaVersion(process);
-            } catch (IOException e) {
-                logger.debug("Error starting process to get Java version: " + e.getMessage(), e);
-            } catch (InterruptedException e) {
-                logger.debug("Error running process to get Java version: " + e.getMessage(), e);
-                Thread.currentThread().interrupt();
+            if (null != javaInstallation.getVersion()) {
+                logger.debug("Java version: " + javaInstallation.getVersion() + Objects.toString(StringUtils.wrap(javaInstallation.getVendor(), " "), ""));
             }
         }
     }
 
-    private void logJavaVersion(Process process) {
-        try (InputStream errorStream = Objects.requireNonNull(process).getErrorStream();
-            InputStream inputSteam = Objects.requireNonNull(process).getInputStream()) {
-            logger.debug("Java version: ");
-            IOUtils.copy(errorStream, logger.getTaskListener().getLogger());
-            IOUtils.copy(inputSteam, logger.getTaskListener().getLogger());
-        } catch (IOException e) {
-            logger.debug("Error printing the JAVA version: " + e.getMessage(), e);
+    private void checkJavaVersion(JavaInstallation javaInstallation) throws DetectJenkinsException {
+        int majorVersion = getMajorVersion(javaInstallation.getVersion());
+        if (majorVersion > 0 && majorVersion < MINIMUM_JAVA_VERSION) {
+            throw new DetectJenkinsException(String.format(
+                "Detect requires Java %d or newer, but %s is Java %s. Configure a newer JDK for this node, or set %s or %s.",
+                MINIMUM_JAVA_VERSION,
+                javaInstallation.getExecutablePath(),
+                javaInstallation.getVersion(),
+                DETECT_JAVA_PATH,
+                JAVA_HOME
+            ));
+        }
+    }
+
+    public static int getMajorVersion(String javaVersion) {
+        Matcher majorVersionMatcher = MAJOR_VERSION_PATTERN.matcher(StringUtils.trimToEmpty(javaVersion));
+        if (majorVersionMatcher.find()) {
+            return Integer.parseInt(majorVersionMatcher.group(1));
+        }
+        return -1;
+    }
+
+    private String findFirst(String output, Pattern... patterns) {
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(output);
+            if (matcher.find()) {
+                return matcher.group(1).trim();
+            }
+        }
+        return null;
+    }
+
+    private void setIfPresent(Properties properties, String key, String value) {
+        if (StringUtils.isNotBlank(value)) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static final class JavaInstallation {
+        private final File resolvedFrom;
+        private final String executablePath;
+        private final String pathSource;
+        private final long lastModified;
+        private final String version;
+        private final String vendor;
+
+        private JavaInstallation(File resolvedFrom, String executablePath, String pathSource, long lastModified, String version, String vendor) {
+            this.resolvedFrom = resolvedFrom;
+            this.executablePath = executablePath;
+            this.pathSource = pathSource;
+            this.lastModified = lastModified;
+            this.version = version;
+            this.vendor = vendor;
+        }
+
+        private boolean isCurrent() {
+            // The executable is checked through the configured path, so a JDK symlink that now points somewhere else is noticed as well.
+            return null == resolvedFrom || resolvedFrom.lastModified() == lastModified;
+        }
+
+        private boolean isFallbackToPath() {
+            return null == resolvedFrom;
+        }
+
+        private String getExecutablePath() {
+            return executablePath;
+        }
+
+        private String getPathSource() {
+            return pathSource;
+        }
+
+        private String getVersion() {
+            return version;
+        }
+
+        private String getVendor() {
+            return vendor;
         }
     }
 }
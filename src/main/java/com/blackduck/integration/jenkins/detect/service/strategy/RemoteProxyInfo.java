@@ -0,0 +1,78 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import com.blackduck.integration.jenkins.detect.service.DetectResolutionCache;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.rest.credentials.Credentials;
+import com.blackduck.integration.rest.credentials.CredentialsBuilder;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.blackduck.integration.rest.proxy.ProxyInfoBuilder;
+
+import java.io.Serializable;
+
+/**
+ * ProxyInfo itself isn't serializable, so setup callables carry it to the agent unpacked into serializable pieces and rebuild it there.
+ */
+public class RemoteProxyInfo implements Serializable {
+    private static final long serialVersionUID = 5120370496412983245L;
+
+    private final String proxyHost;
+    private final int proxyPort;
+    private final String proxyUsername;
+    private final String proxyPassword;
+    private final String proxyNtlmDomain;
+    private final String proxyNtlmWorkstation;
+
+    public RemoteProxyInfo(String proxyHost, int proxyPort, String proxyUsername, String proxyPassword, String proxyNtlmDomain, String proxyNtlmWorkstation) {
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+        this.proxyUsername = proxyUsername;
+        this.proxyPassword = proxyPassword;
+        this.proxyNtlmDomain = proxyNtlmDomain;
+        this.proxyNtlmWorkstation = proxyNtlmWorkstation;
+    }
+
+    public static RemoteProxyInfo resolve(JenkinsIntLogger logger, JenkinsProxyHelper jenkinsProxyHelper, String url) {
+        ProxyInfo proxyInfo;
+        try {
+            proxyInfo = DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, url);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Black Duck Detect for Jenkins could not resolve proxy info from Jenkins because: " + e.getMessage());
+            logger.warn("Continuing without proxy...");
+            logger.trace("Stack trace:", e);
+            proxyInfo = ProxyInfo.NO_PROXY_INFO;
+        }
+
+        return new RemoteProxyInfo(
+            proxyInfo.getHost().orElse(null),
+            proxyInfo.getPort(),
+            proxyInfo.getUsername().orElse(null),
+            proxyInfo.getPassword().orElse(null),
+            proxyInfo.getNtlmDomain().orElse(null),
+            proxyInfo.getNtlmWorkstation().orElse(null)
+        );
+    }
+
+    public ProxyInfo rebuildProxyInfo() {
+        CredentialsBuilder credentialsBuilder = Credentials.newBuilder();
+        credentialsBuilder.setUsernameAndPassword(proxyUsername, proxyPassword);
+        Credentials proxyCredentials = credentialsBuilder.build();
+
+        ProxyInfoBuilder proxyInfoBuilder = ProxyInfo.newBuilder();
+        proxyInfoBuilder.setHost(proxyHost);
+        proxyInfoBuilder.setPort(proxyPort);
+        proxyInfoBuilder.setCredentials(proxyCredentials);
+        proxyInfoBuilder.setNtlmDomain(proxyNtlmDomain);
+        proxyInfoBuilder.setNtlmWorkstation(proxyNtlmWorkstation);
+
+        return proxyInfoBuilder.build();
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.throttle;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Permission for one Detect run to proceed. Closing it frees the slot for the next waiting run; closing it again does nothing.
+ */
+public final class DetectRunPermit implements AutoCloseable {
+    public static final DetectRunPermit NONE = new DetectRunPermit(() -> {});
+
+    private final Runnable release;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    DetectRunPermit(Runnable release) {
+        this.release = release;
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+
+}
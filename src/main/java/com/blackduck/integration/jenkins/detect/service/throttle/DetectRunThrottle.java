@@ -0,0 +1,201 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.throttle;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Limits how many Detect runs happen at once, across the controller, per node and per Black Duck server.
+ * <p>
+ * Waiting runs are served in the order they arrived. A run may only take a slot that no earlier waiting run needs: earlier runs that share its node or server hold
+ * their place in those limits, and every earlier run holds its place in the controller-wide limit. Runs on other nodes and servers are not held up by a full node or
+ * server they don't use.
+ * <p>
+ * A waiting run holds no thread: it is let go by whichever run frees the slot it needs.
+ */
+public class DetectRunThrottle {
+    private static final DetectRunThrottle CONTROLLER_THROTTLE = new DetectRunThrottle();
+
+    // All guarded by this
+    private final List<Ticket> waitingTickets = new ArrayList<>();
+    private final Map<String, Integer> runsByNode = new HashMap<>();
+    private final Map<String, Integer> runsByServer = new HashMap<>();
+    private int runs;
+
+    public static DetectRunThrottle getControllerThrottle() {
+        return CONTROLLER_THROTTLE;
+    }
+
+    /**
+     * Waits until the run may proceed under the given limits. The listener hears the run's place in the queue when it starts waiting and each time that place changes.
+     */
+    public DetectRunPermit acquire(DetectThrottleLimits limits, @Nullable String nodeName, @Nullable String serverUrl, QueueListener queueListener)
+        throws InterruptedException {
+        CompletableFuture<DetectRunPermit> runPermit = acquireAsync(limits, nodeName, serverUrl, queueListener);
+        try {
+            return runPermit.get();
+        } catch (InterruptedException e) {
+            if (!runPermit.cancel(false)) {
+                // The slot was granted just as the wait was interrupted.
+                runPermit.join().close();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            // Only cancelling ends the wait without a permit, and nothing else holds this future.
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Queues the run under the given limits without waiting. The returned future completes with the run's permit once the run may proceed, on the thread that freed
+     * its slot, so nothing waits on a thread in the meantime. Cancelling the future takes the run out of the queue.
+     */
+    public CompletableFuture<DetectRunPermit> acquireAsync(DetectThrottleLimits limits, @Nullable String nodeName, @Nullable String serverUrl, QueueListener queueListener) {
+        if (limits.isUnlimited()) {
+            return CompletableFuture.completedFuture(DetectRunPermit.NONE);
+        }
+
+        Ticket ticket = new Ticket(limits, StringUtils.defaultString(nodeName), normalizeServerUrl(serverUrl), queueListener);
+        synchronized (this) {
+            waitingTickets.add(ticket);
+        }
+        admitWaitingRuns();
+        ticket.runPermit.whenComplete((runPermit, failure) -> {
+            if (null != failure) {
+                withdraw(ticket);
+            }
+        });
+        return ticket.runPermit;
+    }
+
+    public synchronized int getRunCount() {
+        return runs;
+    }
+
+    public synchronized int getWaitingCount() {
+        return waitingTickets.size();
+    }
+
+    private void release(Ticket ticket) {
+        synchronized (this) {
+            runs--;
+            runsByNode.computeIfPresent(ticket.nodeName, (nodeName, nodeRuns) -> nodeRuns > 1 ? nodeRuns - 1 : null);
+            runsByServer.computeIfPresent(ticket.serverUrl, (serverUrl, serverRuns) -> serverRuns > 1 ? serverRuns - 1 : null);
+        }
+        admitWaitingRuns();
+    }
+
+    private void withdraw(Ticket ticket) {
+        boolean withdrawn;
+        synchronized (this) {
+            withdrawn = waitingTickets.remove(ticket);
+        }
+        if (withdrawn) {
+            // The runs behind this one may now be able to go.
+            admitWaitingRuns();
+        }
+    }
+
+    // Lets every waiting run go that now can, in the order they arrived, and tells the runs still waiting about their new place. The permits are handed out and the
+    // listeners told outside the lock, since both run code of the caller's.
+    private void admitWaitingRuns() {
+        List<Ticket> admittedTickets = new ArrayList<>();
+        Map<Ticket, Integer> movedTickets = new LinkedHashMap<>();
+        int waitingRuns;
+        synchronized (this) {
+            Iterator<Ticket> tickets = waitingTickets.iterator();
+            int position = 0;
+            while (tickets.hasNext()) {
+                Ticket ticket = tickets.next();
+                if (canRun(ticket)) {
+                    tickets.remove();
+                    runs++;
+                    runsByNode.merge(ticket.nodeName, 1, Integer::sum);
+                    runsByServer.merge(ticket.serverUrl, 1, Integer::sum);
+                    admittedTickets.add(ticket);
+                } else {
+                    position++;
+                    if (position != ticket.reportedPosition) {
+                        ticket.reportedPosition = position;
+                        movedTickets.put(ticket, position);
+                    }
+                }
+            }
+            waitingRuns = waitingTickets.size();
+        }
+
+        for (Ticket ticket : admittedTickets) {
+            DetectRunPermit runPermit = new DetectRunPermit(() -> release(ticket));
+            if (!ticket.runPermit.complete(runPermit)) {
+                // The run stopped waiting just as it was let go.
+                runPermit.close();
+            }
+        }
+        movedTickets.forEach((ticket, position) -> ticket.queueListener.queued(position, waitingRuns));
+    }
+
+    private boolean canRun(Ticket ticket) {
+        int earlierTickets = 0;
+        int earlierTicketsOnNode = 0;
+        int earlierTicketsOnServer = 0;
+        for (Ticket waitingTicket : waitingTickets) {
+            if (waitingTicket == ticket) {
+                break;
+            }
+            earlierTickets++;
+            if (waitingTicket.nodeName.equals(ticket.nodeName)) {
+                earlierTicketsOnNode++;
+            }
+            if (waitingTicket.serverUrl.equals(ticket.serverUrl)) {
+                earlierTicketsOnServer++;
+            }
+        }
+
+        DetectThrottleLimits limits = ticket.limits;
+        return DetectThrottleLimits.allows(limits.getMaxConcurrentRuns(), runs + earlierTickets)
+            && DetectThrottleLimits.allows(limits.getMaxConcurrentRunsPerNode(), runsByNode.getOrDefault(ticket.nodeName, 0) + earlierTicketsOnNode)
+            && DetectThrottleLimits.allows(limits.getMaxConcurrentRunsPerServer(), runsByServer.getOrDefault(ticket.serverUrl, 0) + earlierTicketsOnServer);
+    }
+
+    private static String normalizeServerUrl(@Nullable String serverUrl) {
+        return StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/").toLowerCase(Locale.ROOT);
+    }
+
+    public interface QueueListener {
+        void queued(int position, int waitingRuns);
+    }
+
+    private static final class Ticket {
+        private final DetectThrottleLimits limits;
+        private final String nodeName;
+        private final String serverUrl;
+        private final QueueListener queueListener;
+        private final CompletableFuture<DetectRunPermit> runPermit = new CompletableFuture<>();
+        // Guarded by the throttle
+        private int reportedPosition;
+
+        private Ticket(DetectThrottleLimits limits, String nodeName, String serverUrl, QueueListener queueListener) {
+            this.limits = limits;
+            this.nodeName = nodeName;
+            this.serverUrl = serverUrl;
+            this.queueListener = queueListener;
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.throttle;
+
+/**
+ * The most Detect runs allowed at once on this controller, on one node, and against one Black Duck server. A limit of zero or less means no limit.
+ */
+public class DetectThrottleLimits {
+    public static final int UNLIMITED = 0;
+    public static final DetectThrottleLimits NONE = new DetectThrottleLimits(UNLIMITED, UNLIMITED, UNLIMITED);
+
+    private final int maxConcurrentRuns;
+    private final int maxConcurrentRunsPerNode;
+    private final int maxConcurrentRunsPerServer;
+
+    public DetectThrottleLimits(int maxConcurrentRuns, int maxConcurrentRunsPerNode, int maxConcurrentRunsPerServer) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.maxConcurrentRunsPerNode = maxConcurrentRunsPerNode;
+        this.maxConcurrentRunsPerServer = maxConcurrentRunsPerServer;
+    }
+
+    public int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    public int getMaxConcurrentRunsPerNode() {
+        return maxConcurrentRunsPerNode;
+    }
+
+    public int getMaxConcurrentRunsPerServer() {
+        return maxConcurrentRunsPerServer;
+    }
+
+    public boolean isUnlimited() {
+        return maxConcurrentRuns <= 0 && maxConcurrentRunsPerNode <= 0 && maxConcurrentRunsPerServer <= 0;
+    }
+
+    static boolean allows(int limit, int runs) {
+        return limit <= 0 || runs < limit;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.throttle;
+
+import com.blackduck.integration.blackduck.configuration.BlackDuckServerConfigBuilder;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsConfigService;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public class DetectThrottleService {
+    private final JenkinsIntLogger logger;
+    private final JenkinsConfigService jenkinsConfigService;
+    private final DetectRunThrottle detectRunThrottle;
+    @Nullable
+    private final String nodeName;
+
+    public DetectThrottleService(JenkinsIntLogger logger, JenkinsConfigService jenkinsConfigService, DetectRunThrottle detectRunThrottle, @Nullable String nodeName) {
+        this.logger = logger;
+        this.jenkinsConfigService = jenkinsConfigService;
+        this.detectRunThrottle = detectRunThrottle;
+        this.nodeName = nodeName;
+    }
+
+    /**
+     * Waits for a slot under the throttle limits in the global configuration. The Black Duck server is the one this run will actually scan against, which a job can
+     * override through its environment.
+     */
+    public DetectRunPermit acquire(IntEnvironmentVariables intEnvironmentVariables) throws InterruptedException {
+        Optional<DetectGlobalConfigSnapshot> detectGlobalConfigSnapshot = getGlobalConfigSnapshot();
+        return detectRunThrottle.acquire(getThrottleLimits(detectGlobalConfigSnapshot), nodeName, getServerUrl(intEnvironmentVariables, detectGlobalConfigSnapshot), this::logQueuePosition);
+    }
+
+    /**
+     * Queues for a slot like {@link #acquire(IntEnvironmentVariables)}, without waiting for it on this thread.
+     */
+    public CompletableFuture<DetectRunPermit> acquireAsync(IntEnvironmentVariables intEnvironmentVariables) {
+        Optional<DetectGlobalConfigSnapshot> detectGlobalConfigSnapshot = getGlobalConfigSnapshot();
+        return detectRunThrottle.acquireAsync(
+            getThrottleLimits(detectGlobalConfigSnapshot),
+            nodeName,
+            getServerUrl(intEnvironmentVariables, detectGlobalConfigSnapshot),
+            this::logQueuePosition
+        );
+    }
+
+    private Optional<DetectGlobalConfigSnapshot> getGlobalConfigSnapshot() {
+        return jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class).map(DetectGlobalConfig::getSnapshot);
+    }
+
+    private DetectThrottleLimits getThrottleLimits(Optional<DetectGlobalConfigSnapshot> detectGlobalConfigSnapshot) {
+        return detectGlobalConfigSnapshot.map(DetectGlobalConfigSnapshot::getThrottleLimits).orElse(DetectThrottleLimits.NONE);
+    }
+
+    @Nullable
+    private String getServerUrl(IntEnvironmentVariables intEnvironmentVariables, Optional<DetectGlobalConfigSnapshot> detectGlobalConfigSnapshot) {
+        String serverUrl = intEnvironmentVariables.getValue(BlackDuckServerConfigBuilder.URL_KEY.getKey());
+        if (StringUtils.isBlank(serverUrl)) {
+            serverUrl = detectGlobalConfigSnapshot.map(DetectGlobalConfigSnapshot::getBlackDuckUrl).orElse(null);
+        }
+        return serverUrl;
+    }
+
+    private void logQueuePosition(int position, int waitingRuns) {
+        logger.info(String.format("Waiting for a Detect run slot: position %d of %d in the queue", position, waitingRuns));
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.tools;
+
+import com.blackduck.integration.jenkins.detect.service.DetectLockFiles;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The agent-wide directory Detect downloads its tools to, such as the signature scanner and the inspectors, shared by every executor of the agent. Runs coordinate
+ * through lock files next to it, so they work across agent JVMs and survive an agent reconnect while Detect keeps running:
+ * <ul>
+ * <li>Until a run has gone through, the first run holds the download lock and the others wait for it, so the tools are downloaded once rather than by every executor.
+ * Detect downloads its tools itself, so the lock is held for the first run's whole scan and the others only wait a few minutes for it.</li>
+ * <li>Each run holds a lease while Detect runs. Tools the runs holding a lease may have used are not evicted, so a tool isn't deleted while Detect uses it.</li>
+ * <li>After each run the least recently used tools are evicted until the directory fits its size limit. The most recently used tool is always kept.</li>
+ * </ul>
+ */
+public class DetectToolsCache {
+    public static final String TOOLS_DIRECTORY = "tools";
+    public static final String LOCK_DIRECTORY = "tools-locks";
+
+    // A Detect run can take hours, so a lock is only given up on once no run could still be going.
+    static final long STALE_LOCK_MILLIS = TimeUnit.HOURS.toMillis(12);
+    static final String RUNS_DIRECTORY = "runs";
+    static final String DOWNLOAD_LOCK = "download.lock";
+    static final String EVICTION_LOCK = "eviction.lock";
+    static final String READY_MARKER = "ready";
+    // Linux only updates a file's access time if it is older than its modification time or a day old, so a tool read since a run started may look that much older.
+    static final long ACCESS_TIME_SLACK_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private final JenkinsIntLogger logger;
+    private final Path toolsDirectory;
+    private final Path lockDirectory;
+    private final Path runsDirectory;
+    private final DetectLockFiles lockFiles;
+
+    public DetectToolsCache(JenkinsIntLogger logger, String agentCacheDirectory) {
+        this.logger = logger;
+        this.toolsDirectory = Paths.get(agentCacheDirectory, TOOLS_DIRECTORY);
+        this.lockDirectory = Paths.get(agentCacheDirectory, LOCK_DIRECTORY);
+        this.runsDirectory = lockDirectory.resolve(RUNS_DIRECTORY);
+        this.lockFiles = new DetectLockFiles(lockDirectory, STALE_LOCK_MILLIS);
+    }
+
+    /**
+     * Takes or renews a run's lease and tells whether the run may go ahead, without waiting. While no run has gone through yet, the first run takes the download lock
+     * and the others wait for it to end, unless they have given up waiting. Every run waits for an eviction to end. A waiting run tries again later.
+     */
+    public AcquireState tryAcquire(String runId, boolean giveUpWaitingForDownload) throws IOException {
+        Files.createDirectories(toolsDirectory);
+        Files.createDirectories(runsDirectory);
+        // The lease is taken before checking for an eviction, so an eviction either sees the lease or is seen here.
+        Files.write(runsDirectory.resolve(runId), runId.getBytes(StandardCharsets.UTF_8));
+
+        boolean downloading = false;
+        if (!Files.exists(lockDirectory.resolve(READY_MARKER))) {
+            Path downloadLock = lockDirectory.resolve(DOWNLOAD_LOCK);
+            if (lockFiles.isHeldBy(downloadLock, runId) || lockFiles.tryLock(downloadLock, runId)) {
+                downloading = true;
+            } else if (!giveUpWaitingForDownload) {
+                return AcquireState.WAITING_FOR_DOWNLOAD;
+            }
+        }
+        // Evictions are quick, so a run always waits for one to end.
+        if (lockFiles.isLocked(lockDirectory.resolve(EVICTION_LOCK))) {
+            return AcquireState.WAITING_FOR_EVICTION;
+        }
+        return downloading ? AcquireState.DOWNLOADING : AcquireState.READY;
+    }
+
+    /**
+     * Gives up a run's lease, and its download lock if it holds it, then evicts the least recently used tools if the directory is over the size limit.
+     */
+    public void release(String runId, long maxBytes) throws IOException {
+        Files.deleteIfExists(runsDirectory.resolve(runId));
+
+        Path downloadLock = lockDirectory.resolve(DOWNLOAD_LOCK);
+        lockFiles.withGuard(() -> {
+            if (lockFiles.isHeldBy(downloadLock, runId)) {
+                // Whatever the run needed has been downloaded by now, even if it failed, so later runs no longer wait.
+                Files.write(lockDirectory.resolve(READY_MARKER), runId.getBytes(StandardCharsets.UTF_8));
+                Files.delete(downloadLock);
+            }
+            return null;
+        });
+
+        evict(maxBytes);
+    }
+
+    void evict(long maxBytes) throws IOException {
+        Path evictionLock = lockDirectory.resolve(EVICTION_LOCK);
+        String evictionId = UUID.randomUUID().toString();
+        if (!lockFiles.tryLock(evictionLock, evictionId)) {
+            return;
+        }
+        try {
+            long oldestActiveRunMillis = getOldestActiveRunMillis();
+            long inUseSinceMillis = (Long.MAX_VALUE == oldestActiveRunMillis) ? Long.MAX_VALUE : oldestActiveRunMillis - ACCESS_TIME_SLACK_MILLIS;
+
+            List<ToolEntry> toolEntries = listToolEntries();
+            long totalBytes = toolEntries.stream().mapToLong(toolEntry -> toolEntry.sizeBytes).sum();
+            if (totalBytes <= maxBytes) {
+                logger.debug(String.format("The shared Detect tools directory %s holds %d MB of its %d MB limit", toolsDirectory, totalBytes / MEGABYTE, maxBytes / MEGABYTE));
+                return;
+            }
+
+            toolEntries.sort(Comparator.comparingLong(toolEntry -> toolEntry.lastUsedMillis));
+            int evictedCount = 0;
+            long evictedBytes = 0L;
+            int inUseCount = 0;
+            for (ToolEntry toolEntry : toolEntries.subList(0, toolEntries.size() - 1)) {
+                if (totalBytes - evictedBytes <= maxBytes) {
+                    break;
+                }
+                if (toolEntry.lastUsedMillis >= inUseSinceMillis) {
+                    // Used since the oldest run still going on this agent started, which may still need it.
+                    inUseCount++;
+                    continue;
+                }
+                try {
+                    FileUtils.forceDelete(toolEntry.path.toFile());
+                    evictedCount++;
+                    evictedBytes += toolEntry.sizeBytes;
+                } catch (IOException e) {
+                    // e.g. a file still open on Windows; it is tried again after the next run.
+                    logger.warn(String.format("Could not evict the Detect tool %s: %s", toolEntry.path, e.getMessage()));
+                }
+            }
+            logger.info(String.format(
+                "Evicted %d least recently used Detect tools (%d MB) from %s, which now holds %d MB of its %d MB limit",
+                evictedCount,
+                evictedBytes / MEGABYTE,
+                toolsDirectory,
+                (totalBytes - evictedBytes) / MEGABYTE,
+                maxBytes / MEGABYTE
+            ));
+            if (inUseCount > 0) {
+                logger.debug(String.format("Kept %d Detect tools that other Detect runs on this agent may be using", inUseCount));
+            }
+        } finally {
+            lockFiles.unlock(evictionLock, evictionId);
+        }
+    }
+
+    // A lease is last written just before its run starts Detect. Long.MAX_VALUE if no run holds a lease.
+    private long getOldestActiveRunMillis() throws IOException {
+        long oldestActiveRunMillis = Long.MAX_VALUE;
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(runsDirectory)) {
+            for (Path lease : leases) {
+                if (lockFiles.isStale(lease)) {
+                    // The run ended without giving up its lease, e.g. because the agent went away.
+                    Files.deleteIfExists(lease);
+                    continue;
+                }
+                try {
+                    oldestActiveRunMillis = Math.min(oldestActiveRunMillis, Files.getLastModifiedTime(lease).toMillis());
+                } catch (NoSuchFileException e) {
+                    // The run ended meanwhile
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // No run has taken a lease yet
+        }
+        return oldestActiveRunMillis;
+    }
+
+    private List<ToolEntry> listToolEntries() throws IOException {
+        List<ToolEntry> toolEntries = new ArrayList<>();
+        try (DirectoryStream<Path> toolPaths = Files.newDirectoryStream(toolsDirectory)) {
+            for (Path toolPath : toolPaths) {
+                toolEntries.add(measure(toolPath));
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been downloaded yet
+        }
+        return toolEntries;
+    }
+
+    /*
+     * Detect only reads most of its tools, so a tool's last use is the newest access or modification time of anything in it. Only files count with their access
+     * time, since this walk lists the directories and so updates theirs.
+     */
+    private ToolEntry measure(Path toolPath) throws IOException {
+        long[] sizeAndLastUsed = new long[2];
+        Files.walkFileTree(toolPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                sizeAndLastUsed[1] = Math.max(sizeAndLastUsed[1], attributes.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                sizeAndLastUsed[0] += attributes.size();
+                sizeAndLastUsed[1] = Math.max(sizeAndLastUsed[1], getLastUsedMillis(attributes));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new ToolEntry(toolPath, sizeAndLastUsed[0], sizeAndLastUsed[1]);
+    }
+
+    private static long getLastUsedMillis(BasicFileAttributes attributes) {
+        return Math.max(attributes.lastModifiedTime().toMillis(), attributes.lastAccessTime().toMillis());
+    }
+
+    /**
+     * Where a run stands after trying to take its lease.
+     */
+    public enum AcquireState {
+        // The run holds the download lock, so it downloads whatever tools it needs while the other runs wait for it.
+        DOWNLOADING,
+        READY,
+        WAITING_FOR_DOWNLOAD,
+        WAITING_FOR_EVICTION;
+
+        public boolean isWaiting() {
+            return WAITING_FOR_DOWNLOAD == this || WAITING_FOR_EVICTION == this;
+        }
+    }
+
+    private static final class ToolEntry {
+        private final Path path;
+        private final long sizeBytes;
+        private final long lastUsedMillis;
+
+        private ToolEntry(Path path, long sizeBytes, long lastUsedMillis) {
+            this.path = path;
+            this.sizeBytes = sizeBytes;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.tools;
+
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsRemotingService;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.Timer;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates a Detect run with the other runs on its agent that share the agent tools directory, see {@link DetectToolsCache}. The lease is taken on the agent just
+ * before Detect starts and given up after it ends, when the tools directory is also trimmed to its size limit. A run that has to wait tries again every few seconds
+ * rather than holding a remoting call open on the agent.
+ */
+public class DetectToolsCacheService {
+    // Detect's detect.tools.output.path property
+    public static final String DETECT_TOOLS_OUTPUT_PATH = "DETECT_TOOLS_OUTPUT_PATH";
+    public static final long DEFAULT_MAX_MEGABYTES = 2048;
+    // Long enough for the first run's tool downloads, but the first run holds the download lock for its whole scan, so a longer wait would queue whole scans.
+    public static final long DEFAULT_WAIT_MINUTES = 3;
+    private static final long POLL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final JenkinsIntLogger logger;
+    private final JenkinsRemotingService remotingService;
+    private final String agentCacheDirectory;
+    private final String toolsDirectory;
+
+    // Taken on one thread and given up on another
+    @Nullable
+    private volatile String runId;
+    private volatile long maxBytes;
+    private volatile boolean loggedWait;
+    private volatile boolean released;
+
+    public DetectToolsCacheService(JenkinsIntLogger logger, JenkinsRemotingService remotingService, String agentCacheDirectory, String toolsDirectory) {
+        this.logger = logger;
+        this.remotingService = remotingService;
+        this.agentCacheDirectory = agentCacheDirectory;
+        this.toolsDirectory = toolsDirectory;
+    }
+
+    /**
+     * Whether Detect will use the agent tools directory, which it doesn't if the job chose a tools directory of its own.
+     */
+    public boolean isUsedBy(IntEnvironmentVariables intEnvironmentVariables) {
+        return toolsDirectory.equals(intEnvironmentVariables.getValue(DETECT_TOOLS_OUTPUT_PATH));
+    }
+
+    /**
+     * Takes the run's lease on the agent, waiting for another run's first download of the tools if there is one.
+     */
+    public void acquire(IntEnvironmentVariables intEnvironmentVariables) throws IOException, InterruptedException {
+        long waitUntil = start(intEnvironmentVariables);
+        while (!tryAcquire(runId, waitUntil)) {
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Takes the run's lease like {@link #acquire(IntEnvironmentVariables)}, without waiting on a thread. Each try is a quick call to the agent run on the given
+     * executor, and while the run has to wait the next try is scheduled on the shared timer. Releasing the run stops the tries.
+     */
+    public CompletableFuture<Void> acquireAsync(IntEnvironmentVariables intEnvironmentVariables, Executor executor) {
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        long waitUntil = start(intEnvironmentVariables);
+        executor.execute(() -> tryAcquire(acquired, waitUntil, executor));
+        return acquired;
+    }
+
+    /**
+     * Gives up the run's lease and evicts the least recently used tools. The tools directory only speeds runs up, so a failure is logged and doesn't fail the build.
+     */
+    public void release() {
+        released = true;
+        String releasedRunId = runId;
+        if (null == releasedRunId) {
+            return;
+        }
+        runId = null;
+        release(releasedRunId);
+    }
+
+    /**
+     * The lease the run holds, which outlives this service so it can still be given up after a controller restart, or null if the run holds none.
+     */
+    @Nullable
+    public Lease getLease() {
+        String leaseRunId = runId;
+        return null == leaseRunId ? null : new Lease(agentCacheDirectory, leaseRunId, maxBytes);
+    }
+
+    /**
+     * Gives up a lease taken by a service that is gone, like {@link #release()}. The agent going away only leaves the lease to go stale.
+     */
+    public static void release(JenkinsIntLogger logger, @Nullable VirtualChannel channel, Lease lease) {
+        if (null == channel) {
+            logger.warn("Could not release the shared Detect tools directory because its agent is offline");
+            return;
+        }
+        try {
+            channel.call(new ReleaseCallable(logger, lease.agentCacheDirectory, lease.runId, lease.maxBytes));
+        } catch (IOException e) {
+            logger.warn("Could not release the shared Detect tools directory: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long start(IntEnvironmentVariables intEnvironmentVariables) {
+        long maxWaitMinutes = NumberUtils.toLong(intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.TOOLS_CACHE_WAIT_MINUTES.stringValue()), DEFAULT_WAIT_MINUTES);
+        long maxMegabytes = NumberUtils.toLong(intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.TOOLS_CACHE_MAX_MB.stringValue()), DEFAULT_MAX_MEGABYTES);
+        maxBytes = Math.max(0L, maxMegabytes) * 1024L * 1024L;
+
+        // Set first, so the lease is given up even if taking it fails part way.
+        runId = UUID.randomUUID().toString();
+        return System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(Math.max(0L, maxWaitMinutes));
+    }
+
+    private void tryAcquire(CompletableFuture<Void> acquired, long waitUntil, Executor executor) {
+        String acquiringRunId = runId;
+        if (acquired.isDone() || released || null == acquiringRunId) {
+            return;
+        }
+        try {
+            boolean acquiredLease = tryAcquire(acquiringRunId, waitUntil);
+            if (released) {
+                // The run ended while this try took its lease on the agent.
+                release(acquiringRunId);
+            } else if (acquiredLease) {
+                acquired.complete(null);
+            } else {
+                Timer.get().schedule(() -> executor.execute(() -> tryAcquire(acquired, waitUntil, executor)), POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            acquired.completeExceptionally(e);
+        }
+    }
+
+    private boolean tryAcquire(String acquiringRunId, long waitUntil) throws IOException, InterruptedException {
+        boolean giveUpWaitingForDownload = System.currentTimeMillis() >= waitUntil;
+        DetectToolsCache.AcquireState acquireState = remotingService.call(new AcquireCallable(logger, agentCacheDirectory, acquiringRunId, giveUpWaitingForDownload));
+        if (DetectToolsCache.AcquireState.WAITING_FOR_DOWNLOAD == acquireState && !loggedWait) {
+            logger.info("Waiting for another Detect run on this agent to download the Detect tools to " + toolsDirectory);
+            loggedWait = true;
+        } else if (DetectToolsCache.AcquireState.DOWNLOADING == acquireState) {
+            logger.info("Detect will download its tools to the shared agent tools directory " + toolsDirectory + ", other Detect runs on this agent wait for it");
+        } else if (DetectToolsCache.AcquireState.READY == acquireState) {
+            if (loggedWait && giveUpWaitingForDownload) {
+                logger.warn("Gave up waiting for another Detect run on this agent to download the Detect tools");
+            }
+            logger.debug("Detect will use the shared agent tools directory " + toolsDirectory);
+        }
+        return !acquireState.isWaiting();
+    }
+
+    private void release(String releasedRunId) {
+        try {
+            remotingService.call(new ReleaseCallable(logger, agentCacheDirectory, releasedRunId, maxBytes));
+        } catch (IOException e) {
+            logger.warn("Could not release the shared Detect tools directory: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class Lease implements Serializable {
+        private static final long serialVersionUID = 2868316570913574013L;
+        private final String agentCacheDirectory;
+        private final String runId;
+        private final long maxBytes;
+
+        private Lease(String agentCacheDirectory, String runId, long maxBytes) {
+            this.agentCacheDirectory = agentCacheDirectory;
+            this.runId = runId;
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    public static class AcquireCallable extends MasterToSlaveCallable<DetectToolsCache.AcquireState, IOException> {
+        private static final long serialVersionUID = 4617935082318843275L;
+        private final JenkinsIntLogger logger;
+        private final String agentCacheDirectory;
+        private final String runId;
+        private final boolean giveUpWaitingForDownload;
+
+        public AcquireCallable(JenkinsIntLogger logger, String agentCacheDirectory, String runId, boolean giveUpWaitingForDownload) {
+            this.logger = logger;
+            this.agentCacheDirectory = agentCacheDirectory;
+            this.runId = runId;
+            this.giveUpWaitingForDownload = giveUpWaitingForDownload;
+        }
+
+        @Override
+        public DetectToolsCache.AcquireState call() throws IOException {
+            return new DetectToolsCache(logger, agentCacheDirectory).tryAcquire(runId, giveUpWaitingForDownload);
+        }
+    }
+
+    public static class ReleaseCallable extends MasterToSlaveCallable<Void, IOException> {
+        private static final long serialVersionUID = -3092871647553291827L;
+        private final JenkinsIntLogger logger;
+        private final String agentCacheDirectory;
+        private final String runId;
+        private final long maxBytes;
+
+        public ReleaseCallable(JenkinsIntLogger logger, String agentCacheDirectory, String runId, long maxBytes) {
+            this.logger = logger;
+            this.agentCacheDirectory = agentCacheDirectory;
+            this.runId = runId;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            new DetectToolsCache(logger, agentCacheDirectory).release(runId, maxBytes);
+            return null;
+        }
+    }
+
+}
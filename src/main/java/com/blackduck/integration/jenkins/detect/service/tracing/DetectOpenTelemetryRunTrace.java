@@ -0,0 +1,166 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.tracing;
+
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapSetter;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OpenTelemetry side of {@link DetectRunTrace}: one span for the run, with a child span for each phase its {@link DetectPhaseTimer} records. Only loaded once the
+ * opentelemetry-api plugin is known to be active.
+ * <p>
+ * Phase spans are created as each phase ends, using the timer's own readings, so the trace and the logged timings always agree. The agent-side setup happens on
+ * the agent, which has no exporter of its own, so its span is rebuilt here from the duration the agent reports and placed inside the agent bootstrap round trip.
+ */
+class DetectOpenTelemetryRunTrace implements DetectPhaseTimer.PhaseListener {
+    static final String INSTRUMENTATION_SCOPE = "com.blackduck.integration.jenkins.detect";
+    static final String RUN_SPAN_NAME = "detect run";
+
+    static final AttributeKey<String> STRATEGY_ATTRIBUTE = AttributeKey.stringKey("detect.strategy");
+    static final AttributeKey<String> BUILD_ATTRIBUTE = AttributeKey.stringKey("jenkins.build");
+    static final AttributeKey<Long> EXIT_CODE_ATTRIBUTE = AttributeKey.longKey("detect.exit_code");
+    static final AttributeKey<Long> SCRIPT_DOWNLOADS_ATTRIBUTE = AttributeKey.longKey("detect.script_downloads");
+    static final AttributeKey<Long> SCRIPT_DOWNLOAD_BYTES_ATTRIBUTE = AttributeKey.longKey("detect.script_download_bytes");
+
+    // Environment variable names are conventionally upper case, and the W3C header names are case-insensitive.
+    private static final TextMapSetter<IntEnvironmentVariables> ENVIRONMENT_SETTER = (environment, key, value) -> {
+        if (null != environment) {
+            environment.put(key.toUpperCase(Locale.ROOT), value);
+        }
+    };
+
+    private final Tracer tracer;
+    private final Span runSpan;
+    private final Context runContext;
+    private final long timerStartNanos;
+    private final long timerStartEpochNanos;
+
+    @Nullable
+    private Context bootstrapContext;
+    private long bootstrapStartNanos;
+    private long bootstrapEndNanos;
+    @Nullable
+    private Span detectSpan;
+
+    DetectOpenTelemetryRunTrace(Tracer tracer, DetectPhaseTimer detectPhaseTimer, String strategyName, @Nullable String buildId) {
+        this.tracer = tracer;
+        this.timerStartNanos = detectPhaseTimer.getStartNanos();
+        this.timerStartEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - (System.nanoTime() - timerStartNanos);
+
+        runSpan = tracer.spanBuilder(RUN_SPAN_NAME)
+            .setNoParent()
+            .setStartTimestamp(toEpochNanos(timerStartNanos), TimeUnit.NANOSECONDS)
+            .setAttribute(STRATEGY_ATTRIBUTE, strategyName)
+            .startSpan();
+        if (null != buildId) {
+            runSpan.setAttribute(BUILD_ATTRIBUTE, buildId);
+        }
+        runContext = Context.root().with(runSpan);
+
+        detectPhaseTimer.addPhaseListener(this);
+    }
+
+    @Override
+    public void phaseEnded(String phaseName, long startNanos, long endNanos) {
+        if (DetectPhaseTimer.DETECT.equals(phaseName) && null != detectSpan) {
+            detectSpan.end(toEpochNanos(endNanos), TimeUnit.NANOSECONDS);
+            detectSpan = null;
+            return;
+        }
+
+        Span phaseSpan = startChildSpan(phaseName, runContext, startNanos);
+        phaseSpan.end(toEpochNanos(endNanos), TimeUnit.NANOSECONDS);
+
+        if (DetectPhaseTimer.AGENT_BOOTSTRAP.equals(phaseName)) {
+            bootstrapContext = runContext.with(phaseSpan);
+            bootstrapStartNanos = startNanos;
+            bootstrapEndNanos = endNanos;
+        }
+    }
+
+    /**
+     * Adds the agent-side setup span under the agent bootstrap span. The agent's clock can't be compared with this one, so the setup is centred in the round trip,
+     * splitting the remoting overhead evenly on either side of it.
+     */
+    void recordAgentSetup(long agentSetupMillis, DetectScriptDownloads scriptDownloads) {
+        if (null == bootstrapContext) {
+            return;
+        }
+
+        long roundTripNanos = bootstrapEndNanos - bootstrapStartNanos;
+        long agentSetupNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(agentSetupMillis), roundTripNanos);
+        long agentSetupStartNanos = bootstrapStartNanos + (roundTripNanos - agentSetupNanos) / 2;
+
+        Span agentSetupSpan = startChildSpan(DetectPhaseTimer.AGENT_SETUP, bootstrapContext, agentSetupStartNanos);
+        agentSetupSpan.setAttribute(SCRIPT_DOWNLOADS_ATTRIBUTE, scriptDownloads.getDownloadCount());
+        agentSetupSpan.setAttribute(SCRIPT_DOWNLOAD_BYTES_ATTRIBUTE, scriptDownloads.getDownloadedBytes());
+        agentSetupSpan.end(toEpochNanos(agentSetupStartNanos + agentSetupNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts the span for the Detect process itself and puts its W3C trace context in the environment Detect is launched with, so anything Detect reports can join
+     * this trace.
+     */
+    void injectTraceContext(IntEnvironmentVariables intEnvironmentVariables) {
+        detectSpan = startChildSpan(DetectPhaseTimer.DETECT, runContext, System.nanoTime());
+        W3CTraceContextPropagator.getInstance().inject(runContext.with(detectSpan), intEnvironmentVariables, ENVIRONMENT_SETTER);
+    }
+
+    void finished(int exitCode) {
+        runSpan.setAttribute(EXIT_CODE_ATTRIBUTE, exitCode);
+        if (0 != exitCode) {
+            runSpan.setStatus(StatusCode.ERROR, String.format("Detect exited with code %d", exitCode));
+        }
+    }
+
+    void failed(Throwable failure) {
+        runSpan.recordException(failure);
+        runSpan.setStatus(StatusCode.ERROR, failure.getClass().getSimpleName());
+    }
+
+    void end() {
+        long endEpochNanos = toEpochNanos(System.nanoTime());
+        if (null != detectSpan) {
+            detectSpan.end(endEpochNanos, TimeUnit.NANOSECONDS);
+            detectSpan = null;
+        }
+        runSpan.end(endEpochNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reports to the OpenTelemetry SDK the opentelemetry plugin configures, or to a no-op tracer until it does.
+     */
+    static DetectOpenTelemetryRunTrace fromGlobal(DetectPhaseTimer detectPhaseTimer, String strategyName, @Nullable String buildId) {
+        return new DetectOpenTelemetryRunTrace(GlobalOpenTelemetry.getTracer(INSTRUMENTATION_SCOPE), detectPhaseTimer, strategyName, buildId);
+    }
+
+    private Span startChildSpan(String spanName, Context parentContext, long startNanos) {
+        return tracer.spanBuilder(spanName)
+            .setParent(parentContext)
+            .setStartTimestamp(toEpochNanos(startNanos), TimeUnit.NANOSECONDS)
+            .startSpan();
+    }
+
+    private long toEpochNanos(long nanoTime) {
+        return timerStartEpochNanos + (nanoTime - timerStartNanos);
+    }
+
+}
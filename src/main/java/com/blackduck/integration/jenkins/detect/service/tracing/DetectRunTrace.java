@@ -0,0 +1,66 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.tracing;
+
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import javax.annotation.Nullable;
+
+/**
+ * The trace of a single Detect run, see {@link DetectTracing#startRun}. Every call is a no-op unless the opentelemetry-api plugin is active, and nothing here refers
+ * to the OpenTelemetry classes it provides.
+ */
+public class DetectRunTrace {
+    public static final String TRACEPARENT = "TRACEPARENT";
+    public static final String TRACESTATE = "TRACESTATE";
+
+    @Nullable
+    private final DetectOpenTelemetryRunTrace openTelemetryRunTrace;
+
+    DetectRunTrace(@Nullable DetectOpenTelemetryRunTrace openTelemetryRunTrace) {
+        this.openTelemetryRunTrace = openTelemetryRunTrace;
+    }
+
+    /**
+     * Adds the agent-side setup span under the agent bootstrap span.
+     */
+    public void recordAgentSetup(long agentSetupMillis, DetectScriptDownloads scriptDownloads) {
+        if (null != openTelemetryRunTrace) {
+            openTelemetryRunTrace.recordAgentSetup(agentSetupMillis, scriptDownloads);
+        }
+    }
+
+    /**
+     * Starts the span for the Detect process itself and puts its W3C trace context in the TRACEPARENT and TRACESTATE variables of the environment Detect is launched with.
+     */
+    public void injectTraceContext(IntEnvironmentVariables intEnvironmentVariables) {
+        if (null != openTelemetryRunTrace) {
+            openTelemetryRunTrace.injectTraceContext(intEnvironmentVariables);
+        }
+    }
+
+    public void finished(int exitCode) {
+        if (null != openTelemetryRunTrace) {
+            openTelemetryRunTrace.finished(exitCode);
+        }
+    }
+
+    public void failed(Throwable failure) {
+        if (null != openTelemetryRunTrace) {
+            openTelemetryRunTrace.failed(failure);
+        }
+    }
+
+    public void end() {
+        if (null != openTelemetryRunTrace) {
+            openTelemetryRunTrace.end();
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * blackduck-detect
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.jenkins.detect.service.tracing;
+
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+import hudson.PluginWrapper;
+import jenkins.model.Jenkins;
+
+import javax.annotation.Nullable;
+
+/**
+ * Traces Detect runs through the Jenkins opentelemetry-api plugin. The plugin is an optional dependency, so runs are only traced when it is installed and active, and
+ * nothing here refers to the OpenTelemetry classes it provides. Where spans are exported to is configured in the Jenkins OpenTelemetry plugin; until it is, the
+ * spans go to a no-op tracer.
+ */
+public final class DetectTracing {
+    private static final String OPENTELEMETRY_API_PLUGIN = "opentelemetry-api";
+
+    private DetectTracing() {
+        // Static utility, no instances
+    }
+
+    public static DetectRunTrace startRun(DetectPhaseTimer detectPhaseTimer, String strategyName, @Nullable String buildId) {
+        if (!isEnabled()) {
+            return new DetectRunTrace(null);
+        }
+        return new DetectRunTrace(DetectOpenTelemetryRunTrace.fromGlobal(detectPhaseTimer, strategyName, buildId));
+    }
+
+    public static boolean isEnabled() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (null == jenkins) {
+            return false;
+        }
+        PluginWrapper openTelemetryApiPlugin = jenkins.getPluginManager().getPlugin(OPENTELEMETRY_API_PLUGIN);
+        return null != openTelemetryApiPlugin && openTelemetryApiPlugin.isActive();
+    }
+
+}
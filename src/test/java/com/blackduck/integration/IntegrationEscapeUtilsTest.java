@@ -0,0 +1,111 @@
+package com.blackduck.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.commons.text.translate.CharSequenceTranslator;
+import org.apache.commons.text.translate.LookupTranslator;
+import org.junit.jupiter.api.Test;
+
+public class IntegrationEscapeUtilsTest {
+    private static final CharSequenceTranslator LEGACY_ESCAPE_POWERSHELL = createLegacyPowerShellTranslator();
+    private static final String INTERESTING_CHARACTERS = "|&;<>()$`\\\"' \t*?[#~=%,\r\nab-_/.:\u00e9\u4e2d\ud83d\ude00";
+
+    @Test
+    public void testNullAndEmpty() {
+        assertNull(IntegrationEscapeUtils.escapePowerShell(null));
+        assertNull(IntegrationEscapeUtils.escapeShell(null));
+        assertEquals("", IntegrationEscapeUtils.escapePowerShell(""));
+        assertEquals("", IntegrationEscapeUtils.escapeShell(""));
+    }
+
+    @Test
+    public void testUnchangedInputIsReturnedAsIs() {
+        String input = "--detect.project.name:my-project_1.0/\u00e9\r";
+        assertSame(input, IntegrationEscapeUtils.escapePowerShell(input));
+        assertSame(input, IntegrationEscapeUtils.escapeShell(input));
+    }
+
+    @Test
+    public void testEscapedValues() {
+        assertEquals("`$HOME` `(x`)`,y", IntegrationEscapeUtils.escapePowerShell("$HOME (x),y\n"));
+        assertEquals("\\$HOME\\ \\(x\\),y", IntegrationEscapeUtils.escapeShell("$HOME (x),y\r\n"));
+    }
+
+    @Test
+    public void testEverySingleCharacter() {
+        for (int character = Character.MIN_VALUE; character <= Character.MAX_VALUE; character++) {
+            String input = String.valueOf((char) character);
+            assertMatchesLegacy(input);
+        }
+    }
+
+    @Test
+    public void testEveryShortCombination() {
+        int alphabetSize = INTERESTING_CHARACTERS.length();
+        for (int first = 0; first < alphabetSize; first++) {
+            for (int second = 0; second < alphabetSize; second++) {
+                for (int third = 0; third < alphabetSize; third++) {
+                    String input = new String(new char[] { INTERESTING_CHARACTERS.charAt(first), INTERESTING_CHARACTERS.charAt(second), INTERESTING_CHARACTERS.charAt(third) });
+                    assertMatchesLegacy(input);
+                    assertMatchesLegacy(input.substring(1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomInputs() {
+        Random random = new Random(20240612L);
+        for (int i = 0; i < 20000; i++) {
+            int length = random.nextInt(40);
+            StringBuilder input = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(4) == 0) {
+                    input.append((char) random.nextInt(Character.MAX_VALUE + 1));
+                } else {
+                    input.append(INTERESTING_CHARACTERS.charAt(random.nextInt(INTERESTING_CHARACTERS.length())));
+                }
+            }
+            assertMatchesLegacy(input.toString());
+        }
+    }
+
+    @Test
+    public void testTranslatorMatchesEscapeMethod() {
+        String input = "a b\r\n$c\r`d";
+        assertEquals(IntegrationEscapeUtils.escapePowerShell(input), IntegrationEscapeUtils.ESCAPE_POWERSHELL.translate(input));
+    }
+
+    private void assertMatchesLegacy(String input) {
+        assertMatchesLegacy(input, LEGACY_ESCAPE_POWERSHELL::translate, IntegrationEscapeUtils::escapePowerShell);
+        assertMatchesLegacy(input, StringEscapeUtils::escapeXSI, IntegrationEscapeUtils::escapeShell);
+    }
+
+    private void assertMatchesLegacy(String input, Function<String, String> legacyEscaper, Function<String, String> escaper) {
+        String expected = legacyEscaper.apply(input);
+        String actual = escaper.apply(input);
+        assertEquals(expected, actual, () -> String.format("Escaped value differs for input <%s>", input));
+        if (expected.equals(input)) {
+            assertSame(input, actual, () -> String.format("Unchanged input should be returned as is <%s>", input));
+        }
+    }
+
+    private static CharSequenceTranslator createLegacyPowerShellTranslator() {
+        Map<CharSequence, CharSequence> escapePowershellMap = new HashMap<>();
+        for (char character : "|&;<>()$`\\\"' \t*?[#~=%,".toCharArray()) {
+            escapePowershellMap.put(String.valueOf(character), "`" + character);
+        }
+        escapePowershellMap.put("\r\n", "");
+        escapePowershellMap.put("\n", "");
+        return new LookupTranslator(Collections.unmodifiableMap(escapePowershellMap));
+    }
+}
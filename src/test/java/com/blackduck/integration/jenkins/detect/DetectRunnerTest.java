@@ -1,6 +1,7 @@
 package com.blackduck.integration.jenkins.detect;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -12,6 +13,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
 
 import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
 import org.junit.jupiter.api.Test;
@@ -24,13 +28,20 @@ import com.blackduck.integration.jenkins.detect.extensions.AirGapDownloadStrateg
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.ScriptOrJarDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.detect.extensions.pipeline.DetectScanTarget;
 import com.blackduck.integration.jenkins.detect.extensions.tool.DetectAirGapInstallation;
 import com.blackduck.integration.jenkins.detect.service.DetectArgumentService;
 import com.blackduck.integration.jenkins.detect.service.DetectEnvironmentService;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectAirGapJarStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectBootstrapCallable;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectBootstrapResult;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectJarStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptStrategy;
 import com.blackduck.integration.jenkins.detect.service.strategy.DetectStrategyService;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectRunPermit;
+import com.blackduck.integration.jenkins.detect.service.throttle.DetectThrottleService;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
 import com.blackduck.integration.jenkins.service.JenkinsRemotingService;
@@ -134,23 +145,99 @@ public class DetectRunnerTest {
         assertTrue(actualCommand.get(i).startsWith("--detect.phone.home.passthrough.jenkins.plugin.version="));
     }
 
+    @Test
+    public void testRunDetectScanTargets() throws Exception {
+        JenkinsRemotingService mockedRemotingService = getMockedRemotingService(OperatingSystemType.LINUX, DETECT_JAR_PATH);
+        Mockito.when(mockedRemotingService.launch(Mockito.any(), Mockito.argThat(command -> command.contains("--detect.source.path=services/billing")))).thenReturn(3);
+        HashMap<String, String> environment = new HashMap<>();
+        environment.put(DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue(), DETECT_JAR_PATH);
+
+        DetectScanTarget billingTarget = new DetectScanTarget("services/billing");
+        billingTarget.setDetectProperties("--detect.project.name=billing");
+        List<DetectScanTarget> scanTargets = Arrays.asList(new DetectScanTarget("services/auth"), billingTarget, new DetectScanTarget("services/search"));
+
+        DetectRunner detectRunner = createDetectRunner(environment, mockedRemotingService);
+        DetectLaunch detectLaunch = detectRunner.prepareLaunch(null, DETECT_PROPERTY_INPUT, SCRIPTJAR_DOWNLOAD_STRATEGY, scanTargets, 2);
+
+        assertEquals(Arrays.asList("services/auth", "services/billing", "services/search"), new ArrayList<>(detectLaunch.getTargetCommands().keySet()));
+        assertEquals(2, detectLaunch.getParallelism());
+        assertEquals(3, detectRunner.launch(detectLaunch), "The run should fail with the failing target's exit code");
+
+        // The agent is set up once for all the targets
+        Mockito.verify(mockedRemotingService, Mockito.times(1)).call(Mockito.any(DetectBootstrapCallable.class));
+        ArgumentCaptor<List<String>> cmdsArgCapture = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(mockedRemotingService, Mockito.times(3)).launch(Mockito.any(), cmdsArgCapture.capture());
+        List<String> billingCommand = cmdsArgCapture.getAllValues().stream()
+            .filter(command -> command.contains("--detect.source.path=services/billing"))
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+        assertTrue(billingCommand.contains("--detect.project.name=billing"));
+        assertFalse(billingCommand.contains("--detect.project.name=Test Project'"), "The target's project name should replace the shared one");
+    }
+
+    @Test
+    public void testPrepareLaunchAsyncQueuesWithoutWaiting() throws Exception {
+        JenkinsRemotingService mockedRemotingService = getMockedRemotingService(OperatingSystemType.LINUX, DETECT_JAR_PATH);
+        HashMap<String, String> environment = new HashMap<>();
+        environment.put(DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue(), DETECT_JAR_PATH);
+        CompletableFuture<DetectRunPermit> runPermit = new CompletableFuture<>();
+        DetectThrottleService detectThrottleService = Mockito.mock(DetectThrottleService.class);
+        Mockito.when(detectThrottleService.acquireAsync(Mockito.any())).thenReturn(runPermit);
+
+        DetectRunner detectRunner = createDetectRunner(environment, mockedRemotingService, detectThrottleService);
+        CompletableFuture<DetectLaunch> detectLaunch = detectRunner.prepareLaunchAsync(null, DETECT_PROPERTY_INPUT, SCRIPTJAR_DOWNLOAD_STRATEGY, Collections.emptyList(), 0, Runnable::run);
+        assertFalse(detectLaunch.isDone(), "The run should be queued for a throttle slot");
+
+        runPermit.complete(DetectRunPermit.NONE);
+        assertTrue(detectLaunch.isDone(), "The run should be ready to start once it has a slot");
+        assertEquals(0, detectRunner.launch(detectLaunch.get()));
+    }
+
+    @Test
+    public void testCancelledLaunchLeavesQueue() throws Exception {
+        JenkinsRemotingService mockedRemotingService = getMockedRemotingService(OperatingSystemType.LINUX, DETECT_JAR_PATH);
+        HashMap<String, String> environment = new HashMap<>();
+        environment.put(DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue(), DETECT_JAR_PATH);
+        CompletableFuture<DetectRunPermit> runPermit = new CompletableFuture<>();
+        DetectThrottleService detectThrottleService = Mockito.mock(DetectThrottleService.class);
+        Mockito.when(detectThrottleService.acquireAsync(Mockito.any())).thenReturn(runPermit);
+
+        DetectRunner detectRunner = createDetectRunner(environment, mockedRemotingService, detectThrottleService);
+        CompletableFuture<DetectLaunch> detectLaunch = detectRunner.prepareLaunchAsync(null, DETECT_PROPERTY_INPUT, SCRIPTJAR_DOWNLOAD_STRATEGY, Collections.emptyList(), 0, Runnable::run);
+        detectLaunch.cancel(false);
+
+        assertTrue(runPermit.isCancelled(), "A cancelled run should give up its place in the queue");
+    }
+
+    @Test
+    public void testScanParallelism() {
+        assertEquals(4, DetectRunner.getScanParallelism(8, 0, 20));
+        assertEquals(1, DetectRunner.getScanParallelism(1, 0, 20));
+        assertEquals(3, DetectRunner.getScanParallelism(16, 0, 3));
+        assertEquals(6, DetectRunner.getScanParallelism(2, 6, 20));
+    }
+
     private JenkinsRemotingService getMockedRemotingService(OperatingSystemType operatingSystemType, String detectPath) {
         JenkinsRemotingService mockedRemotingService = Mockito.mock(JenkinsRemotingService.class);
 
+        Map<Class<?>, ArrayList<String>> detectCommandsBySetupCallable = new HashMap<>();
+        detectCommandsBySetupCallable.put(DetectJarStrategy.SetupCallableImpl.class, new ArrayList<>(Arrays.asList(JDK_HOME, "-jar", detectPath)));
+        detectCommandsBySetupCallable.put(DetectAirGapJarStrategy.SetupCallableImpl.class, new ArrayList<>(Arrays.asList(JDK_HOME, "-jar", DETECT_AIRGAP_JAR_PATH)));
+        if (operatingSystemType == OperatingSystemType.WINDOWS) {
+            detectCommandsBySetupCallable.put(
+                DetectScriptStrategy.SetupCallableImpl.class,
+                new ArrayList<>(Arrays.asList("powershell", String.format("\"Import-Module '%s'; detect\"", detectPath)))
+            );
+        } else {
+            detectCommandsBySetupCallable.put(DetectScriptStrategy.SetupCallableImpl.class, new ArrayList<>(Arrays.asList("bash", detectPath)));
+        }
+
         try {
-            Mockito.when(mockedRemotingService.call(Mockito.any(DetectJarStrategy.SetupCallableImpl.class)))
-                .thenReturn(new ArrayList<>(Arrays.asList(JDK_HOME, "-jar", detectPath)));
-            Mockito.when(mockedRemotingService.call(Mockito.any(DetectAirGapJarStrategy.SetupCallableImpl.class)))
-                .thenReturn(new ArrayList<>(Arrays.asList(JDK_HOME, "-jar", DETECT_AIRGAP_JAR_PATH)));
-
-            if (operatingSystemType == OperatingSystemType.WINDOWS) {
-                Mockito.when(mockedRemotingService.call(Mockito.any(DetectScriptStrategy.SetupCallableImpl.class)))
-                    .thenReturn(new ArrayList<>(Arrays.asList("powershell", String.format("\"Import-Module '%s'; detect\"", detectPath))));
-            } else {
-                Mockito.when(mockedRemotingService.call(Mockito.any(DetectScriptStrategy.SetupCallableImpl.class))).thenReturn(new ArrayList<>(Arrays.asList("bash", detectPath)));
-            }
-
-            Mockito.when(mockedRemotingService.getRemoteOperatingSystemType()).thenReturn(operatingSystemType);
+            Mockito.when(mockedRemotingService.call(Mockito.any(DetectBootstrapCallable.class))).thenAnswer(invocation -> {
+                DetectBootstrapCallable detectBootstrapCallable = invocation.getArgument(0);
+                ArrayList<String> detectCommand = detectCommandsBySetupCallable.get(detectBootstrapCallable.getSetupCallable().getClass());
+                return new DetectBootstrapResult(operatingSystemType, detectCommand, 0, new DetectScriptDownloads(), 1, 0L);
+            });
             Mockito.when(mockedRemotingService.launch(Mockito.any(), Mockito.any())).thenReturn(0);
         } catch (Exception e) {
             fail("Could not mock JenkinsRemotingService due to an unexpected exception. The test code likely requires fixing: ", e);
@@ -165,43 +252,7 @@ public class DetectRunnerTest {
         DetectDownloadStrategy detectDownloadStrategy
     ) {
         try {
-            JenkinsIntLogger jenkinsIntLogger = JenkinsIntLogger.logToListener(null);
-            Map<BuilderPropertyKey, String> builderEnvironmentVariables = new HashMap<>();
-            builderEnvironmentVariables.put(BlackDuckServerConfigBuilder.TIMEOUT_KEY, "120");
-
-            BlackDuckServerConfigBuilder blackDuckServerConfigBuilder = Mockito.mock(BlackDuckServerConfigBuilder.class);
-            Mockito.when(blackDuckServerConfigBuilder.getProperties()).thenReturn(builderEnvironmentVariables);
-
-            DetectGlobalConfig detectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
-            Mockito.when(detectGlobalConfig.getBlackDuckServerConfigBuilder(Mockito.any(), Mockito.any())).thenReturn(blackDuckServerConfigBuilder);
-
-            JenkinsConfigService jenkinsConfigService = Mockito.mock(JenkinsConfigService.class);
-            Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.of(detectGlobalConfig));
-
-            // Mocks specific to AirGap
-            DetectAirGapInstallation detectAirGapInstallationMock = Mockito.mock(DetectAirGapInstallation.class);
-            Mockito.when(jenkinsConfigService.getInstallationForNodeAndEnvironment(DetectAirGapInstallation.DescriptorImpl.class, AIRGAP_TOOL_NAME))
-                .thenReturn(Optional.ofNullable(detectAirGapInstallationMock));
-            Mockito.doReturn(AIRGAP_TOOL_PATH).when(detectAirGapInstallationMock).getHome();
-
-            JenkinsVersionHelper mockedVersionHelper = Mockito.mock(JenkinsVersionHelper.class);
-
-            BlackduckCredentialsHelper mockedCredentialsHelper = Mockito.mock(BlackduckCredentialsHelper.class);
-
-            JenkinsProxyHelper blankProxyHelper = new JenkinsProxyHelper();
-
-            DetectEnvironmentService detectEnvironmentService = new DetectEnvironmentService(
-                jenkinsIntLogger,
-                blankProxyHelper,
-                mockedVersionHelper,
-                mockedCredentialsHelper,
-                jenkinsConfigService,
-                environmentVariables
-            );
-            DetectArgumentService detectArgumentService = new DetectArgumentService(jenkinsIntLogger, mockedVersionHelper);
-            DetectStrategyService detectStrategyService = new DetectStrategyService(jenkinsIntLogger, blankProxyHelper, WORKSPACE_TMP_REL_PATH, jenkinsConfigService);
-
-            DetectRunner detectRunner = new DetectRunner(detectEnvironmentService, mockedRemotingService, detectStrategyService, detectArgumentService, jenkinsIntLogger);
+            DetectRunner detectRunner = createDetectRunner(environmentVariables, mockedRemotingService);
 
             // run the method we're testing
             detectRunner.runDetect(null, DETECT_PROPERTY_INPUT, detectDownloadStrategy);
@@ -226,4 +277,64 @@ public class DetectRunnerTest {
         }
         return Collections.emptyList();
     }
+
+    private DetectRunner createDetectRunner(Map<String, String> environmentVariables, JenkinsRemotingService mockedRemotingService) throws Exception {
+        return createDetectRunner(environmentVariables, mockedRemotingService, null);
+    }
+
+    private DetectRunner createDetectRunner(
+        Map<String, String> environmentVariables,
+        JenkinsRemotingService mockedRemotingService,
+        @Nullable DetectThrottleService detectThrottleService
+    ) throws Exception {
+        JenkinsIntLogger jenkinsIntLogger = JenkinsIntLogger.logToListener(null);
+        Map<BuilderPropertyKey, String> builderEnvironmentVariables = new HashMap<>();
+        builderEnvironmentVariables.put(BlackDuckServerConfigBuilder.TIMEOUT_KEY, "120");
+
+        DetectGlobalConfigSnapshot detectGlobalConfigSnapshot = Mockito.mock(DetectGlobalConfigSnapshot.class);
+        Mockito.when(detectGlobalConfigSnapshot.getBlackDuckProperties(Mockito.any(), Mockito.any())).thenReturn(builderEnvironmentVariables);
+
+        DetectGlobalConfig detectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
+        Mockito.when(detectGlobalConfig.getSnapshot()).thenReturn(detectGlobalConfigSnapshot);
+
+        JenkinsConfigService jenkinsConfigService = Mockito.mock(JenkinsConfigService.class);
+        Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.of(detectGlobalConfig));
+
+        // Mocks specific to AirGap
+        DetectAirGapInstallation detectAirGapInstallationMock = Mockito.mock(DetectAirGapInstallation.class);
+        Mockito.when(jenkinsConfigService.getInstallationForNodeAndEnvironment(DetectAirGapInstallation.DescriptorImpl.class, AIRGAP_TOOL_NAME))
+            .thenReturn(Optional.ofNullable(detectAirGapInstallationMock));
+        Mockito.doReturn(AIRGAP_TOOL_PATH).when(detectAirGapInstallationMock).getHome();
+
+        JenkinsVersionHelper mockedVersionHelper = Mockito.mock(JenkinsVersionHelper.class);
+
+        BlackduckCredentialsHelper mockedCredentialsHelper = Mockito.mock(BlackduckCredentialsHelper.class);
+
+        JenkinsProxyHelper blankProxyHelper = new JenkinsProxyHelper();
+
+        DetectEnvironmentService detectEnvironmentService = new DetectEnvironmentService(
+            jenkinsIntLogger,
+            blankProxyHelper,
+            mockedVersionHelper,
+            mockedCredentialsHelper,
+            jenkinsConfigService,
+            environmentVariables
+        );
+        DetectArgumentService detectArgumentService = new DetectArgumentService(jenkinsIntLogger, mockedVersionHelper);
+        DetectStrategyService detectStrategyService = new DetectStrategyService(jenkinsIntLogger, blankProxyHelper, WORKSPACE_TMP_REL_PATH, null, jenkinsConfigService);
+
+        return new DetectRunner(
+            detectEnvironmentService,
+            mockedRemotingService,
+            detectStrategyService,
+            detectArgumentService,
+            detectThrottleService,
+            null,
+            null,
+            null,
+            jenkinsIntLogger,
+            null,
+            null
+        );
+    }
 }
@@ -1,8 +1,13 @@
 package com.blackduck.integration.jenkins.detect.extensions.global;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.StringReader;
+
+import javax.xml.transform.stream.StreamSource;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
@@ -23,4 +28,39 @@ public class DetectGlobalConfigTest {
         assertTrue(formValidation.getMessage().contains("password"));
         System.out.printf("Message: %s\n", formValidation.getMessage());
     }
+
+    @Test
+    public void testUpdateByXmlWritesOnce() throws Exception {
+        DetectGlobalConfig detectGlobalConfig = new DetectGlobalConfig();
+        String configXml = "<com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig>"
+            + "<blackDuckUrl>https://blackduck.domain.com</blackDuckUrl>"
+            + "<blackDuckCredentialsId>123</blackDuckCredentialsId>"
+            + "<blackDuckTimeout>30</blackDuckTimeout>"
+            + "<trustBlackDuckCertificates>true</trustBlackDuckCertificates>"
+            + "<useControllerMirror>true</useControllerMirror>"
+            + "</com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig>";
+        long writesBefore = DetectGlobalConfig.getWriteCount();
+
+        detectGlobalConfig.updateByXml(new StreamSource(new StringReader(configXml)));
+
+        assertEquals(writesBefore + 1, DetectGlobalConfig.getWriteCount());
+        DetectGlobalConfig reloadedConfig = new DetectGlobalConfig();
+        assertEquals("https://blackduck.domain.com", reloadedConfig.getBlackDuckUrl());
+        assertEquals(30, reloadedConfig.getBlackDuckTimeout());
+        assertTrue(reloadedConfig.getTrustBlackDuckCertificates());
+        assertTrue(reloadedConfig.getUseControllerMirror());
+    }
+
+    @Test
+    public void testSnapshotPublishedOncePerSave() {
+        DetectGlobalConfig detectGlobalConfig = new DetectGlobalConfig();
+        DetectGlobalConfigSnapshot snapshotBefore = detectGlobalConfig.getSnapshot();
+
+        detectGlobalConfig.setBlackDuckUrl("https://blackduck.domain.com");
+
+        DetectGlobalConfigSnapshot snapshotAfter = detectGlobalConfig.getSnapshot();
+        assertEquals(snapshotBefore.getVersion() + 1, snapshotAfter.getVersion());
+        assertEquals("https://blackduck.domain.com", snapshotAfter.getBlackDuckUrl());
+        assertNull(snapshotBefore.getBlackDuckUrl());
+    }
 }
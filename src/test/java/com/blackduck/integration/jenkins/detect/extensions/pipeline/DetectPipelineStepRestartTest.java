@@ -0,0 +1,151 @@
+package com.blackduck.integration.jenkins.detect.extensions.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsSessionRule;
+
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.detect.service.DetectCommandsFactory;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCache;
+
+import hudson.Functions;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.RetentionStrategy;
+
+/**
+ * Restarts the controller while a pipeline step's Detect is running on an agent, then checks that the step reattaches to Detect, ends with its exit code and gives
+ * up its lease on the agent tools directory.
+ */
+public class DetectPipelineStepRestartTest {
+    private static final String AGENT_NAME = "detect-restart-agent";
+    private static final String JOB_NAME = "detect-restart";
+    private static final int EXIT_CODE = 3;
+
+    @Rule
+    public JenkinsSessionRule sessions = new JenkinsSessionRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void checkPlatform() {
+        Assume.assumeFalse("The step only runs Detect as a durable task on Unix agents", Functions.isWindows());
+    }
+
+    @Test
+    public void testStepCompletesAfterRestart() throws Throwable {
+        File agentRoot = temporaryFolder.newFolder("agent");
+        Path releaseFile = temporaryFolder.getRoot().toPath().resolve("release");
+        Path fakeDetectJar = createFakeDetectJar(temporaryFolder.getRoot().toPath());
+
+        sessions.then(jenkinsRule -> {
+            // Not one of JenkinsRule's temporary agents, whose directories are deleted when the first session ends while Detect still runs there.
+            DumbSlave agent = new DumbSlave(AGENT_NAME, agentRoot.getPath(), jenkinsRule.createComputerLauncher(null));
+            agent.setRetentionStrategy(RetentionStrategy.NOOP);
+            jenkinsRule.jenkins.addNode(agent);
+            jenkinsRule.waitOnline(agent);
+
+            WorkflowJob workflowJob = jenkinsRule.createProject(WorkflowJob.class, JOB_NAME);
+            String script = String.format(
+                "node('%s') { withEnv(['%s=%s', '%s=true']) {%n",
+                AGENT_NAME,
+                DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue(),
+                fakeDetectJar,
+                DetectJenkinsEnvironmentVariable.TOOLS_CACHE.stringValue()
+            )
+                + String.format("def status = blackduck_detect detectProperties: '--fake.release.file=%s --fake.exit.code=%d', returnStatus: true%n", releaseFile, EXIT_CODE)
+                + "echo \"Detect returned ${status}\"\n"
+                + "} }";
+            workflowJob.setDefinition(new CpsFlowDefinition(script, true));
+
+            WorkflowRun workflowRun = workflowJob.scheduleBuild2(0).waitForStart();
+            jenkinsRule.waitForMessage(WaitingDetect.WAITING_MESSAGE, workflowRun);
+        });
+
+        sessions.then(jenkinsRule -> {
+            WorkflowRun workflowRun = jenkinsRule.jenkins.getItemByFullName(JOB_NAME, WorkflowJob.class).getBuildByNumber(1);
+            Files.createFile(releaseFile);
+
+            jenkinsRule.assertBuildStatusSuccess(jenkinsRule.waitForCompletion(workflowRun));
+            jenkinsRule.assertLogContains(WaitingDetect.RELEASED_MESSAGE, workflowRun);
+            jenkinsRule.assertLogContains("Detect failed with exit code " + EXIT_CODE, workflowRun);
+            jenkinsRule.assertLogContains("Detect returned " + EXIT_CODE, workflowRun);
+
+            Path leases = agentRoot.toPath()
+                .resolve(DetectCommandsFactory.AGENT_CACHE_PARENT_DIRECTORY)
+                .resolve(DetectCommandsFactory.AGENT_CACHE_DIRECTORY)
+                .resolve(DetectToolsCache.LOCK_DIRECTORY)
+                .resolve("runs");
+            try (Stream<Path> remainingLeases = Files.list(leases)) {
+                assertEquals("The resumed run should give up its tools cache lease", 0, remainingLeases.count());
+            }
+        });
+    }
+
+    private Path createFakeDetectJar(Path directory) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, WaitingDetect.class.getName());
+
+        Path jarPath = directory.resolve("detect-restart-fake.jar");
+        String classEntry = WaitingDetect.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(jarPath), manifest);
+            InputStream classBytes = WaitingDetect.class.getClassLoader().getResourceAsStream(classEntry)) {
+            jarOutputStream.putNextEntry(new JarEntry(classEntry));
+            IOUtils.copy(classBytes, jarOutputStream);
+            jarOutputStream.closeEntry();
+        }
+        return jarPath;
+    }
+
+    /**
+     * Stands in for Detect: waits until --fake.release.file exists, then exits with --fake.exit.code. The jar is built from this class alone, so it must not use
+     * anything but the JDK.
+     */
+    public static class WaitingDetect {
+        static final String WAITING_MESSAGE = "Fake Detect is waiting to be released";
+        static final String RELEASED_MESSAGE = "Fake Detect was released";
+
+        public static void main(String[] args) throws InterruptedException {
+            File releaseFile = null;
+            int exitCode = 0;
+            for (String escapedArg : args) {
+                String arg = escapedArg.replace("\\", "");
+                if (arg.startsWith("--fake.release.file=")) {
+                    releaseFile = new File(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.startsWith("--fake.exit.code=")) {
+                    exitCode = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+                }
+            }
+
+            System.out.println(WAITING_MESSAGE);
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+            while (null != releaseFile && !releaseFile.exists() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            System.out.println(RELEASED_MESSAGE);
+            System.exit(exitCode);
+        }
+    }
+}
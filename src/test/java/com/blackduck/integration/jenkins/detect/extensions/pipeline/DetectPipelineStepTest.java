@@ -0,0 +1,45 @@
+package com.blackduck.integration.jenkins.detect.extensions.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+public class DetectPipelineStepTest {
+    @Test
+    public void testShellScriptQuoting() {
+        String script = DetectPipelineStep.toShellScript(Arrays.asList("java", "-jar", "/opt/detect 10.jar", "--detect.project.name=it's"));
+
+        assertEquals("#!/bin/sh\nexec 'java' '-jar' '/opt/detect 10.jar' '--detect.project.name=it'\\''s'\n", script);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void testShellScriptPassesArgumentsUnchanged() throws IOException, InterruptedException {
+        List<String> arguments = Arrays.asList("--detect.project.name=it's a \"project\"", "--blackduck.url=$BLACKDUCK_URL", "*", "\\`;|&", "");
+        Path scriptFile = Files.createTempFile("testShellScriptPassesArgumentsUnchanged", ".sh");
+        try {
+            List<String> command = new ArrayList<>(Arrays.asList("printf", "%s\\n"));
+            command.addAll(arguments);
+            Files.write(scriptFile, DetectPipelineStep.toShellScript(command).getBytes(StandardCharsets.UTF_8));
+
+            Process process = new ProcessBuilder("sh", scriptFile.toString()).start();
+            String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+
+            assertEquals(0, process.waitFor());
+            assertEquals(String.join("\n", arguments) + "\n", output);
+        } finally {
+            Files.deleteIfExists(scriptFile);
+        }
+    }
+}
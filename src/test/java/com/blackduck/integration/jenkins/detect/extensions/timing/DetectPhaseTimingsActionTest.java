@@ -0,0 +1,66 @@
+package com.blackduck.integration.jenkins.detect.extensions.timing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+public class DetectPhaseTimingsActionTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void testTimingsPersistedAndExported() throws Exception {
+        FreeStyleProject freeStyleProject = jenkinsRule.createFreeStyleProject();
+        FreeStyleBuild freeStyleBuild = jenkinsRule.buildAndAssertSuccess(freeStyleProject);
+
+        Map<String, Long> phaseMillis = new LinkedHashMap<>();
+        phaseMillis.put(DetectPhaseTimer.ENVIRONMENT, 5L);
+        phaseMillis.put(DetectPhaseTimer.STRATEGY, 10L);
+        phaseMillis.put(DetectPhaseTimer.DETECT, 1000L);
+        DetectPhaseTimingsAction.record(freeStyleBuild, phaseMillis, 1015L, true);
+        DetectPhaseTimingsAction.record(freeStyleBuild, phaseMillis, 20L, false);
+
+        freeStyleProject._getRuns().purgeCache();
+        FreeStyleBuild reloadedBuild = freeStyleProject.getBuildByNumber(freeStyleBuild.getNumber());
+        DetectPhaseTimingsAction detectPhaseTimingsAction = reloadedBuild.getAction(DetectPhaseTimingsAction.class);
+        assertNotNull(detectPhaseTimingsAction);
+        assertEquals(2, detectPhaseTimingsAction.getDetectRuns().size());
+        assertEquals("environment 5 ms, strategy 10 ms, detect 1000 ms", detectPhaseTimingsAction.getDetectRuns().get(0).getBreakdown());
+        assertFalse(detectPhaseTimingsAction.getDetectRuns().get(1).isCompleted());
+
+        JSONObject buildJson = jenkinsRule.getJSON(reloadedBuild.getUrl() + "api/json?depth=2").getJSONObject();
+        JSONObject detectRun = findDetectRuns(buildJson).getJSONObject(0);
+        assertEquals(1015L, detectRun.getLong("totalMillis"));
+        assertTrue(detectRun.getBoolean("completed"));
+        assertEquals(DetectPhaseTimer.DETECT, detectRun.getJSONArray("phases").getJSONObject(2).getString("name"));
+
+        String buildPage = jenkinsRule.createWebClient().getPage(reloadedBuild).asNormalizedText();
+        assertTrue(buildPage.contains("environment 5 ms, strategy 10 ms, detect 1000 ms"));
+    }
+
+    private JSONArray findDetectRuns(JSONObject buildJson) {
+        JSONArray actions = buildJson.getJSONArray("actions");
+        for (int i = 0; i < actions.size(); i++) {
+            JSONObject action = actions.getJSONObject(i);
+            if (DetectPhaseTimingsAction.class.getName().equals(action.optString("_class"))) {
+                return action.getJSONArray("detectRuns");
+            }
+        }
+        throw new AssertionError("The Detect timings were not exported");
+    }
+}
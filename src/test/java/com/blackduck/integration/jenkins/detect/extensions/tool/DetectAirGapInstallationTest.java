@@ -0,0 +1,44 @@
+package com.blackduck.integration.jenkins.detect.extensions.tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class DetectAirGapInstallationTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void testInstallationsServedFromSnapshot() {
+        DetectAirGapInstallation.DescriptorImpl descriptor = jenkinsRule.jenkins.getDescriptorByType(DetectAirGapInstallation.DescriptorImpl.class);
+        descriptor.setInstallations(new DetectAirGapInstallation("AirGap", "/opt/detect", Collections.emptyList()));
+        long avoidedLoadsBefore = DetectAirGapInstallation.DescriptorImpl.getAvoidedLoadCount();
+
+        DetectAirGapInstallation[] firstInstallations = descriptor.getInstallations();
+        DetectAirGapInstallation[] secondInstallations = descriptor.getInstallations();
+
+        assertEquals(1, secondInstallations.length);
+        assertEquals("AirGap", secondInstallations[0].getName());
+        assertNotSame(firstInstallations, secondInstallations);
+        assertTrue(DetectAirGapInstallation.DescriptorImpl.getAvoidedLoadCount() >= avoidedLoadsBefore + 2);
+    }
+
+    @Test
+    public void testSetInstallationsReplacesSnapshot() {
+        DetectAirGapInstallation.DescriptorImpl descriptor = jenkinsRule.jenkins.getDescriptorByType(DetectAirGapInstallation.DescriptorImpl.class);
+        descriptor.setInstallations(new DetectAirGapInstallation("AirGap", "/opt/detect", Collections.emptyList()));
+        descriptor.getInstallations();
+
+        descriptor.setInstallations(new DetectAirGapInstallation("AirGap", "/opt/detect", Collections.emptyList()), new DetectAirGapInstallation("AirGap2", "/opt/detect2", Collections.emptyList()));
+
+        DetectAirGapInstallation[] installations = descriptor.getInstallations();
+        assertEquals(2, installations.length);
+        assertEquals("AirGap2", installations[1].getName());
+    }
+}
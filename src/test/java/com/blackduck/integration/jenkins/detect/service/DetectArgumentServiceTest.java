@@ -1,18 +1,25 @@
 package com.blackduck.integration.jenkins.detect.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Random;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.Commandline;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -22,6 +29,7 @@ import com.blackduck.integration.jenkins.wrapper.JenkinsVersionHelper;
 import com.blackduck.integration.log.LogLevel;
 import com.blackduck.integration.util.IntEnvironmentVariables;
 
+import hudson.Util;
 import hudson.model.TaskListener;
 
 public class DetectArgumentServiceTest {
@@ -184,6 +192,32 @@ public class DetectArgumentServiceTest {
         commonValidation(detectCommandLine, new LinkedHashMap<>(), expectedArgsFromPlugin);
     }
 
+    @Test
+    public void testScanTargetArguments() {
+        String detectArgumentString = "--detect.project.name=monorepo --detect.project.version.name=1.0 --detect.source.path=/ignored";
+        List<String> detectCommandLine = detectArgumentService.getDetectArguments(
+            intEnvironmentVariables,
+            strategyEscaper,
+            invocationParameters,
+            detectArgumentString,
+            "services/billing",
+            "--detect.project.name=billing --detect.excluded.detector.types=GIT"
+        );
+
+        assertEquals(
+            Arrays.asList(
+                EXPECTED_TEST_INVOCATION_PARAMETER,
+                "--detect.project.version.name=1.0",
+                "--detect.source.path=services/billing",
+                "--detect.project.name=billing",
+                "--detect.excluded.detector.types=GIT"
+            ),
+            detectCommandLine.subList(0, 5),
+            "The target's properties should replace the shared ones they name"
+        );
+        assertEquals(8, detectCommandLine.size()); // Invocation args (1) + merged args (4) + auto added args (3)
+    }
+
     @Test
     public void testUnknownJenkinsVersion() {
         Mockito.when(jenkinsVersionHelper.getJenkinsVersion()).thenReturn(Optional.empty());
@@ -219,6 +253,87 @@ public class DetectArgumentServiceTest {
         commonValidation(detectCommandLine, expectedArgsFromEnvironment, expectedArgsFromPlugin);
     }
 
+    @Test
+    public void testParseMatchesLegacyPipeline() {
+        Map<String, String> environmentVariables = new LinkedHashMap<>();
+        environmentVariables.put("TRUST_CERT", "false");
+        environmentVariables.put("SPACED", "a b");
+        environmentVariables.put("EMPTY", "");
+        environmentVariables.put("DOLLAR", "$TRUST_CERT");
+        List<Function<String, String>> escapers = Arrays.asList(Function.identity(), value -> "[" + value + "]", value -> value.replace("'", "''"));
+
+        List<String> fixedInputs = Arrays.asList(
+            null,
+            "",
+            " ",
+            "\t",
+            "''",
+            "'' ''",
+            "a''b",
+            "\"a b\" 'c \" d'",
+            "--detect.cleanup=false\n--blackduck.trust.cert=$TRUST_CERT\r\n--x=${SPACED}",
+            "--blackduck.api.token=abc== --detect.a=b&c --detect.b==c",
+            "--logging.level.detect=DEBUG",
+            "\r\r\n\n$EMPTY $DOLLAR $$TRUST_CERT ${UNKNOWN}",
+            "'unbalanced",
+            "\"unbalanced 'inner'"
+        );
+        for (String input : fixedInputs) {
+            for (Function<String, String> escaper : escapers) {
+                assertSameAsLegacy(environmentVariables, escaper, input);
+            }
+        }
+
+        // Random strings over the characters the tokenizer, the line splitting, the macro expansion and the escaping care about.
+        String alphabet = "ab-=&$_.{}'\" \r\n\tA";
+        String[] fragments = { "--", "blackduck.api.token", "logging.level.detect", "$TRUST_CERT", "${SPACED}", "$EMPTY", "$$" };
+        Random random = new Random(20240601L);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(8) == 0) {
+                    input.append(fragments[random.nextInt(fragments.length)]);
+                } else {
+                    input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertSameAsLegacy(environmentVariables, escapers.get(random.nextInt(escapers.size())), input.toString());
+        }
+    }
+
+    private void assertSameAsLegacy(Map<String, String> environmentVariables, Function<String, String> escaper, String input) {
+        List<String> expected;
+        try {
+            expected = parseWithLegacyPipeline(environmentVariables, escaper, input);
+        } catch (BuildException e) {
+            BuildException actual = assertThrows(BuildException.class, () -> detectArgumentService.parseDetectArgumentString(environmentVariables, escaper, input));
+            assertEquals(e.getMessage(), actual.getMessage());
+            return;
+        }
+        assertEquals(expected, detectArgumentService.parseDetectArgumentString(environmentVariables, escaper, input), "Different arguments for input: " + input);
+    }
+
+    // The parsing pipeline DetectArgumentService used before it tokenized in a single pass, kept as the reference for the differential test.
+    private List<String> parseWithLegacyPipeline(Map<String, String> environmentVariables, Function<String, String> escaper, String argumentString) {
+        return Arrays.stream(Commandline.translateCommandline(argumentString))
+            .map(argumentBlobString -> argumentBlobString.split("\\r?\\n"))
+            .flatMap(Arrays::stream)
+            .map(argument -> Util.replaceMacro(argument, environmentVariables))
+            .filter(argument -> !StringUtils.isBlank(argument))
+            .filter(Objects::nonNull)
+            .map(argument -> {
+                String cleanedArg = argument;
+                if (argument.startsWith("--") && argument.contains("=") && !argument.contains("&")) {
+                    String[] splitArgument = argument.split("=", 2);
+                    String endArg = splitArgument[0].contains("blackduck.api.token") ? splitArgument[1] : escaper.apply(splitArgument[1]);
+                    cleanedArg = splitArgument[0] + "=" + endArg;
+                }
+                return cleanedArg;
+            })
+            .collect(Collectors.toList());
+    }
+
     private void commonValidation(List<String> detectCommandLine, Map<String, String> expectedPropertiesFromEnvironment, Map<String, String> expectedPropertiesFromPlugin) {
         assertEquals(EXPECTED_TEST_INVOCATION_PARAMETER, detectCommandLine.get(0));
 
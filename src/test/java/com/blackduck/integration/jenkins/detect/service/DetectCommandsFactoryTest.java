@@ -36,7 +36,7 @@ public class DetectCommandsFactoryTest {
 
     @Test
     public void testPipelineNullWorkspace() {
-        AbortException exception = assertThrows(AbortException.class, () -> DetectCommandsFactory.fromPipeline(mockedTaskListener, emptyEnvVars, mockedLauncher, mockedNode, null));
+        AbortException exception = assertThrows(AbortException.class, () -> DetectCommandsFactory.fromPipeline(mockedTaskListener, emptyEnvVars, mockedLauncher, mockedNode, null, null));
         assertEquals(DetectCommandsFactory.NULL_WORKSPACE, exception.getMessage());
     }
 
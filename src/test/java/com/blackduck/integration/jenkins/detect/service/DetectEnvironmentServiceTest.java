@@ -1,6 +1,10 @@
 package com.blackduck.integration.jenkins.detect.service;
 
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
 import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorService;
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCacheService;
 import com.blackduck.integration.blackduck.configuration.BlackDuckServerConfigBuilder;
 import com.blackduck.integration.builder.BuilderPropertyKey;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
@@ -41,6 +45,7 @@ public class DetectEnvironmentServiceTest {
     private final JenkinsProxyHelper jenkinsProxyHelper = new JenkinsProxyHelper();
 
     private final DetectGlobalConfig detectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
+    private final DetectGlobalConfigSnapshot detectGlobalConfigSnapshot = Mockito.mock(DetectGlobalConfigSnapshot.class);
     private final JenkinsConfigService jenkinsConfigServiceMock = Mockito.mock(JenkinsConfigService.class);
     private final JenkinsVersionHelper jenkinsVersionHelperMock = Mockito.mock(JenkinsVersionHelper.class);
 
@@ -50,7 +55,8 @@ public class DetectEnvironmentServiceTest {
     public void setUp() {
         Mockito.when(taskListenerMock.getLogger()).thenReturn(new PrintStream(byteArrayOutputStream));
         Mockito.when(jenkinsConfigServiceMock.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.of(detectGlobalConfig));
-        Mockito.when(detectGlobalConfig.getBlackDuckServerConfigBuilder(jenkinsProxyHelper, blackduckCredentialsHelper)).thenReturn(blackDuckServerConfigBuilder);
+        Mockito.when(detectGlobalConfig.getSnapshot()).thenReturn(detectGlobalConfigSnapshot);
+        Mockito.when(detectGlobalConfigSnapshot.getBlackDuckProperties(jenkinsProxyHelper, blackduckCredentialsHelper)).thenReturn(blackDuckServerConfigBuilder.getProperties());
 
         detectEnvironmentService = new DetectEnvironmentService(
             jenkinsIntLogger,
@@ -98,7 +104,7 @@ public class DetectEnvironmentServiceTest {
             String.format("Should contain %s", BlackDuckServerConfigBuilder.TIMEOUT_KEY)
         );
 
-        Mockito.when(detectGlobalConfig.getBlackDuckServerConfigBuilder(jenkinsProxyHelper, blackduckCredentialsHelper)).thenReturn(bdServerConfigBuilder);
+        Mockito.when(detectGlobalConfigSnapshot.getBlackDuckProperties(jenkinsProxyHelper, blackduckCredentialsHelper)).thenReturn(bdServerConfigBuilder.getProperties());
         IntEnvironmentVariables intEnvironmentVariables = detectEnvironmentService.createDetectEnvironment();
         assertFalse(intEnvironmentVariables.containsKey(junitKey), String.format("Should NOT contain key %s", junitKey));
         assertFalse(intEnvironmentVariables.getVariables().containsValue(junitValue), String.format("Should contain value %s", junitKey));
@@ -146,4 +152,60 @@ public class DetectEnvironmentServiceTest {
         assertTrue(intEnvironmentVariables.containsKey(DetectEnvironmentService.TIMEOUT), String.format("Should contain key %s", DetectEnvironmentService.TIMEOUT));
     }
 
+
+    @Test
+    public void testMirrorSetsDetectSource() {
+        Mockito.when(detectGlobalConfigSnapshot.getMirrorUrl()).thenReturn(Optional.of("https://jenkins.example.com/detect-mirror/"));
+        IntEnvironmentVariables intEnvironmentVariables = detectEnvironmentService.createDetectEnvironment();
+
+        assertEquals(
+            "https://jenkins.example.com/detect-mirror/" + DetectMirrorService.LATEST_JAR_PATH,
+            intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.SCRIPT_JAR_SOURCE.stringValue())
+        );
+    }
+
+    @Test
+    public void testMirrorKeepsUserDetectSource() {
+        Map<String, String> environmentVariables = new HashMap<>();
+        environmentVariables.put(DetectJenkinsEnvironmentVariable.SCRIPT_JAR_SOURCE.stringValue(), junitValue);
+        detectEnvironmentService = new DetectEnvironmentService(
+            jenkinsIntLogger,
+            jenkinsProxyHelper,
+            jenkinsVersionHelperMock,
+            blackduckCredentialsHelper,
+            jenkinsConfigServiceMock,
+            environmentVariables
+        );
+        Mockito.when(detectGlobalConfigSnapshot.getMirrorUrl()).thenReturn(Optional.of("https://jenkins.example.com/detect-mirror/"));
+        IntEnvironmentVariables intEnvironmentVariables = detectEnvironmentService.createDetectEnvironment();
+
+        assertEquals(junitValue, intEnvironmentVariables.getValue(DetectJenkinsEnvironmentVariable.SCRIPT_JAR_SOURCE.stringValue()));
+    }
+
+    @Test
+    public void testAgentToolsDirectory() {
+        String agentToolsDirectory = "/jenkins/caches/blackduck-detect/tools";
+        Map<String, String> environmentVariables = new HashMap<>();
+        assertNull(createDetectEnvironment(environmentVariables, agentToolsDirectory).getValue(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH), "The agent tools directory should be opt-in");
+
+        environmentVariables.put(DetectJenkinsEnvironmentVariable.TOOLS_CACHE.stringValue(), "true");
+        assertEquals(agentToolsDirectory, createDetectEnvironment(environmentVariables, agentToolsDirectory).getValue(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH));
+        assertNull(createDetectEnvironment(environmentVariables, null).getValue(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH));
+
+        environmentVariables.put(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH, junitValue);
+        assertEquals(junitValue, createDetectEnvironment(environmentVariables, agentToolsDirectory).getValue(DetectToolsCacheService.DETECT_TOOLS_OUTPUT_PATH));
+    }
+
+    private IntEnvironmentVariables createDetectEnvironment(Map<String, String> environmentVariables, String agentToolsDirectory) {
+        detectEnvironmentService = new DetectEnvironmentService(
+            jenkinsIntLogger,
+            jenkinsProxyHelper,
+            jenkinsVersionHelperMock,
+            blackduckCredentialsHelper,
+            jenkinsConfigServiceMock,
+            environmentVariables,
+            agentToolsDirectory
+        );
+        return detectEnvironmentService.createDetectEnvironment();
+    }
 }
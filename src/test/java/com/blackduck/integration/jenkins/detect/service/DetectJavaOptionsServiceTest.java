@@ -0,0 +1,100 @@
+package com.blackduck.integration.jenkins.detect.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import hudson.model.TaskListener;
+
+public class DetectJavaOptionsServiceTest {
+    private static final long GIGABYTE = 1024L * DetectJavaOptionsService.MEGABYTE;
+    private static final List<String> JAR_COMMAND = Arrays.asList("/usr/bin/java", "-jar", "/tmp/detect.jar");
+    private static final List<String> SCRIPT_COMMAND = Arrays.asList("bash", "/tmp/detect11.sh");
+
+    private ByteArrayOutputStream logOutput;
+    private JenkinsIntLogger logger;
+    private IntEnvironmentVariables intEnvironmentVariables;
+
+    @BeforeEach
+    public void setUp() {
+        logOutput = new ByteArrayOutputStream();
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(logOutput));
+        logger = JenkinsIntLogger.logToListener(taskListener);
+        intEnvironmentVariables = IntEnvironmentVariables.empty();
+    }
+
+    @Test
+    public void testComputedOptions() {
+        // A 64 GB, 16 processor agent with 4 executors
+        assertEquals(Arrays.asList("-Xmx8192m", "-XX:+UseParallelGC", "-XX:ActiveProcessorCount=4"), DetectJavaOptionsService.computeJavaOptions(64 * GIGABYTE, 16, 4));
+        assertEquals(Arrays.asList("-Xmx2048m", "-XX:+UseParallelGC", "-XX:ActiveProcessorCount=2"), DetectJavaOptionsService.computeJavaOptions(16 * GIGABYTE, 8, 4));
+        assertEquals(Arrays.asList("-Xmx512m", "-XX:+UseSerialGC", "-XX:ActiveProcessorCount=1"), DetectJavaOptionsService.computeJavaOptions(GIGABYTE, 2, 4));
+        assertEquals(Arrays.asList("-XX:+UseParallelGC", "-XX:ActiveProcessorCount=4"), DetectJavaOptionsService.computeJavaOptions(0, 4, 1));
+    }
+
+    @Test
+    public void testJarCommandGetsOptionsBeforeJar() {
+        DetectJavaOptionsService detectJavaOptionsService = new DetectJavaOptionsService(logger, 4);
+
+        List<String> detectCommand = detectJavaOptionsService.applyJavaOptions(intEnvironmentVariables, JAR_COMMAND, 16 * GIGABYTE, 8, 1);
+
+        assertEquals(Arrays.asList("/usr/bin/java", "-Xmx2048m", "-XX:+UseParallelGC", "-XX:ActiveProcessorCount=2", "-jar", "/tmp/detect.jar"), detectCommand);
+        assertTrue(logOutput.toString().contains("sized for 4 Detect processes at once"), "The chosen options should be logged");
+    }
+
+    @Test
+    public void testParallelTargetsShareTheAgent() {
+        DetectJavaOptionsService detectJavaOptionsService = new DetectJavaOptionsService(logger, 2);
+
+        List<String> detectCommand = detectJavaOptionsService.applyJavaOptions(intEnvironmentVariables, JAR_COMMAND, 16 * GIGABYTE, 8, 2);
+
+        assertEquals(Arrays.asList("/usr/bin/java", "-Xmx2048m", "-XX:+UseParallelGC", "-XX:ActiveProcessorCount=2", "-jar", "/tmp/detect.jar"), detectCommand);
+    }
+
+    @Test
+    public void testJobOptionsOverrideComputedOptions() {
+        intEnvironmentVariables.put(DetectJenkinsEnvironmentVariable.JVM_OPTIONS.stringValue(), " -Xmx12g  -XX:+UseG1GC ");
+        intEnvironmentVariables.put("JAVA_TOOL_OPTIONS", "-XX:ActiveProcessorCount=6");
+        DetectJavaOptionsService detectJavaOptionsService = new DetectJavaOptionsService(logger, 4);
+
+        List<String> detectCommand = detectJavaOptionsService.applyJavaOptions(intEnvironmentVariables, JAR_COMMAND, 64 * GIGABYTE, 16, 1);
+
+        assertEquals(Arrays.asList("/usr/bin/java", "-Xmx12g", "-XX:+UseG1GC", "-jar", "/tmp/detect.jar"), detectCommand);
+    }
+
+    @Test
+    public void testScriptGetsOptionsThroughEnvironment() {
+        intEnvironmentVariables.put(DetectJavaOptionsService.DETECT_JAVA_OPTS, "-XX:MaxRAMPercentage=40");
+        DetectJavaOptionsService detectJavaOptionsService = new DetectJavaOptionsService(logger, 1);
+
+        List<String> detectCommand = detectJavaOptionsService.applyJavaOptions(intEnvironmentVariables, SCRIPT_COMMAND, 8 * GIGABYTE, 4, 1);
+
+        assertSame(SCRIPT_COMMAND, detectCommand);
+        assertEquals("-XX:+UseParallelGC -XX:ActiveProcessorCount=4 -XX:MaxRAMPercentage=40", intEnvironmentVariables.getValue(DetectJavaOptionsService.DETECT_JAVA_OPTS));
+    }
+
+    @Test
+    public void testNodeWithoutExecutors() {
+        DetectJavaOptionsService detectJavaOptionsService = new DetectJavaOptionsService(logger, 0);
+
+        List<String> detectCommand = detectJavaOptionsService.applyJavaOptions(intEnvironmentVariables, JAR_COMMAND, 4 * GIGABYTE, 4, 1);
+
+        assertEquals("-Xmx2048m", detectCommand.get(1));
+        assertNull(intEnvironmentVariables.getValue(DetectJavaOptionsService.DETECT_JAVA_OPTS));
+    }
+}
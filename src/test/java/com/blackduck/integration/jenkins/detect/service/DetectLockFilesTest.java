@@ -0,0 +1,90 @@
+package com.blackduck.integration.jenkins.detect.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DetectLockFilesTest {
+    private static final long STALE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private Path lockDirectory;
+    private Path lock;
+    private DetectLockFiles detectLockFiles;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        lockDirectory = Files.createTempDirectory("testDetectLockFiles");
+        lock = lockDirectory.resolve("test.lock");
+        detectLockFiles = new DetectLockFiles(lockDirectory, STALE_MILLIS);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(lockDirectory.toFile());
+    }
+
+    @Test
+    public void testLockHeldUntilUnlocked() throws IOException {
+        assertTrue(detectLockFiles.tryLock(lock, "first"));
+        assertFalse(detectLockFiles.tryLock(lock, "second"));
+        assertTrue(detectLockFiles.isHeldBy(lock, "first"));
+
+        detectLockFiles.unlock(lock, "second");
+        assertTrue(detectLockFiles.isLocked(lock), "Only the owner should give up the lock");
+
+        detectLockFiles.unlock(lock, "first");
+        assertTrue(detectLockFiles.tryLock(lock, "second"));
+    }
+
+    @Test
+    public void testStaleLockTakenOver() throws IOException {
+        Files.write(lock, "abandoned".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(lock, FileTime.fromMillis(System.currentTimeMillis() - STALE_MILLIS - TimeUnit.MINUTES.toMillis(1)));
+
+        assertFalse(detectLockFiles.isLocked(lock));
+        assertTrue(detectLockFiles.tryLock(lock, "run"));
+        assertTrue(detectLockFiles.isHeldBy(lock, "run"));
+    }
+
+    @Test
+    public void testStaleLockTakenOverOnce() throws IOException, InterruptedException, ExecutionException {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                Files.write(lock, "abandoned".getBytes(StandardCharsets.UTF_8));
+                Files.setLastModifiedTime(lock, FileTime.fromMillis(System.currentTimeMillis() - STALE_MILLIS - TimeUnit.MINUTES.toMillis(1)));
+
+                List<Future<Boolean>> attempts = new ArrayList<>();
+                for (int run = 0; run < 8; run++) {
+                    String owner = "run" + run;
+                    attempts.add(executorService.submit(() -> new DetectLockFiles(lockDirectory, STALE_MILLIS).tryLock(lock, owner)));
+                }
+                int owners = 0;
+                for (Future<Boolean> attempt : attempts) {
+                    owners += attempt.get() ? 1 : 0;
+                }
+                assertEquals(1, owners, "Only one run should take over a stale lock");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.blackduck.integration.jenkins.detect.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.jenkins.wrapper.BlackduckCredentialsHelper;
+import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+
+public class DetectResolutionCacheTest {
+    private final JenkinsProxyHelper jenkinsProxyHelper = Mockito.mock(JenkinsProxyHelper.class);
+    private final BlackduckCredentialsHelper blackduckCredentialsHelper = Mockito.mock(BlackduckCredentialsHelper.class);
+
+    @BeforeEach
+    public void setUp() {
+        DetectResolutionCache.invalidateProxyInfos();
+        DetectResolutionCache.invalidateApiTokens();
+    }
+
+    @Test
+    public void testProxyInfoCachedPerHost() {
+        Mockito.when(jenkinsProxyHelper.getProxyInfo(Mockito.anyString())).thenReturn(ProxyInfo.NO_PROXY_INFO);
+        long hitsBefore = DetectResolutionCache.getProxyInfoHitCount();
+
+        assertSame(ProxyInfo.NO_PROXY_INFO, DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, "https://blackduck.domain.com/api"));
+        assertSame(ProxyInfo.NO_PROXY_INFO, DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, "https://BLACKDUCK.domain.com/other"));
+
+        Mockito.verify(jenkinsProxyHelper, Mockito.times(1)).getProxyInfo(Mockito.anyString());
+        assertEquals(hitsBefore + 1, DetectResolutionCache.getProxyInfoHitCount());
+    }
+
+    @Test
+    public void testProxyInfoInvalidated() {
+        Mockito.when(jenkinsProxyHelper.getProxyInfo(Mockito.anyString())).thenReturn(ProxyInfo.NO_PROXY_INFO);
+
+        DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, "https://blackduck.domain.com");
+        DetectResolutionCache.invalidateProxyInfos();
+        DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, "https://blackduck.domain.com");
+
+        Mockito.verify(jenkinsProxyHelper, Mockito.times(2)).getProxyInfo(Mockito.anyString());
+    }
+
+    @Test
+    public void testMalformedUrlNotCached() {
+        Mockito.when(jenkinsProxyHelper.getProxyInfo("not a url")).thenThrow(new IllegalArgumentException("bad url"));
+
+        assertThrows(IllegalArgumentException.class, () -> DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, "not a url"));
+        assertThrows(IllegalArgumentException.class, () -> DetectResolutionCache.getProxyInfo(jenkinsProxyHelper, "not a url"));
+    }
+
+    @Test
+    public void testApiTokenCachedUntilInvalidated() {
+        Mockito.when(blackduckCredentialsHelper.getApiTokenByCredentialsId("token-id")).thenReturn(Optional.of("token"), Optional.of("rotated-token"));
+        long apiTokenHitsBefore = DetectResolutionCache.getApiTokenHitCount();
+        long proxyInfoHitsBefore = DetectResolutionCache.getProxyInfoHitCount();
+
+        assertEquals(Optional.of("token"), DetectResolutionCache.getApiToken(blackduckCredentialsHelper, "token-id"));
+        assertEquals(Optional.of("token"), DetectResolutionCache.getApiToken(blackduckCredentialsHelper, "token-id"));
+        assertEquals(apiTokenHitsBefore + 1, DetectResolutionCache.getApiTokenHitCount());
+        assertEquals(proxyInfoHitsBefore, DetectResolutionCache.getProxyInfoHitCount(), "Each cache should count its own hits");
+
+        DetectResolutionCache.invalidateApiTokens();
+        assertEquals(Optional.of("rotated-token"), DetectResolutionCache.getApiToken(blackduckCredentialsHelper, "token-id"));
+    }
+
+    @Test
+    public void testEntriesBounded() {
+        Mockito.when(blackduckCredentialsHelper.getApiTokenByCredentialsId(Mockito.anyString())).thenReturn(Optional.of("token"));
+
+        for (int i = 0; i <= DetectResolutionCache.MAXIMUM_ENTRIES; i++) {
+            DetectResolutionCache.getApiToken(blackduckCredentialsHelper, "token-id-" + i);
+        }
+        DetectResolutionCache.getApiToken(blackduckCredentialsHelper, "token-id-0");
+
+        // token-id-0 was the least recently used entry, so it was evicted and resolved again.
+        Mockito.verify(blackduckCredentialsHelper, Mockito.times(2)).getApiTokenByCredentialsId("token-id-0");
+    }
+}
@@ -1,16 +1,25 @@
 package com.blackduck.integration.jenkins.detect.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
 import com.blackduck.integration.jenkins.detect.service.strategy.RemoteJavaService;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.log.LogLevel;
@@ -30,6 +39,7 @@ public class RemoteJavaServiceTest {
     private final IntEnvironmentVariables environmentVariables = IntEnvironmentVariables.empty();
     private JenkinsIntLogger logger;
     private ByteArrayOutputStream byteArrayOutputStream;
+    private Path testJdkHome;
 
     @BeforeEach
     public void setup() {
@@ -49,8 +59,15 @@ public class RemoteJavaServiceTest {
         }
     }
 
+    @AfterEach
+    public void cleanUp() throws IOException {
+        if (null != testJdkHome) {
+            FileUtils.deleteDirectory(testJdkHome.toFile());
+        }
+    }
+
     @Test
-    public void testRemoteJdkHomeSet() {
+    public void testRemoteJdkHomeSet() throws DetectJenkinsException {
         RemoteJavaService remoteJavaService = new RemoteJavaService(logger, testRemoteJdkHome, environmentVariables.getVariables());
 
         assertEquals(expectedTestRemoteJdkHome, remoteJavaService.getJavaExecutablePath(), "Could not set Java path by using " + testRemoteJdkHome);
@@ -59,7 +76,7 @@ public class RemoteJavaServiceTest {
     }
 
     @Test
-    public void testDetectJavaPathSet() {
+    public void testDetectJavaPathSet() throws DetectJenkinsException {
         environmentVariables.put(RemoteJavaService.DETECT_JAVA_PATH, expectedDetectJavaPath);
         RemoteJavaService remoteJavaService = new RemoteJavaService(logger, null, environmentVariables.getVariables());
 
@@ -69,7 +86,7 @@ public class RemoteJavaServiceTest {
     }
 
     @Test
-    public void testJavaPathSet() {
+    public void testJavaPathSet() throws DetectJenkinsException {
         environmentVariables.put(RemoteJavaService.JAVA_HOME, testJavaPath);
         RemoteJavaService remoteJavaService = new RemoteJavaService(logger, null, environmentVariables.getVariables());
 
@@ -79,7 +96,7 @@ public class RemoteJavaServiceTest {
     }
 
     @Test
-    public void testContainAllOptions() {
+    public void testContainAllOptions() throws DetectJenkinsException {
         environmentVariables.put(RemoteJavaService.DETECT_JAVA_PATH, expectedDetectJavaPath);
         environmentVariables.put(RemoteJavaService.JAVA_HOME, testJavaPath);
         RemoteJavaService remoteJavaService = new RemoteJavaService(logger, testRemoteJdkHome, environmentVariables.getVariables());
@@ -90,7 +107,7 @@ public class RemoteJavaServiceTest {
     }
 
     @Test
-    public void testContainBothEnvVars() {
+    public void testContainBothEnvVars() throws DetectJenkinsException {
         environmentVariables.put(RemoteJavaService.DETECT_JAVA_PATH, expectedDetectJavaPath);
         environmentVariables.put(RemoteJavaService.JAVA_HOME, testJavaPath);
         RemoteJavaService remoteJavaService = new RemoteJavaService(logger, null, environmentVariables.getVariables());
@@ -99,4 +116,57 @@ public class RemoteJavaServiceTest {
         assertTrue(byteArrayOutputStream.toString().contains(expectedDetectJavaPath), "Log message does not contain correct Java path.");
         assertTrue(byteArrayOutputStream.toString().contains("DETECT_JAVA_PATH environment variable"), "Log message does not contain correct 'based on' message.");
     }
+
+    @Test
+    public void testVersionReadFromReleaseFile() throws DetectJenkinsException, IOException {
+        createTestJdkHome("17.0.2", "Eclipse Adoptium");
+        RemoteJavaService remoteJavaService = new RemoteJavaService(logger, testJdkHome.toString(), environmentVariables.getVariables());
+
+        remoteJavaService.getJavaExecutablePath();
+        assertTrue(byteArrayOutputStream.toString().contains("Java version: 17.0.2 Eclipse Adoptium"), "Log message does not contain the Java version from the release file.");
+    }
+
+    @Test
+    public void testUnsupportedJavaVersionFailsFast() throws IOException {
+        createTestJdkHome("1.8.0_292", "AdoptOpenJDK");
+        RemoteJavaService remoteJavaService = new RemoteJavaService(logger, testJdkHome.toString(), environmentVariables.getVariables());
+
+        assertThrows(DetectJenkinsException.class, remoteJavaService::getJavaExecutablePath);
+    }
+
+    @Test
+    public void testResolutionCachedUntilExecutableChanges() throws DetectJenkinsException, IOException {
+        createTestJdkHome("17.0.2", "Eclipse Adoptium");
+        RemoteJavaService remoteJavaService = new RemoteJavaService(logger, testJdkHome.toString(), environmentVariables.getVariables());
+        String javaExecutablePath = remoteJavaService.getJavaExecutablePath();
+
+        // The release file is only read when the executable is resolved again, so a cached resolution keeps the old version.
+        writeReleaseFile("1.8.0_292", "AdoptOpenJDK");
+        assertEquals(javaExecutablePath, remoteJavaService.getJavaExecutablePath());
+
+        File javaExecutable = new File(javaExecutablePath);
+        assertTrue(javaExecutable.setLastModified(javaExecutable.lastModified() - 60000L), "Could not change the modification time of the test Java executable.");
+        assertThrows(DetectJenkinsException.class, remoteJavaService::getJavaExecutablePath);
+    }
+
+    @Test
+    public void testGetMajorVersion() {
+        assertEquals(8, RemoteJavaService.getMajorVersion("1.8.0_292"));
+        assertEquals(11, RemoteJavaService.getMajorVersion("11.0.21"));
+        assertEquals(17, RemoteJavaService.getMajorVersion("17"));
+        assertEquals(21, RemoteJavaService.getMajorVersion("21-ea"));
+        assertEquals(-1, RemoteJavaService.getMajorVersion(null));
+    }
+
+    private void createTestJdkHome(String javaVersion, String implementor) throws IOException {
+        testJdkHome = Files.createTempDirectory("testRemoteJavaService");
+        Path binDirectory = Files.createDirectories(testJdkHome.resolve("bin"));
+        Files.createFile(binDirectory.resolve(SystemUtils.IS_OS_WINDOWS ? "java.exe" : "java"));
+        writeReleaseFile(javaVersion, implementor);
+    }
+
+    private void writeReleaseFile(String javaVersion, String implementor) throws IOException {
+        String release = String.format("IMPLEMENTOR=\"%s\"%nJAVA_VERSION=\"%s\"%n", implementor, javaVersion);
+        Files.write(testJdkHome.resolve("release"), release.getBytes(StandardCharsets.UTF_8));
+    }
 }
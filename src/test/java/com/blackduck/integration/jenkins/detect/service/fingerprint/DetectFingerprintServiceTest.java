@@ -0,0 +1,154 @@
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsRemotingService;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import hudson.model.TaskListener;
+
+public class DetectFingerprintServiceTest {
+    private static final List<String> DETECT_COMMAND = Arrays.asList(
+        "/usr/bin/java",
+        "-jar",
+        "/tmp/detect.jar",
+        "--detect.project.name=app",
+        "--detect.project.version.name=1.0",
+        "--detect.phone.home.passthrough.jenkins.version=2.440"
+    );
+
+    private Path workspace;
+    private Path storeFile;
+    private DetectFingerprintService detectFingerprintService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        workspace = Files.createTempDirectory("testDetectFingerprint");
+        Files.write(workspace.resolve("pom.xml"), "<project/>".getBytes(StandardCharsets.UTF_8));
+        storeFile = Files.createTempFile("testDetectFingerprintStore", ".xml");
+        Files.delete(storeFile);
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        JenkinsRemotingService remotingService = Mockito.mock(JenkinsRemotingService.class);
+        Mockito.when(remotingService.call(Mockito.any(DetectManifestDigestCallable.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0, DetectManifestDigestCallable.class).call());
+
+        detectFingerprintService = new DetectFingerprintService(
+            JenkinsIntLogger.logToListener(taskListener),
+            remotingService,
+            new DetectFingerprintStore(storeFile.toFile()),
+            workspace.toString(),
+            "folder/job"
+        );
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workspace.toFile());
+        Files.deleteIfExists(storeFile);
+    }
+
+    @Test
+    public void testKeys() throws InterruptedException {
+        assertEquals("app/1.0", fingerprint(DETECT_COMMAND).getKey());
+        assertEquals("folder/job", fingerprint(Arrays.asList("/usr/bin/java", "-jar", "/tmp/detect.jar")).getKey());
+        assertEquals("folder/job:web", fingerprint(Arrays.asList("bash", "/tmp/detect.sh", "--detect.source.path=web")).getKey());
+    }
+
+    @Test
+    public void testSkipsUnchangedRunOnly() throws InterruptedException, IOException {
+        DetectFingerprint detectFingerprint = fingerprint(DETECT_COMMAND);
+        assertNull(detectFingerprintService.findUnchangedSince(detectFingerprint), "Nothing has been scanned yet");
+
+        detectFingerprintService.recordSuccess(detectFingerprint, "folder/job#3");
+        assertEquals("folder/job#3", detectFingerprintService.findUnchangedSince(fingerprint(DETECT_COMMAND)));
+
+        List<String> otherJavaAndPhoneHome = Arrays.asList(
+            "/opt/java/bin/java",
+            "-jar",
+            "/var/detect.jar",
+            "--detect.project.name=app",
+            "--detect.project.version.name=1.0",
+            "--detect.phone.home.passthrough.jenkins.version=2.452"
+        );
+        assertEquals("folder/job#3", detectFingerprintService.findUnchangedSince(fingerprint(otherJavaAndPhoneHome)), "Only Detect's own arguments should count");
+
+        List<String> changedArguments = Arrays.asList("/usr/bin/java", "-jar", "/tmp/detect.jar", "--detect.project.name=app", "--detect.project.version.name=1.0", "--detect.tools=DETECTOR");
+        assertNull(detectFingerprintService.findUnchangedSince(fingerprint(changedArguments)));
+
+        Files.write(workspace.resolve("pom.xml"), "<project><dependencies/></project>".getBytes(StandardCharsets.UTF_8));
+        assertNull(detectFingerprintService.findUnchangedSince(fingerprint(DETECT_COMMAND)));
+    }
+
+    @Test
+    public void testServerAndDetectVariablesCount() throws InterruptedException, IOException {
+        IntEnvironmentVariables intEnvironmentVariables = IntEnvironmentVariables.empty();
+        intEnvironmentVariables.put("BLACKDUCK_URL", "https://blackduck.domain.com/");
+        intEnvironmentVariables.put("BLACKDUCK_API_TOKEN", "token");
+        intEnvironmentVariables.put("DETECT_PROJECT_TIER", "2");
+        intEnvironmentVariables.put("BUILD_NUMBER", "3");
+        DetectFingerprint detectFingerprint = fingerprint(intEnvironmentVariables, DETECT_COMMAND);
+        assertEquals("app/1.0 on https://blackduck.domain.com", detectFingerprint.getKey());
+        detectFingerprintService.recordSuccess(detectFingerprint, "folder/job#3");
+
+        intEnvironmentVariables.put("BLACKDUCK_API_TOKEN", "rotated-token");
+        intEnvironmentVariables.put("BUILD_NUMBER", "4");
+        intEnvironmentVariables.put("DETECT_JAVA_OPTS", "-Xmx2g");
+        intEnvironmentVariables.put("DETECT_PLUGIN_TOOLS_CACHE", "false");
+        DetectFingerprint rotatedFingerprint = fingerprint(intEnvironmentVariables, DETECT_COMMAND);
+        assertEquals("folder/job#3", detectFingerprintService.findUnchangedSince(rotatedFingerprint), "Credentials and plugin settings should not count");
+
+        intEnvironmentVariables.put("DETECT_PROJECT_TIER", "1");
+        assertNull(detectFingerprintService.findUnchangedSince(fingerprint(intEnvironmentVariables, DETECT_COMMAND)));
+
+        intEnvironmentVariables.put("DETECT_PROJECT_TIER", "2");
+        List<String> otherServer = new ArrayList<>(DETECT_COMMAND);
+        otherServer.add("--blackduck.url=https://other.domain.com");
+        DetectFingerprint otherServerFingerprint = fingerprint(intEnvironmentVariables, otherServer);
+        assertEquals("app/1.0 on https://other.domain.com", otherServerFingerprint.getKey());
+        assertNull(detectFingerprintService.findUnchangedSince(otherServerFingerprint), "A scan on one server should not skip a scan on another");
+    }
+
+    @Test
+    public void testStoreSurvivesReload() throws InterruptedException {
+        DetectFingerprint detectFingerprint = fingerprint(DETECT_COMMAND);
+        detectFingerprintService.recordSuccess(detectFingerprint, "folder/job#3");
+
+        DetectFingerprintStore reloadedStore = new DetectFingerprintStore(storeFile.toFile());
+        reloadedStore.load();
+
+        DetectFingerprintStore.Entry entry = reloadedStore.get("app/1.0");
+        assertEquals(detectFingerprint.getValue(), entry.getFingerprint());
+        assertEquals("folder/job#3", entry.getBuildId());
+        assertNotEquals(0, entry.getRecordedMillis());
+    }
+
+    private DetectFingerprint fingerprint(List<String> detectCommand) throws InterruptedException {
+        return fingerprint(IntEnvironmentVariables.empty(), detectCommand);
+    }
+
+    private DetectFingerprint fingerprint(IntEnvironmentVariables intEnvironmentVariables, List<String> detectCommand) throws InterruptedException {
+        return detectFingerprintService.fingerprint(intEnvironmentVariables, Collections.singletonList(detectCommand));
+    }
+}
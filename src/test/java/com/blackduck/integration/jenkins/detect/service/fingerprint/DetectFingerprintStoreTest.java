@@ -0,0 +1,58 @@
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DetectFingerprintStoreTest {
+    private Path storeFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        storeFile = Files.createTempFile("testDetectFingerprintStore", ".xml");
+        Files.delete(storeFile);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(storeFile);
+    }
+
+    @Test
+    public void testOldestEntriesDropped() throws IOException, InterruptedException {
+        DetectFingerprintStore detectFingerprintStore = new DetectFingerprintStore(storeFile.toFile(), 2, TimeUnit.DAYS.toMillis(1));
+        detectFingerprintStore.record("app/1.0", "first", null);
+        Thread.sleep(5);
+        detectFingerprintStore.record("app/2.0", "second", null);
+        Thread.sleep(5);
+        detectFingerprintStore.record("app/3.0", "third", null);
+
+        assertNull(detectFingerprintStore.get("app/1.0"), "The oldest fingerprint should be dropped once the store is full");
+        assertNotNull(detectFingerprintStore.get("app/2.0"));
+        assertNotNull(detectFingerprintStore.get("app/3.0"));
+
+        DetectFingerprintStore reloadedStore = new DetectFingerprintStore(storeFile.toFile());
+        reloadedStore.load();
+        assertNull(reloadedStore.get("app/1.0"), "A dropped fingerprint should not be saved");
+    }
+
+    @Test
+    public void testExpiredEntriesDropped() throws IOException, InterruptedException {
+        DetectFingerprintStore detectFingerprintStore = new DetectFingerprintStore(storeFile.toFile(), 10, 50);
+        detectFingerprintStore.record("app/1.0", "first", null);
+        Thread.sleep(100);
+        detectFingerprintStore.record("app/2.0", "second", null);
+
+        assertNull(detectFingerprintStore.get("app/1.0"), "A fingerprint not recorded for too long should be dropped");
+        assertNotNull(detectFingerprintStore.get("app/2.0"));
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.blackduck.integration.jenkins.detect.service.fingerprint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DetectManifestDigestCallableTest {
+    private Path sourceDirectory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        sourceDirectory = Files.createTempDirectory("testDetectManifestDigest");
+        write("pom.xml", "<project/>");
+        write("web/package.json", "{}");
+        write("web/package-lock.json", "{}");
+        write("src/Main.java", "class Main {}");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(sourceDirectory.toFile());
+    }
+
+    @Test
+    public void testIsManifest() {
+        assertTrue(DetectManifestDigestCallable.isManifest("build.gradle"));
+        assertTrue(DetectManifestDigestCallable.isManifest("App.csproj"));
+        assertFalse(DetectManifestDigestCallable.isManifest("Main.java"));
+        assertFalse(DetectManifestDigestCallable.isManifest(".csproj"));
+    }
+
+    @Test
+    public void testOnlyManifestsAreDigested() throws IOException {
+        DetectManifestDigest original = digest();
+        assertEquals(3, original.getManifestCount());
+
+        write("src/Main.java", "class Main { int changed; }");
+        write("README.md", "changed");
+        assertEquals(original.getDigest(), digest().getDigest(), "Source changes should not change the digest");
+
+        write("web/package-lock.json", "{\"lockfileVersion\": 3}");
+        assertNotEquals(original.getDigest(), digest().getDigest(), "Lockfile changes should change the digest");
+    }
+
+    @Test
+    public void testExcludedDirectoriesAreSkipped() throws IOException {
+        DetectManifestDigest original = digest();
+
+        write("web/node_modules/left-pad/package.json", "{}");
+        write("target/classes/pom.xml", "<project/>");
+
+        DetectManifestDigest withExcluded = digest();
+        assertEquals(original.getManifestCount(), withExcluded.getManifestCount());
+        assertEquals(original.getDigest(), withExcluded.getDigest());
+    }
+
+    @Test
+    public void testMovedManifestChangesDigest() throws IOException {
+        DetectManifestDigest original = digest();
+
+        Files.move(sourceDirectory.resolve("pom.xml"), sourceDirectory.resolve("src/pom.xml"));
+
+        assertNotEquals(original.getDigest(), digest().getDigest());
+    }
+
+    private DetectManifestDigest digest() throws IOException {
+        return new DetectManifestDigestCallable(sourceDirectory.toString()).call();
+    }
+
+    private void write(String relativePath, String contents) throws IOException {
+        Path file = sourceDirectory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,95 @@
+package com.blackduck.integration.jenkins.detect.service.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.extensions.ScriptOrJarDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectBootstrapCallable;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectStrategyService;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.jenkins.service.JenkinsConfigService;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import hudson.model.TaskListener;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import jenkins.security.MasterToSlaveCallable;
+
+public class DetectFlightRecorderTest {
+    private Recording recording;
+    private Path recordingFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        recordingFile = Files.createTempFile("testDetectFlightRecorder", ".jfr");
+        recording = new Recording();
+        recording.enable(DetectFlightRecorder.EVENT_PREFIX + "StrategyResolution");
+        recording.enable(DetectFlightRecorder.EVENT_PREFIX + "AgentSetup");
+        recording.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        recording.close();
+        Files.deleteIfExists(recordingFile);
+    }
+
+    @Test
+    public void testAvailable() {
+        assertTrue(DetectFlightRecorder.isAvailable(), "The JVM running the tests includes JFR");
+    }
+
+    @Test
+    public void testStrategyAndAgentSetupEvents() throws IntegrationException, IOException {
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        DetectStrategyService detectStrategyService = new DetectStrategyService(JenkinsIntLogger.logToListener(taskListener), null, null, null, Mockito.mock(JenkinsConfigService.class));
+        detectStrategyService.getExecutionStrategy(IntEnvironmentVariables.empty(), null, new ScriptOrJarDownloadStrategy());
+
+        DetectBootstrapCallable detectBootstrapCallable = new DetectBootstrapCallable(new MasterToSlaveCallable<ArrayList<String>, IntegrationException>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ArrayList<String> call() {
+                DetectScriptDownloads.record(4096, 12);
+                return new ArrayList<>(Arrays.asList("bash", "/tmp/detect11.sh"));
+            }
+        });
+        detectBootstrapCallable.call();
+
+        recording.stop();
+        recording.dump(recordingFile);
+        List<RecordedEvent> recordedEvents = RecordingFile.readAllEvents(recordingFile);
+        Map<String, RecordedEvent> eventsByName = recordedEvents.stream()
+            .collect(Collectors.toMap(recordedEvent -> recordedEvent.getEventType().getName(), Function.identity()));
+
+        RecordedEvent strategyEvent = eventsByName.get(DetectFlightRecorder.EVENT_PREFIX + "StrategyResolution");
+        assertEquals("ScriptOrJarDownloadStrategy", strategyEvent.getString("downloadStrategy"));
+        assertEquals(DetectScriptStrategy.class.getSimpleName(), strategyEvent.getString("strategyType"));
+
+        RecordedEvent agentSetupEvent = eventsByName.get(DetectFlightRecorder.EVENT_PREFIX + "AgentSetup");
+        assertEquals(1, agentSetupEvent.getLong("scriptDownloads"));
+        assertEquals(4096, agentSetupEvent.getLong("bytesTransferred"));
+    }
+}
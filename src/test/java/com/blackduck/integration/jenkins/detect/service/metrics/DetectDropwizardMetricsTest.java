@@ -0,0 +1,105 @@
+package com.blackduck.integration.jenkins.detect.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.jenkins.detect.extensions.AirGapDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.InheritFromGlobalDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectClassDataSharing;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+public class DetectDropwizardMetricsTest {
+    private MetricRegistry metricRegistry;
+    private DetectDropwizardMetrics detectDropwizardMetrics;
+
+    @BeforeEach
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        detectDropwizardMetrics = new DetectDropwizardMetrics(metricRegistry);
+    }
+
+    @Test
+    public void testRunMetrics() {
+        String strategyName = DetectMetrics.getStrategyName(new AirGapDownloadStrategy());
+
+        detectDropwizardMetrics.runStarted();
+        detectDropwizardMetrics.runStarted();
+        assertEquals(2, metricRegistry.counter(DetectDropwizardMetrics.RUNS_IN_FLIGHT).getCount());
+
+        detectDropwizardMetrics.runFinished(strategyName, 1500, 0);
+        detectDropwizardMetrics.runEnded();
+        detectDropwizardMetrics.runFailed(strategyName, 20, new IllegalStateException());
+        detectDropwizardMetrics.runEnded();
+        detectDropwizardMetrics.runStarted();
+        detectDropwizardMetrics.runSkipped();
+        detectDropwizardMetrics.runEnded();
+
+        assertEquals(0, metricRegistry.counter(DetectDropwizardMetrics.RUNS_IN_FLIGHT).getCount());
+        Timer runDuration = metricRegistry.timer(MetricRegistry.name(DetectDropwizardMetrics.RUN_DURATION, "AirGapDownloadStrategy"));
+        assertEquals(2, runDuration.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), runDuration.getSnapshot().getMax());
+        assertEquals(1, metricRegistry.counter(MetricRegistry.name(DetectDropwizardMetrics.EXIT_CODE, "0")).getCount());
+        assertEquals(1, metricRegistry.counter(MetricRegistry.name(DetectDropwizardMetrics.FAILURES, "IllegalStateException")).getCount());
+        assertEquals(1, metricRegistry.counter(DetectDropwizardMetrics.SKIPPED).getCount());
+    }
+
+    @Test
+    public void testProcessMetrics() {
+        detectDropwizardMetrics.detectFinished(DetectClassDataSharing.Mode.ARCHIVING, 14_000);
+        detectDropwizardMetrics.detectFinished(DetectClassDataSharing.Mode.SHARED, 6_000);
+        detectDropwizardMetrics.detectFinished(DetectClassDataSharing.Mode.SHARED, 5_000);
+
+        assertEquals(1, metricRegistry.timer(MetricRegistry.name(DetectDropwizardMetrics.PROCESS_DURATION, "archiving")).getCount());
+        Timer sharedDuration = metricRegistry.timer(MetricRegistry.name(DetectDropwizardMetrics.PROCESS_DURATION, "shared"));
+        assertEquals(2, sharedDuration.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(6_000), sharedDuration.getSnapshot().getMax());
+    }
+
+    @Test
+    public void testSetupMetrics() {
+        detectDropwizardMetrics.setupCompleted(40, new DetectScriptDownloads());
+        assertEquals(1, metricRegistry.timer(DetectDropwizardMetrics.SETUP_DURATION).getCount());
+        assertFalse(metricRegistry.getNames().contains(DetectDropwizardMetrics.SCRIPT_DOWNLOAD_BYTES), "No download should be recorded when the script was cached");
+
+        DetectScriptDownloads.begin();
+        DetectScriptDownloads.record(2048, 300);
+        detectDropwizardMetrics.setupCompleted(350, DetectScriptDownloads.end());
+
+        assertEquals(2, metricRegistry.timer(DetectDropwizardMetrics.SETUP_DURATION).getCount());
+        assertEquals(2048, metricRegistry.histogram(DetectDropwizardMetrics.SCRIPT_DOWNLOAD_BYTES).getSnapshot().getMax());
+        assertEquals(1, metricRegistry.timer(DetectDropwizardMetrics.SCRIPT_DOWNLOAD_DURATION).getCount());
+    }
+
+    @Test
+    public void testResolutionCacheMetrics() {
+        detectDropwizardMetrics.resolutionCacheLookup("apiToken", false);
+        detectDropwizardMetrics.resolutionCacheLookup("apiToken", true);
+        detectDropwizardMetrics.resolutionCacheLookup("apiToken", true);
+        detectDropwizardMetrics.resolutionCacheLookup("proxyInfo", false);
+
+        assertEquals(2, metricRegistry.counter(MetricRegistry.name(DetectDropwizardMetrics.RESOLUTION_CACHE, "apiToken", "hits")).getCount());
+        assertEquals(1, metricRegistry.counter(MetricRegistry.name(DetectDropwizardMetrics.RESOLUTION_CACHE, "apiToken", "misses")).getCount());
+        assertEquals(0, metricRegistry.counter(MetricRegistry.name(DetectDropwizardMetrics.RESOLUTION_CACHE, "proxyInfo", "hits")).getCount());
+        assertEquals(1, metricRegistry.counter(MetricRegistry.name(DetectDropwizardMetrics.RESOLUTION_CACHE, "proxyInfo", "misses")).getCount());
+    }
+
+    @Test
+    public void testStrategyNames() {
+        assertEquals("InheritFromGlobalDownloadStrategy", DetectMetrics.getStrategyName(null));
+        assertEquals("InheritFromGlobalDownloadStrategy", DetectMetrics.getStrategyName(new InheritFromGlobalDownloadStrategy()));
+    }
+
+    @Test
+    public void testNoOpWithoutJenkins() {
+        DetectMetrics.runStarted();
+        DetectMetrics.runFinished("AirGapDownloadStrategy", 1, 0);
+        DetectMetrics.runEnded();
+    }
+}
@@ -0,0 +1,159 @@
+package com.blackduck.integration.jenkins.detect.service.mirror;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectJarCache;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptCache;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptStrategy;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import hudson.model.TaskListener;
+
+public class DetectMirrorServiceTest {
+    private static final String SCRIPT_CONTENT = "#!/bin/bash\necho detect\n";
+    private static final String DETECT_VERSION = "11.0.0";
+    private static final byte[] JAR_CONTENT = "not really a jar".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+    private HttpServer httpServer;
+    private Path cacheDirectory;
+    private DetectMirrorService detectMirrorService;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", this::serveUpstream);
+        httpServer.start();
+        String upstreamUrl = String.format("http://localhost:%d", httpServer.getAddress().getPort());
+
+        cacheDirectory = Files.createTempDirectory("testDetectMirror");
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        JenkinsIntLogger logger = JenkinsIntLogger.logToListener(taskListener);
+        IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), 120, false, ProxyInfo.NO_PROXY_INFO);
+
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory.resolve(DetectScriptCache.SCRIPT_CACHE_DIRECTORY), 60);
+        DetectJarCache detectJarCache = new DetectJarCache(logger, intHttpClient, cacheDirectory.resolve(DetectJarCache.JAR_CACHE_DIRECTORY), upstreamUrl, 60);
+        detectMirrorService = new DetectMirrorService(detectScriptCache, detectJarCache, upstreamUrl + "/");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        httpServer.stop(0);
+        FileUtils.deleteDirectory(cacheDirectory.toFile());
+    }
+
+    @Test
+    public void testScriptFetchedUpstreamOnce() throws IntegrationException, IOException {
+        Optional<DetectMirrorService.MirroredArtifact> first = detectMirrorService.getArtifact(DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+        Optional<DetectMirrorService.MirroredArtifact> second = detectMirrorService.getArtifact(DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertEquals(1, upstreamRequests.get(), "The mirror should only fetch the script from upstream once");
+        assertEquals(DigestUtils.sha256Hex(SCRIPT_CONTENT), second.get().getSha256());
+    }
+
+    @Test
+    public void testJarAndChecksum() throws IntegrationException, IOException {
+        DetectMirrorService.allowPinnedVersion(DETECT_VERSION);
+        String jarPath = DetectMirrorService.getJarPath(DETECT_VERSION);
+        Optional<DetectMirrorService.MirroredArtifact> jar = detectMirrorService.getArtifact(jarPath);
+        Optional<DetectMirrorService.MirroredArtifact> checksum = detectMirrorService.getArtifact(jarPath + DetectJarCache.CHECKSUM_SUFFIX);
+
+        assertTrue(jar.isPresent());
+        assertEquals(DigestUtils.sha256Hex(JAR_CONTENT), jar.get().getSha256());
+        assertTrue(checksum.isPresent());
+        assertEquals(DigestUtils.sha256Hex(JAR_CONTENT), new String(Files.readAllBytes(checksum.get().getPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    public void testOnlyAllowlistedPathsServed() throws IntegrationException, IOException {
+        assertFalse(detectMirrorService.getArtifact("detect9.sh").isPresent());
+        assertFalse(detectMirrorService.getArtifact("../../secrets/master.key").isPresent());
+        assertFalse(detectMirrorService.getArtifact(DetectJarCache.DETECT_ARTIFACT_PATH + "/11.0.0/detect-10.0.0.jar").isPresent());
+        assertFalse(detectMirrorService.getArtifact(DetectJarCache.DETECT_ARTIFACT_PATH + "/../detect-...jar").isPresent());
+        assertEquals(0, upstreamRequests.get());
+    }
+
+    @Test
+    public void testUnknownVersionNotDownloaded() throws IntegrationException, IOException {
+        assertFalse(detectMirrorService.getArtifact(DetectMirrorService.getJarPath("9.9.9")).isPresent());
+        assertFalse(Files.exists(cacheDirectory.resolve(DetectJarCache.JAR_CACHE_DIRECTORY).resolve("9.9.9")));
+    }
+
+    @Test
+    public void testParseRange() {
+        assertFalse(DetectMirrorService.parseRange(null, 100).isPresent());
+        assertFalse(DetectMirrorService.parseRange("bytes=0-1,5-6", 100).isPresent());
+        assertFalse(DetectMirrorService.parseRange("bytes=-", 100).isPresent());
+
+        DetectMirrorService.ByteRange openEnded = DetectMirrorService.parseRange("bytes=10-", 100).get();
+        assertEquals(10, openEnded.getStart());
+        assertEquals(90, openEnded.getLength());
+        assertEquals("bytes 10-99/100", openEnded.toContentRange());
+
+        DetectMirrorService.ByteRange suffix = DetectMirrorService.parseRange("bytes=-20", 100).get();
+        assertEquals(80, suffix.getStart());
+        assertEquals(20, suffix.getLength());
+
+        DetectMirrorService.ByteRange clamped = DetectMirrorService.parseRange("bytes=90-500", 100).get();
+        assertEquals("bytes 90-99/100", clamped.toContentRange());
+
+        DetectMirrorService.ByteRange unsatisfiable = DetectMirrorService.parseRange("bytes=100-", 100).get();
+        assertFalse(unsatisfiable.isSatisfiable());
+        assertEquals("bytes */100", unsatisfiable.toContentRange());
+    }
+
+    private void serveUpstream(HttpExchange httpExchange) throws IOException {
+        upstreamRequests.incrementAndGet();
+        String jarPath = "/" + DetectMirrorService.getJarPath(DETECT_VERSION);
+        String requestPath = httpExchange.getRequestURI().getPath();
+
+        byte[] body;
+        if (requestPath.equals("/" + DetectScriptStrategy.SHELL_SCRIPT_FILENAME)) {
+            body = SCRIPT_CONTENT.getBytes(StandardCharsets.UTF_8);
+        } else if (requestPath.equals(jarPath + DetectJarCache.CHECKSUM_SUFFIX)) {
+            body = DigestUtils.sha256Hex(JAR_CONTENT).getBytes(StandardCharsets.UTF_8);
+        } else if (requestPath.equals(jarPath)) {
+            body = JAR_CONTENT;
+        } else {
+            httpExchange.sendResponseHeaders(404, -1);
+            httpExchange.close();
+            return;
+        }
+
+        httpExchange.sendResponseHeaders(200, body.length);
+        try (OutputStream responseBody = httpExchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
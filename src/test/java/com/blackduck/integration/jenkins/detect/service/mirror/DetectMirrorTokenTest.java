@@ -0,0 +1,47 @@
+package com.blackduck.integration.jenkins.detect.service.mirror;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+public class DetectMirrorTokenTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final DetectMirrorToken detectMirrorToken = new DetectMirrorToken(message -> DigestUtils.sha256Hex("secret" + message));
+
+    @Test
+    public void testTokenValidUntilItExpires() {
+        String token = detectMirrorToken.create(NOW);
+
+        assertTrue(detectMirrorToken.isValid(token, NOW));
+        assertTrue(detectMirrorToken.isValid(token, NOW + DetectMirrorToken.TOKEN_TTL_MILLIS));
+        assertFalse(detectMirrorToken.isValid(token, NOW + DetectMirrorToken.TOKEN_TTL_MILLIS + 1));
+    }
+
+    @Test
+    public void testForgedTokensRejected() {
+        String token = detectMirrorToken.create(NOW);
+        String signature = token.substring(token.indexOf('-') + 1);
+        DetectMirrorToken otherController = new DetectMirrorToken(message -> DigestUtils.sha256Hex("other" + message));
+
+        assertFalse(detectMirrorToken.isValid(null, NOW));
+        assertFalse(detectMirrorToken.isValid("", NOW));
+        assertFalse(detectMirrorToken.isValid("download", NOW));
+        assertFalse(detectMirrorToken.isValid((NOW + DetectMirrorToken.TOKEN_TTL_MILLIS * 365) + "-" + signature, NOW));
+        assertFalse(otherController.isValid(token, NOW));
+    }
+
+    @Test
+    public void testTokenMaskedInUrls() {
+        String firstUrl = String.format("https://jenkins.example.com/%s/%s/detect11.sh", DetectMirrorService.URL_NAME, detectMirrorToken.create(NOW));
+        String laterUrl = String.format("https://jenkins.example.com/%s/%s/detect11.sh", DetectMirrorService.URL_NAME, detectMirrorToken.create(NOW + 1000));
+
+        assertEquals("https://jenkins.example.com/" + DetectMirrorService.URL_NAME + "/****/detect11.sh", DetectMirrorToken.mask(firstUrl));
+        assertEquals(DetectMirrorToken.mask(firstUrl), DetectMirrorToken.mask(laterUrl));
+        assertEquals("https://detect.blackduck.com/detect11.sh", DetectMirrorToken.mask("https://detect.blackduck.com/detect11.sh"));
+    }
+
+}
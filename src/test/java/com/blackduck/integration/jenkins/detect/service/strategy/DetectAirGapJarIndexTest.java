@@ -0,0 +1,114 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+
+import hudson.model.TaskListener;
+
+public class DetectAirGapJarIndexTest {
+    private static final long OLD_MODIFICATION_TIME = System.currentTimeMillis() - 600000L;
+
+    private Path airGapDirectory;
+    private DetectAirGapJarIndex detectAirGapJarIndex;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        airGapDirectory = Files.createTempDirectory("testDetectAirGapJarIndex");
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        detectAirGapJarIndex = new DetectAirGapJarIndex(JenkinsIntLogger.logToListener(taskListener));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(airGapDirectory.toFile());
+    }
+
+    @Test
+    public void testUnchangedDirectoryIsNotScannedAgain() throws DetectJenkinsException, IOException {
+        File airGapJar = createJar("detect-10.0.0.jar", OLD_MODIFICATION_TIME);
+        markDirectoryModified(OLD_MODIFICATION_TIME);
+        long scansBefore = DetectAirGapJarIndex.getScanCount();
+        long hitsBefore = DetectAirGapJarIndex.getHitCount();
+
+        assertEquals(airGapJar.toString(), detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString()));
+        assertEquals(airGapJar.toString(), detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString()));
+
+        assertEquals(scansBefore + 1, DetectAirGapJarIndex.getScanCount());
+        assertEquals(hitsBefore + 1, DetectAirGapJarIndex.getHitCount());
+    }
+
+    @Test
+    public void testChangedDirectoryIsScannedAgain() throws DetectJenkinsException, IOException {
+        File oldJar = createJar("detect-10.0.0.jar", OLD_MODIFICATION_TIME);
+        markDirectoryModified(OLD_MODIFICATION_TIME);
+        detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString());
+
+        assertTrue(oldJar.delete());
+        File newJar = createJar("detect-10.1.0.jar", OLD_MODIFICATION_TIME);
+        markDirectoryModified(OLD_MODIFICATION_TIME + 60000L);
+
+        assertEquals(newJar.toString(), detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString()));
+    }
+
+    @Test
+    public void testJarReplacedInPlaceIsNoticed() throws DetectJenkinsException, IOException {
+        File airGapJar = createJar("detect-10.0.0.jar", OLD_MODIFICATION_TIME);
+        markDirectoryModified(OLD_MODIFICATION_TIME);
+        detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString());
+        long scansBefore = DetectAirGapJarIndex.getScanCount();
+
+        assertTrue(airGapJar.setLastModified(OLD_MODIFICATION_TIME + 60000L));
+        detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString());
+
+        assertEquals(scansBefore + 1, DetectAirGapJarIndex.getScanCount());
+    }
+
+    @Test
+    public void testFallbackJarIsUsed() throws DetectJenkinsException, IOException {
+        File fallbackJar = createJar("synopsys-detect-9.0.0.jar", OLD_MODIFICATION_TIME);
+        createJar("README.txt", OLD_MODIFICATION_TIME);
+
+        assertEquals(fallbackJar.toString(), detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString()));
+    }
+
+    @Test
+    public void testMultipleJarsAreNotIndexed() throws IOException {
+        createJar("detect-10.0.0.jar", OLD_MODIFICATION_TIME);
+        createJar("detect-10.1.0.jar", OLD_MODIFICATION_TIME);
+        markDirectoryModified(OLD_MODIFICATION_TIME);
+
+        DetectJenkinsException exception = assertThrows(DetectJenkinsException.class, () -> detectAirGapJarIndex.getAirGapJar(airGapDirectory.toString()));
+        assertTrue(exception.getMessage().contains("instead found multiple jars"), "Exception does not contain expected message: " + exception.getMessage());
+    }
+
+    private File createJar(String fileName, long lastModified) throws IOException {
+        File jar = airGapDirectory.resolve(fileName).toFile();
+        Files.write(jar.toPath(), fileName.getBytes(StandardCharsets.UTF_8));
+        assertTrue(jar.setLastModified(lastModified), "Could not set the modification time of " + jar);
+        return jar;
+    }
+
+    private void markDirectoryModified(long lastModified) {
+        assertTrue(airGapDirectory.toFile().setLastModified(lastModified), "Could not set the modification time of " + airGapDirectory);
+    }
+}
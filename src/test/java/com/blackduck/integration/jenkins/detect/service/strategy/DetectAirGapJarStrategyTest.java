@@ -34,6 +34,7 @@ import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
 import com.blackduck.integration.log.LogLevel;
 import com.blackduck.integration.util.IntEnvironmentVariables;
+import com.blackduck.integration.util.OperatingSystemType;
 
 import hudson.model.TaskListener;
 import jenkins.security.MasterToSlaveCallable;
@@ -94,7 +95,7 @@ public class DetectAirGapJarStrategyTest {
             jenkinsConfigServiceMock,
             AIRGAP_DOWNLOAD_STRATEGY
         );
-        assertEquals(Function.identity(), detectAirGapJarStrategy.getArgumentEscaper());
+        assertEquals(Function.identity(), detectAirGapJarStrategy.getArgumentEscaper(OperatingSystemType.determineFromSystem()));
     }
 
     @ParameterizedTest
@@ -0,0 +1,35 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.util.OperatingSystemType;
+
+import jenkins.security.MasterToSlaveCallable;
+
+public class DetectBootstrapCallableTest {
+    @Test
+    public void testBootstrapReturnsOperatingSystemAndCommand() throws IntegrationException {
+        ArrayList<String> expectedCommand = new ArrayList<>(Arrays.asList("java", "-jar", "/tmp/detect.jar"));
+        DetectBootstrapCallable detectBootstrapCallable = new DetectBootstrapCallable(new MasterToSlaveCallable<ArrayList<String>, IntegrationException>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ArrayList<String> call() {
+                return expectedCommand;
+            }
+        });
+
+        DetectBootstrapResult detectBootstrapResult = detectBootstrapCallable.call();
+
+        assertEquals(OperatingSystemType.determineFromSystem(), detectBootstrapResult.getOperatingSystemType());
+        assertEquals(expectedCommand, detectBootstrapResult.getDetectCommand());
+        assertTrue(detectBootstrapResult.getAgentSetupMillis() >= 0);
+    }
+}
@@ -0,0 +1,160 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.jenkins.detect.DetectJenkinsEnvironmentVariable;
+import com.blackduck.integration.jenkins.detect.service.DetectLockFiles;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+
+import hudson.model.TaskListener;
+
+public class DetectClassDataSharingTest {
+    private static final String JAVA_EXECUTABLE = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+    private static final String JAVA_VERSION = System.getProperty("java.version");
+    private static final Map<String, String> TURNED_ON = Collections.singletonMap(DetectJenkinsEnvironmentVariable.CLASS_DATA_SHARING.stringValue(), "true");
+
+    private Path agentCacheDirectory;
+    private String detectJarPath;
+    private JenkinsIntLogger logger;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        agentCacheDirectory = Files.createTempDirectory("testDetectClassDataSharing");
+        detectJarPath = agentCacheDirectory.resolve("detect.jar").toString();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (OutputStream outputStream = Files.newOutputStream(agentCacheDirectory.resolve("detect.jar"))) {
+            new JarOutputStream(outputStream, manifest).finish();
+        }
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        logger = JenkinsIntLogger.logToListener(taskListener);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(agentCacheDirectory.toFile());
+    }
+
+    @Test
+    public void testArchiveWrittenOnceThenShared() throws IOException, InterruptedException {
+        assumeTrue(RemoteJavaService.getMajorVersion(JAVA_VERSION) >= DetectClassDataSharing.MINIMUM_JAVA_VERSION, "The JVM running the tests can't write archives at exit");
+        DetectClassDataSharing detectClassDataSharing = new DetectClassDataSharing(logger, TURNED_ON, agentCacheDirectory.toString());
+
+        List<String> archivingOptions = getJavaOptions(detectClassDataSharing);
+        assertEquals(DetectClassDataSharing.Mode.ARCHIVING, DetectClassDataSharing.getMode(archivingOptions));
+        assertTrue(getJavaOptions(detectClassDataSharing).isEmpty(), "Only one run at a time should write the archive");
+
+        runJava(archivingOptions);
+
+        List<String> sharedOptions = getJavaOptions(detectClassDataSharing);
+        assertEquals(DetectClassDataSharing.Mode.SHARED, DetectClassDataSharing.getMode(sharedOptions));
+        Path archive = new File(sharedOptions.get(0).substring(DetectClassDataSharing.SHARED_ARCHIVE_OPTION.length())).toPath();
+        assertTrue(Files.isRegularFile(archive));
+        assertEquals(1, countFiles(), "Only the archive itself should be left behind");
+        assertEquals(0, runJava(Arrays.asList("-Xshare:on", sharedOptions.get(0))), "The JDK should start with the archive");
+
+        // An archive the JDK can't load, e.g. one written by a different build of the same JDK, is written again.
+        Files.delete(archive);
+        Files.write(archive, "not an archive".getBytes(StandardCharsets.UTF_8));
+        assertEquals(DetectClassDataSharing.Mode.ARCHIVING, DetectClassDataSharing.getMode(getJavaOptions(detectClassDataSharing)));
+    }
+
+    @Test
+    public void testStaleArchivingRunIsReplaced() throws IOException {
+        assumeTrue(RemoteJavaService.getMajorVersion(JAVA_VERSION) >= DetectClassDataSharing.MINIMUM_JAVA_VERSION, "The JVM running the tests can't write archives at exit");
+        DetectClassDataSharing detectClassDataSharing = new DetectClassDataSharing(logger, TURNED_ON, agentCacheDirectory.toString());
+
+        List<String> archivingOptions = getJavaOptions(detectClassDataSharing);
+        String archiveInProgress = archivingOptions.get(0).substring(DetectClassDataSharing.ARCHIVE_AT_EXIT_OPTION.length());
+        Path archiveLock = new File(archiveInProgress.replaceAll("\\.tmp$", ".lock")).toPath();
+        assertTrue(Files.exists(archiveLock));
+
+        long staleMillis = System.currentTimeMillis() - DetectClassDataSharing.STALE_ARCHIVING_MILLIS - TimeUnit.MINUTES.toMillis(1);
+        Files.setLastModifiedTime(archiveLock, FileTime.fromMillis(staleMillis));
+
+        assertEquals(archivingOptions, getJavaOptions(detectClassDataSharing));
+    }
+
+    @Test
+    public void testTurnedOff() {
+        DetectClassDataSharing withoutAgentCache = new DetectClassDataSharing(logger, TURNED_ON, null);
+        assertTrue(getJavaOptions(withoutAgentCache).isEmpty());
+
+        DetectClassDataSharing turnedOff = new DetectClassDataSharing(
+            logger,
+            Collections.singletonMap(DetectJenkinsEnvironmentVariable.CLASS_DATA_SHARING.stringValue(), "false"),
+            agentCacheDirectory.toString()
+        );
+        assertTrue(getJavaOptions(turnedOff).isEmpty());
+        DetectClassDataSharing byDefault = new DetectClassDataSharing(logger, Collections.emptyMap(), agentCacheDirectory.toString());
+        assertTrue(getJavaOptions(byDefault).isEmpty(), "Class data sharing should be opt-in");
+
+        DetectClassDataSharing detectClassDataSharing = new DetectClassDataSharing(logger, TURNED_ON, agentCacheDirectory.toString());
+        assertTrue(detectClassDataSharing.getJavaOptions(JAVA_EXECUTABLE, "11.0.22", detectJarPath).isEmpty());
+        assertTrue(detectClassDataSharing.getJavaOptions(JAVA_EXECUTABLE, null, detectJarPath).isEmpty());
+        assertFalse(Files.exists(agentCacheDirectory.resolve(DetectClassDataSharing.ARCHIVE_DIRECTORY)));
+    }
+
+    @Test
+    public void testModeAndWithoutArchiving() {
+        String archiveAtExit = DetectClassDataSharing.ARCHIVE_AT_EXIT_OPTION + "/cds/detect.jsa.tmp";
+        List<String> archivingCommand = Arrays.asList("java", archiveAtExit, "-jar", "detect.jar", "--detect.project.name=app");
+
+        assertEquals(DetectClassDataSharing.Mode.ARCHIVING, DetectClassDataSharing.getMode(archivingCommand));
+        assertEquals(Arrays.asList("java", "-jar", "detect.jar", "--detect.project.name=app"), DetectClassDataSharing.withoutArchiving(archivingCommand));
+        assertEquals(DetectClassDataSharing.Mode.OFF, DetectClassDataSharing.getMode(Arrays.asList("bash", "detect.sh")));
+        assertEquals(DetectClassDataSharing.Mode.OFF, DetectClassDataSharing.getMode(null));
+    }
+
+    private List<String> getJavaOptions(DetectClassDataSharing detectClassDataSharing) {
+        return detectClassDataSharing.getJavaOptions(JAVA_EXECUTABLE, JAVA_VERSION, detectJarPath);
+    }
+
+    private int runJava(List<String> javaOptions) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(JAVA_EXECUTABLE);
+        command.addAll(javaOptions);
+        command.addAll(Arrays.asList("-cp", detectJarPath, "-version"));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File(agentCacheDirectory.toFile(), "java.log")).start();
+        int exitCode = process.waitFor();
+        Files.delete(agentCacheDirectory.resolve("java.log"));
+        return exitCode;
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(agentCacheDirectory.resolve(DetectClassDataSharing.ARCHIVE_DIRECTORY))) {
+            return files.filter(file -> !DetectLockFiles.GUARD_LOCK.equals(file.getFileName().toString())).count();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import hudson.model.TaskListener;
+
+public class DetectJarCacheTest {
+    private static final String DETECT_VERSION = "11.0.0";
+    private static final String ARTIFACT_PATH = "/bds-integrations-release/com/blackduck/integration/detect";
+    private static final byte[] JAR_CONTENT = "not really a jar".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger jarDownloads = new AtomicInteger();
+    private final AtomicInteger latestVersionLookups = new AtomicInteger();
+
+    private HttpServer httpServer;
+    private String repositoryUrl;
+    private String servedChecksum;
+    private Path cacheDirectory;
+    private JenkinsIntLogger logger;
+    private IntHttpClient intHttpClient;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        servedChecksum = DigestUtils.sha256Hex(JAR_CONTENT);
+
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", this::serveRepository);
+        httpServer.start();
+        repositoryUrl = String.format("http://localhost:%d", httpServer.getAddress().getPort());
+
+        cacheDirectory = Files.createTempDirectory("testDetectJarCache");
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        logger = JenkinsIntLogger.logToListener(taskListener);
+        intHttpClient = new IntHttpClient(logger, new Gson(), 120, false, ProxyInfo.NO_PROXY_INFO);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        httpServer.stop(0);
+        FileUtils.deleteDirectory(cacheDirectory.toFile());
+    }
+
+    @Test
+    public void testPinnedVersionDownloadedOnce() throws IntegrationException, IOException {
+        DetectJarCache detectJarCache = new DetectJarCache(logger, intHttpClient, cacheDirectory, repositoryUrl, 60);
+
+        Path firstJar = detectJarCache.getJar(DETECT_VERSION);
+        Path secondJar = detectJarCache.getJar(DETECT_VERSION);
+
+        assertEquals(firstJar, secondJar);
+        assertEquals(DetectJarCache.getJarFileName(DETECT_VERSION), secondJar.getFileName().toString());
+        assertArrayEquals(JAR_CONTENT, Files.readAllBytes(secondJar));
+        assertEquals(1, jarDownloads.get(), "The jar should only be downloaded once per version");
+        assertEquals(0, latestVersionLookups.get(), "A pinned version should not look up the latest version");
+    }
+
+    @Test
+    public void testLatestVersionResolvedOncePerTtl() throws IntegrationException, IOException {
+        DetectJarCache detectJarCache = new DetectJarCache(logger, intHttpClient, cacheDirectory, repositoryUrl, 60);
+
+        Path firstJar = detectJarCache.getJar(null);
+        Path secondJar = detectJarCache.getJar("");
+
+        assertEquals(firstJar, secondJar);
+        assertEquals(DetectJarCache.getJarFileName(DETECT_VERSION), secondJar.getFileName().toString());
+        assertEquals(1, latestVersionLookups.get(), "The latest version should only be resolved once within the TTL");
+        assertEquals(1, jarDownloads.get());
+    }
+
+    @Test
+    public void testChecksumMismatchDiscardsDownload() {
+        servedChecksum = DigestUtils.sha256Hex("something else");
+        DetectJarCache detectJarCache = new DetectJarCache(logger, intHttpClient, cacheDirectory, repositoryUrl, 60);
+
+        assertThrows(DetectJenkinsException.class, () -> detectJarCache.getJar(DETECT_VERSION));
+        assertFalse(Files.exists(cacheDirectory.resolve(DETECT_VERSION).resolve(DetectJarCache.getJarFileName(DETECT_VERSION))), "A jar that failed verification should not be cached");
+    }
+
+    @Test
+    public void testInvalidVersionRejected() {
+        DetectJarCache detectJarCache = new DetectJarCache(logger, intHttpClient, cacheDirectory, repositoryUrl, 60);
+
+        assertThrows(DetectJenkinsException.class, () -> detectJarCache.getJar("../11.0.0"));
+    }
+
+    private void serveRepository(HttpExchange httpExchange) throws IOException {
+        String jarPath = String.format("%s/%s/%s", ARTIFACT_PATH, DETECT_VERSION, DetectJarCache.getJarFileName(DETECT_VERSION));
+        String requestPath = httpExchange.getRequestURI().getPath();
+
+        byte[] body;
+        if (requestPath.equals("/api/storage" + ARTIFACT_PATH)) {
+            latestVersionLookups.incrementAndGet();
+            String latestJarUrl = repositoryUrl + jarPath;
+            body = String.format("{\"properties\":{\"%s\":[\"%s\"]}}", DetectJarCache.LATEST_VERSION_PROPERTY, latestJarUrl).getBytes(StandardCharsets.UTF_8);
+        } else if (requestPath.equals(jarPath + ".sha256")) {
+            body = servedChecksum.getBytes(StandardCharsets.UTF_8);
+        } else if (requestPath.equals(jarPath)) {
+            jarDownloads.incrementAndGet();
+            body = JAR_CONTENT;
+        } else {
+            httpExchange.sendResponseHeaders(404, -1);
+            httpExchange.close();
+            return;
+        }
+
+        httpExchange.sendResponseHeaders(200, body.length);
+        try (OutputStream responseBody = httpExchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
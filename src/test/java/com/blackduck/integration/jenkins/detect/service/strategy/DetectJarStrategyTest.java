@@ -28,6 +28,7 @@ import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.log.LogLevel;
 import com.blackduck.integration.util.IntEnvironmentVariables;
+import com.blackduck.integration.util.OperatingSystemType;
 
 import hudson.model.TaskListener;
 import jenkins.security.MasterToSlaveCallable;
@@ -68,7 +69,7 @@ public class DetectJarStrategyTest {
     @Test
     public void testArgumentEscaper() {
         DetectJarStrategy detectJarStrategy = new DetectJarStrategy(logger, environmentVariables, REMOTE_JDK_HOME, DETECT_JAR_PATH);
-        assertEquals(Function.identity(), detectJarStrategy.getArgumentEscaper());
+        assertEquals(Function.identity(), detectJarStrategy.getArgumentEscaper(OperatingSystemType.determineFromSystem()));
     }
 
     @ParameterizedTest
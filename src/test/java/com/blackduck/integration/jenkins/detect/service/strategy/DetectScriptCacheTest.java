@@ -0,0 +1,163 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorService;
+import com.blackduck.integration.jenkins.detect.service.mirror.DetectMirrorToken;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import hudson.model.TaskListener;
+
+public class DetectScriptCacheTest {
+    private static final String SCRIPT_CONTENT = "#!/bin/bash\necho detect\n";
+    private static final String SCRIPT_ETAG = "\"detect-script-v1\"";
+
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    private HttpServer httpServer;
+    private String scriptUrl;
+    private Path cacheDirectory;
+    private JenkinsIntLogger logger;
+    private IntHttpClient intHttpClient;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/detect11.sh", this::serveScript);
+        httpServer.createContext("/" + DetectMirrorService.URL_NAME + "/", this::serveScript);
+        httpServer.start();
+        scriptUrl = String.format("http://localhost:%d/detect11.sh", httpServer.getAddress().getPort());
+
+        cacheDirectory = Files.createTempDirectory("testDetectScriptCache");
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        logger = JenkinsIntLogger.logToListener(taskListener);
+        intHttpClient = new IntHttpClient(logger, new Gson(), 120, false, ProxyInfo.NO_PROXY_INFO);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        httpServer.stop(0);
+        FileUtils.deleteDirectory(cacheDirectory.toFile());
+    }
+
+    @Test
+    public void testMissThenHitWithinTtl() throws IntegrationException, IOException {
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory, 60);
+        long hitsBefore = DetectScriptCache.getHitCount();
+        long missesBefore = DetectScriptCache.getMissCount();
+
+        Path firstScript = detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+        Path secondScript = detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+
+        assertEquals(firstScript, secondScript);
+        assertEquals(SCRIPT_CONTENT, new String(Files.readAllBytes(secondScript), StandardCharsets.UTF_8));
+        assertEquals(1, fullResponses.get(), "The script should only be downloaded once within the TTL");
+        assertEquals(0, notModifiedResponses.get(), "No revalidation should happen within the TTL");
+        assertEquals(missesBefore + 1, DetectScriptCache.getMissCount());
+        assertEquals(hitsBefore + 1, DetectScriptCache.getHitCount());
+    }
+
+    @Test
+    public void testMirrorTokenNotPartOfTheCacheKey() throws IntegrationException, IOException {
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory, 60);
+        String mirrorUrl = String.format("http://localhost:%d/%s/", httpServer.getAddress().getPort(), DetectMirrorService.URL_NAME);
+        DetectMirrorToken detectMirrorToken = new DetectMirrorToken(message -> "signature" + message);
+
+        Path firstScript = detectScriptCache.getScript(mirrorUrl + detectMirrorToken.create(1000) + "/detect11.sh", DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+        Path laterScript = detectScriptCache.getScript(mirrorUrl + detectMirrorToken.create(2000) + "/detect11.sh", DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+
+        assertEquals(firstScript, laterScript);
+        assertEquals(1, fullResponses.get(), "A new mirror token should not make the build miss the cache");
+    }
+
+    @Test
+    public void testRevalidateAfterTtl() throws IntegrationException, IOException {
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory, 0);
+        long revalidationsBefore = DetectScriptCache.getRevalidationCount();
+
+        detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+        Path revalidatedScript = detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+
+        assertEquals(1, fullResponses.get(), "The script body should only be transferred once");
+        assertEquals(1, notModifiedResponses.get(), "An expired entry should be revalidated with a conditional GET");
+        assertEquals(revalidationsBefore + 1, DetectScriptCache.getRevalidationCount());
+        assertEquals(SCRIPT_CONTENT, new String(Files.readAllBytes(revalidatedScript), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDownloadsRecordedForCurrentThread() throws IntegrationException, IOException {
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory, 60);
+
+        DetectScriptDownloads.begin();
+        detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+        detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+        DetectScriptDownloads detectScriptDownloads = DetectScriptDownloads.end();
+
+        assertEquals(1, detectScriptDownloads.getDownloadCount(), "Only the download should be recorded, not the cache hit");
+        assertEquals(SCRIPT_CONTENT.getBytes(StandardCharsets.UTF_8).length, detectScriptDownloads.getDownloadedBytes());
+        assertEquals(0, DetectScriptDownloads.end().getDownloadCount(), "Downloads should no longer be tracked after end()");
+    }
+
+    @Test
+    public void testStaleCopyUsedWhenUpstreamUnavailable() throws IntegrationException, IOException {
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory, 0);
+        Path cachedScript = detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME);
+
+        httpServer.stop(0);
+
+        assertEquals(cachedScript, detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME));
+        assertTrue(Files.size(cachedScript) > 0, "The cached script should still be usable");
+    }
+
+    @Test
+    public void testFailureWithoutCachedCopy() {
+        httpServer.stop(0);
+        DetectScriptCache detectScriptCache = new DetectScriptCache(logger, intHttpClient, cacheDirectory, 60);
+
+        assertThrows(Exception.class, () -> detectScriptCache.getScript(scriptUrl, DetectScriptStrategy.SHELL_SCRIPT_FILENAME));
+    }
+
+    private void serveScript(HttpExchange httpExchange) throws IOException {
+        if (SCRIPT_ETAG.equals(httpExchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            httpExchange.sendResponseHeaders(304, -1);
+            httpExchange.close();
+            return;
+        }
+
+        fullResponses.incrementAndGet();
+        byte[] body = SCRIPT_CONTENT.getBytes(StandardCharsets.UTF_8);
+        httpExchange.getResponseHeaders().add("ETag", SCRIPT_ETAG);
+        httpExchange.sendResponseHeaders(200, body.length);
+        try (OutputStream responseBody = httpExchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
@@ -26,7 +26,6 @@ import org.mockito.Mockito;
 import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.wrapper.JenkinsProxyHelper;
-import com.blackduck.integration.util.OperatingSystemType;
 
 import hudson.model.TaskListener;
 
@@ -62,13 +61,9 @@ public class DetectScriptStrategyCallableTest {
     }
 
     @Test
-    public void testDownloadShellScript() {
-        downloadAndValidateScript(OperatingSystemType.LINUX);
-    }
-
-    @Test
-    public void testDownloadPowershellScript() {
-        downloadAndValidateScript(OperatingSystemType.WINDOWS);
+    public void testDownloadScript() {
+        // The script is chosen on the agent, so this downloads the shell script or the PowerShell script depending on where the test runs.
+        downloadAndValidateScript();
     }
 
     @Test
@@ -79,8 +74,10 @@ public class DetectScriptStrategyCallableTest {
         DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(
             defaultLogger,
             defaultProxyHelper,
-            OperatingSystemType.determineFromSystem(),
-            toolsDirectoryPath
+            toolsDirectoryPath,
+            null,
+            null,
+            DetectScriptCache.DEFAULT_TTL_MINUTES
         );
 
         try {
@@ -101,14 +98,21 @@ public class DetectScriptStrategyCallableTest {
             fail("Test could not be set up: Could not create Shell Script file", e);
         }
 
-        downloadAndValidateScript(OperatingSystemType.determineFromSystem());
+        downloadAndValidateScript();
     }
 
-    private void downloadAndValidateScript(OperatingSystemType operatingSystemType) {
+    private void downloadAndValidateScript() {
         try {
             String expectedScriptPath = new File(toolsDirectoryPath, DetectScriptStrategy.DETECT_INSTALL_DIRECTORY).getPath();
 
-            DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, operatingSystemType, toolsDirectoryPath);
+            DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(
+                defaultLogger,
+                defaultProxyHelper,
+                toolsDirectoryPath,
+                null,
+                null,
+                DetectScriptCache.DEFAULT_TTL_MINUTES
+            );
             ArrayList<String> scriptStrategyArgs = detectScriptStrategy.getSetupCallable().call();
             File remoteScriptFile = new File(parseScriptStrategyArgs(scriptStrategyArgs));
 
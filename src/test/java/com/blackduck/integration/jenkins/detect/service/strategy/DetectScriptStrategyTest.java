@@ -39,7 +39,7 @@ public class DetectScriptStrategyTest {
 
         JenkinsProxyHelper mockedProxyHelper = Mockito.mock(JenkinsProxyHelper.class);
         Mockito.when(mockedProxyHelper.getProxyInfo(Mockito.anyString())).thenThrow(new IllegalArgumentException(expectedExceptionMessage));
-        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, mockedProxyHelper, OperatingSystemType.LINUX, null);
+        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, mockedProxyHelper, null, null, null, DetectScriptCache.DEFAULT_TTL_MINUTES);
 
         try {
             detectScriptStrategy.getSetupCallable();
@@ -52,32 +52,39 @@ public class DetectScriptStrategyTest {
 
     @Test
     public void testArgumentEscaperLinux() {
-        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, OperatingSystemType.LINUX, null);
+        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, null, null, null, DetectScriptCache.DEFAULT_TTL_MINUTES);
         String expectedEscapedString = "\\|\\&\\;\\<\\>\\(\\)\\$\\`\\\\\\\"\\'\\ \\\t\\*\\?\\[\\#\\~\\=\\%,";
 
-        String escapedString = detectScriptStrategy.getArgumentEscaper().apply(unescapedSpecialCharacters);
+        String escapedString = detectScriptStrategy.getArgumentEscaper(OperatingSystemType.LINUX).apply(unescapedSpecialCharacters);
 
         assertEquals(escapedString, expectedEscapedString);
     }
 
     @Test
     public void testArgumentEscaperMac() {
-        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, OperatingSystemType.MAC, null);
+        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, null, null, null, DetectScriptCache.DEFAULT_TTL_MINUTES);
         String expectedEscapedString = "\\|\\&\\;\\<\\>\\(\\)\\$\\`\\\\\\\"\\'\\ \\\t\\*\\?\\[\\#\\~\\=\\%,";
 
-        String escapedString = detectScriptStrategy.getArgumentEscaper().apply(unescapedSpecialCharacters);
+        String escapedString = detectScriptStrategy.getArgumentEscaper(OperatingSystemType.MAC).apply(unescapedSpecialCharacters);
 
         assertEquals(escapedString, expectedEscapedString);
     }
 
     @Test
     public void testArgumentEscaperWindows() {
-        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, OperatingSystemType.WINDOWS, null);
+        DetectScriptStrategy detectScriptStrategy = new DetectScriptStrategy(defaultLogger, defaultProxyHelper, null, null, null, DetectScriptCache.DEFAULT_TTL_MINUTES);
         String expectedEscapedString = "`|`&`;`<`>`(`)`$```\\`\"`'` `\t`*`?`[`#`~`=`%`,";
 
-        String escapedString = detectScriptStrategy.getArgumentEscaper().apply(unescapedSpecialCharacters);
+        String escapedString = detectScriptStrategy.getArgumentEscaper(OperatingSystemType.WINDOWS).apply(unescapedSpecialCharacters);
 
         assertEquals(expectedEscapedString, escapedString);
     }
 
+    @Test
+    public void testScriptFileName() {
+        assertEquals(DetectScriptStrategy.SHELL_SCRIPT_FILENAME, DetectScriptStrategy.getScriptFileName(OperatingSystemType.LINUX));
+        assertEquals(DetectScriptStrategy.SHELL_SCRIPT_FILENAME, DetectScriptStrategy.getScriptFileName(OperatingSystemType.MAC));
+        assertEquals(DetectScriptStrategy.POWERSHELL_SCRIPT_FILENAME, DetectScriptStrategy.getScriptFileName(OperatingSystemType.WINDOWS));
+    }
+
 }
@@ -20,8 +20,10 @@ import com.blackduck.integration.jenkins.detect.exception.DetectJenkinsException
 import com.blackduck.integration.jenkins.detect.extensions.AirGapDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.DetectDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.InheritFromGlobalDownloadStrategy;
+import com.blackduck.integration.jenkins.detect.extensions.ManagedJarDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.ScriptOrJarDownloadStrategy;
 import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfig;
+import com.blackduck.integration.jenkins.detect.extensions.global.DetectGlobalConfigSnapshot;
 import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
 import com.blackduck.integration.jenkins.service.JenkinsConfigService;
 import com.blackduck.integration.util.IntEnvironmentVariables;
@@ -32,6 +34,7 @@ public class DetectStrategyServiceTest {
     private static final AirGapDownloadStrategy AIRGAP_DOWNLOAD_STRATEGY = new AirGapDownloadStrategy();
     private static final InheritFromGlobalDownloadStrategy INHERIT_DOWNLOAD_STRATEGY = new InheritFromGlobalDownloadStrategy();
     private static final ScriptOrJarDownloadStrategy SCRIPTJAR_DOWNLOAD_STRATEGY = new ScriptOrJarDownloadStrategy();
+    private static final ManagedJarDownloadStrategy MANAGED_JAR_DOWNLOAD_STRATEGY = new ManagedJarDownloadStrategy();
 
     private final IntEnvironmentVariables intEnvironmentVariables = IntEnvironmentVariables.empty();
 
@@ -47,7 +50,7 @@ public class DetectStrategyServiceTest {
         JenkinsIntLogger logger = JenkinsIntLogger.logToListener(taskListener);
 
         jenkinsConfigService = Mockito.mock(JenkinsConfigService.class);
-        detectStrategyService = new DetectStrategyService(logger, null, null, jenkinsConfigService);
+        detectStrategyService = new DetectStrategyService(logger, null, null, null, jenkinsConfigService);
     }
 
     @Test
@@ -60,6 +63,11 @@ public class DetectStrategyServiceTest {
         assertEquals(InheritFromGlobalDownloadStrategy.DISPLAY_NAME, INHERIT_DOWNLOAD_STRATEGY.getDisplayName());
 
         assertEquals(ScriptOrJarDownloadStrategy.DISPLAY_NAME, SCRIPTJAR_DOWNLOAD_STRATEGY.getDisplayName());
+
+        assertNull(MANAGED_JAR_DOWNLOAD_STRATEGY.getDetectVersion());
+        MANAGED_JAR_DOWNLOAD_STRATEGY.setDetectVersion("  ");
+        assertNull(MANAGED_JAR_DOWNLOAD_STRATEGY.getDetectVersion());
+        assertEquals(ManagedJarDownloadStrategy.DISPLAY_NAME, MANAGED_JAR_DOWNLOAD_STRATEGY.getDisplayName());
     }
 
     @Test
@@ -67,7 +75,7 @@ public class DetectStrategyServiceTest {
         DetectGlobalConfig mockDetectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
         Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.ofNullable(mockDetectGlobalConfig));
         assertNotNull(mockDetectGlobalConfig);
-        Mockito.when(mockDetectGlobalConfig.getDownloadStrategy()).thenReturn(AIRGAP_DOWNLOAD_STRATEGY);
+        Mockito.when(mockDetectGlobalConfig.getSnapshot()).thenReturn(createSnapshot(AIRGAP_DOWNLOAD_STRATEGY));
 
         DetectExecutionStrategy detectExecutionStrategy = testGetExecutionStrategy(intEnvironmentVariables, INHERIT_DOWNLOAD_STRATEGY);
         assertEquals(DetectAirGapJarStrategy.class, detectExecutionStrategy.getClass());
@@ -79,7 +87,7 @@ public class DetectStrategyServiceTest {
         DetectGlobalConfig mockDetectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
         Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.ofNullable(mockDetectGlobalConfig));
         assertNotNull(mockDetectGlobalConfig);
-        Mockito.when(mockDetectGlobalConfig.getDownloadStrategy()).thenReturn(null);
+        Mockito.when(mockDetectGlobalConfig.getSnapshot()).thenReturn(createSnapshot(null));
         Mockito.when(mockDetectGlobalConfig.getDefaultDownloadStrategy()).thenReturn(SCRIPTJAR_DOWNLOAD_STRATEGY);
 
         DetectExecutionStrategy detectExecutionStrategy = testGetExecutionStrategy(intEnvironmentVariables, INHERIT_DOWNLOAD_STRATEGY);
@@ -89,12 +97,12 @@ public class DetectStrategyServiceTest {
 
     @Test
     public void testInheritFromGlobalStrategyFailure() {
-        assertThrows(DetectJenkinsException.class, () -> detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, null, INHERIT_DOWNLOAD_STRATEGY));
+        assertThrows(DetectJenkinsException.class, () -> detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, INHERIT_DOWNLOAD_STRATEGY));
     }
 
     @Test
     public void testNullStrategyFailure() {
-        assertThrows(DetectJenkinsException.class, () -> detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, null, null));
+        assertThrows(DetectJenkinsException.class, () -> detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, null));
     }
 
     @Test
@@ -113,6 +121,15 @@ public class DetectStrategyServiceTest {
         assertTrue(byteArrayOutputStream.toString().contains(ScriptOrJarDownloadStrategy.DISPLAY_NAME), "Log does not contain message with correct download strategy.");
     }
 
+    @Test
+    public void testGetManagedJarStrategy() {
+        intEnvironmentVariables.put(DetectJenkinsEnvironmentVariable.USER_PROVIDED_JAR_PATH.stringValue(), "/tmp/path/to/detect.jar");
+
+        DetectExecutionStrategy detectExecutionStrategy = testGetExecutionStrategy(intEnvironmentVariables, MANAGED_JAR_DOWNLOAD_STRATEGY);
+        assertEquals(DetectManagedJarStrategy.class, detectExecutionStrategy.getClass());
+        assertTrue(byteArrayOutputStream.toString().contains(ManagedJarDownloadStrategy.DISPLAY_NAME), "Log does not contain message with correct download strategy.");
+    }
+
     @Test
     public void testGetScriptStrategy() {
         DetectExecutionStrategy detectExecutionStrategy = testGetExecutionStrategy(intEnvironmentVariables, SCRIPTJAR_DOWNLOAD_STRATEGY);
@@ -120,10 +137,26 @@ public class DetectStrategyServiceTest {
         assertTrue(byteArrayOutputStream.toString().contains(ScriptOrJarDownloadStrategy.DISPLAY_NAME), "Log does not contain message with correct download strategy.");
     }
 
+    @Test
+    public void testStrategyReadFromSnapshot() {
+        DetectGlobalConfig mockDetectGlobalConfig = Mockito.mock(DetectGlobalConfig.class);
+        Mockito.when(jenkinsConfigService.getGlobalConfiguration(DetectGlobalConfig.class)).thenReturn(Optional.ofNullable(mockDetectGlobalConfig));
+        Mockito.when(mockDetectGlobalConfig.getSnapshot()).thenReturn(createSnapshot(AIRGAP_DOWNLOAD_STRATEGY));
+        Mockito.when(mockDetectGlobalConfig.getDownloadStrategy()).thenReturn(SCRIPTJAR_DOWNLOAD_STRATEGY);
+
+        DetectExecutionStrategy detectExecutionStrategy = testGetExecutionStrategy(intEnvironmentVariables, INHERIT_DOWNLOAD_STRATEGY);
+        assertEquals(DetectAirGapJarStrategy.class, detectExecutionStrategy.getClass());
+        Mockito.verify(mockDetectGlobalConfig, Mockito.times(1)).getSnapshot();
+    }
+
+    private DetectGlobalConfigSnapshot createSnapshot(DetectDownloadStrategy downloadStrategy) {
+        return new DetectGlobalConfigSnapshot(1, null, null, 120, false, false, downloadStrategy);
+    }
+
     public DetectExecutionStrategy testGetExecutionStrategy(IntEnvironmentVariables intEnvironmentVariables, DetectDownloadStrategy downloadStrategy) {
         DetectExecutionStrategy executionStrategy = null;
         try {
-            executionStrategy = detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, null, downloadStrategy);
+            executionStrategy = detectStrategyService.getExecutionStrategy(intEnvironmentVariables, null, downloadStrategy);
         } catch (Exception e) {
             fail("An unexpected exception occurred in the test code: ", e);
         }
@@ -0,0 +1,39 @@
+package com.blackduck.integration.jenkins.detect.service.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class ProbeProcessTest {
+    private static final String JAVA_EXECUTABLE = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    @Test
+    public void testOutputCollected() throws IOException, InterruptedException {
+        Optional<ProbeProcess> probeProcess = ProbeProcess.run(new ProcessBuilder(Arrays.asList(JAVA_EXECUTABLE, "-version")), 60);
+
+        assertTrue(probeProcess.isPresent());
+        assertEquals(0, probeProcess.get().getExitCode());
+        assertTrue(probeProcess.get().getOutput().contains("version"), "The error stream should be part of the output");
+    }
+
+    @Test
+    public void testHungProcessTimesOut() throws IOException, InterruptedException {
+        Assumptions.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        long startMillis = System.currentTimeMillis();
+
+        Optional<ProbeProcess> probeProcess = ProbeProcess.run(new ProcessBuilder(Arrays.asList("sleep", "60")), 1);
+
+        assertFalse(probeProcess.isPresent());
+        assertTrue(System.currentTimeMillis() - startMillis < 30_000L, "A hung process should not block past its timeout");
+    }
+
+}
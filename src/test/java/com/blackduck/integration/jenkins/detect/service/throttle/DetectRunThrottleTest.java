@@ -0,0 +1,145 @@
+package com.blackduck.integration.jenkins.detect.service.throttle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DetectRunThrottleTest {
+    private static final String SERVER_URL = "https://blackduck.example.com";
+    private static final DetectRunThrottle.QueueListener IGNORE_QUEUE = (position, waitingRuns) -> {};
+
+    private DetectRunThrottle detectRunThrottle;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        detectRunThrottle = new DetectRunThrottle();
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testUnlimitedRunsAreNotCounted() throws InterruptedException {
+        DetectRunPermit detectRunPermit = detectRunThrottle.acquire(DetectThrottleLimits.NONE, "agent-1", SERVER_URL, IGNORE_QUEUE);
+
+        assertSame(DetectRunPermit.NONE, detectRunPermit);
+        assertEquals(0, detectRunThrottle.getRunCount());
+    }
+
+    @Test
+    public void testWaitingRunsProceedInArrivalOrder() throws Exception {
+        DetectThrottleLimits limits = new DetectThrottleLimits(1, 0, 0);
+        DetectRunPermit firstPermit = detectRunThrottle.acquire(limits, "agent-1", SERVER_URL, IGNORE_QUEUE);
+
+        List<Integer> reportedPositions = new CopyOnWriteArrayList<>();
+        Future<DetectRunPermit> secondRun = executorService.submit(() -> detectRunThrottle.acquire(limits, "agent-2", SERVER_URL, (position, waitingRuns) -> reportedPositions.add(position)));
+        awaitWaitingCount(1);
+        Future<DetectRunPermit> thirdRun = executorService.submit(() -> detectRunThrottle.acquire(limits, "agent-3", SERVER_URL, IGNORE_QUEUE));
+        awaitWaitingCount(2);
+
+        firstPermit.close();
+        DetectRunPermit secondPermit = secondRun.get(10, TimeUnit.SECONDS);
+        assertFalse(thirdRun.isDone(), "The third run arrived later, so it should still be waiting");
+        assertEquals(1, reportedPositions.get(0).intValue());
+
+        secondPermit.close();
+        thirdRun.get(10, TimeUnit.SECONDS).close();
+        assertEquals(0, detectRunThrottle.getRunCount());
+    }
+
+    @Test
+    public void testFullNodeDoesNotHoldUpOtherNodes() throws Exception {
+        DetectThrottleLimits limits = new DetectThrottleLimits(0, 1, 0);
+        DetectRunPermit firstPermit = detectRunThrottle.acquire(limits, "agent-1", SERVER_URL, IGNORE_QUEUE);
+        Future<DetectRunPermit> sameNodeRun = executorService.submit(() -> detectRunThrottle.acquire(limits, "agent-1", SERVER_URL, IGNORE_QUEUE));
+        awaitWaitingCount(1);
+
+        DetectRunPermit otherNodePermit = executorService.submit(() -> detectRunThrottle.acquire(limits, "agent-2", SERVER_URL, IGNORE_QUEUE)).get(10, TimeUnit.SECONDS);
+        assertEquals(2, detectRunThrottle.getRunCount());
+        assertFalse(sameNodeRun.isDone());
+
+        firstPermit.close();
+        sameNodeRun.get(10, TimeUnit.SECONDS).close();
+        otherNodePermit.close();
+    }
+
+    @Test
+    public void testServerUrlsAreCompared() throws Exception {
+        DetectThrottleLimits limits = new DetectThrottleLimits(0, 0, 1);
+        DetectRunPermit firstPermit = detectRunThrottle.acquire(limits, "agent-1", SERVER_URL, IGNORE_QUEUE);
+        Future<DetectRunPermit> sameServerRun = executorService.submit(() -> detectRunThrottle.acquire(limits, "agent-2", " HTTPS://blackduck.example.com/ ", IGNORE_QUEUE));
+
+        assertThrows(TimeoutException.class, () -> sameServerRun.get(200, TimeUnit.MILLISECONDS));
+        detectRunThrottle.acquire(limits, "agent-3", "https://other.example.com", IGNORE_QUEUE).close();
+
+        firstPermit.close();
+        sameServerRun.get(10, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    public void testInterruptedRunLeavesQueue() throws Exception {
+        DetectThrottleLimits limits = new DetectThrottleLimits(1, 0, 0);
+        DetectRunPermit firstPermit = detectRunThrottle.acquire(limits, "agent-1", SERVER_URL, IGNORE_QUEUE);
+        Future<DetectRunPermit> interruptedRun = executorService.submit(() -> detectRunThrottle.acquire(limits, "agent-2", SERVER_URL, IGNORE_QUEUE));
+        awaitWaitingCount(1);
+
+        interruptedRun.cancel(true);
+        awaitWaitingCount(0);
+        assertEquals(1, detectRunThrottle.getRunCount(), "The interrupted run should not have taken a slot");
+
+        firstPermit.close();
+        firstPermit.close();
+        assertEquals(0, detectRunThrottle.getRunCount(), "Closing a permit twice should only free one slot");
+        detectRunThrottle.acquire(limits, "agent-3", SERVER_URL, IGNORE_QUEUE).close();
+    }
+
+    @Test
+    public void testAsyncRunQueuesWithoutWaiting() throws Exception {
+        DetectThrottleLimits limits = new DetectThrottleLimits(1, 0, 0);
+        DetectRunPermit firstPermit = detectRunThrottle.acquire(limits, "agent-1", SERVER_URL, IGNORE_QUEUE);
+
+        List<Integer> reportedPositions = new CopyOnWriteArrayList<>();
+        CompletableFuture<DetectRunPermit> secondRun = detectRunThrottle.acquireAsync(limits, "agent-2", SERVER_URL, (position, waitingRuns) -> reportedPositions.add(position));
+        CompletableFuture<DetectRunPermit> thirdRun = detectRunThrottle.acquireAsync(limits, "agent-3", SERVER_URL, (position, waitingRuns) -> reportedPositions.add(position));
+        assertFalse(secondRun.isDone());
+        assertEquals(2, detectRunThrottle.getWaitingCount());
+
+        secondRun.cancel(false);
+        assertEquals(1, detectRunThrottle.getWaitingCount(), "A cancelled run should leave the queue");
+        assertEquals(Arrays.asList(1, 2, 1), reportedPositions, "The third run should have moved up when the second one left");
+
+        firstPermit.close();
+        assertTrue(thirdRun.isDone(), "Freeing the slot should let the next run go");
+        assertEquals(1, detectRunThrottle.getRunCount());
+        thirdRun.get().close();
+        assertEquals(0, detectRunThrottle.getRunCount());
+    }
+
+    private void awaitWaitingCount(int waitingCount) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (detectRunThrottle.getWaitingCount() != waitingCount) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + waitingCount + " queued runs");
+            Thread.sleep(5);
+        }
+    }
+}
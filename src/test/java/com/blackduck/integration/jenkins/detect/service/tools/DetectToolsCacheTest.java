@@ -0,0 +1,176 @@
+package com.blackduck.integration.jenkins.detect.service.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.blackduck.integration.jenkins.detect.service.tools.DetectToolsCache.AcquireState;
+import com.blackduck.integration.jenkins.extensions.JenkinsIntLogger;
+
+import hudson.model.TaskListener;
+
+public class DetectToolsCacheTest {
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private Path agentCacheDirectory;
+    private Path toolsDirectory;
+    private DetectToolsCache detectToolsCache;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        agentCacheDirectory = Files.createTempDirectory("testDetectToolsCache");
+        toolsDirectory = agentCacheDirectory.resolve(DetectToolsCache.TOOLS_DIRECTORY);
+
+        TaskListener taskListener = Mockito.mock(TaskListener.class);
+        Mockito.when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        detectToolsCache = new DetectToolsCache(JenkinsIntLogger.logToListener(taskListener), agentCacheDirectory.toString());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(agentCacheDirectory.toFile());
+    }
+
+    @Test
+    public void testOtherRunsWaitForTheFirstDownload() throws IOException {
+        assertEquals(AcquireState.DOWNLOADING, detectToolsCache.tryAcquire("first", false), "The first run should download the tools");
+        assertEquals(AcquireState.WAITING_FOR_DOWNLOAD, detectToolsCache.tryAcquire("second", false));
+        assertEquals(AcquireState.DOWNLOADING, detectToolsCache.tryAcquire("first", false), "Trying again should keep the download lock");
+
+        detectToolsCache.release("first", Long.MAX_VALUE);
+
+        assertEquals(AcquireState.READY, detectToolsCache.tryAcquire("second", false), "The second run should use the tools the first one downloaded");
+        assertEquals(AcquireState.READY, detectToolsCache.tryAcquire("third", false), "Later runs should not wait once a run has gone through");
+    }
+
+    @Test
+    public void testWaitForDownloadIsBounded() throws IOException {
+        assertEquals(AcquireState.DOWNLOADING, detectToolsCache.tryAcquire("first", false));
+        assertEquals(AcquireState.READY, detectToolsCache.tryAcquire("second", true));
+    }
+
+    @Test
+    public void testRunsWaitForEviction() throws IOException {
+        Path evictionLock = Files.createDirectories(agentCacheDirectory.resolve(DetectToolsCache.LOCK_DIRECTORY)).resolve(DetectToolsCache.EVICTION_LOCK);
+        Files.write(evictionLock, DetectToolsCache.EVICTION_LOCK.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(AcquireState.WAITING_FOR_EVICTION, detectToolsCache.tryAcquire("run", true));
+        Files.delete(evictionLock);
+        assertEquals(AcquireState.DOWNLOADING, detectToolsCache.tryAcquire("run", true));
+    }
+
+    @Test
+    public void testStaleDownloadLockTakenOver() throws IOException {
+        Path downloadLock = Files.createDirectories(agentCacheDirectory.resolve(DetectToolsCache.LOCK_DIRECTORY)).resolve(DetectToolsCache.DOWNLOAD_LOCK);
+        Files.write(downloadLock, "abandoned".getBytes(StandardCharsets.UTF_8));
+        assertEquals(AcquireState.WAITING_FOR_DOWNLOAD, detectToolsCache.tryAcquire("run", false), "A lock that is still in use should not be taken over");
+
+        Files.setLastModifiedTime(downloadLock, FileTime.fromMillis(System.currentTimeMillis() - DetectToolsCache.STALE_LOCK_MILLIS - TimeUnit.MINUTES.toMillis(1)));
+        assertEquals(AcquireState.DOWNLOADING, detectToolsCache.tryAcquire("run", false));
+        assertEquals("run", new String(Files.readAllBytes(downloadLock), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedToolsEvicted() throws IOException {
+        long now = System.currentTimeMillis();
+        createTool("scanner", now - TimeUnit.DAYS.toMillis(3));
+        createTool("docker-inspector", now - TimeUnit.DAYS.toMillis(2));
+        createTool("nuget-inspector", now - TimeUnit.DAYS.toMillis(1));
+
+        detectToolsCache.tryAcquire("run", false);
+        detectToolsCache.release("run", 3 * MEGABYTE);
+
+        assertEquals(Collections.singleton("nuget-inspector"), listTools());
+    }
+
+    @Test
+    public void testRunsDontWaitAfterEviction() throws IOException {
+        long now = System.currentTimeMillis();
+        createTool("scanner", now - TimeUnit.DAYS.toMillis(2));
+        createTool("docker-inspector", now - TimeUnit.DAYS.toMillis(1));
+        detectToolsCache.tryAcquire("first", false);
+        detectToolsCache.release("first", 0);
+
+        assertEquals(Collections.singleton("docker-inspector"), listTools());
+        assertEquals(AcquireState.READY, detectToolsCache.tryAcquire("second", false), "An eviction should not make runs wait for a whole scan again");
+    }
+
+    @Test
+    public void testMostRecentlyUsedToolKept() throws IOException {
+        long now = System.currentTimeMillis();
+        createTool("scanner", now - TimeUnit.DAYS.toMillis(1));
+        createTool("docker-inspector", now - TimeUnit.DAYS.toMillis(2));
+
+        detectToolsCache.tryAcquire("run", false);
+        detectToolsCache.release("run", 0);
+
+        assertEquals(Collections.singleton("scanner"), listTools());
+    }
+
+    @Test
+    public void testToolsOtherRunsMayUseKept() throws IOException {
+        long now = System.currentTimeMillis();
+        createTool("scanner", now - TimeUnit.DAYS.toMillis(3));
+        createTool("docker-inspector", now - TimeUnit.HOURS.toMillis(2));
+        createTool("nuget-inspector", now - TimeUnit.HOURS.toMillis(1));
+        detectToolsCache.tryAcquire("first", false);
+        detectToolsCache.tryAcquire("second", true);
+
+        detectToolsCache.release("first", 0);
+        assertEquals(new HashSet<>(Arrays.asList("docker-inspector", "nuget-inspector")), listTools(), "Only the tools the second run can't be using should be evicted");
+
+        detectToolsCache.release("second", 0);
+        assertEquals(Collections.singleton("nuget-inspector"), listTools());
+    }
+
+    @Test
+    public void testStaleLeaseIgnored() throws IOException {
+        long now = System.currentTimeMillis();
+        createTool("scanner", now - TimeUnit.DAYS.toMillis(2));
+        createTool("docker-inspector", now - TimeUnit.DAYS.toMillis(1));
+        detectToolsCache.tryAcquire("abandoned", false);
+        Path abandonedLease = agentCacheDirectory.resolve(DetectToolsCache.LOCK_DIRECTORY).resolve(DetectToolsCache.RUNS_DIRECTORY).resolve("abandoned");
+        Files.setLastModifiedTime(abandonedLease, FileTime.fromMillis(now - DetectToolsCache.STALE_LOCK_MILLIS - TimeUnit.MINUTES.toMillis(1)));
+
+        detectToolsCache.tryAcquire("run", true);
+        detectToolsCache.release("run", 0);
+
+        assertEquals(Collections.singleton("docker-inspector"), listTools());
+        assertFalse(Files.exists(abandonedLease));
+    }
+
+    private void createTool(String toolName, long lastUsedMillis) throws IOException {
+        Path tool = Files.createDirectories(toolsDirectory.resolve(toolName));
+        Path toolFile = Files.write(tool.resolve(toolName + ".jar"), new byte[(int) (2 * MEGABYTE)]);
+        for (Path path : Arrays.asList(toolFile, tool)) {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(lastUsedMillis));
+            Files.setAttribute(path, "basic:lastAccessTime", FileTime.fromMillis(lastUsedMillis));
+        }
+    }
+
+    private Set<String> listTools() throws IOException {
+        try (Stream<Path> tools = Files.list(toolsDirectory)) {
+            return tools.map(tool -> tool.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.blackduck.integration.jenkins.detect.service.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+public class DetectOpenTelemetryRunTraceTest {
+    private InMemorySpanExporter spanExporter;
+    private SdkTracerProvider tracerProvider;
+
+    @BeforeEach
+    public void setUp() {
+        spanExporter = InMemorySpanExporter.create();
+        tracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        tracerProvider.shutdown();
+    }
+
+    @Test
+    public void testPhaseSpans() throws InterruptedException {
+        DetectPhaseTimer detectPhaseTimer = new DetectPhaseTimer();
+        DetectOpenTelemetryRunTrace detectRunTrace = new DetectOpenTelemetryRunTrace(tracerProvider.get(DetectOpenTelemetryRunTrace.INSTRUMENTATION_SCOPE), detectPhaseTimer, "ScriptOrJarDownloadStrategy", "job/1");
+        IntEnvironmentVariables intEnvironmentVariables = IntEnvironmentVariables.empty();
+
+        detectPhaseTimer.endPhase(DetectPhaseTimer.ENVIRONMENT);
+        detectPhaseTimer.endPhase(DetectPhaseTimer.STRATEGY);
+        Thread.sleep(5);
+        detectPhaseTimer.endPhase(DetectPhaseTimer.AGENT_BOOTSTRAP);
+        DetectScriptDownloads.begin();
+        DetectScriptDownloads.record(2048, 3);
+        detectRunTrace.recordAgentSetup(60_000, DetectScriptDownloads.end());
+        detectPhaseTimer.endPhase(DetectPhaseTimer.ARGUMENTS);
+        detectRunTrace.injectTraceContext(intEnvironmentVariables);
+        detectPhaseTimer.endPhase(DetectPhaseTimer.DETECT);
+        detectRunTrace.finished(0);
+        detectRunTrace.end();
+
+        Map<String, SpanData> spansByName = spanExporter.getFinishedSpanItems().stream()
+            .collect(Collectors.toMap(SpanData::getName, Function.identity()));
+        assertEquals(7, spansByName.size());
+
+        SpanData runSpan = spansByName.get(DetectOpenTelemetryRunTrace.RUN_SPAN_NAME);
+        assertEquals("ScriptOrJarDownloadStrategy", runSpan.getAttributes().get(DetectOpenTelemetryRunTrace.STRATEGY_ATTRIBUTE));
+        assertEquals("job/1", runSpan.getAttributes().get(DetectOpenTelemetryRunTrace.BUILD_ATTRIBUTE));
+        assertEquals(0L, runSpan.getAttributes().get(DetectOpenTelemetryRunTrace.EXIT_CODE_ATTRIBUTE));
+        assertEquals(StatusCode.UNSET, runSpan.getStatus().getStatusCode());
+
+        for (String phaseName : new String[] { DetectPhaseTimer.ENVIRONMENT, DetectPhaseTimer.STRATEGY, DetectPhaseTimer.AGENT_BOOTSTRAP, DetectPhaseTimer.ARGUMENTS, DetectPhaseTimer.DETECT }) {
+            SpanData phaseSpan = spansByName.get(phaseName);
+            assertEquals(runSpan.getSpanId(), phaseSpan.getParentSpanId(), phaseName + " should be a child of the run span");
+            assertEquals(runSpan.getTraceId(), phaseSpan.getTraceId());
+        }
+
+        SpanData bootstrapSpan = spansByName.get(DetectPhaseTimer.AGENT_BOOTSTRAP);
+        SpanData agentSetupSpan = spansByName.get(DetectPhaseTimer.AGENT_SETUP);
+        assertEquals(bootstrapSpan.getSpanId(), agentSetupSpan.getParentSpanId());
+        assertTrue(agentSetupSpan.getStartEpochNanos() >= bootstrapSpan.getStartEpochNanos(), "Agent-side setup should not start before the round trip");
+        assertTrue(agentSetupSpan.getEndEpochNanos() <= bootstrapSpan.getEndEpochNanos(), "Agent-side setup should not end after the round trip");
+        assertEquals(1L, agentSetupSpan.getAttributes().get(DetectOpenTelemetryRunTrace.SCRIPT_DOWNLOADS_ATTRIBUTE));
+        assertEquals(2048L, agentSetupSpan.getAttributes().get(DetectOpenTelemetryRunTrace.SCRIPT_DOWNLOAD_BYTES_ATTRIBUTE));
+
+        SpanData detectSpan = spansByName.get(DetectPhaseTimer.DETECT);
+        String expectedTraceparent = String.format("00-%s-%s-01", detectSpan.getTraceId(), detectSpan.getSpanId());
+        assertEquals(expectedTraceparent, intEnvironmentVariables.getValue(DetectRunTrace.TRACEPARENT));
+    }
+
+    @Test
+    public void testFailedRun() {
+        DetectPhaseTimer detectPhaseTimer = new DetectPhaseTimer();
+        DetectOpenTelemetryRunTrace detectRunTrace = new DetectOpenTelemetryRunTrace(tracerProvider.get(DetectOpenTelemetryRunTrace.INSTRUMENTATION_SCOPE), detectPhaseTimer, "AirGapDownloadStrategy", null);
+
+        detectPhaseTimer.endPhase(DetectPhaseTimer.ENVIRONMENT);
+        detectRunTrace.failed(new IllegalStateException("No air gap installation"));
+        detectRunTrace.end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        SpanData runSpan = spans.get(1);
+        assertEquals(DetectOpenTelemetryRunTrace.RUN_SPAN_NAME, runSpan.getName());
+        assertEquals(StatusCode.ERROR, runSpan.getStatus().getStatusCode());
+        assertNull(runSpan.getAttributes().get(DetectOpenTelemetryRunTrace.BUILD_ATTRIBUTE));
+        assertEquals(1, runSpan.getEvents().size(), "The failure should be recorded as an exception event");
+    }
+
+    @Test
+    public void testNonZeroExitCode() {
+        DetectOpenTelemetryRunTrace detectRunTrace = new DetectOpenTelemetryRunTrace(tracerProvider.get(DetectOpenTelemetryRunTrace.INSTRUMENTATION_SCOPE), new DetectPhaseTimer(), "AirGapDownloadStrategy", null);
+        detectRunTrace.finished(3);
+        detectRunTrace.end();
+
+        SpanData runSpan = spanExporter.getFinishedSpanItems().get(0);
+        assertEquals(3L, runSpan.getAttributes().get(DetectOpenTelemetryRunTrace.EXIT_CODE_ATTRIBUTE));
+        assertEquals(StatusCode.ERROR, runSpan.getStatus().getStatusCode());
+    }
+}
@@ -0,0 +1,29 @@
+package com.blackduck.integration.jenkins.detect.service.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.jenkins.detect.service.DetectPhaseTimer;
+import com.blackduck.integration.jenkins.detect.service.strategy.DetectScriptDownloads;
+import com.blackduck.integration.util.IntEnvironmentVariables;
+
+public class DetectTracingTest {
+    @Test
+    public void testNoOpWithoutJenkins() {
+        assertFalse(DetectTracing.isEnabled());
+        DetectPhaseTimer detectPhaseTimer = new DetectPhaseTimer();
+        IntEnvironmentVariables intEnvironmentVariables = IntEnvironmentVariables.empty();
+
+        DetectRunTrace detectRunTrace = DetectTracing.startRun(detectPhaseTimer, "AirGapDownloadStrategy", null);
+        detectPhaseTimer.endPhase(DetectPhaseTimer.AGENT_BOOTSTRAP);
+        detectRunTrace.recordAgentSetup(10, new DetectScriptDownloads());
+        detectRunTrace.injectTraceContext(intEnvironmentVariables);
+        detectRunTrace.finished(0);
+        detectRunTrace.end();
+
+        assertTrue(intEnvironmentVariables.getVariables().isEmpty(), "No trace context should be passed to Detect without the opentelemetry-api plugin");
+    }
+
+}